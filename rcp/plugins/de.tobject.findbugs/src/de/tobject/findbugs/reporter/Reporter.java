@@ -301,4 +301,8 @@ public class Reporter extends AbstractBugReporter implements FindBugsProgress {
     public void startArchive(String name) {
         // printToStream("start archive: " + name);
     }
+
+    public void reportCodeBaseTime(String name, long elapsedMillis) {
+        // printToStream("scanned " + name + " in " + elapsedMillis + " ms");
+    }
 }
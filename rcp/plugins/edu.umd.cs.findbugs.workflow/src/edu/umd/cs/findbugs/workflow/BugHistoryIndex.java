@@ -0,0 +1,226 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+
+/**
+ * Column-oriented copy of the history of a BugCollection, for tools that mine
+ * it. For each BugInstance, in the collection's order, the first and last
+ * versions, priority, type, package of the primary class and instance hash
+ * are stored in arrays, so queries over the history scan arrays rather than
+ * walking the BugInstances. Strings are stored once, in tables, and the
+ * arrays hold their indices.
+ * <p>
+ * For counts over ranges of versions, such as the number of bugs alive in
+ * each version, accumulate the change at each end of each bug's range, and
+ * sum the changes up afterwards: that takes time proportional to the number
+ * of bugs plus the number of versions, rather than their product.
+ */
+public class BugHistoryIndex {
+    private static final int INTRODUCED_BY_CHANGE_OF_EXISTING_CLASS = 1;
+
+    private static final int REMOVED_BY_CHANGE_OF_PERSISTING_CLASS = 2;
+
+    private final int size;
+
+    private final int sequenceNumber;
+
+    private final int[] firstVersion;
+
+    private final int[] lastVersion;
+
+    private final byte[] flags;
+
+    private final byte[] priority;
+
+    private final int[] type;
+
+    private final int[] packageName;
+
+    private final int[] instanceHash;
+
+    private final List<String> types = new ArrayList<String>();
+
+    private final List<String> typeCategoryAbbrevs = new ArrayList<String>();
+
+    private final List<String> typeBugPatterns = new ArrayList<String>();
+
+    private final List<String> packageNames = new ArrayList<String>();
+
+    private final List<String> instanceHashes = new ArrayList<String>();
+
+    /**
+     * Constructor. Indexes the BugInstances in a collection.
+     *
+     * @param bugCollection
+     *            the collection
+     */
+    public BugHistoryIndex(BugCollection bugCollection) {
+        size = bugCollection.getCollection().size();
+        sequenceNumber = (int) bugCollection.getSequenceNumber();
+        firstVersion = new int[size];
+        lastVersion = new int[size];
+        flags = new byte[size];
+        priority = new byte[size];
+        type = new int[size];
+        packageName = new int[size];
+        instanceHash = new int[size];
+
+        Map<String, Integer> typeIndex = new HashMap<String, Integer>();
+        Map<String, Integer> packageIndex = new HashMap<String, Integer>();
+        Map<String, Integer> hashIndex = new HashMap<String, Integer>();
+        int i = 0;
+        for (BugInstance bug : bugCollection.getCollection()) {
+            firstVersion[i] = (int) bug.getFirstVersion();
+            lastVersion[i] = (int) bug.getLastVersion();
+            int f = 0;
+            if (bug.isIntroducedByChangeOfExistingClass())
+                f |= INTRODUCED_BY_CHANGE_OF_EXISTING_CLASS;
+            if (bug.isRemovedByChangeOfPersistingClass())
+                f |= REMOVED_BY_CHANGE_OF_PERSISTING_CLASS;
+            flags[i] = (byte) f;
+            priority[i] = (byte) bug.getPriority();
+
+            Integer t = typeIndex.get(bug.getType());
+            if (t == null) {
+                // The bug pattern, and so its category, depend only on the
+                // type
+                t = types.size();
+                typeIndex.put(bug.getType(), t);
+                types.add(bug.getType());
+                typeCategoryAbbrevs.add(bug.getCategoryAbbrev());
+                typeBugPatterns.add(bug.getBugPattern().getType());
+            }
+            type[i] = t;
+
+            ClassAnnotation primaryClass = bug.getPrimaryClass();
+            packageName[i] = intern(primaryClass != null ? primaryClass.getPackageName() : "", packageIndex, packageNames);
+            instanceHash[i] = intern(bug.getInstanceHash(), hashIndex, instanceHashes);
+            i++;
+        }
+    }
+
+    private static int intern(String s, Map<String, Integer> index, List<String> table) {
+        Integer result = index.get(s);
+        if (result == null) {
+            result = table.size();
+            index.put(s, result);
+            table.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of BugInstances.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the sequence number of the collection's current version.
+     */
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public int getFirstVersion(int bug) {
+        return firstVersion[bug];
+    }
+
+    /**
+     * Get the last version in which a bug was seen.
+     *
+     * @return the version, or -1 if the bug is still alive
+     */
+    public int getLastVersion(int bug) {
+        return lastVersion[bug];
+    }
+
+    public boolean isDead(int bug) {
+        return lastVersion[bug] != -1;
+    }
+
+    public boolean isIntroducedByChangeOfExistingClass(int bug) {
+        return (flags[bug] & INTRODUCED_BY_CHANGE_OF_EXISTING_CLASS) != 0;
+    }
+
+    public boolean isRemovedByChangeOfPersistingClass(int bug) {
+        return (flags[bug] & REMOVED_BY_CHANGE_OF_PERSISTING_CLASS) != 0;
+    }
+
+    public int getPriority(int bug) {
+        return priority[bug];
+    }
+
+    public String getType(int bug) {
+        return types.get(type[bug]);
+    }
+
+    /**
+     * Get the abbreviation of the category of a bug's pattern.
+     *
+     * @see BugInstance#getCategoryAbbrev()
+     */
+    public String getCategoryAbbrev(int bug) {
+        return typeCategoryAbbrevs.get(type[bug]);
+    }
+
+    /**
+     * Get the type of a bug's pattern, which is "UNKNOWN" if its type has no
+     * pattern.
+     */
+    public String getBugPatternType(int bug) {
+        return typeBugPatterns.get(type[bug]);
+    }
+
+    public String getPackageName(int bug) {
+        return packageNames.get(packageName[bug]);
+    }
+
+    /**
+     * Get the number of distinct instance hashes.
+     */
+    public int getNumInstanceHashes() {
+        return instanceHashes.size();
+    }
+
+    /**
+     * Get the index of a bug's instance hash. Hashes are numbered in the order
+     * they first occur in the collection.
+     */
+    public int getInstanceHashIndex(int bug) {
+        return instanceHash[bug];
+    }
+
+    public String getInstanceHash(int index) {
+        return instanceHashes.get(index);
+    }
+}
+
+// vim:ts=4
@@ -22,12 +22,10 @@ package edu.umd.cs.findbugs.workflow;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 
 import edu.umd.cs.findbugs.BugCollection;
-import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.SortedBugCollection;
 import edu.umd.cs.findbugs.config.CommandLine;
@@ -38,6 +36,8 @@ import edu.umd.cs.findbugs.config.CommandLine;
 public class Churn {
     BugCollection bugCollection;
 
+    BugHistoryIndex bugHistoryIndex;
+
     int fixRate = -1;
 
     public Churn() {
@@ -49,12 +49,30 @@ public class Churn {
 
     public void setBugCollection(BugCollection bugCollection) {
         this.bugCollection = bugCollection;
+        this.bugHistoryIndex = null;
+    }
+
+    /**
+     * Query an index of the bug collection that was already built, for
+     * example for another tool, rather than building one.
+     *
+     * @param bugHistoryIndex
+     *            index of the bug collection
+     */
+    public void setBugHistoryIndex(BugHistoryIndex bugHistoryIndex) {
+        this.bugHistoryIndex = bugHistoryIndex;
     }
 
-    String getKey(BugInstance b) {
+    private BugHistoryIndex getBugHistoryIndex() {
+        if (bugHistoryIndex == null)
+            bugHistoryIndex = new BugHistoryIndex(bugCollection);
+        return bugHistoryIndex;
+    }
+
+    String getKey(BugHistoryIndex index, int bug) {
         if (false)
-            return b.getType();
-        String result = b.getCategoryAbbrev();
+            return index.getType(bug);
+        String result = index.getCategoryAbbrev(bug);
         if (result.equals("C") || result.equals("N"))
             return result;
         return "O";
@@ -75,12 +93,12 @@ public class Churn {
 
         Map<Long, Integer> lastCount = new HashMap<Long, Integer>();
 
-        void update(BugInstance bug) {
-            if (bug.isDead())
+        void update(BugHistoryIndex index, int bug) {
+            if (index.isDead(bug))
                 fixed++;
             else
                 persist++;
-            final long lastVersion = bug.getLastVersion();
+            final long lastVersion = index.getLastVersion(bug);
             if (lastVersion != -1) {
                 Integer v = lastCount.get(lastVersion);
                 if (v == null)
@@ -105,18 +123,20 @@ public class Churn {
         aliveAt = new int[(int) bugCollection.getSequenceNumber() + 1];
         diedAfter = new int[(int) bugCollection.getSequenceNumber() + 1];
 
-        for (Iterator<BugInstance> j = bugCollection.iterator(); j.hasNext();) {
-            BugInstance bugInstance = j.next();
-
-            String key = getKey(bugInstance);
+        // A bug that lived for n versions was alive at ages 1 to n-1: record
+        // where those ranges end, and add them up afterwards
+        int[] aliveAtChanges = new int[aliveAt.length + 1];
+        BugHistoryIndex index = getBugHistoryIndex();
+        for (int bug = 0; bug < index.size(); bug++) {
+            String key = getKey(index, bug);
             Data d = data.get(key);
             if (d == null)
                 data.put(key, d = new Data());
-            d.update(bugInstance);
-            all.update(bugInstance);
+            d.update(index, bug);
+            all.update(index, bug);
 
-            long first = bugInstance.getFirstVersion();
-            long last = bugInstance.getLastVersion();
+            long first = index.getFirstVersion(bug);
+            long last = index.getLastVersion(bug);
 
             if (last != -1) {
                 System.out.printf("%3d #fixed %s%n", last, key);
@@ -127,14 +147,23 @@ public class Churn {
                 System.out.printf("%3d #age %s%n", lifespan, key);
                 System.out.printf("%3d %3d #spread %s%n", first, last, key);
                 diedAfter[lifespan]++;
-                for (int t = 1; t < lifespan; t++)
-                    aliveAt[t]++;
+                if (lifespan > 1) {
+                    aliveAtChanges[1]++;
+                    aliveAtChanges[Math.min(lifespan, aliveAt.length)]--;
+                }
             } else if (first != 0) {
                 int lifespan = (int) (bugCollection.getSequenceNumber() - first + 1);
-                for (int t = 1; t < lifespan; t++)
-                    aliveAt[t]++;
+                if (lifespan > 1) {
+                    aliveAtChanges[1]++;
+                    aliveAtChanges[Math.min(lifespan, aliveAt.length)]--;
+                }
             }
         }
+        int alive = 0;
+        for (int t = 0; t < aliveAt.length; t++) {
+            alive += aliveAtChanges[t];
+            aliveAt[t] += alive;
+        }
         return this;
     }
 
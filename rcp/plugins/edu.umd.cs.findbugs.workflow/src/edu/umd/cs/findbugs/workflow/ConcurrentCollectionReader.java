@@ -0,0 +1,173 @@
+/*
+ * FindBugs - Find bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dom4j.DocumentException;
+
+import edu.umd.cs.findbugs.SortedBugCollection;
+
+/**
+ * Read bug collection files in the order given, reading the files that come
+ * next on other threads while the caller processes the current one. To bound
+ * memory use, at most as many files as there are threads are read ahead.
+ * <p>
+ * The DetectorFactoryCollection must have been loaded before the reader is
+ * created.
+ */
+public class ConcurrentCollectionReader {
+    private final List<String> fileNames;
+
+    private final ExecutorService executor;
+
+    private final int numThreads;
+
+    /** Reads of the files after the current one, in order. */
+    private final LinkedList<Future<SortedBugCollection>> pending = new LinkedList<Future<SortedBugCollection>>();
+
+    private int nextToRead;
+
+    private int nextToReturn;
+
+    /**
+     * Constructor.
+     *
+     * @param fileNames
+     *            the files to read
+     * @param numThreads
+     *            number of threads reading files; if 1, each file is read
+     *            by the caller when it's asked for
+     */
+    public ConcurrentCollectionReader(List<String> fileNames, int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("number of threads must be at least 1 (saw " + numThreads + ")");
+        this.fileNames = fileNames;
+        this.numThreads = numThreads;
+        this.executor = numThreads > 1 && fileNames.size() > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+    }
+
+    /**
+     * Are there more files to read?
+     */
+    public boolean hasNext() {
+        return nextToReturn < fileNames.size();
+    }
+
+    /**
+     * Get the name of the file that {@link #next()} will return.
+     */
+    public String getNextFileName() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return fileNames.get(nextToReturn);
+    }
+
+    /**
+     * Get the next bug collection.
+     *
+     * @return the bug collection read from the next file
+     * @throws IOException
+     *             if the file can't be read
+     * @throws DocumentException
+     *             if the file can't be parsed
+     */
+    public SortedBugCollection next() throws IOException, DocumentException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        if (executor == null) {
+            SortedBugCollection result = new SortedBugCollection();
+            result.readXML(fileNames.get(nextToReturn++));
+            return result;
+        }
+        startReading();
+        Future<SortedBugCollection> read = pending.removeFirst();
+        nextToReturn++;
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + fileNames.get(nextToReturn - 1));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof DocumentException)
+                throw (DocumentException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException("Error reading " + fileNames.get(nextToReturn - 1), cause);
+        } finally {
+            startReading();
+        }
+    }
+
+    /**
+     * Skip the next file, without waiting for it to be read.
+     */
+    public void skip() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        nextToReturn++;
+        if (!pending.isEmpty())
+            pending.removeFirst().cancel(false);
+        else if (executor != null)
+            nextToRead++;
+        startReading();
+    }
+
+    /**
+     * Stop reading files, abandoning the files being read. Must be called
+     * when the reader is no longer needed, to stop its threads.
+     */
+    public void close() {
+        if (executor != null)
+            executor.shutdownNow();
+        pending.clear();
+    }
+
+    private void startReading() {
+        if (executor == null)
+            return;
+        while (nextToRead < fileNames.size() && pending.size() < numThreads) {
+            final String fileName = fileNames.get(nextToRead++);
+            pending.addLast(executor.submit(new Callable<SortedBugCollection>() {
+                public SortedBugCollection call() throws IOException, DocumentException {
+                    SortedBugCollection result = new SortedBugCollection();
+                    result.readXML(fileName);
+                    return result;
+                }
+            }));
+        }
+    }
+}
+
+// vim:ts=4
@@ -19,6 +19,7 @@
 package edu.umd.cs.findbugs.workflow;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -40,6 +41,7 @@ import edu.umd.cs.findbugs.AppVersion;
 import edu.umd.cs.findbugs.BugCategory;
 import edu.umd.cs.findbugs.BugCollection;
 import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugInstanceVisitor;
 import edu.umd.cs.findbugs.BugPattern;
 import edu.umd.cs.findbugs.BugRanker;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
@@ -54,7 +56,9 @@ import edu.umd.cs.findbugs.Project;
 import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.StreamingBugCollectionWriter;
 import edu.umd.cs.findbugs.config.CommandLine;
+import edu.umd.cs.findbugs.filter.CompiledFilter;
 import edu.umd.cs.findbugs.filter.FilterException;
 import edu.umd.cs.findbugs.filter.Matcher;
 import edu.umd.cs.findbugs.util.Util;
@@ -331,11 +335,11 @@ public class Filter {
 
         private long minFirstSeen;
 
-        edu.umd.cs.findbugs.filter.Filter suppressionFilter;
+        Matcher suppressionFilter;
 
 
         void adjustFilter(Project project, BugCollection collection) {
-            suppressionFilter = project.getSuppressionFilter();
+            suppressionFilter = new CompiledFilter(project.getSuppressionFilter());
 
             if (maxAgeSpecified) {
                 minFirstSeen = collection.getAnalysisTimestamp() - maxAge * MILLISECONDS_PER_DAY;
@@ -577,13 +581,13 @@ public class Filter {
                 }
             } else if (option.equals("-include")) {
                 try {
-                    includeFilter.add(new edu.umd.cs.findbugs.filter.Filter(argument));
+                    includeFilter.add(new CompiledFilter(new edu.umd.cs.findbugs.filter.Filter(argument)));
                 } catch (FilterException e) {
                     throw new IllegalArgumentException("Error processing include file: " + argument, e);
                 }
             } else if (option.equals("-exclude")) {
                 try {
-                    excludeFilter.add(new edu.umd.cs.findbugs.filter.Filter(argument));
+                    excludeFilter.add(new CompiledFilter(new edu.umd.cs.findbugs.filter.Filter(argument)));
                 } catch (FilterException e) {
                     throw new IllegalArgumentException("Error processing include file: " + argument, e);
                 }
@@ -634,6 +638,15 @@ public class Filter {
 
         }
 
+        /**
+         * Can bugs be filtered one at a time as they are read, without
+         * reading the whole collection into memory first?
+         */
+        boolean canStream() {
+            return !withMessages && maybeMutatedAsString == null && !hashChangedSpecified && !maxAgeSpecified
+                    && !notAProblemSpecified && !shouldFixSpecified;
+        }
+
         /**
          * @param b
          * @return
@@ -661,6 +674,69 @@ public class Filter {
 
     }
 
+    /**
+     * Applies the filter to bugs, passing the bugs that are accepted, adjusted
+     * for the version the collection is trimmed to, to another visitor.
+     */
+    static class FilteringVisitor implements BugInstanceVisitor {
+        final FilterCommandLine commandLine;
+
+        final BugCollection origCollection;
+
+        final ProjectStats projectStats;
+
+        final long trimToVersion;
+
+        final boolean purgeHistory;
+
+        final BugInstanceVisitor output;
+
+        int passed;
+
+        int dropped;
+
+        FilteringVisitor(FilterCommandLine commandLine, BugCollection origCollection, ProjectStats projectStats,
+                long trimToVersion, boolean purgeHistory, BugInstanceVisitor output) {
+            this.commandLine = commandLine;
+            this.origCollection = origCollection;
+            this.projectStats = projectStats;
+            this.trimToVersion = trimToVersion;
+            this.purgeHistory = purgeHistory;
+            this.output = output;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * edu.umd.cs.findbugs.BugInstanceVisitor#visitBugInstance(edu.umd.cs
+         * .findbugs.BugInstance)
+         */
+        public void visitBugInstance(BugInstance bug) throws IOException {
+            if (!commandLine.accept(origCollection, bug)) {
+                dropped++;
+                return;
+            }
+            if (trimToVersion >= 0) {
+                if (bug.getFirstVersion() > trimToVersion) {
+                    dropped++;
+                    return;
+                } else if (bug.getLastVersion() >= trimToVersion) {
+                    bug.setLastVersion(-1);
+                    bug.setRemovedByChangeOfPersistingClass(false);
+                }
+            }
+            if (!bug.isDead())
+                projectStats.addBug(bug);
+            if (purgeHistory) {
+                bug.setFirstVersion(0);
+                bug.setLastVersion(-1);
+            }
+            output.visitBugInstance(bug);
+            passed++;
+        }
+    }
+
     public static int parsePriority(String argument) {
         int i = " HMLE".indexOf(argument);
         if (i == -1)
@@ -682,15 +758,27 @@ public class Filter {
                 + " [options] [<orig results> [<new results]] ");
         SortedBugCollection origCollection = new SortedBugCollection();
 
-        if (argCount == args.length)
+        // Unless the options need the whole collection, a collection read
+        // from a file isn't kept in memory: everything but the bugs is read
+        // first, and then the bugs are filtered and written as the file is
+        // read again.
+        File inputFile = null;
+        if (argCount < args.length)
+            inputFile = new File(args[argCount++]);
+        boolean streaming = inputFile != null && commandLine.canStream();
+        if (inputFile == null)
             origCollection.readXML(System.in);
+        else if (streaming)
+            origCollection.readXML(inputFile, new BugInstanceVisitor() {
+                public void visitBugInstance(BugInstance bugInstance) {
+                    // read later
+                }
+            });
         else
-            origCollection.readXML(args[argCount++]);
+            origCollection.readXML(inputFile);
         boolean verbose = argCount < args.length;
-        SortedBugCollection resultCollection = origCollection.createEmptyCollectionWithMetadata();
+        final SortedBugCollection resultCollection = origCollection.createEmptyCollectionWithMetadata();
         Project project = resultCollection.getProject();
-        int passed = 0;
-        int dropped = 0;
         resultCollection.setWithMessages(commandLine.withMessages);
         if (commandLine.hashChangedSpecified)
             origCollection.computeBugHashes();
@@ -734,33 +822,38 @@ public class Filter {
 
         commandLine.getReady(origCollection);
 
-        for (BugInstance bug : origCollection.getCollection())
-            if (commandLine.accept(origCollection, bug)) {
-                if (trimToVersion >= 0) {
-                    if (bug.getFirstVersion() > trimToVersion) {
-                        dropped++;
-                        continue;
-                    } else if (bug.getLastVersion() >= trimToVersion) {
-                        bug.setLastVersion(-1);
-                        bug.setRemovedByChangeOfPersistingClass(false);
-                    }
-                }
-                resultCollection.add(bug, false);
-                if (!bug.isDead())
-                    projectStats.addBug(bug);
-                passed++;
-            } else
-                dropped++;
-
-        if (commandLine.purgeHistorySpecified && commandLine.purgeHistory) {
+        boolean purgeHistory = commandLine.purgeHistorySpecified && commandLine.purgeHistory;
+        if (purgeHistory)
             resultCollection.clearAppVersions();
-            for (BugInstance bug : resultCollection.getCollection()) {
-                bug.setFirstVersion(0);
-                bug.setLastVersion(-1);
+
+        StreamingBugCollectionWriter writer = null;
+        FilteringVisitor filter;
+        if (streaming) {
+            if (argCount == args.length)
+                writer = new StreamingBugCollectionWriter(resultCollection, System.out);
+            else
+                writer = new StreamingBugCollectionWriter(resultCollection, args[argCount++]);
+            filter = new FilteringVisitor(commandLine, origCollection, projectStats, trimToVersion, purgeHistory, writer);
+            new SortedBugCollection().readXML(inputFile, filter);
+        } else {
+            filter = new FilteringVisitor(commandLine, origCollection, projectStats, trimToVersion, false,
+                    new BugInstanceVisitor() {
+                        public void visitBugInstance(BugInstance bug) {
+                            resultCollection.add(bug, false);
+                        }
+                    });
+            for (BugInstance bug : origCollection.getCollection())
+                filter.visitBugInstance(bug);
+
+            if (purgeHistory) {
+                for (BugInstance bug : resultCollection.getCollection()) {
+                    bug.setFirstVersion(0);
+                    bug.setLastVersion(-1);
+                }
             }
-                
-            
         }
+        int passed = filter.passed;
+        int dropped = filter.dropped;
         if (verbose)
             System.out.println(passed + " warnings passed through, " + dropped + " warnings dropped");
         if (commandLine.withSourceSpecified && commandLine.withSource && !commandLine.dontUpdateStats
@@ -777,7 +870,9 @@ public class Filter {
 
         }
         projectStats.recomputeFromComponents();
-        if (argCount == args.length) {
+        if (writer != null) {
+            writer.close();
+        } else if (argCount == args.length) {
             assert !verbose;
             resultCollection.writeXML(System.out);
         } else {
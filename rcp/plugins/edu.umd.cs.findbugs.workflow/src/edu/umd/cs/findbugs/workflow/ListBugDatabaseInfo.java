@@ -17,6 +17,7 @@
  */
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Date;
@@ -24,7 +25,8 @@ import java.util.Date;
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.AppVersion;
-import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugInstanceVisitor;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.ProjectStats;
@@ -89,13 +91,19 @@ public class ListBugDatabaseInfo {
 
     private static void listVersion(PrintWriter out, @CheckForNull String fileName, boolean formatDates) throws IOException,
             DocumentException {
-        BugCollection origCollection;
+        SortedBugCollection origCollection;
         origCollection = new SortedBugCollection();
 
+        // Only the statistics and the current version are needed, so don't
+        // keep the BugInstances in memory
+        BugInstanceVisitor ignoreBugs = new BugInstanceVisitor() {
+            public void visitBugInstance(BugInstance bugInstance) {
+            }
+        };
         if (fileName == null)
-            origCollection.readXML(System.in);
+            origCollection.readXML(System.in, ignoreBugs);
         else
-            origCollection.readXML(fileName);
+            origCollection.readXML(new File(fileName), ignoreBugs);
         AppVersion appVersion = origCollection.getCurrentAppVersion();
         ProjectStats stats = origCollection.getProjectStats();
         out.print(appVersion.getReleaseName());
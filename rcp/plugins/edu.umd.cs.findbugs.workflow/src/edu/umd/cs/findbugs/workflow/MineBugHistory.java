@@ -29,7 +29,6 @@ import java.util.Map;
 
 import edu.umd.cs.findbugs.AppVersion;
 import edu.umd.cs.findbugs.BugCollection;
-import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.SortedBugCollection;
@@ -84,9 +83,13 @@ public class MineBugHistory {
         }
 
         void increment(int key) {
-            tuple[key]++;
+            add(key, 1);
+        }
+
+        void add(int key, int count) {
+            tuple[key] += count;
             if (key == ADDED || key == RETAINED || key == NEWCODE)
-                tuple[ACTIVE_NOW]++;
+                tuple[ACTIVE_NOW] += count;
         }
 
         int get(int key) {
@@ -96,6 +99,8 @@ public class MineBugHistory {
 
     BugCollection bugCollection;
 
+    BugHistoryIndex bugHistoryIndex;
+
     Version[] versionList;
 
     Map<Long, AppVersion> sequenceToAppVersionMap = new HashMap<Long, AppVersion>();
@@ -117,6 +122,24 @@ public class MineBugHistory {
 
     public void setBugCollection(BugCollection bugCollection) {
         this.bugCollection = bugCollection;
+        this.bugHistoryIndex = null;
+    }
+
+    /**
+     * Query an index of the bug collection that was already built, for
+     * example for another tool, rather than building one.
+     *
+     * @param bugHistoryIndex
+     *            index of the bug collection
+     */
+    public void setBugHistoryIndex(BugHistoryIndex bugHistoryIndex) {
+        this.bugHistoryIndex = bugHistoryIndex;
+    }
+
+    private BugHistoryIndex getBugHistoryIndex() {
+        if (bugHistoryIndex == null)
+            bugHistoryIndex = new BugHistoryIndex(bugCollection);
+        return bugHistoryIndex;
     }
 
     public void setFormatDates(boolean value) {
@@ -158,28 +181,64 @@ public class MineBugHistory {
         AppVersion currentAppVersion = bugCollection.getCurrentAppVersion();
         sequenceToAppVersionMap.put(sequenceNumber, currentAppVersion);
 
-        for (Iterator<BugInstance> j = bugCollection.iterator(); j.hasNext();) {
-            BugInstance bugInstance = j.next();
-
+        // A bug is counted under one key in each version from its first
+        // version on: added, then retained while it's alive, then removed,
+        // then dead. Record where each range starts and ends, and add up
+        // the counts afterwards.
+        BugHistoryIndex index = getBugHistoryIndex();
+        int[][] changes = new int[TUPLE_SIZE][maxSequence + 2];
+        for (int bug = 0; bug < index.size(); bug++) {
+            int first = index.getFirstVersion(bug);
+            int addedKey = index.isIntroducedByChangeOfExistingClass(bug) ? ADDED : NEWCODE;
+            if (!index.isDead(bug)) {
+                addRange(changes[addedKey], first, first);
+                addRange(changes[RETAINED], first + 1, maxSequence);
+                continue;
+            }
+            int last = index.getLastVersion(bug);
+            if (last < first) {
+                addRange(changes[DEAD], first, maxSequence);
+                continue;
+            }
+            int removedKey = index.isRemovedByChangeOfPersistingClass(bug) ? REMOVED : REMOVEDCODE;
+            addRange(changes[addedKey], first, first);
+            addRange(changes[RETAINED], first + 1, last);
+            addRange(changes[removedKey], last + 1, last + 1);
+            addRange(changes[DEAD], last + 2, maxSequence);
+        }
+        for (int key = 0; key < TUPLE_SIZE; key++) {
+            if (key == ACTIVE_NOW)
+                continue;
+            int count = 0;
             for (int i = 0; i <= maxSequence; ++i) {
-                if (bugInstance.getFirstVersion() > i)
-                    continue;
-                boolean activePrevious = bugInstance.getFirstVersion() < i
-                        && (!bugInstance.isDead() || bugInstance.getLastVersion() >= i - 1);
-                boolean activeCurrent = !bugInstance.isDead() || bugInstance.getLastVersion() >= i;
-
-                int key = getKey(activePrevious, activeCurrent);
-                if (key == REMOVED && !bugInstance.isRemovedByChangeOfPersistingClass())
-                    key = REMOVEDCODE;
-                else if (key == ADDED && !bugInstance.isIntroducedByChangeOfExistingClass())
-                    key = NEWCODE;
-                versionList[i].increment(key);
+                count += changes[key][i];
+                versionList[i].add(key, count);
             }
         }
 
         return this;
     }
 
+    /**
+     * Record that a bug is counted in the given range of versions, clipped to
+     * the versions in the history.
+     *
+     * @param changes
+     *            changes in the count at each version
+     * @param from
+     *            first version in the range
+     * @param to
+     *            last version in the range
+     */
+    private static void addRange(int[] changes, int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, changes.length - 2);
+        if (from > to)
+            return;
+        changes[from]++;
+        changes[to + 1]--;
+    }
+
     public void dump(PrintStream out) {
         if (xml)
             dumpXml(out);
@@ -385,25 +444,6 @@ public class MineBugHistory {
         out.print("</history>");
     }
 
-    /**
-     * Get key used to classify the presence and/or abscence of a BugInstance in
-     * successive versions in the history.
-     * 
-     * @param activePrevious
-     *            true if the bug was active in the previous version, false if
-     *            not
-     * @param activeCurrent
-     *            true if the bug is active in the current version, false if not
-     * @return the key: one of ADDED, RETAINED, REMOVED, and DEAD
-     */
-    private int getKey(boolean activePrevious, boolean activeCurrent) {
-        if (activePrevious)
-            return activeCurrent ? RETAINED : REMOVED;
-        else
-            // !activePrevious
-            return activeCurrent ? ADDED : DEAD;
-    }
-
     class MineBugHistoryCommandLine extends CommandLine {
 
         MineBugHistoryCommandLine() {
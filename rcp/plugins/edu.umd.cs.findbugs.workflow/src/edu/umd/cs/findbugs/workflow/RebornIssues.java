@@ -19,15 +19,10 @@
 
 package edu.umd.cs.findbugs.workflow;
 
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import java.util.TreeSet;
 
 import edu.umd.cs.findbugs.BugCollection;
-import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.SortedBugCollection;
@@ -43,6 +38,8 @@ import edu.umd.cs.findbugs.SortedBugCollection;
 public class RebornIssues {
     BugCollection bugCollection;
 
+    BugHistoryIndex bugHistoryIndex;
+
     public RebornIssues() {
     }
 
@@ -52,32 +49,58 @@ public class RebornIssues {
 
     public void setBugCollection(BugCollection bugCollection) {
         this.bugCollection = bugCollection;
+        this.bugHistoryIndex = null;
+    }
+
+    /**
+     * Query an index of the bug collection that was already built, for
+     * example for another tool, rather than building one.
+     *
+     * @param bugHistoryIndex
+     *            index of the bug collection
+     */
+    public void setBugHistoryIndex(BugHistoryIndex bugHistoryIndex) {
+        this.bugHistoryIndex = bugHistoryIndex;
+    }
+
+    private BugHistoryIndex getBugHistoryIndex() {
+        if (bugHistoryIndex == null)
+            bugHistoryIndex = new BugHistoryIndex(bugCollection);
+        return bugHistoryIndex;
     }
 
     public RebornIssues execute() {
 
-        Map<String, List<BugInstance>> map = new HashMap<String, List<BugInstance>>();
-        for (BugInstance b : bugCollection.getCollection())
-            if (b.getFirstVersion() != 0 || b.getLastVersion() != -1) {
-                List<BugInstance> lst = map.get(b.getInstanceHash());
-                if (lst == null) {
-                    lst = new LinkedList<BugInstance>();
-                    map.put(b.getInstanceHash(), lst);
-                }
-                lst.add(b);
-            }
-        for (List<BugInstance> lst : map.values()) {
-            if (lst.size() > 1) {
+        BugHistoryIndex index = getBugHistoryIndex();
+
+        // Group the bugs that weren't there from the start or are gone by
+        // instance hash, keeping the collection's order within each group
+        int numHashes = index.getNumInstanceHashes();
+        int[] groupStart = new int[numHashes + 1];
+        for (int bug = 0; bug < index.size(); bug++)
+            if (index.getFirstVersion(bug) != 0 || index.isDead(bug))
+                groupStart[index.getInstanceHashIndex(bug) + 1]++;
+        for (int h = 0; h < numHashes; h++)
+            groupStart[h + 1] += groupStart[h];
+        int[] groups = new int[groupStart[numHashes]];
+        int[] groupEnd = groupStart.clone();
+        for (int bug = 0; bug < index.size(); bug++)
+            if (index.getFirstVersion(bug) != 0 || index.isDead(bug))
+                groups[groupEnd[index.getInstanceHashIndex(bug)]++] = bug;
+
+        for (int h = 0; h < numHashes; h++) {
+            if (groupStart[h + 1] - groupStart[h] > 1) {
                 TreeSet<Long> removalTimes = new TreeSet<Long>();
                 TreeSet<Long> additionTimes = new TreeSet<Long>();
 
                 String bugPattern = "XXX";
-                for (BugInstance b : lst) {
-                    bugPattern = b.getBugPattern().getType();
-                    if (b.getFirstVersion() > 0)
-                        additionTimes.add(b.getFirstVersion());
-                    if (b.getLastVersion() != -1)
-                        removalTimes.add(b.getLastVersion());
+                for (int i = groupStart[h]; i < groupStart[h + 1]; i++) {
+                    int b = groups[i];
+                    bugPattern = index.getBugPatternType(b);
+                    if (index.getFirstVersion(b) > 0)
+                        additionTimes.add((long) index.getFirstVersion(b));
+                    if (index.isDead(b))
+                        removalTimes.add((long) index.getLastVersion(b));
                 }
                 Iterator<Long> aI = additionTimes.iterator();
                 if (!aI.hasNext())
@@ -0,0 +1,116 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.TextUICommandLine;
+
+/**
+ * Compare the time taken by analyses of the same classes with and without the
+ * opcode stack of each method being simulated once for all the detectors of
+ * a pass (-shareOpcodeStack). The two kinds of analysis are run alternately,
+ * in the same virtual machine, so that both profit equally from warm up.
+ * <p>
+ * Usage: ScanBenchmark [-runs n] [FindBugs options] [jar files]
+ * <p>
+ * The FindBugs options should normally direct the report elsewhere, e.g.
+ * -xml -output /dev/null.
+ */
+public class ScanBenchmark {
+
+    static final String SHARE_OPCODE_STACK = "-shareOpcodeStack";
+
+    static class Mode {
+        final String name;
+
+        final boolean shareOpcodeStack;
+
+        long totalTime;
+
+        long bestTime = Long.MAX_VALUE;
+
+        int bugCount = -1;
+
+        boolean bugCountChanged;
+
+        Mode(String name, boolean shareOpcodeStack) {
+            this.name = name;
+            this.shareOpcodeStack = shareOpcodeStack;
+        }
+
+        void record(long time, int bugs) {
+            totalTime += time;
+            bestTime = Math.min(bestTime, time);
+            if (bugCount >= 0 && bugCount != bugs)
+                bugCountChanged = true;
+            bugCount = bugs;
+        }
+    }
+
+    static long runAnalysis(String[] args, Mode mode) throws Exception {
+        FindBugs2 findBugs = new FindBugs2();
+        TextUICommandLine commandLine = new TextUICommandLine();
+        FindBugs.processCommandLine(commandLine, args, findBugs);
+        findBugs.setShareOpcodeStackStates(mode.shareOpcodeStack);
+
+        long start = System.currentTimeMillis();
+        findBugs.execute();
+        long time = System.currentTimeMillis() - start;
+        mode.record(time, findBugs.getBugCount());
+        return time;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 3;
+        List<String> findBugsArgs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-runs") && i + 1 < args.length)
+                runs = Integer.parseInt(args[++i]);
+            else if (!args[i].equals(SHARE_OPCODE_STACK))
+                findBugsArgs.add(args[i]);
+        }
+        if (runs < 1 || findBugsArgs.isEmpty()) {
+            System.err.println("Usage: " + ScanBenchmark.class.getName() + " [-runs n] [FindBugs options] <jarFile>+");
+            System.exit(1);
+        }
+        String[] analysisArgs = findBugsArgs.toArray(new String[findBugsArgs.size()]);
+
+        List<Mode> modes = Arrays.asList(new Mode("separate", false), new Mode("shared", true));
+        for (int run = 1; run <= runs; run++) {
+            for (Mode mode : modes) {
+                long time = runAnalysis(analysisArgs, mode);
+                System.err.printf("run %d %-8s %8d ms %6d bugs%n", run, mode.name, time, mode.bugCount);
+            }
+        }
+
+        System.out.printf("%-8s %10s %10s %6s%n", "stack", "mean ms", "best ms", "bugs");
+        for (Mode mode : modes) {
+            System.out.printf("%-8s %10d %10d %6d%s%n", mode.name, mode.totalTime / runs, mode.bestTime, mode.bugCount,
+                    mode.bugCountChanged ? " (varied between runs)" : "");
+        }
+    }
+}
+
+// vim:ts=4
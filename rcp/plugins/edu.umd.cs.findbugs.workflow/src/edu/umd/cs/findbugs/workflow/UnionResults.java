@@ -19,17 +19,27 @@
 
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugInstanceVisitor;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.Project;
 import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.StreamingBugCollectionWriter;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.config.CommandLine;
 
 /**
@@ -42,9 +52,15 @@ public class UnionResults {
 
         boolean withMessages;
 
+        boolean streaming;
+
+        int numThreads = SystemProperties.getInt("findbugs.threads", 1);
+
         UnionResultsCommandLine() {
             addSwitch("-withMessages", "Generated XML should contain msgs for external processing");
+            addSwitch("-streaming", "don't keep results in memory; warnings are written in input order, with duplicates");
             addOption("-output", "outputFile", "File in which to store combined results");
+            addOption("-threads", "count", "number of threads used to read the input files (default=1)");
         }
 
         /*
@@ -58,6 +74,8 @@ public class UnionResults {
         protected void handleOption(String option, String optionExtraPart) throws IOException {
             if (option.equals("-withMessages"))
                 withMessages = true;
+            else if (option.equals("-streaming"))
+                streaming = true;
             else
                 throw new IllegalArgumentException("Unknown option : " + option);
         }
@@ -73,7 +91,11 @@ public class UnionResults {
         protected void handleOptionWithArgument(String option, String argument) throws IOException {
             if (option.equals("-output"))
                 outputFile = argument;
-            else
+            else if (option.equals("-threads")) {
+                numThreads = Integer.parseInt(argument);
+                if (numThreads < 1)
+                    throw new IllegalArgumentException("number of threads must be at least 1 (saw " + argument + ")");
+            } else
                 throw new IllegalArgumentException("Unknown option : " + option);
         }
 
@@ -103,31 +125,193 @@ public class UnionResults {
         return result;
     }
 
-    public static void main(String[] argv) throws IOException {
+    /**
+     * Compute the union of bug collections, as successive calls of
+     * {@link #union(SortedBugCollection, SortedBugCollection)} would, but
+     * without copying the bugs merged so far for each collection. The
+     * collections' bugs are already sorted, so they are merged in sorted
+     * order; when several collections hold the same bug, the one from the
+     * earliest collection is kept. The collections' bugs are reused.
+     *
+     * @param collections
+     *            the collections, which must use the same comparator
+     * @return the union, or null if there are no collections
+     */
+    static public @CheckForNull
+    SortedBugCollection union(List<SortedBugCollection> collections) {
+        if (collections.isEmpty())
+            return null;
+        SortedBugCollection first = collections.get(0);
+        SortedBugCollection result = first.createEmptyCollectionWithMetadata();
+        ProjectStats stats = result.getProjectStats();
+        Project project = result.getProject();
+        for (SortedBugCollection more : collections.subList(1, collections.size())) {
+            stats.addStats(more.getProjectStats());
+            project.add(more.getProject());
+        }
 
-        FindBugs.setNoAnalysis();
-        final UnionResultsCommandLine commandLine = new UnionResultsCommandLine();
+        final Comparator<BugInstance> comparator = first.getComparator();
+        PriorityQueue<MergeInput> queue = new PriorityQueue<MergeInput>(collections.size(), new Comparator<MergeInput>() {
+            public int compare(MergeInput lhs, MergeInput rhs) {
+                int cmp = comparator.compare(lhs.bug, rhs.bug);
+                if (cmp != 0)
+                    return cmp;
+                return lhs.index - rhs.index;
+            }
+        });
+        long sequence = first.getSequenceNumber();
+        for (int i = 0; i < collections.size(); i++) {
+            MergeInput input = new MergeInput(i, collections.get(i).getCollection().iterator(), sequence);
+            if (input.advance())
+                queue.add(input);
+        }
+        while (!queue.isEmpty()) {
+            MergeInput input = queue.poll();
+            // Adds nothing if an earlier collection had the bug
+            result.add(input.bug, false);
+            if (input.advance())
+                queue.add(input);
+        }
+        return result;
+    }
 
-        int argCount = commandLine.parse(argv, 2, Integer.MAX_VALUE, "Usage: " + UnionResults.class.getName()
-                + " [options] [<results1> <results2> ... <resultsn>] ");
+    /**
+     * The next bug of a collection being merged.
+     */
+    private static class MergeInput {
+        final int index;
+
+        final Iterator<BugInstance> bugs;
 
+        final long sequence;
+
+        BugInstance bug;
+
+        MergeInput(int index, Iterator<BugInstance> bugs, long sequence) {
+            this.index = index;
+            this.bugs = bugs;
+            this.sequence = sequence;
+        }
+
+        boolean advance() {
+            if (!bugs.hasNext())
+                return false;
+            bug = bugs.next();
+            // As union(SortedBugCollection, SortedBugCollection) does, by
+            // adding the bugs after the first collection's
+            if (index > 0 && bug.getFirstVersion() == 0L && bug.getLastVersion() == 0L)
+                bug.setFirstVersion(sequence);
+            return true;
+        }
+    }
+
+    /**
+     * Compute the union of bug collection files without keeping their bugs in
+     * memory. Everything but the bugs is read from each file and combined
+     * first, and then the bugs are copied from each file in turn. Unlike
+     * {@link #union(SortedBugCollection, SortedBugCollection)}, the bugs are
+     * written in the order they are read, and duplicates aren't removed.
+     *
+     * @param fileNames
+     *            the files to combine
+     * @param outputFile
+     *            file in which to store combined results, or null to write
+     *            them to standard output
+     * @return false if none of the files could be read
+     */
+    static boolean streamingUnion(List<String> fileNames, @CheckForNull String outputFile) throws IOException {
+        BugInstanceVisitor ignoreBugs = new BugInstanceVisitor() {
+            public void visitBugInstance(BugInstance bugInstance) {
+                // copied later
+            }
+        };
         SortedBugCollection results = null;
-        for (int i = argCount; i < argv.length; i++) {
+        List<File> files = new ArrayList<File>();
+        for (String fileName : fileNames) {
             try {
                 SortedBugCollection more = new SortedBugCollection();
-
-                more.readXML(argv[i]);
+                more.readXML(new File(fileName), ignoreBugs);
                 if (results != null) {
                     results = union(results, more);
                 } else {
                     results = more;
                 }
+                files.add(new File(fileName));
             } catch (IOException e) {
-                System.err.println("Trouble reading/parsing " + argv[i]);
+                System.err.println("Trouble reading/parsing " + fileName);
             } catch (DocumentException e) {
-                System.err.println("Trouble reading/parsing " + argv[i]);
+                System.err.println("Trouble reading/parsing " + fileName);
+            }
+        }
+
+        if (results == null) {
+            return false;
+        }
+        final StreamingBugCollectionWriter writer = outputFile == null ? new StreamingBugCollectionWriter(results,
+                System.out) : new StreamingBugCollectionWriter(results, outputFile);
+        final long sequence = results.getSequenceNumber();
+        for (int i = 0; i < files.size(); i++) {
+            BugInstanceVisitor visitor = writer;
+            if (i > 0) {
+                // As SortedBugCollection.add(BugInstance) does
+                visitor = new BugInstanceVisitor() {
+                    public void visitBugInstance(BugInstance bugInstance) throws IOException {
+                        if (bugInstance.getFirstVersion() == 0L && bugInstance.getLastVersion() == 0L)
+                            bugInstance.setFirstVersion(sequence);
+                        writer.visitBugInstance(bugInstance);
+                    }
+                };
+            }
+            try {
+                new SortedBugCollection().readXML(files.get(i), visitor);
+            } catch (DocumentException e) {
+                IOException ioe = new IOException("Trouble reading/parsing " + files.get(i));
+                ioe.initCause(e);
+                throw ioe;
+            }
+        }
+        writer.close();
+        return true;
+    }
+
+    public static void main(String[] argv) throws IOException {
+
+        FindBugs.setNoAnalysis();
+        final UnionResultsCommandLine commandLine = new UnionResultsCommandLine();
+
+        int argCount = commandLine.parse(argv, 2, Integer.MAX_VALUE, "Usage: " + UnionResults.class.getName()
+                + " [options] [<results1> <results2> ... <resultsn>] ");
+
+        if (commandLine.streaming) {
+            if (commandLine.withMessages) {
+                System.err.println("-withMessages can't be used with -streaming");
+                System.exit(1);
+            }
+            if (!streamingUnion(Arrays.asList(argv).subList(argCount, argv.length), commandLine.outputFile)) {
+                System.err.println("No files successfully read");
+                System.exit(1);
+            }
+            return;
+        }
+
+        List<SortedBugCollection> collections = new ArrayList<SortedBugCollection>();
+        ConcurrentCollectionReader reader = new ConcurrentCollectionReader(Arrays.asList(argv).subList(argCount, argv.length),
+                commandLine.numThreads);
+        try {
+            while (reader.hasNext()) {
+                String fileName = reader.getNextFileName();
+                try {
+                    collections.add(reader.next());
+                } catch (IOException e) {
+                    System.err.println("Trouble reading/parsing " + fileName);
+                } catch (DocumentException e) {
+                    System.err.println("Trouble reading/parsing " + fileName);
+                }
             }
+        } finally {
+            reader.close();
         }
+        SortedBugCollection results = union(collections);
 
         if (results == null) {
             System.err.println("No files successfully read");
@@ -19,14 +19,17 @@ package edu.umd.cs.findbugs.workflow;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
 
 import org.dom4j.DocumentException;
 
@@ -90,6 +93,8 @@ public class Update {
 
         boolean withMessages = false;
 
+        int numThreads = SystemProperties.getInt("findbugs.threads", 1);
+
         UpdateCommandLine() {
             addSwitch("-overrideRevisionNames", "override revision names for each version with names computed filenames");
             addSwitch("-noPackageMoves",
@@ -105,6 +110,7 @@ public class Update {
             addSwitch("-useAnalysisTimes", "use analysis timestamp rather than code timestamp in history");
             addSwitch("-withMessages", "Add bug description");
             addOption("-onlyMostRecent", "number", "only use the last # input files");
+            addOption("-threads", "count", "number of threads used to read input files ahead of merging them (default=1)");
 
         }
 
@@ -150,6 +156,10 @@ public class Update {
                 maxRank = Integer.parseInt(argument);
             } else if (option.equals("-onlyMostRecent")) {
                 mostRecent = Integer.parseInt(argument);
+            } else if (option.equals("-threads")) {
+                numThreads = Integer.parseInt(argument);
+                if (numThreads < 1)
+                    throw new IllegalArgumentException("number of threads must be at least 1 (saw " + argument + ")");
             } else
                 throw new IllegalArgumentException("Can't handle option " + option);
 
@@ -177,8 +187,10 @@ public class Update {
     public void removeBaselineBugs(BugCollection baselineCollection, BugCollection bugCollection) {
 
         matchBugs(baselineCollection, bugCollection);
-        matchBugs(SortedBugCollection.BugInstanceComparator.instance, baselineCollection, bugCollection);
-        matchBugs(versionInsensitiveBugComparator, baselineCollection, bugCollection);
+        matchBugs(SortedBugCollection.BugInstanceComparator.instance, new MatchKeys(null), baselineCollection, bugCollection,
+                MatchOldBugs.IF_LIVE);
+        matchBugs(versionInsensitiveBugComparator, new MatchKeys(versionInsensitiveBugComparator), baselineCollection,
+                bugCollection, MatchOldBugs.IF_LIVE);
         for (Iterator<BugInstance> i = bugCollection.getCollection().iterator(); i.hasNext();) {
             BugInstance bug = i.next();
             if (matchedOldBugs.containsKey(bug))
@@ -335,18 +347,20 @@ public class Update {
      * @param newCollection
      */
     private void matchBugs(BugCollection origCollection, BugCollection newCollection) {
-        matchBugs(SortedBugCollection.BugInstanceComparator.instance, origCollection, newCollection);
-
         mapFromNewToOldBug.clear();
         matchedOldBugs.clear();
 
-        matchBugs(versionInsensitiveBugComparator, origCollection, newCollection);
-        matchBugs(versionInsensitiveBugComparator, origCollection, newCollection, MatchOldBugs.IF_CLASS_NOT_SEEN_UNTIL_NOW);
+        // The keys only depend on the class name rewriter, so they're
+        // shared by all the passes that don't rewrite class names
+        MatchKeys keys = new MatchKeys(versionInsensitiveBugComparator);
+        matchBugs(versionInsensitiveBugComparator, keys, origCollection, newCollection, MatchOldBugs.IF_LIVE);
+        matchBugs(versionInsensitiveBugComparator, keys, origCollection, newCollection,
+                MatchOldBugs.IF_CLASS_NOT_SEEN_UNTIL_NOW);
         if (doMatchFixedBugs)
-            matchBugs(versionInsensitiveBugComparator, origCollection, newCollection, MatchOldBugs.ALWAYS);
+            matchBugs(versionInsensitiveBugComparator, keys, origCollection, newCollection, MatchOldBugs.ALWAYS);
 
         if (!preciseMatch)
-            matchBugs(fuzzyBugPatternMatcher, origCollection, newCollection);
+            matchBugs(fuzzyBugPatternMatcher, keys, origCollection, newCollection, MatchOldBugs.IF_LIVE);
 
         if (!noPackageMoves) {
             VersionInsensitiveBugComparator movedBugComparator = new VersionInsensitiveBugComparator();
@@ -354,10 +368,11 @@ public class Update {
             if (!movedClassMap.isEmpty()) {
                 movedBugComparator.setClassNameRewriter(movedClassMap);
                 movedBugComparator.setComparePriorities(precisePriorityMatch);
-                matchBugs(movedBugComparator, origCollection, newCollection);
+                MatchKeys movedKeys = new MatchKeys(movedBugComparator);
+                matchBugs(movedBugComparator, movedKeys, origCollection, newCollection, MatchOldBugs.IF_LIVE);
                 if (!preciseMatch) {
                     movedBugComparator.setExactBugPatternMatch(false);
-                    matchBugs(movedBugComparator, origCollection, newCollection);
+                    matchBugs(movedBugComparator, movedKeys, origCollection, newCollection, MatchOldBugs.IF_LIVE);
                 }
             }
             if (false)
@@ -396,9 +411,20 @@ public class Update {
         if (mostRecent > 0) {
             argCount = Math.max(argCount, args.length - mostRecent);
         }
-        String origFilename = args[argCount++];
+        // Read the next files on other threads while merging
+        ConcurrentCollectionReader reader = new ConcurrentCollectionReader(Arrays.asList(args).subList(argCount, args.length),
+                commandLine.numThreads);
+        try {
+            doit(commandLine, reader, firstPathParts, commonPrefix);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void doit(UpdateCommandLine commandLine, ConcurrentCollectionReader reader, String[] firstPathParts,
+            int commonPrefix) throws IOException, DocumentException {
+        String origFilename = reader.getNextFileName();
         BugCollection origCollection;
-        origCollection = new SortedBugCollection();
         if (verbose)
             System.out.println("Starting with " + origFilename);
 
@@ -410,16 +436,17 @@ public class Update {
                         break;
                     if (verbose)
                         System.out.println("Empty input file: " + f);
-                    origFilename = args[argCount++];
+                    reader.skip();
+                    origFilename = reader.getNextFileName();
                 }
-                origCollection.readXML(origFilename);
+                origCollection = reader.next();
                 break;
             } catch (Exception e) {
                 if (verbose) {
                     System.out.println("Error reading " + origFilename);
                     e.printStackTrace(System.out);
                 }
-                origFilename = args[argCount++];
+                origFilename = reader.getNextFileName();
             }
 
         if (commandLine.overrideRevisionNames || origCollection.getReleaseName() == null
@@ -447,11 +474,9 @@ public class Update {
 
         BugRanker.trimToMaxRank(origCollection, maxRank);
 
-        while (argCount <= (args.length - 1)) {
-
-            BugCollection newCollection = new SortedBugCollection();
+        while (reader.hasNext()) {
 
-            String newFilename = args[argCount++];
+            String newFilename = reader.getNextFileName();
             if (verbose)
                 System.out.println("Merging " + newFilename);
             try {
@@ -459,9 +484,10 @@ public class Update {
                 if (f.length() == 0) {
                     if (verbose)
                         System.out.println("Empty input file: " + f);
+                    reader.skip();
                     continue;
                 }
-                newCollection.readXML(newFilename);
+                BugCollection newCollection = reader.next();
 
                 if (commandLine.overrideRevisionNames || newCollection.getReleaseName() == null
                         || newCollection.getReleaseName().length() == 0)
@@ -531,60 +557,90 @@ public class Update {
         }
     };
 
-    private void matchBugs(Comparator<BugInstance> bugInstanceComparator, BugCollection origCollection,
-            BugCollection newCollection) {
-        matchBugs(bugInstanceComparator, origCollection, newCollection, MatchOldBugs.IF_LIVE);
+    /**
+     * Hash keys of bug instances for a matching pass, computed once per bug
+     * and shared by the passes that use the same keys. Bugs that are equal
+     * according to the pass's comparator must have equal keys.
+     */
+    static class MatchKeys {
+        private final VersionInsensitiveBugComparator comparator;
+
+        private final Map<BugInstance, String> keys = new IdentityHashMap<BugInstance, String>();
+
+        /**
+         * @param comparator
+         *            comparator computing the keys, or null to use the primary
+         *            class name, as is needed for
+         *            {@link SortedBugCollection.BugInstanceComparator}; bugs
+         *            without a primary class all get the empty key
+         */
+        MatchKeys(@CheckForNull VersionInsensitiveBugComparator comparator) {
+            this.comparator = comparator;
+        }
 
+        String get(BugInstance bug) {
+            String key = keys.get(bug);
+            if (key == null) {
+                if (comparator != null) {
+                    key = comparator.getMatchKey(bug);
+                } else {
+                    ClassAnnotation primaryClass = bug.getPrimaryClass();
+                    key = primaryClass != null ? primaryClass.getClassName() : "";
+                }
+                keys.put(bug, key);
+            }
+            return key;
+        }
     }
 
-    private void matchBugs(Comparator<BugInstance> bugInstanceComparator, BugCollection origCollection,
+    /**
+     * Match bugs in the new collection that haven't been matched yet against
+     * bugs in the original collection that haven't been matched yet. The
+     * original bugs are indexed by key, so each new bug is only compared with
+     * the original bugs that have the same key; among those, it is matched
+     * with the first one (in the original collection's order) that the
+     * comparator considers equal to it.
+     */
+    private void matchBugs(Comparator<BugInstance> bugInstanceComparator, MatchKeys keys, BugCollection origCollection,
             BugCollection newCollection, MatchOldBugs matchOld) {
 
-        TreeMap<BugInstance, LinkedList<BugInstance>> set = new TreeMap<BugInstance, LinkedList<BugInstance>>(
-                bugInstanceComparator);
-        int oldBugs = 0;
-        int newBugs = 0;
-        int matchedBugs = 0;
+        HashMap<String, LinkedList<BugInstance>> index = new HashMap<String, LinkedList<BugInstance>>();
         for (BugInstance bug : origCollection.getCollection())
-            if (!matchedOldBugs.containsKey(bug)) {
-                if (matchOld.match(bug)) {
-                    oldBugs++;
-                    LinkedList<BugInstance> q = set.get(bug);
-                    if (q == null) {
-                        q = new LinkedList<BugInstance>();
-                        set.put(bug, q);
-                    }
-                    q.add(bug);
+            if (!matchedOldBugs.containsKey(bug) && matchOld.match(bug)) {
+                String key = keys.get(bug);
+                LinkedList<BugInstance> q = index.get(key);
+                if (q == null) {
+                    q = new LinkedList<BugInstance>();
+                    index.put(key, q);
                 }
-
+                q.add(bug);
             }
+        if (index.isEmpty())
+            return;
         long newVersion = origCollection.getCurrentAppVersion().getSequenceNumber() + 1;
         for (BugInstance bug : newCollection.getCollection())
             if (!mapFromNewToOldBug.containsKey(bug)) {
-                newBugs++;
-                LinkedList<BugInstance> q = set.get(bug);
+                String key = keys.get(bug);
+                LinkedList<BugInstance> q = index.get(key);
                 if (q == null)
                     continue;
                 for (Iterator<BugInstance> i = q.iterator(); i.hasNext();) {
                     BugInstance matchedBug = i.next();
+                    if (bugInstanceComparator.compare(bug, matchedBug) != 0)
+                        continue;
 
                     if (matchedBug.isDead()) {
                         if (noResurrections || matchedBug.isRemovedByChangeOfPersistingClass()
                                 && newVersion - matchedBug.getLastVersion() > maxResurrection)
                             continue;
                         resurrected.add(bug.getInstanceKey());
-                        // System.out.println("in version " +
-                        // newCollection.getReleaseName());
-                        // System.out.println("  resurrected " +
-                        // bug.getMessageWithoutPrefix());
                     }
 
-                    matchedBugs++;
                     mapFromNewToOldBug.put(bug, matchedBug);
                     matchedOldBugs.put(matchedBug, null);
                     i.remove();
                     if (q.isEmpty())
-                        set.remove(bug);
+                        index.remove(key);
                     break;
                 }
             }
@@ -34,6 +34,7 @@ import javax.annotation.WillClose;
 
 import org.dom4j.DocumentException;
 
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassNotFoundExceptionParser;
 import edu.umd.cs.findbugs.ba.MethodUnprofitableException;
@@ -126,6 +127,10 @@ public abstract class AbstractBugReporter implements BugReporter {
 
     private final ProjectStats projectStats;
 
+    private final Set<MethodDescriptor> skippedMethods;
+
+    private final Set<MethodDescriptor> degradedMethods;
+
     public AbstractBugReporter() {
         super();
         verbosityLevel = NORMAL;
@@ -133,6 +138,8 @@ public abstract class AbstractBugReporter implements BugReporter {
         errorSet = new HashSet<Error>();
         observerList = new LinkedList<BugReporterObserver>();
         projectStats = new ProjectStats();
+        skippedMethods = new HashSet<MethodDescriptor>();
+        degradedMethods = new HashSet<MethodDescriptor>();
         // bug 2815983: no bugs are reported anymore
         // there is no info which value should be default, so using the
         // "any one"
@@ -283,12 +290,31 @@ public abstract class AbstractBugReporter implements BugReporter {
     }
 
     /**
-     * Report that we skipped some analysis of a method
+     * Report that we skipped some analysis of a method. A method which was
+     * being analyzed in a degraded way is only counted as skipped from then
+     * on.
      *
      * @param method
      */
     public void reportSkippedAnalysis(MethodDescriptor method) {
-        // TODO: log this
+        if (skippedMethods.add(method)) {
+            projectStats.addSkippedMethod();
+            if (degradedMethods.remove(method)) {
+                projectStats.setDegradedMethods(projectStats.getDegradedMethods() - 1);
+            }
+        }
+    }
+
+    /**
+     * Report that a method is analyzed in a degraded way, because it is huge.
+     * Not counted if some analysis of the method was skipped.
+     *
+     * @param method
+     */
+    public void reportDegradedAnalysis(MethodDescriptor method) {
+        if (!skippedMethods.contains(method) && degradedMethods.add(method)) {
+            projectStats.addDegradedMethod();
+        }
     }
 
     public void logError(String message) {
@@ -318,7 +344,7 @@ public abstract class AbstractBugReporter implements BugReporter {
 
     public void logError(String message, Throwable e) {
 
-        if (e instanceof MethodUnprofitableException) {
+        if (e instanceof MethodUnprofitableException || e instanceof AnalysisBudgetExceededException) {
             // TODO: log this
             return;
         }
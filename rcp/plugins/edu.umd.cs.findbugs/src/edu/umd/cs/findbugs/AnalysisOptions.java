@@ -76,6 +76,56 @@ public class AnalysisOptions {
      */
     public boolean noClassOk;
 
+    /**
+     * Number of threads used to apply detectors to application classes.
+     */
+    public int numAnalysisThreads = 1;
+
+    /**
+     * Number of classes read and parsed ahead of the analysis of application
+     * classes, or 0 to not read classes ahead.
+     */
+    public int numPrefetchedClasses;
+
+    /**
+     * Whether huge methods are analyzed in a degraded way, rather than
+     * skipped.
+     */
+    public boolean degradeHugeMethods;
+
+    /**
+     * Whether the opcode stack of each method is simulated once for all the
+     * detectors of a pass.
+     */
+    public boolean shareOpcodeStackStates;
+
+    /**
+     * Bytes the analysis cache may use for recomputable results, or 0 to
+     * bound the number of results instead.
+     */
+    public long analysisCacheBudget;
+
+    /**
+     * Milliseconds each method analysis may take, or 0 for no limit.
+     */
+    public long methodTimeBudget;
+
+    /**
+     * Units of work each method analysis may do, or 0 for no limit.
+     */
+    public long methodWorkBudget;
+
+    /**
+     * Directory in which analysis results are stored between runs, or null
+     * to not store them.
+     */
+    public String analysisCacheDirectory;
+
+    /**
+     * File holding the library snapshot, or null to not use one.
+     */
+    public String librarySnapshotFile;
+
     String releaseName;
 
     String projectName;
@@ -24,6 +24,7 @@ import java.io.PrintWriter;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.Debug;
 import edu.umd.cs.findbugs.ba.MethodUnprofitableException;
 import edu.umd.cs.findbugs.ba.MissingClassException;
@@ -72,7 +73,7 @@ public class BugCollectionBugReporter extends TextUIBugReporter implements Debug
             reportMissingClass(e2.getClassNotFoundException());
             return;
         }
-        if (e instanceof MethodUnprofitableException) {
+        if (e instanceof MethodUnprofitableException || e instanceof AnalysisBudgetExceededException) {
             // TODO: log this
             return;
         }
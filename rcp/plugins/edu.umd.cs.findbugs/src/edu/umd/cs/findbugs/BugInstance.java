@@ -2139,6 +2139,9 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
         if (!foundSourceAnnotation && addMessages) {
             SourceLineAnnotation synth = getPrimarySourceLineAnnotation();
             if (synth != null) {
+                // The annotation may belong to another annotation, or be
+                // shared with other BugInstances
+                synth = (SourceLineAnnotation) synth.clone();
                 synth.setSynthetic(true);
                 synth.writeXML(xmlOutput, addMessages, false);
             }
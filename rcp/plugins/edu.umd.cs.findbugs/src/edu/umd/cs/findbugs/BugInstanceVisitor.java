@@ -0,0 +1,42 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.IOException;
+
+/**
+ * Visitor for BugInstances that are streamed one at a time, rather than held
+ * in a BugCollection: for example, as they are read from a bug collection XML
+ * file by {@link SortedBugCollection#readXML(java.io.File, BugInstanceVisitor)}
+ * , or as they are written by a {@link StreamingBugCollectionWriter}.
+ */
+public interface BugInstanceVisitor {
+    /**
+     * Visit a BugInstance.
+     *
+     * @param bugInstance
+     *            the BugInstance
+     * @throws IOException
+     *             if the BugInstance can't be processed
+     */
+    public void visitBugInstance(BugInstance bugInstance) throws IOException;
+}
+
+// vim:ts=4
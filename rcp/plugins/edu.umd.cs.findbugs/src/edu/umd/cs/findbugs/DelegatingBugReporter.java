@@ -21,6 +21,7 @@ package edu.umd.cs.findbugs;
 
 import javax.annotation.CheckForNull;
 
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.MethodUnprofitableException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
@@ -93,7 +94,7 @@ public class DelegatingBugReporter implements BugReporter {
     }
 
     public void logError(String message, Throwable e) {
-        if (e instanceof MethodUnprofitableException)
+        if (e instanceof MethodUnprofitableException || e instanceof AnalysisBudgetExceededException)
             return;
         delegate.logError(message, e);
     }
@@ -107,6 +108,15 @@ public class DelegatingBugReporter implements BugReporter {
         delegate.reportSkippedAnalysis(method);
     }
 
+    /**
+     * Report that a method is analyzed in a degraded way
+     * 
+     * @param method
+     */
+    public void reportDegradedAnalysis(MethodDescriptor method) {
+        delegate.reportDegradedAnalysis(method);
+    }
+
     public @CheckForNull
     BugCollection getBugCollection() {
         return delegate.getBugCollection();
@@ -19,12 +19,18 @@
 
 package edu.umd.cs.findbugs;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
+
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 
@@ -105,6 +111,52 @@ public class DetectorFactory {
         public Class<?> getDetectorClass() {
             return detectorClass;
         }
+
+        /**
+         * Does the detector do anything in report() or finishPass()? Such a
+         * detector collects information from every class it sees and acts on
+         * it at the end of the pass. Methods which only return, such as the
+         * ones inherited from BytecodeScanningDetector, do not count.
+         */
+        public boolean actsAtEndOfPass() {
+            for (Class<?> c = detectorClass; c != null && c != Object.class; c = c.getSuperclass()) {
+                if (declaresNonEmptyMethod(c, "report") || declaresNonEmptyMethod(c, "finishPass"))
+                    return true;
+            }
+            return false;
+        }
+
+        private static boolean declaresNonEmptyMethod(Class<?> c, String methodName) {
+            try {
+                c.getDeclaredMethod(methodName, new Class[0]);
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+
+            // Look at the bytecode; if it can't be read, assume the worst
+            String resourceName = c.getName().replace('.', '/') + ".class";
+            InputStream in = c.getResourceAsStream("/" + resourceName);
+            if (in == null)
+                return true;
+            try {
+                JavaClass javaClass = new ClassParser(in, resourceName).parse();
+                for (org.apache.bcel.classfile.Method method : javaClass.getMethods()) {
+                    if (method.getName().equals(methodName) && method.getSignature().equals("()V")) {
+                        Code code = method.getCode();
+                        return code != null && code.getCode().length > 1;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                return true;
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
     }
 
     private final Plugin plugin;
@@ -132,6 +184,8 @@ public class DetectorFactory {
 
     private boolean hidden;
 
+    private volatile Boolean partitionable;
+
     /**
      * Constructor.
      *
@@ -228,6 +282,22 @@ public class DetectorFactory {
 
     }
 
+    /**
+     * Return whether or not the classes of a pass may be split among several
+     * detectors produced by this factory, each applied by a different
+     * analysis thread. This is the case for reporting detectors which do
+     * nothing at the end of the pass and are not WholePassDetectors.
+     */
+    public boolean isPartitionable() {
+        Boolean result = partitionable;
+        if (result == null) {
+            result = Boolean.valueOf(isReportingDetector() && !isDetectorClassSubtypeOf(WholePassDetector.class)
+                    && !detectorCreator.actsAtEndOfPass());
+            partitionable = result;
+        }
+        return result.booleanValue();
+    }
+
     /**
      * Check to see if we are running on a recent-enough JRE for this detector
      * to be enabled.
@@ -92,6 +92,9 @@ public class DiscoverSourceDirectories {
 
         public void reportSkippedAnalysis(MethodDescriptor method) {
         }
+
+        public void reportDegradedAnalysis(MethodDescriptor method) {
+        }
     };
 
     private static class NoOpProgress implements Progress {
@@ -122,6 +125,9 @@ public class DiscoverSourceDirectories {
         public void startArchive(String name) {
         }
 
+        public void reportCodeBaseTime(String name, long elapsedMillis) {
+        }
+
     }
 
     private Project project;
@@ -412,6 +418,9 @@ public class DiscoverSourceDirectories {
                 logError("Skipped analysis of method " + method.toString());
             }
 
+            public void reportDegradedAnalysis(MethodDescriptor method) {
+            }
+
         };
 
         DiscoverSourceDirectories.Progress progress = new DiscoverSourceDirectories.Progress() {
@@ -456,6 +465,10 @@ public class DiscoverSourceDirectories {
             public void startArchive(String name) {
                 // noop
             }
+
+            public void reportCodeBaseTime(String name, long elapsedMillis) {
+                // noop
+            }
         };
 
         DiscoverSourceDirectories discoverSourceDirectories = new DiscoverSourceDirectories();
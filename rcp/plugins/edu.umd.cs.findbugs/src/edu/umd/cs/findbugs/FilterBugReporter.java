@@ -19,6 +19,8 @@
 
 package edu.umd.cs.findbugs;
 
+import edu.umd.cs.findbugs.filter.CompiledFilter;
+import edu.umd.cs.findbugs.filter.Filter;
 import edu.umd.cs.findbugs.filter.Matcher;
 
 public class FilterBugReporter extends DelegatingBugReporter {
@@ -30,7 +32,9 @@ public class FilterBugReporter extends DelegatingBugReporter {
 
     public FilterBugReporter(BugReporter realBugReporter, Matcher filter, boolean include) {
         super(realBugReporter);
-        this.filter = filter;
+        // A filter is indexed, rather than testing each bug against each of
+        // its clauses
+        this.filter = filter instanceof Filter ? new CompiledFilter((Filter) filter) : filter;
         this.include = include;
     }
 
@@ -19,6 +19,7 @@
 
 package edu.umd.cs.findbugs;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -31,6 +32,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -57,14 +67,19 @@ import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IAnalysisEngineRegistrar;
+import edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IClassFactory;
 import edu.umd.cs.findbugs.classfile.IClassObserver;
 import edu.umd.cs.findbugs.classfile.IClassPath;
 import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
 import edu.umd.cs.findbugs.classfile.ICodeBase;
+import edu.umd.cs.findbugs.classfile.LibrarySnapshot;
+import edu.umd.cs.findbugs.classfile.MethodAnalysisBudget;
 import edu.umd.cs.findbugs.classfile.MissingClassException;
+import edu.umd.cs.findbugs.classfile.PersistentAnalysisStore;
 import edu.umd.cs.findbugs.classfile.analysis.ClassNameAndSuperclassInfo;
 import edu.umd.cs.findbugs.classfile.analysis.MethodInfo;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ClassPrefetcher;
 import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
 import edu.umd.cs.findbugs.cloud.CloudPlugin;
 import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
@@ -98,6 +113,8 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private static final boolean SCREEN_FIRST_PASS_CLASSES = SystemProperties.getBoolean("findbugs.screenFirstPass");
 
+    private static final boolean REPORT_CACHE_STATISTICS = SystemProperties.getBoolean("findbugs.analysisCache.report");
+
     public static final String PROP_FINDBUGS_HOST_APP = "findbugs.hostApp";
     public static final String PROP_FINDBUGS_HOST_APP_VERSION = "findbugs.hostAppVersion";
 
@@ -121,13 +138,15 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private Collection<ClassDescriptor> referencedClassSet;
 
+    private IncrementalAnalysis incrementalAnalysis;
+
     private DetectorFactoryCollection detectorFactoryCollection;
 
     private ExecutionPlan executionPlan;
 
     private final YourKitController yourkitController = new YourKitController();
 
-    private String currentClassName;
+    private volatile String currentClassName;
 
     private FindBugsProgress progress;
 
@@ -297,6 +316,9 @@ public class FindBugs2 implements IFindBugsEngine {
             }
             throw e;
         } finally {
+            if (REPORT_CACHE_STATISTICS && analysisCache instanceof IBoundedAnalysisCache) {
+                ((IBoundedAnalysisCache) analysisCache).getStatistics().report(System.err);
+            }
             clearCaches();
             profiler.end(this.getClass());
             profiler.report();
@@ -687,6 +709,93 @@ public class FindBugs2 implements IFindBugsEngine {
         this.analysisOptions.noClassOk = noClassOk;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.IFindBugsEngine#setNumAnalysisThreads(int)
+     */
+    public void setNumAnalysisThreads(int numAnalysisThreads) {
+        this.analysisOptions.numAnalysisThreads = Math.max(1, numAnalysisThreads);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.IFindBugsEngine#setNumPrefetchedClasses(int)
+     */
+    public void setNumPrefetchedClasses(int numPrefetchedClasses) {
+        this.analysisOptions.numPrefetchedClasses = Math.max(0, numPrefetchedClasses);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.IFindBugsEngine#setDegradeHugeMethods(boolean)
+     */
+    public void setDegradeHugeMethods(boolean degradeHugeMethods) {
+        this.analysisOptions.degradeHugeMethods = degradeHugeMethods;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.IFindBugsEngine#setShareOpcodeStackStates(boolean)
+     */
+    public void setShareOpcodeStackStates(boolean shareOpcodeStackStates) {
+        this.analysisOptions.shareOpcodeStackStates = shareOpcodeStackStates;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.IFindBugsEngine#setAnalysisCacheBudget(long)
+     */
+    public void setAnalysisCacheBudget(long analysisCacheBudget) {
+        this.analysisOptions.analysisCacheBudget = analysisCacheBudget;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.IFindBugsEngine#setMethodAnalysisBudget(long,
+     * long)
+     */
+    public void setMethodAnalysisBudget(long methodTimeBudget, long methodWorkBudget) {
+        this.analysisOptions.methodTimeBudget = Math.max(0, methodTimeBudget);
+        this.analysisOptions.methodWorkBudget = Math.max(0, methodWorkBudget);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.IFindBugsEngine#setAnalysisCacheDirectory(java.lang
+     * .String)
+     */
+    public void setAnalysisCacheDirectory(String analysisCacheDirectory) {
+        this.analysisOptions.analysisCacheDirectory = analysisCacheDirectory;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.IFindBugsEngine#setLibrarySnapshot(java.lang.String)
+     */
+    public void setLibrarySnapshot(String librarySnapshotFile) {
+        this.analysisOptions.librarySnapshotFile = librarySnapshotFile;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.IFindBugsEngine#setIncrementalAnalysis(edu.umd.cs
+     * .findbugs.IncrementalAnalysis)
+     */
+    public void setIncrementalAnalysis(IncrementalAnalysis incrementalAnalysis) {
+        this.incrementalAnalysis = incrementalAnalysis;
+    }
+
     /**
      * Create the analysis cache object and register it for current execution thread.
      * <p>
@@ -697,7 +806,21 @@ public class FindBugs2 implements IFindBugsEngine {
      *             if error occurs registering analysis engines in a plugin
      */
     protected IAnalysisCache createAnalysisCache() throws IOException {
-        IAnalysisCache analysisCache = ClassFactory.instance().createAnalysisCache(classPath, bugReporter);
+        IAnalysisCache analysisCache;
+        if (analysisOptions.numAnalysisThreads > 1) {
+            // Let the analysis threads share class and method analysis results
+            analysisCache = ClassFactory.instance().createConcurrentAnalysisCache(classPath, bugReporter);
+        } else {
+            analysisCache = ClassFactory.instance().createAnalysisCache(classPath, bugReporter);
+        }
+        if (analysisOptions.analysisCacheBudget > 0 && analysisCache instanceof IBoundedAnalysisCache) {
+            ((IBoundedAnalysisCache) analysisCache).setMemoryBudget(analysisOptions.analysisCacheBudget);
+        }
+        if ((analysisOptions.methodTimeBudget > 0 || analysisOptions.methodWorkBudget > 0)
+                && analysisCache instanceof IBoundedAnalysisCache) {
+            ((IBoundedAnalysisCache) analysisCache).setMethodAnalysisBudget(new MethodAnalysisBudget(
+                    analysisOptions.methodTimeBudget, analysisOptions.methodWorkBudget));
+        }
 
         // Register the "built-in" analysis engines
         registerBuiltInAnalysisEngines(analysisCache);
@@ -708,6 +831,18 @@ public class FindBugs2 implements IFindBugsEngine {
         // Install the DetectorFactoryCollection as a database
         analysisCache.eagerlyPutDatabase(DetectorFactoryCollection.class, detectorFactoryCollection);
 
+        // Reuse parsed class info from earlier runs
+        if (analysisOptions.analysisCacheDirectory != null) {
+            analysisCache.eagerlyPutDatabase(PersistentAnalysisStore.class, new PersistentAnalysisStore(new File(
+                    analysisOptions.analysisCacheDirectory), analysisCache.getErrorLogger()));
+        }
+
+        // Share class info of library classes between runs
+        if (analysisOptions.librarySnapshotFile != null) {
+            analysisCache.eagerlyPutDatabase(LibrarySnapshot.class, new LibrarySnapshot(new File(
+                    analysisOptions.librarySnapshotFile), analysisCache.getErrorLogger()));
+        }
+
         Global.setAnalysisCacheForCurrentThread(analysisCache);
         return analysisCache;
     }
@@ -779,6 +914,7 @@ public class FindBugs2 implements IFindBugsEngine {
         }
 
         builder.scanNestedArchives(analysisOptions.scanNestedArchives);
+        builder.setNumThreads(analysisOptions.numAnalysisThreads);
 
         builder.build(classPath, progress);
 
@@ -991,6 +1127,10 @@ public class FindBugs2 implements IFindBugsEngine {
         }
         AnalysisContext.currentAnalysisContext().setBoolProperty(AnalysisFeatures.MERGE_SIMILAR_WARNINGS,
                 analysisOptions.mergeSimilarWarnings);
+        AnalysisContext.currentAnalysisContext().setBoolProperty(AnalysisFeatures.DEGRADE_HUGE_METHODS,
+                analysisOptions.degradeHugeMethods);
+        AnalysisContext.currentAnalysisContext().setBoolProperty(AnalysisFeatures.SHARE_OPCODE_STACK_STATES,
+                analysisOptions.shareOpcodeStackStates);
     }
 
     /**
@@ -1087,8 +1227,18 @@ public class FindBugs2 implements IFindBugsEngine {
             }
 
             referencedClassSet.removeAll(badClasses);
+
+            // All library classes needed are known now
+            LibrarySnapshot librarySnapshot = analysisCache.getDatabase(LibrarySnapshot.class);
+            if (librarySnapshot.isRecording()) {
+                librarySnapshot.write(classPath);
+            }
+
             long startTime = System.currentTimeMillis();
             bugReporter.getProjectStats().setReferencedClasses(referencedClassSet.size());
+            if (incrementalAnalysis != null) {
+                incrementalAnalysis.computeAffectedClasses(appClassList, referencedClassSet);
+            }
             for (Iterator<AnalysisPass> passIterator = executionPlan.passIterator(); passIterator.hasNext();) {
                 AnalysisPass pass = passIterator.next();
                 yourkitController.advanceGeneration("Pass " + passCount);
@@ -1097,8 +1247,30 @@ public class FindBugs2 implements IFindBugsEngine {
                 // gathers information about referenced classes.
                 boolean isNonReportingFirstPass = multiplePasses && passCount == 0;
 
-                // Instantiate the detectors
-                Detector2[] detectorList = pass.instantiateDetector2sInPass(bugReporter);
+                // Detectors in the first pass build databases used by
+                // everything that follows, so that pass is always run by
+                // this thread alone.
+                boolean runInParallel = !isNonReportingFirstPass && analysisOptions.numAnalysisThreads > 1;
+
+                // Instantiate the detectors. If the pass is run in
+                // parallel, only the detectors which need to see every class
+                // are created here: each analysis thread creates its own
+                // instances of the others.
+                WorkerBugReporter passBugReporter = null;
+                Detector2[] detectorList;
+                Detector2[] unaffectedClassDetectorList = null;
+                if (runInParallel) {
+                    passBugReporter = new WorkerBugReporter(bugReporter);
+                    detectorList = instantiateWholePassDetectors(pass, passBugReporter);
+                } else if (incrementalAnalysis != null && !isNonReportingFirstPass) {
+                    // Classes not affected by the changes only need to be
+                    // seen by the detectors which need to see every class
+                    List<Detector2> wholePassDetectorList = new ArrayList<Detector2>();
+                    detectorList = instantiateDetectors(pass, bugReporter, wholePassDetectorList);
+                    unaffectedClassDetectorList = wholePassDetectorList.toArray(new Detector2[wholePassDetectorList.size()]);
+                } else {
+                    detectorList = pass.instantiateDetector2sInPass(bugReporter);
+                }
 
                 // If there are multiple passes, then on the first pass,
                 // we apply detectors to all classes referenced by the
@@ -1106,6 +1278,9 @@ public class FindBugs2 implements IFindBugsEngine {
                 // On subsequent passes, we apply detector only to application
                 // classes.
                 Collection<ClassDescriptor> classCollection = (isNonReportingFirstPass) ? referencedClassSet : appClassList;
+                if (isNonReportingFirstPass && incrementalAnalysis != null) {
+                    classCollection = incrementalAnalysis.selectSupportClasses(classCollection);
+                }
                 AnalysisContext.currentXFactory().canonicalizeAll();
                 if (PROGRESS || LIST_ORDER) {
                     System.out.printf("%6d : Pass %d: %d classes%n", (System.currentTimeMillis() - startTime)/1000, passCount,  classCollection.size());
@@ -1146,63 +1321,51 @@ public class FindBugs2 implements IFindBugsEngine {
                 int count = 0;
                 Global.getAnalysisCache().purgeAllMethodAnalysis();
                 Global.getAnalysisCache().purgeClassAnalysis(FBClassReader.class);
-                for (ClassDescriptor classDescriptor : classCollection) {
-                    if (PROGRESS) {
-                        System.out.printf("%6d %d/%d  %d/%d %s%n", (System.currentTimeMillis() - startTime)/1000,
-                                passCount, executionPlan.getNumPasses(), count,
-                                classCollection.size(), classDescriptor);
-                        count++;
+                List<Detector2[]> workerDetectorLists = Collections.emptyList();
+                if (runInParallel) {
+                    workerDetectorLists = analyzeClassesInParallel(pass, new ArrayList<ClassDescriptor>(classCollection),
+                            detectorList, passBugReporter, profiler);
+                } else {
+                    // Read the classes coming up while detectors are
+                    // applied to the current one
+                    ClassPrefetcher prefetcher = null;
+                    Iterator<ClassDescriptor> classIterator;
+                    if (analysisOptions.numPrefetchedClasses > 0) {
+                        prefetcher = new ClassPrefetcher(Global.getAnalysisCache(), new ArrayList<ClassDescriptor>(
+                                classCollection), analysisOptions.numPrefetchedClasses);
+                        classIterator = prefetcher;
+                    } else {
+                        classIterator = classCollection.iterator();
                     }
+                    try {
+                        while (classIterator.hasNext()) {
+                            ClassDescriptor classDescriptor = classIterator.next();
+                            if (PROGRESS) {
+                                System.out.printf("%6d %d/%d  %d/%d %s%n", (System.currentTimeMillis() - startTime)/1000,
+                                        passCount, executionPlan.getNumPasses(), count,
+                                        classCollection.size(), classDescriptor);
+                                count++;
+                            }
 
-                    // Check to see if class is excluded by the class screener.
-                    // In general, we do not want to screen classes from the
-                    // first pass, even if they would otherwise be excluded.
-                    if ((SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
-                            && !classScreener.matches(classDescriptor.toResourceName())) {
-                        if (DEBUG) {
-                            System.out.println("*** Excluded by class screener");
-                        }
-                        continue;
-                    }
-                    boolean isHuge = AnalysisContext.currentAnalysisContext().isTooBig(classDescriptor);
-                    if (isHuge && AnalysisContext.currentAnalysisContext().isApplicationClass(classDescriptor)) {
-                        bugReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
-                                .addClass(classDescriptor));
-                    }
-                    currentClassName = ClassName.toDottedClassName(classDescriptor.getClassName());
-                    notifyClassObservers(classDescriptor);
+                            if (isExcludedByClassScreener(classDescriptor, isNonReportingFirstPass)) {
+                                continue;
+                            }
+                            currentClassName = ClassName.toDottedClassName(classDescriptor.getClassName());
+                            notifyClassObservers(classDescriptor);
 
-                    for (Detector2 detector : detectorList) {
-                        if (Thread.interrupted()) {
-                            throw new InterruptedException();
-                        }
-                        if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                            if (unaffectedClassDetectorList != null && !incrementalAnalysis.isAffected(classDescriptor)) {
+                                applyDetectors(classDescriptor, unaffectedClassDetectorList, bugReporter, profiler, true);
+                            } else {
+                                applyDetectors(classDescriptor, detectorList, bugReporter, profiler, true);
+                            }
 
-                            continue;
-                        }
-                        if (DEBUG) {
-                            System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
-                            // System.out.println("foo: " +
-                            // NonReportingDetector.class.isAssignableFrom(detector.getClass())
-                            // + ", bar: " + detector.getClass().getName());
+                            progress.finishClass();
                         }
-                        try {
-                            profiler.start(detector.getClass());
-                            detector.visitClass(classDescriptor);
-                        } catch (ClassFormatException e) {
-                            logRecoverableException(classDescriptor, detector, e);
-                        } catch (MissingClassException e) {
-                            Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
-                        } catch (CheckedAnalysisException e) {
-                            logRecoverableException(classDescriptor, detector, e);
-                        } catch (RuntimeException e) {
-                            logRecoverableException(classDescriptor, detector, e);
-                        } finally {
-                            profiler.end(detector.getClass());
+                    } finally {
+                        if (prefetcher != null) {
+                            prefetcher.close();
                         }
                     }
-
-                    progress.finishClass();
                 }
 
                 if (!passIterator.hasNext())
@@ -1211,12 +1374,31 @@ public class FindBugs2 implements IFindBugsEngine {
                 for (Detector2 detector : detectorList) {
                     detector.finishPass();
                 }
+                for (Detector2[] workerDetectorList : workerDetectorLists) {
+                    for (Detector2 detector : workerDetectorList) {
+                        detector.finishPass();
+                    }
+                }
 
                 progress.finishPerClassAnalysis();
 
                 passCount++;
             }
 
+            // Keep the warnings of the previous analysis on classes which
+            // were not analyzed again
+            if (incrementalAnalysis != null) {
+                incrementalAnalysis.reportRetainedBugs(bugReporter, appClassList, getWholePassBugTypes());
+            }
+
+            // Keep the expensive method analyses with the results
+            if (analysisCache instanceof IBoundedAnalysisCache) {
+                MethodAnalysisBudget budget = ((IBoundedAnalysisCache) analysisCache).getMethodAnalysisBudget();
+                if (budget != null) {
+                    budget.report(bugReporter);
+                }
+            }
+
             // Flush any queued bug reports
             bugReporter.finish();
 
@@ -1230,6 +1412,338 @@ public class FindBugs2 implements IFindBugsEngine {
 
     }
 
+    /**
+     * Check to see if class is excluded by the class screener. In general, we
+     * do not want to screen classes from the first pass, even if they would
+     * otherwise be excluded.
+     *
+     * @param classDescriptor
+     *            the class
+     * @param isNonReportingFirstPass
+     *            true if the class is visited by the non-reporting first pass
+     * @return true if detectors should not be applied to the class
+     */
+    private boolean isExcludedByClassScreener(ClassDescriptor classDescriptor, boolean isNonReportingFirstPass) {
+        if ((SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
+                && !classScreener.matches(classDescriptor.toResourceName())) {
+            if (DEBUG) {
+                System.out.println("*** Excluded by class screener");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Apply detectors to a class.
+     *
+     * @param classDescriptor
+     *            the class to analyze
+     * @param detectorList
+     *            the detectors to apply
+     * @param reporter
+     *            BugReporter receiving warnings and errors for the class
+     * @param profiler
+     *            the Profiler
+     * @param reportTooBig
+     *            true if a SKIPPED_CLASS_TOO_BIG warning should be reported
+     *            if the class is too big to be analyzed by reporting
+     *            detectors
+     * @throws InterruptedException
+     *             if the analysis thread is interrupted
+     */
+    private void applyDetectors(ClassDescriptor classDescriptor, Detector2[] detectorList, BugReporter reporter,
+            Profiler profiler, boolean reportTooBig) throws InterruptedException {
+        boolean isHuge = AnalysisContext.currentAnalysisContext().isTooBig(classDescriptor);
+        if (reportTooBig && isHuge && AnalysisContext.currentAnalysisContext().isApplicationClass(classDescriptor)) {
+            reporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
+                    .addClass(classDescriptor));
+        }
+
+        for (Detector2 detector : detectorList) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+
+                continue;
+            }
+            if (DEBUG) {
+                System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
+                // System.out.println("foo: " +
+                // NonReportingDetector.class.isAssignableFrom(detector.getClass())
+                // + ", bar: " + detector.getClass().getName());
+            }
+            try {
+                profiler.start(detector.getClass());
+                detector.visitClass(classDescriptor);
+            } catch (ClassFormatException e) {
+                logRecoverableException(reporter, classDescriptor, detector, e);
+            } catch (MissingClassException e) {
+                Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
+            } catch (CheckedAnalysisException e) {
+                logRecoverableException(reporter, classDescriptor, detector, e);
+            } catch (RuntimeException e) {
+                logRecoverableException(reporter, classDescriptor, detector, e);
+            } finally {
+                profiler.end(detector.getClass());
+            }
+        }
+    }
+
+    /**
+     * Instantiate the detectors of a pass which cannot be split among
+     * analysis threads, i.e., those which are not partitionable (see
+     * DetectorFactory.isPartitionable()).
+     *
+     * @param pass
+     *            the AnalysisPass
+     * @param reporter
+     *            the BugReporter to pass to the detectors
+     * @return array of Detector2s
+     */
+    private static Detector2[] instantiateWholePassDetectors(AnalysisPass pass, BugReporter reporter) {
+        List<Detector2> detectorList = new ArrayList<Detector2>();
+        for (Iterator<DetectorFactory> i = pass.iterator(); i.hasNext();) {
+            DetectorFactory factory = i.next();
+            if (!factory.isPartitionable()) {
+                detectorList.add(factory.createDetector2(reporter));
+            }
+        }
+        return detectorList.toArray(new Detector2[detectorList.size()]);
+    }
+
+    /**
+     * Instantiate all detectors of a pass, in the order they must be applied.
+     *
+     * @param pass
+     *            the AnalysisPass
+     * @param reporter
+     *            the BugReporter to pass to the detectors
+     * @param wholePassDetectorList
+     *            list to add the detectors which must see every class to
+     * @return array of Detector2s
+     */
+    private static Detector2[] instantiateDetectors(AnalysisPass pass, BugReporter reporter,
+            List<Detector2> wholePassDetectorList) {
+        List<Detector2> detectorList = new ArrayList<Detector2>();
+        for (Iterator<DetectorFactory> i = pass.iterator(); i.hasNext();) {
+            DetectorFactory factory = i.next();
+            Detector2 detector = factory.createDetector2(reporter);
+            detectorList.add(detector);
+            if (!factory.isPartitionable()) {
+                wholePassDetectorList.add(detector);
+            }
+        }
+        return detectorList.toArray(new Detector2[detectorList.size()]);
+    }
+
+    /**
+     * Get the bug types reported only by detectors which must see every
+     * class. In an incremental analysis these detectors are applied to all
+     * classes again, so warnings of these types from the previous analysis
+     * must not be kept.
+     *
+     * @return set of bug types
+     */
+    private Set<String> getWholePassBugTypes() {
+        Set<String> wholePassBugTypes = new HashSet<String>();
+        Set<String> partitionableBugTypes = new HashSet<String>();
+        for (Iterator<AnalysisPass> i = executionPlan.passIterator(); i.hasNext();) {
+            AnalysisPass pass = i.next();
+            for (Iterator<DetectorFactory> j = pass.iterator(); j.hasNext();) {
+                DetectorFactory factory = j.next();
+                Set<String> bugTypes = factory.isPartitionable() ? partitionableBugTypes : wholePassBugTypes;
+                for (BugPattern bugPattern : factory.getReportedBugPatterns()) {
+                    bugTypes.add(bugPattern.getType());
+                }
+            }
+        }
+        wholePassBugTypes.removeAll(partitionableBugTypes);
+        return wholePassBugTypes;
+    }
+
+    /**
+     * Instantiate the detectors of a pass which can be applied to disjoint
+     * sets of classes by different analysis threads.
+     *
+     * @param pass
+     *            the AnalysisPass
+     * @param reporter
+     *            the BugReporter to pass to the detectors
+     * @return array of Detector2s
+     */
+    private static Detector2[] instantiatePartitionableDetectors(AnalysisPass pass, BugReporter reporter) {
+        List<Detector2> detectorList = new ArrayList<Detector2>();
+        for (Iterator<DetectorFactory> i = pass.iterator(); i.hasNext();) {
+            DetectorFactory factory = i.next();
+            if (factory.isPartitionable()) {
+                detectorList.add(factory.createDetector2(reporter));
+            }
+        }
+        return detectorList.toArray(new Detector2[detectorList.size()]);
+    }
+
+    /**
+     * Analyze the classes of a pass using several threads.
+     * <p>
+     * The whole-pass detectors are applied to every class by the calling
+     * thread first. Then the remaining detectors are applied by
+     * analysisOptions.numAnalysisThreads worker threads, each of which has its
+     * own detector instances. The threads share the analysis cache if it is
+     * safe for concurrent use, and otherwise each gets a worker view of it (see
+     * IClassFactory.createWorkerAnalysisCache()). Warnings are buffered per
+     * class. While the worker threads run, the calling thread reports the
+     * warnings of each class as soon as it and all classes before it are done,
+     * so warnings are reported in the same order that a single-threaded
+     * analysis would report them, and ranking, suppression, filtering and
+     * adding to the bug collection are done by the calling thread alone.
+     *
+     * @param pass
+     *            the AnalysisPass
+     * @param classList
+     *            the classes to analyze, in analysis order
+     * @param wholePassDetectors
+     *            detectors which must be applied by the calling thread
+     * @param passBugReporter
+     *            BugReporter used by the whole-pass detectors
+     * @param profiler
+     *            the Profiler
+     * @return the detectors created by each worker thread; the caller is
+     *         responsible for calling finishPass() on them
+     * @throws InterruptedException
+     *             if the analysis thread is interrupted
+     */
+    private List<Detector2[]> analyzeClassesInParallel(final AnalysisPass pass, final List<ClassDescriptor> classList,
+            Detector2[] wholePassDetectors, WorkerBugReporter passBugReporter, final Profiler profiler)
+            throws InterruptedException {
+        final int numClasses = classList.size();
+
+        // Each class to analyze gets a buffer for the warnings reported on it;
+        // excluded classes get none. Buffers are dropped once reported.
+        final AtomicReferenceArray<List<BugInstance>> bugsByClass = new AtomicReferenceArray<List<BugInstance>>(numClasses);
+        for (int i = 0; i < numClasses; i++) {
+            if (!isExcludedByClassScreener(classList.get(i), false)) {
+                bugsByClass.set(i, new ArrayList<BugInstance>());
+            }
+        }
+
+        for (int i = 0; i < numClasses; i++) {
+            List<BugInstance> classBugs = bugsByClass.get(i);
+            if (classBugs != null && wholePassDetectors.length > 0) {
+                currentClassName = ClassName.toDottedClassName(classList.get(i).getClassName());
+                passBugReporter.startClass(classBugs);
+                try {
+                    applyDetectors(classList.get(i), wholePassDetectors, passBugReporter, profiler, false);
+                } finally {
+                    passBugReporter.finishClass();
+                }
+            }
+        }
+
+        int numThreads = Math.min(analysisOptions.numAnalysisThreads, numClasses);
+        List<Detector2[]> workerDetectorLists = new ArrayList<Detector2[]>(numThreads);
+        final AtomicInteger nextClass = new AtomicInteger();
+
+        // Worker threads mark each class done when they finish it, and
+        // release a permit when they finish a class or stop, so that the
+        // calling thread can wait for the next class to report
+        final AtomicIntegerArray classDone = new AtomicIntegerArray(numClasses);
+        final AtomicInteger runningWorkers = new AtomicInteger(numThreads);
+        final Semaphore workerProgress = new Semaphore(0);
+        final IAnalysisCache sharedCache = Global.getAnalysisCache();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Detector2[]>> results = new ArrayList<Future<Detector2[]>>(numThreads);
+            for (int t = 0; t < numThreads; t++) {
+                results.add(executor.submit(new Callable<Detector2[]>() {
+                    public Detector2[] call() throws Exception {
+                        WorkerBugReporter workerBugReporter = new WorkerBugReporter(bugReporter);
+                        IAnalysisCache workerCache = classFactory.createWorkerAnalysisCache(sharedCache, workerBugReporter);
+                        if (workerCache != sharedCache) {
+                            registerBuiltInAnalysisEngines(workerCache);
+                            registerPluginAnalysisEngines(detectorFactoryCollection, workerCache);
+                        }
+                        Global.setAnalysisCacheForCurrentThread(workerCache);
+                        try {
+                            Detector2[] detectorList = instantiatePartitionableDetectors(pass, workerBugReporter);
+                            for (int i = nextClass.getAndIncrement(); i < numClasses; i = nextClass.getAndIncrement()) {
+                                List<BugInstance> classBugs = bugsByClass.get(i);
+                                if (classBugs == null) {
+                                    continue;
+                                }
+                                ClassDescriptor classDescriptor = classList.get(i);
+                                if (incrementalAnalysis == null || incrementalAnalysis.isAffected(classDescriptor)) {
+                                    workerBugReporter.startClass(classBugs);
+                                    try {
+                                        applyDetectors(classDescriptor, detectorList, workerBugReporter, profiler, true);
+                                    } finally {
+                                        workerBugReporter.finishClass();
+                                    }
+                                }
+                                classDone.set(i, 1);
+                                workerProgress.release();
+                                synchronized (progress) {
+                                    progress.finishClass();
+                                }
+                            }
+                            return detectorList;
+                        } finally {
+                            Global.setAnalysisCacheForCurrentThread(sharedCache);
+                            runningWorkers.decrementAndGet();
+                            workerProgress.release();
+                        }
+                    }
+                }));
+            }
+
+            // Report the warnings in analysis order, as the classes are done.
+            // Workers log errors while this goes on, so calls to the shared
+            // BugReporter are synchronized on it, as WorkerBugReporter's are.
+            for (int i = 0; i < numClasses; i++) {
+                List<BugInstance> classBugs = bugsByClass.get(i);
+                if (classBugs == null) {
+                    continue;
+                }
+                while (classDone.get(i) == 0 && runningWorkers.get() > 0) {
+                    workerProgress.acquire();
+                }
+                if (classDone.get(i) == 0) {
+                    // A worker failed; its exception is thrown below
+                    break;
+                }
+                ClassDescriptor classDescriptor = classList.get(i);
+                synchronized (bugReporter) {
+                    currentClassName = ClassName.toDottedClassName(classDescriptor.getClassName());
+                    notifyClassObservers(classDescriptor);
+                    for (BugInstance bug : classBugs) {
+                        bugReporter.reportBug(bug);
+                    }
+                }
+                bugsByClass.set(i, null);
+            }
+
+            for (Future<Detector2[]> result : results) {
+                workerDetectorLists.add(result.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Error in analysis thread", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return workerDetectorLists;
+    }
+
     /**
      * Notify all IClassObservers that we are visiting given class.
      *
@@ -1246,6 +1760,8 @@ public class FindBugs2 implements IFindBugsEngine {
      * Report an exception that occurred while analyzing a class with a
      * detector.
      *
+     * @param reporter
+     *            BugReporter to log the exception to
      * @param classDescriptor
      *            class being analyzed
      * @param detector
@@ -1253,8 +1769,9 @@ public class FindBugs2 implements IFindBugsEngine {
      * @param e
      *            the exception
      */
-    private void logRecoverableException(ClassDescriptor classDescriptor, Detector2 detector, Throwable e) {
-        bugReporter.logError(
+    private static void logRecoverableException(BugReporter reporter, ClassDescriptor classDescriptor, Detector2 detector,
+            Throwable e) {
+        reporter.logError(
                 "Exception analyzing " + classDescriptor.toDottedClassName() + " using detector "
                         + detector.getDetectorClassName(), e);
     }
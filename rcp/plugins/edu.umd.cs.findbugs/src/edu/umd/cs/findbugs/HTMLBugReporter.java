@@ -20,57 +20,111 @@
 package edu.umd.cs.findbugs;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
-
-import javax.xml.transform.Transformer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.CheckForNull;
+import javax.xml.transform.Result;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import org.dom4j.Document;
 import org.dom4j.io.DocumentSource;
 
+import edu.umd.cs.findbugs.xml.SAXXMLOutput;
+
+/**
+ * BugReporter to write an HTML report, by transforming the XML of the bug
+ * collection with an XSLT stylesheet. The XML is passed to the stylesheet as
+ * it is written, rather than built as a dom4j tree first.
+ * <p>
+ * The report can also be split into a page for each package, written to a
+ * directory. The pages are written in parallel, and an index of them is
+ * written to the output stream. The index links to the pages by their file
+ * names, so it's meant to be saved in the same directory.
+ */
 public class HTMLBugReporter extends BugCollectionBugReporter {
+    /** Name of the page of the warnings in the default package. */
+    static final String DEFAULT_PACKAGE_PAGE = "default-package.html";
+
     private String stylesheet;
 
     private Exception fatalException;
 
+    private @CheckForNull
+    File packagePagesDirectory;
+
+    private int numThreads = 1;
+
     public HTMLBugReporter(Project project, String stylesheet) {
         super(project);
         this.stylesheet = stylesheet;
     }
 
+    /**
+     * Write a page for each package to the given directory, and an index of
+     * the pages to the output stream, rather than one page. The index links to
+     * the pages relative to the directory it's saved in.
+     *
+     * @param packagePagesDirectory
+     *            the directory, or null to write one page
+     */
+    public void setPackagePagesDirectory(@CheckForNull File packagePagesDirectory) {
+        this.packagePagesDirectory = packagePagesDirectory;
+    }
+
+    /**
+     * Set the number of threads writing package pages.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("number of threads must be at least 1 (saw " + numThreads + ")");
+        this.numThreads = numThreads;
+    }
+
     @Override
     public void finish() {
         try {
             BugCollection bugCollection = getBugCollection();
             bugCollection.setWithMessages(true);
-            // Decorate the XML with messages to display
-            Document document = bugCollection.toDocument();
-            // new AddMessages(bugCollection, document).execute();
 
             // Get the stylesheet as a StreamSource.
             // First, try to load the stylesheet from the filesystem.
             // If that fails, try loading it as a resource.
             InputStream xslInputStream = getStylesheetStream(stylesheet);
-            StreamSource xsl = new StreamSource(xslInputStream);
-            xsl.setSystemId(stylesheet);
-
-            // Create a transformer using the stylesheet
-            TransformerFactory factory = TransformerFactory.newInstance();
-            Transformer transformer = factory.newTransformer(xsl);
-
-            // Source document is the XML generated from the BugCollection
-            DocumentSource source = new DocumentSource(document);
-
-            // Write result to output stream
-            StreamResult result = new StreamResult(outputStream);
-
-            // Do the transformation
-            transformer.transform(source, result);
+            Templates templates;
+            try {
+                StreamSource xsl = new StreamSource(xslInputStream);
+                xsl.setSystemId(stylesheet);
+                // Compile the stylesheet once, for all the pages
+                templates = TransformerFactory.newInstance().newTemplates(xsl);
+            } finally {
+                xslInputStream.close();
+            }
+
+            if (packagePagesDirectory == null)
+                transform(templates, bugCollection, new StreamResult(outputStream));
+            else
+                writePackagePages(templates, bugCollection, packagePagesDirectory);
         } catch (Exception e) {
             logError("Could not generate HTML output", e);
             fatalException = e;
@@ -80,6 +134,97 @@ public class HTMLBugReporter extends BugCollectionBugReporter {
         outputStream.close();
     }
 
+    /**
+     * Transform the XML of a bug collection with a stylesheet.
+     */
+    private static void transform(Templates templates, BugCollection bugCollection, Result result) throws IOException,
+            TransformerException {
+        TransformerFactory factory = TransformerFactory.newInstance();
+        if (!factory.getFeature(SAXTransformerFactory.FEATURE)) {
+            // The stylesheet can only be applied to a tree
+            templates.newTransformer().transform(new DocumentSource(bugCollection.toDocument()), result);
+            return;
+        }
+        TransformerHandler handler = ((SAXTransformerFactory) factory).newTransformerHandler(templates);
+        handler.setResult(result);
+        bugCollection.writeXML(new SAXXMLOutput(handler));
+    }
+
+    private void writePackagePages(final Templates templates, BugCollection bugCollection, final File directory)
+            throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create directory " + directory);
+
+        // The bugs are sorted by class, and so the bugs of each page are too
+        Map<String, BugCollection> packages = new LinkedHashMap<String, BugCollection>();
+        for (BugInstance bugInstance : bugCollection.getCollection()) {
+            // Warnings without a primary class go on the default package's page
+            ClassAnnotation primaryClass = bugInstance.getPrimaryClass();
+            String packageName = primaryClass != null ? primaryClass.getPackageName() : "";
+            BugCollection page = packages.get(packageName);
+            if (page == null) {
+                page = bugCollection.createEmptyCollectionWithMetadata();
+                page.setWithMessages(true);
+                packages.put(packageName, page);
+            }
+            page.add(bugInstance, false);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> pages = new ArrayList<Future<Void>>();
+            for (Map.Entry<String, BugCollection> entry : packages.entrySet()) {
+                final File file = new File(directory, getPackagePageName(entry.getKey()));
+                final BugCollection page = entry.getValue();
+                pages.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException, TransformerException {
+                        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+                        try {
+                            transform(templates, page, new StreamResult(out));
+                        } finally {
+                            out.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> page : pages) {
+                try {
+                    page.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    IOException ioe = new IOException("Could not write package page: " + cause.getMessage());
+                    ioe.initCause(cause);
+                    throw ioe;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        outputStream.println("<html><head><title>FindBugs Report</title></head><body>");
+        outputStream.println("<h1>FindBugs Report</h1>");
+        outputStream.println("<table>");
+        outputStream.println("<tr><th>Package</th><th>Warnings</th></tr>");
+        for (Map.Entry<String, BugCollection> entry : packages.entrySet()) {
+            String packageName = entry.getKey();
+            outputStream.println("<tr><td><a href=\"" + getPackagePageName(packageName) + "\">"
+                    + (packageName.length() > 0 ? packageName : "(default package)") + "</a></td><td>"
+                    + entry.getValue().getCollection().size() + "</td></tr>");
+        }
+        outputStream.println("</table>");
+        outputStream.println("</body></html>");
+    }
+
+    /**
+     * Get the file name of the page of a package's warnings.
+     */
+    static String getPackagePageName(String packageName) {
+        if (packageName.length() == 0)
+            return DEFAULT_PACKAGE_PAGE;
+        return packageName + ".html";
+    }
+
     public Exception getFatalException() {
         return fatalException;
     }
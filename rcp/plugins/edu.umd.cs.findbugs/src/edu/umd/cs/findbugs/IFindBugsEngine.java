@@ -274,6 +274,99 @@ public interface IFindBugsEngine {
      */
     public void setNoClassOk(boolean noClassOk);
 
+    /**
+     * Set the number of threads used to apply detectors to the application
+     * classes.
+     * 
+     * @param numAnalysisThreads
+     *            number of analysis threads; 1 means the analysis is
+     *            performed entirely by the calling thread
+     */
+    public void setNumAnalysisThreads(int numAnalysisThreads);
+
+    /**
+     * Set the number of classes read and parsed by a background thread ahead
+     * of the class being analyzed.
+     * 
+     * @param numPrefetchedClasses
+     *            the number of classes; 0 means classes are read when they
+     *            are analyzed
+     */
+    public void setNumPrefetchedClasses(int numPrefetchedClasses);
+
+    /**
+     * Set whether huge methods are analyzed in a degraded way, with coarser
+     * control flow graphs and a bounded analysis time, rather than skipped.
+     * 
+     * @param degradeHugeMethods
+     *            true if huge methods should be analyzed in a degraded way
+     */
+    public void setDegradeHugeMethods(boolean degradeHugeMethods);
+
+    /**
+     * Set whether the opcode stack of each method is simulated once, with the
+     * OpcodeStackDetectors of a pass replaying the recorded states, rather
+     * than simulated by each detector.
+     * 
+     * @param shareOpcodeStackStates
+     *            true if the recorded states should be shared
+     */
+    public void setShareOpcodeStackStates(boolean shareOpcodeStackStates);
+
+    /**
+     * Set the amount of memory the analysis cache may use for class analysis
+     * results which can be recomputed.
+     * 
+     * @param analysisCacheBudget
+     *            the budget in bytes; 0 means the number of cached results is
+     *            bounded instead
+     */
+    public void setAnalysisCacheBudget(long analysisCacheBudget);
+
+    /**
+     * Set the wall-clock time and work budget of each method analysis. A
+     * method analysis which uses up its budget is abandoned, the method is
+     * reported as skipped, and expensive method analyses are listed in a
+     * report at the end of the analysis.
+     * 
+     * @param methodTimeBudget
+     *            milliseconds each method analysis may take, or 0 for no
+     *            limit
+     * @param methodWorkBudget
+     *            units of work each method analysis may do, or 0 for no limit
+     */
+    public void setMethodAnalysisBudget(long methodTimeBudget, long methodWorkBudget);
+
+    /**
+     * Set the directory in which results of class parsing and property
+     * database loading are stored, so that later runs over unchanged classes
+     * can reuse them.
+     * 
+     * @param analysisCacheDirectory
+     *            the directory, or null to not store results between runs
+     */
+    public void setAnalysisCacheDirectory(String analysisCacheDirectory);
+
+    /**
+     * Set the file holding a snapshot of the class info and property
+     * databases of the library classes. If the file exists, it is used
+     * read-only; otherwise it is written at the end of the first pass.
+     * 
+     * @param librarySnapshotFile
+     *            the file, or null to not use a library snapshot
+     */
+    public void setLibrarySnapshot(String librarySnapshotFile);
+
+    /**
+     * Analyze only the classes affected by a set of changes, keeping the
+     * warnings of a previous analysis for all other classes.
+     * 
+     * @param incrementalAnalysis
+     *            the previous results and the changed classes, or null to
+     *            analyze all classes
+     */
+    public void setIncrementalAnalysis(IncrementalAnalysis incrementalAnalysis);
+
     /**
      * Set the DetectorFactoryCollection from which plugins/detectors may be
      * accessed.
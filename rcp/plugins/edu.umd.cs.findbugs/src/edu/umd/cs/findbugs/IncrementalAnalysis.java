@@ -0,0 +1,347 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.analysis.ClassNameAndSuperclassInfo;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Information needed to re-analyze an application incrementally: the results
+ * of the previous analysis, and the application classes which were added,
+ * changed or removed since.
+ * <p>
+ * Only the classes affected by the changes are re-analyzed. A class is
+ * affected if it was added or changed, or if it is related to an affected or
+ * removed class: if it refers to it from its constant pool (which covers
+ * callers, field accessors, subclasses and implementors), if it is a direct
+ * supertype of it, or if it belongs to the same top-level class. The
+ * relation is followed transitively, because the method and field summaries
+ * computed by the first pass (the interprocedural databases) of a class
+ * depend on the summaries of the classes it refers to. Warnings of the
+ * previous analysis are kept for all other classes.
+ * <p>
+ * The non-reporting first pass only visits the affected classes and the
+ * classes they refer to, directly or indirectly, so that their summaries are
+ * the same as in a full analysis. In the reporting passes, detectors which
+ * need to see all classes before they can report anything (the detectors
+ * which are not partitionable; see DetectorFactory.isPartitionable()) are
+ * still applied to every application class, and warnings which only they
+ * report are never kept from the previous analysis.
+ *
+ * @see IFindBugsEngine#setIncrementalAnalysis(IncrementalAnalysis)
+ */
+public class IncrementalAnalysis {
+    private static final boolean DEBUG = SystemProperties.getBoolean("findbugs.incremental.debug");
+
+    private final SortedBugCollection previousResults;
+
+    private final Set<ClassDescriptor> addedClasses = new HashSet<ClassDescriptor>();
+
+    private final Set<ClassDescriptor> changedClasses = new HashSet<ClassDescriptor>();
+
+    private final Set<ClassDescriptor> removedClasses = new HashSet<ClassDescriptor>();
+
+    private Set<ClassDescriptor> affectedClasses;
+
+    private Set<ClassDescriptor> supportClasses;
+
+    /**
+     * Constructor.
+     *
+     * @param previousResults
+     *            results of the previous analysis of the application
+     */
+    public IncrementalAnalysis(SortedBugCollection previousResults) {
+        this.previousResults = previousResults;
+    }
+
+    /**
+     * Note that a class was added to the application.
+     */
+    public void classAdded(ClassDescriptor classDescriptor) {
+        addedClasses.add(classDescriptor);
+    }
+
+    /**
+     * Note that an application class was changed.
+     */
+    public void classChanged(ClassDescriptor classDescriptor) {
+        changedClasses.add(classDescriptor);
+    }
+
+    /**
+     * Note that a class was removed from the application.
+     */
+    public void classRemoved(ClassDescriptor classDescriptor) {
+        removedClasses.add(classDescriptor);
+    }
+
+    /**
+     * Read the changed classes from a file. Each line of the file consists of
+     * one of the words "added", "changed" or "removed", followed by the
+     * (dotted) name of a class. Empty lines and lines starting with '#' are
+     * ignored.
+     *
+     * @param fileName
+     *            name of the file
+     * @throws IOException
+     */
+    public void readChangeList(String fileName) throws IOException {
+        BufferedReader reader = new BufferedReader(Util.getReader(new FileInputStream(fileName)));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tuple = line.split("\\s+");
+                if (tuple.length != 2) {
+                    throw new IOException("Invalid change list entry: " + line);
+                }
+                ClassDescriptor classDescriptor = DescriptorFactory.createClassDescriptorFromDottedClassName(tuple[1]);
+                if (tuple[0].equals("added")) {
+                    classAdded(classDescriptor);
+                } else if (tuple[0].equals("changed")) {
+                    classChanged(classDescriptor);
+                } else if (tuple[0].equals("removed")) {
+                    classRemoved(classDescriptor);
+                } else {
+                    throw new IOException("Invalid change list entry: " + line);
+                }
+            }
+        } finally {
+            Util.closeSilently(reader);
+        }
+    }
+
+    /**
+     * @return the results of the previous analysis
+     */
+    public SortedBugCollection getPreviousResults() {
+        return previousResults;
+    }
+
+    /**
+     * Compute the set of application classes affected by the changes. This
+     * must be called once the class hierarchy is known, before any of the
+     * other analysis methods.
+     *
+     * @param appClassList
+     *            the application classes
+     * @param referencedClassSet
+     *            all classes referenced by the application
+     */
+    public void computeAffectedClasses(Collection<ClassDescriptor> appClassList, Collection<ClassDescriptor> referencedClassSet) {
+        Set<ClassDescriptor> appClassSet = new HashSet<ClassDescriptor>(appClassList);
+        Set<ClassDescriptor> seeds = new HashSet<ClassDescriptor>();
+        seeds.addAll(addedClasses);
+        seeds.addAll(changedClasses);
+        seeds.addAll(removedClasses);
+
+        // Index the application classes by the classes they refer to, and by
+        // their top-level class
+        Map<ClassDescriptor, List<ClassDescriptor>> referringClassMap = new HashMap<ClassDescriptor, List<ClassDescriptor>>();
+        Map<String, List<ClassDescriptor>> topLevelClassMap = new HashMap<String, List<ClassDescriptor>>();
+        for (ClassDescriptor classDescriptor : appClassList) {
+            for (ClassDescriptor referencedClass : getReferencedClasses(classDescriptor)) {
+                addTo(referringClassMap, referencedClass, classDescriptor);
+            }
+            addTo(topLevelClassMap, getTopLevelClassName(classDescriptor), classDescriptor);
+        }
+
+        // Follow the relations from the changed classes until no more
+        // classes are reached
+        Set<ClassDescriptor> reached = new HashSet<ClassDescriptor>(seeds);
+        LinkedList<ClassDescriptor> workList = new LinkedList<ClassDescriptor>(seeds);
+        while (!workList.isEmpty()) {
+            ClassDescriptor classDescriptor = workList.removeFirst();
+            List<ClassDescriptor> related = new ArrayList<ClassDescriptor>();
+            addAll(related, referringClassMap.get(classDescriptor));
+            addAll(related, topLevelClassMap.get(getTopLevelClassName(classDescriptor)));
+            if (appClassSet.contains(classDescriptor)) {
+                // Supertypes may be checked against their subtypes
+                try {
+                    XClass xclass = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+                    if (xclass.getSuperclassDescriptor() != null) {
+                        related.add(xclass.getSuperclassDescriptor());
+                    }
+                    related.addAll(Arrays.asList(xclass.getInterfaceDescriptorList()));
+                } catch (CheckedAnalysisException e) {
+                    AnalysisContext.logError("Error computing classes affected by change to " + classDescriptor, e);
+                }
+            }
+            for (ClassDescriptor relatedClass : related) {
+                if (appClassSet.contains(relatedClass) && reached.add(relatedClass)) {
+                    workList.add(relatedClass);
+                }
+            }
+        }
+        reached.retainAll(appClassSet);
+        affectedClasses = reached;
+
+        // Classes whose summaries the affected classes may use
+        Set<ClassDescriptor> support = new HashSet<ClassDescriptor>(affectedClasses);
+        workList = new LinkedList<ClassDescriptor>(affectedClasses);
+        while (!workList.isEmpty()) {
+            for (ClassDescriptor referencedClass : getReferencedClasses(workList.removeFirst())) {
+                if (referencedClassSet.contains(referencedClass) && support.add(referencedClass)) {
+                    workList.add(referencedClass);
+                }
+            }
+        }
+        support.retainAll(referencedClassSet);
+        supportClasses = support;
+
+        if (DEBUG) {
+            System.out.println(seeds.size() + " changed classes affect " + affectedClasses.size() + " of "
+                    + appClassList.size() + " application classes; " + supportClasses.size()
+                    + " classes will be visited by the first pass");
+        }
+    }
+
+    /**
+     * Determine whether all detectors should be applied to a class.
+     *
+     * @param classDescriptor
+     *            an application class
+     * @return true if the class is affected by the changes, false if only
+     *         detectors which need to see every class should be applied to
+     *         it
+     */
+    public boolean isAffected(ClassDescriptor classDescriptor) {
+        return affectedClasses.contains(classDescriptor);
+    }
+
+    /**
+     * Select the classes the non-reporting first pass must visit: the
+     * affected classes and the classes they refer to.
+     *
+     * @param classCollection
+     *            the classes the first pass would visit in a full analysis
+     * @return the classes to visit, in the same order
+     */
+    public List<ClassDescriptor> selectSupportClasses(Collection<ClassDescriptor> classCollection) {
+        List<ClassDescriptor> result = new ArrayList<ClassDescriptor>();
+        for (ClassDescriptor classDescriptor : classCollection) {
+            if (supportClasses.contains(classDescriptor)) {
+                result.add(classDescriptor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Report the warnings of the previous analysis which are still valid: those
+     * on application classes which were not affected by the changes. Warnings
+     * without a primary class cannot be shown to be on an unaffected class, so
+     * they are not kept; they are found again only if the detector reporting
+     * them sees their cause again.
+     *
+     * @param bugReporter
+     *            the BugReporter to report the warnings to
+     * @param appClassList
+     *            the application classes
+     * @param recomputedBugTypes
+     *            bug types which are reported only by detectors which have
+     *            been applied to all classes again; warnings of these types
+     *            are not reported
+     * @return the number of warnings reported
+     */
+    public int reportRetainedBugs(BugReporter bugReporter, Collection<ClassDescriptor> appClassList,
+            Set<String> recomputedBugTypes) {
+        Set<ClassDescriptor> appClassSet = new HashSet<ClassDescriptor>(appClassList);
+        int count = 0;
+        for (BugInstance bug : previousResults.getCollection()) {
+            if (bug.isDead() || recomputedBugTypes.contains(bug.getType())) {
+                continue;
+            }
+            ClassAnnotation primaryClassAnnotation = bug.getPrimaryClass();
+            if (primaryClassAnnotation == null) {
+                continue;
+            }
+            ClassDescriptor primaryClass = DescriptorFactory.createClassDescriptorFromDottedClassName(primaryClassAnnotation
+                    .getClassName());
+            if (appClassSet.contains(primaryClass) && !affectedClasses.contains(primaryClass)) {
+                bugReporter.reportBug((BugInstance) bug.clone());
+                count++;
+            }
+        }
+        if (DEBUG) {
+            System.out.println(count + " warnings kept from previous analysis");
+        }
+        return count;
+    }
+
+    private static Collection<ClassDescriptor> getReferencedClasses(ClassDescriptor classDescriptor) {
+        try {
+            XClass xclass = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+            if (xclass instanceof ClassNameAndSuperclassInfo) {
+                return ((ClassNameAndSuperclassInfo) xclass).getReferencedClassDescriptorList();
+            }
+        } catch (CheckedAnalysisException e) {
+            AnalysisContext.logError("Error getting classes referenced by " + classDescriptor, e);
+        }
+        return Collections.<ClassDescriptor> emptyList();
+    }
+
+    private static <K> void addTo(Map<K, List<ClassDescriptor>> map, K key, ClassDescriptor classDescriptor) {
+        List<ClassDescriptor> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<ClassDescriptor>();
+            map.put(key, list);
+        }
+        list.add(classDescriptor);
+    }
+
+    private static void addAll(List<ClassDescriptor> list, @CheckForNull List<ClassDescriptor> toAdd) {
+        if (toAdd != null) {
+            list.addAll(toAdd);
+        }
+    }
+
+    private static String getTopLevelClassName(ClassDescriptor classDescriptor) {
+        String className = classDescriptor.getClassName();
+        int dollar = className.indexOf('$');
+        return dollar >= 0 ? className.substring(0, dollar) : className;
+    }
+}
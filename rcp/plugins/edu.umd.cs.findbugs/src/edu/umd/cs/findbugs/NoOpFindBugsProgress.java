@@ -26,4 +26,8 @@ public class NoOpFindBugsProgress implements FindBugsProgress {
     public void startArchive(String name) {
         // noop
     }
+
+    public void reportCodeBaseTime(String name, long elapsedMillis) {
+        // noop
+    }
 }
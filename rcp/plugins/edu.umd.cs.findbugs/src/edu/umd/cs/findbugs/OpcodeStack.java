@@ -24,7 +24,9 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -111,6 +113,14 @@ public class OpcodeStack implements Constants2 {
 
     private boolean top;
 
+    /**
+     * Arrays of the StateTrace states last restored into this stack, if the
+     * stack is being replayed.
+     */
+    private Item[] replayedStack, replayedLocals;
+
+    private Integer[] replayedLastUpdate;
+
     static class HttpParameterInjection {
         HttpParameterInjection(String parameterName, int pc) {
             this.parameterName = parameterName;
@@ -2554,6 +2564,546 @@ public class OpcodeStack implements Constants2 {
         }
     }
 
+    /**
+     * States of the opcode stack before each instruction of a method, as seen
+     * by OpcodeStackDetector.sawOpcode(), recorded by a single simulation of
+     * the method. OpcodeStackDetectors replay these states rather than each
+     * simulating the stack again, when the
+     * AnalysisFeatures.SHARE_OPCODE_STACK_STATES property is set.
+     * <p>
+     * Consecutive states share the arrays which did not change. The
+     * simulation changes some items in place after they are recorded, so the
+     * states hold copies of the items, which consecutive states share as long
+     * as the items do not change. The items are copied again when they are
+     * restored, so a detector changing them doesn't change the recorded
+     * states. The state of the simulation which the detector can observe,
+     * such as whether the instruction is only reached by a branch, is
+     * recorded along with the stack.
+     */
+    public static class StateTrace {
+        private final Item[][] stackAt;
+
+        private final Item[][] localsAt;
+
+        private final Integer[][] lastUpdateAt;
+
+        private final BitSet topAt = new BitSet();
+
+        private final BitSet reachOnlyByBranchAt = new BitSet();
+
+        private final BitSet seenTransferOfControlAt = new BitSet();
+
+        private final BitSet oneMeansNullAt = new BitSet();
+
+        private final int[] zeroOneComingAt;
+
+        /**
+         * convertJumpToOneZeroState in the low 2 bits and
+         * convertJumpToZeroOneState in the next 2 bits.
+         */
+        private final byte[] convertJumpStatesAt;
+
+        private Map<Integer, List<Item>> jumpEntries;
+
+        private Map<Integer, List<Item>> jumpStackEntries;
+
+        private BitSet jumpEntryLocations;
+
+        private BitSet exceptionHandlers;
+
+        /** The items of the previous state recorded, before copying. */
+        private final ArrayList<Item> lastLiveStack = new ArrayList<Item>();
+
+        private final ArrayList<Item> lastLiveLocals = new ArrayList<Item>();
+
+        private Item[] lastStack;
+
+        private Item[] lastLocals;
+
+        private Integer[] lastLastUpdate;
+
+        StateTrace(int codeLength) {
+            stackAt = new Item[codeLength][];
+            localsAt = new Item[codeLength][];
+            lastUpdateAt = new Integer[codeLength][];
+            zeroOneComingAt = new int[codeLength];
+            convertJumpStatesAt = new byte[codeLength];
+        }
+
+        /**
+         * Record the state of the stack before the instruction at given pc.
+         */
+        void record(OpcodeStack s, int pc) {
+            topAt.set(pc, s.top);
+            reachOnlyByBranchAt.set(pc, s.reachOnlyByBranch);
+            seenTransferOfControlAt.set(pc, s.seenTransferOfControl);
+            oneMeansNullAt.set(pc, s.oneMeansNull);
+            zeroOneComingAt[pc] = s.zeroOneComing;
+            convertJumpStatesAt[pc] = (byte) (s.convertJumpToOneZeroState | s.convertJumpToZeroOneState << 2);
+            stackAt[pc] = lastStack = share(s.stack, lastLiveStack, lastStack);
+            localsAt[pc] = lastLocals = share(s.lvValues, lastLiveLocals, lastLocals);
+            lastUpdateAt[pc] = lastLastUpdate = share(s.lastUpdate, lastLastUpdate);
+        }
+
+        /**
+         * Record what the stack learned about the jumps in the method, once
+         * the method has been simulated.
+         */
+        void finish(OpcodeStack s) {
+            jumpEntries = s.jumpEntries;
+            jumpStackEntries = s.jumpStackEntries;
+            jumpEntryLocations = s.jumpEntryLocations;
+            exceptionHandlers = s.exceptionHandlers;
+            lastLiveStack.clear();
+            lastLiveLocals.clear();
+            lastStack = lastLocals = null;
+            lastLastUpdate = null;
+        }
+
+        /**
+         * Items with a special kind may be changed in place through any of
+         * the places they are in, so they must stay the same object.
+         */
+        private static boolean mayChangeInPlace(@CheckForNull Item item) {
+            return item != null && item.specialKind != Item.NOT_SPECIAL;
+        }
+
+        private static boolean isUnchanged(@CheckForNull Item item, @CheckForNull Item recorded) {
+            if (item == null || recorded == null)
+                return item == recorded;
+            return item.pc == recorded.pc && item.equals(recorded);
+        }
+
+        private static Item copyOf(Item item) {
+            Item copy = new Item(item);
+            copy.fieldLoadedFromRegister = item.fieldLoadedFromRegister;
+            return copy;
+        }
+
+        private static Item[] share(List<Item> items, ArrayList<Item> lastLive, @CheckForNull Item[] last) {
+            int n = items.size();
+            boolean same = last != null && last.length == n;
+            for (int i = 0; same && i < n; i++) {
+                Item item = items.get(i);
+                same = item == lastLive.get(i) && isUnchanged(item, last[i]);
+            }
+            if (same) {
+                return last;
+            }
+            Item[] result = new Item[n];
+            for (int i = 0; i < n; i++) {
+                Item item = items.get(i);
+                if (item == null) {
+                    continue;
+                }
+                if (mayChangeInPlace(item)) {
+                    // Keep items which are the same object the same object
+                    for (int j = 0; j < i; j++) {
+                        if (items.get(j) == item) {
+                            result[i] = result[j];
+                            break;
+                        }
+                    }
+                    if (result[i] != null) {
+                        continue;
+                    }
+                }
+                if (last != null && i < last.length && item == lastLive.get(i) && isUnchanged(item, last[i])) {
+                    result[i] = last[i];
+                } else {
+                    result[i] = copyOf(item);
+                }
+            }
+            lastLive.clear();
+            lastLive.addAll(items);
+            return result;
+        }
+
+        private static Integer[] share(List<Integer> lastUpdate, @CheckForNull Integer[] last) {
+            int n = lastUpdate.size();
+            boolean same = last != null && last.length == n;
+            for (int i = 0; same && i < n; i++) {
+                same = last[i].intValue() == lastUpdate.get(i).intValue();
+            }
+            return same ? last : lastUpdate.toArray(new Integer[n]);
+        }
+
+        /**
+         * Copy recorded items into a stack, keeping items with a special kind
+         * which are the same object the same object.
+         */
+        private static void copyItems(Item[] recorded, List<Item> items) {
+            for (int i = 0; i < recorded.length; i++) {
+                Item item = recorded[i];
+                Item copy = null;
+                if (mayChangeInPlace(item)) {
+                    for (int j = 0; j < i && copy == null; j++) {
+                        if (recorded[j] == item) {
+                            copy = items.get(j);
+                        }
+                    }
+                }
+                if (copy == null && item != null) {
+                    copy = copyOf(item);
+                }
+                items.add(copy);
+            }
+        }
+
+        /**
+         * Prepare a stack to have the recorded states restored into it.
+         *
+         * @param s
+         *            the stack
+         * @param visitor
+         *            the visitor scanning the method
+         */
+        public void startReplay(OpcodeStack s, DismantleBytecode visitor) {
+            s.v = visitor;
+            s.initialize();
+            s.methodName = visitor.getMethodName();
+            s.jumpEntries = jumpEntries;
+            s.jumpStackEntries = jumpStackEntries;
+            s.jumpEntryLocations = jumpEntryLocations;
+            s.exceptionHandlers = exceptionHandlers;
+            s.stack.clear();
+            s.lvValues.clear();
+            s.replayedStack = s.replayedLocals = null;
+            s.replayedLastUpdate = null;
+        }
+
+        /**
+         * Restore the recorded state before the instruction at given pc.
+         *
+         * @param s
+         *            the stack, prepared by startReplay()
+         * @param pc
+         *            the pc of the instruction
+         */
+        public void restore(OpcodeStack s, int pc) {
+            s.top = topAt.get(pc);
+            Item[] stack = stackAt[pc];
+            if (stack == null) {
+                // Not reached by the simulation
+                s.top = true;
+                return;
+            }
+            s.reachOnlyByBranch = reachOnlyByBranchAt.get(pc);
+            s.seenTransferOfControl = seenTransferOfControlAt.get(pc);
+            s.oneMeansNull = oneMeansNullAt.get(pc);
+            s.zeroOneComing = zeroOneComingAt[pc];
+            s.convertJumpToOneZeroState = convertJumpStatesAt[pc] & 3;
+            s.convertJumpToZeroOneState = convertJumpStatesAt[pc] >> 2;
+            // The state was recorded once the jumps were merged
+            s.needToMerge = false;
+            if (stack != s.replayedStack) {
+                s.stack.clear();
+                copyItems(stack, s.stack);
+                s.replayedStack = stack;
+            }
+            Item[] locals = localsAt[pc];
+            if (locals != s.replayedLocals) {
+                s.lvValues.clear();
+                copyItems(locals, s.lvValues);
+                s.replayedLocals = locals;
+            }
+            Integer[] lastUpdate = lastUpdateAt[pc];
+            if (lastUpdate != s.replayedLastUpdate) {
+                s.lastUpdate.clear();
+                Collections.addAll(s.lastUpdate, lastUpdate);
+                s.replayedLastUpdate = lastUpdate;
+            }
+        }
+    }
+
+    public static class StateTraceFactory extends AnalysisFactory<StateTrace> {
+
+        public StateTraceFactory() {
+            super("Recorded opcode stack states", StateTrace.class);
+        }
+
+        public StateTrace analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor) throws CheckedAnalysisException {
+            Method method = analysisCache.getMethodAnalysis(Method.class, descriptor);
+            JavaClass jclass = getJavaClass(analysisCache, descriptor.getClassDescriptor());
+
+            Code code = method.getCode();
+            if (code == null) {
+                return null;
+            }
+            final OpcodeStack stack = new OpcodeStack();
+            final StateTrace trace = new StateTrace(code.getCode().length);
+
+            // Simulate the stack as OpcodeStackDetector does
+            DismantleBytecode recorder = new DismantleBytecode() {
+                @Override
+                public void visitCode(Code obj) {
+                    stack.resetForMethodEntry(this);
+                    super.visitCode(obj);
+                }
+
+                @Override
+                public boolean beforeOpcode(int seen) {
+                    stack.precomputation(this);
+                    stack.mergeJumps(this);
+                    trace.record(stack, getPC());
+                    return !stack.isTop();
+                }
+
+                @Override
+                public void afterOpcode(int seen) {
+                    stack.sawOpcode(this, seen);
+                }
+            };
+            recorder.setupVisitorForClass(jclass);
+            recorder.doVisitMethod(method);
+            trace.finish(stack);
+            return trace;
+        }
+    }
+
+    /**
+     * Snapshots of the opcode stack of a method, recorded by a single
+     * simulation of the method at its entry, at its jump targets and exception
+     * handlers, and before each call. The state of the stack before any other
+     * instruction is found by simulating the method from the nearest snapshot
+     * before it; since the instructions in between are not jump targets, this
+     * gives the same state as simulating the whole method.
+     * <p>
+     * Detectors which need the stack at some other location than the one
+     * they are scanning can get the Snapshots of a method from the analysis
+     * cache. Snapshots share the arrays which did not change since the
+     * previous snapshot, as in StateTrace.
+     */
+    public static class Snapshots {
+        /**
+         * State of the stack, and of the simulation, at a snapshot.
+         */
+        private static class State {
+            final Item[] stack;
+
+            final Item[] locals;
+
+            final Integer[] lastUpdate;
+
+            final boolean top;
+
+            final boolean reachOnlyByBranch;
+
+            final boolean seenTransferOfControl;
+
+            final int convertJumpToOneZeroState;
+
+            final int convertJumpToZeroOneState;
+
+            final int zeroOneComing;
+
+            final boolean oneMeansNull;
+
+            State(OpcodeStack s, Item[] stack, Item[] locals, Integer[] lastUpdate) {
+                this.stack = stack;
+                this.locals = locals;
+                this.lastUpdate = lastUpdate;
+                this.top = s.top;
+                this.reachOnlyByBranch = s.reachOnlyByBranch;
+                this.seenTransferOfControl = s.seenTransferOfControl;
+                this.convertJumpToOneZeroState = s.convertJumpToOneZeroState;
+                this.convertJumpToZeroOneState = s.convertJumpToZeroOneState;
+                this.zeroOneComing = s.zeroOneComing;
+                this.oneMeansNull = s.oneMeansNull;
+            }
+        }
+
+        private final JavaClass jclass;
+
+        private final Method method;
+
+        private int[] snapshotPC;
+
+        private State[] snapshots;
+
+        private int count;
+
+        /** The items of the previous snapshot recorded, before copying. */
+        private final ArrayList<Item> lastLiveStack = new ArrayList<Item>();
+
+        private final ArrayList<Item> lastLiveLocals = new ArrayList<Item>();
+
+        private Item[] lastStack;
+
+        private Item[] lastLocals;
+
+        private Integer[] lastLastUpdate;
+
+        Snapshots(JavaClass jclass, Method method, int codeLength) {
+            this.jclass = jclass;
+            this.method = method;
+            snapshotPC = new int[codeLength];
+            snapshots = new State[codeLength];
+        }
+
+        /**
+         * Should a snapshot be recorded before the instruction at given pc?
+         */
+        static boolean isSnapshotLocation(OpcodeStack s, int pc, int opcode) {
+            switch (opcode) {
+            case INVOKEVIRTUAL:
+            case INVOKESPECIAL:
+            case INVOKESTATIC:
+            case INVOKEINTERFACE:
+                return true;
+            default:
+                return pc == 0 || s.jumpEntryLocations.get(pc) || s.exceptionHandlers.get(pc);
+            }
+        }
+
+        /**
+         * Record the state of the stack before the instruction at given pc.
+         */
+        void record(OpcodeStack s, int pc) {
+            lastStack = StateTrace.share(s.stack, lastLiveStack, lastStack);
+            lastLocals = StateTrace.share(s.lvValues, lastLiveLocals, lastLocals);
+            lastLastUpdate = StateTrace.share(s.lastUpdate, lastLastUpdate);
+            snapshotPC[count] = pc;
+            snapshots[count] = new State(s, lastStack, lastLocals, lastLastUpdate);
+            count++;
+        }
+
+        void finish() {
+            snapshotPC = Arrays.copyOf(snapshotPC, count);
+            snapshots = Arrays.copyOf(snapshots, count);
+            lastLiveStack.clear();
+            lastLiveLocals.clear();
+            lastStack = lastLocals = null;
+            lastLastUpdate = null;
+        }
+
+        /**
+         * @return the number of snapshots recorded
+         */
+        public int getSnapshotCount() {
+            return count;
+        }
+
+        /**
+         * Get the state of the stack before the instruction at given pc, as
+         * an OpcodeStackDetector sees it in sawOpcode(). The instructions
+         * between the nearest snapshot and the pc are simulated.
+         * <p>
+         * The OpcodeStack returned holds the stack and local values at the
+         * pc. It knows only of the jumps made by the instructions simulated,
+         * and should not be used to simulate further instructions.
+         *
+         * @param pc
+         *            the pc of an instruction of the method
+         * @return a new OpcodeStack holding the state before the instruction
+         * @throws IllegalArgumentException
+         *             if there is no instruction at the pc
+         */
+        public OpcodeStack getStackAt(final int pc) {
+            int index = Arrays.binarySearch(snapshotPC, pc);
+            if (index < 0)
+                index = -index - 2;
+            if (index < 0)
+                throw new IllegalArgumentException("No instruction at pc " + pc + " of " + method);
+            final int fromPC = snapshotPC[index];
+            final OpcodeStack s = new OpcodeStack();
+            s.initialize();
+            s.methodName = method.getName();
+            restore(s, snapshots[index]);
+
+            DismantleBytecode simulator = new DismantleBytecode() {
+                @Override
+                public void visit(Code obj) {
+                    visitInstructions(obj, fromPC, pc + 1);
+                }
+
+                @Override
+                public boolean beforeOpcode(int seen) {
+                    s.precomputation(this);
+                    s.mergeJumps(this);
+                    return false;
+                }
+
+                @Override
+                public void afterOpcode(int seen) {
+                    if (getPC() < pc)
+                        s.sawOpcode(this, seen);
+                }
+
+                @Override
+                public void sawOpcode(int seen) {
+                }
+            };
+            s.v = simulator;
+            simulator.setupVisitorForClass(jclass);
+            simulator.doVisitMethod(method);
+            if (simulator.getPC() != pc)
+                throw new IllegalArgumentException("No instruction at pc " + pc + " of " + method);
+            return s;
+        }
+
+        private static void restore(OpcodeStack s, State state) {
+            s.top = state.top;
+            s.reachOnlyByBranch = state.reachOnlyByBranch;
+            s.seenTransferOfControl = state.seenTransferOfControl;
+            s.convertJumpToOneZeroState = state.convertJumpToOneZeroState;
+            s.convertJumpToZeroOneState = state.convertJumpToZeroOneState;
+            s.zeroOneComing = state.zeroOneComing;
+            s.oneMeansNull = state.oneMeansNull;
+            // The snapshot was taken once the jumps were merged
+            s.needToMerge = false;
+            StateTrace.copyItems(state.stack, s.stack);
+            StateTrace.copyItems(state.locals, s.lvValues);
+            Collections.addAll(s.lastUpdate, state.lastUpdate);
+        }
+    }
+
+    public static class SnapshotsFactory extends AnalysisFactory<Snapshots> {
+
+        public SnapshotsFactory() {
+            super("Opcode stack snapshots", Snapshots.class);
+        }
+
+        public Snapshots analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor) throws CheckedAnalysisException {
+            Method method = analysisCache.getMethodAnalysis(Method.class, descriptor);
+            JavaClass jclass = getJavaClass(analysisCache, descriptor.getClassDescriptor());
+
+            Code code = method.getCode();
+            if (code == null) {
+                return null;
+            }
+            final OpcodeStack stack = new OpcodeStack();
+            final Snapshots snapshots = new Snapshots(jclass, method, code.getCode().length);
+
+            // Simulate the stack as OpcodeStackDetector does
+            DismantleBytecode recorder = new DismantleBytecode() {
+                @Override
+                public void visitCode(Code obj) {
+                    stack.resetForMethodEntry(this);
+                    super.visitCode(obj);
+                }
+
+                @Override
+                public boolean beforeOpcode(int seen) {
+                    stack.precomputation(this);
+                    stack.mergeJumps(this);
+                    if (Snapshots.isSnapshotLocation(stack, getPC(), seen))
+                        snapshots.record(stack, getPC());
+                    return !stack.isTop();
+                }
+
+                @Override
+                public void afterOpcode(int seen) {
+                    stack.sawOpcode(this, seen);
+                }
+            };
+            recorder.setupVisitorForClass(jclass);
+            recorder.doVisitMethod(method);
+            snapshots.finish();
+            return snapshots;
+        }
+    }
+
     public boolean isJumpTarget(int pc) {
         return jumpEntryLocations.get(pc);
     }
@@ -2589,11 +3139,23 @@ public class OpcodeStack implements Constants2 {
     DismantleBytecode v;
 
     public void learnFrom(JumpInfo info) {
-        jumpEntries = new HashMap<Integer, List<Item>>(info.jumpEntries);
-        jumpStackEntries = new HashMap<Integer, List<Item>>(info.jumpStackEntries);
+        jumpEntries = copyJumpEntries(info.jumpEntries);
+        jumpStackEntries = copyJumpEntries(info.jumpStackEntries);
         jumpEntryLocations = (BitSet) info.jumpEntryLocations.clone();
     }
 
+    /**
+     * Copy jump entries, so that merging the values jumping to a target does
+     * not change the JumpInfo, which is shared by all simulations of the
+     * method.
+     */
+    private static Map<Integer, List<Item>> copyJumpEntries(Map<Integer, List<Item>> entries) {
+        Map<Integer, List<Item>> result = new HashMap<Integer, List<Item>>();
+        for (Map.Entry<Integer, List<Item>> e : entries.entrySet())
+            result.put(e.getKey(), new ArrayList<Item>(e.getValue()));
+        return result;
+    }
+
     public void initialize() {
         setTop(false);
         jumpEntries.clear();
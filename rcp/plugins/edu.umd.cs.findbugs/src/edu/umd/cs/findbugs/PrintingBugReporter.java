@@ -65,6 +65,10 @@ public class PrintingBugReporter extends TextUIBugReporter {
     class PrintingCommandLine extends CommandLine {
         private String stylesheet = null;
 
+        private File htmlPagesDirectory = null;
+
+        private int numThreads = SystemProperties.getInt("findbugs.threads", 1);
+
         private boolean annotationUploadFormat = false;
 
         private int maxRank = 20;
@@ -84,6 +88,8 @@ public class PrintingBugReporter extends TextUIBugReporter {
             addSwitch("-applySuppression", "exclude any bugs that match suppression filters");
             addSwitch("-annotationUpload", "generate annotations in upload format");
             addSwitchWithOptionalExtraPart("-html", "stylesheet", "Generate HTML output (default stylesheet is default.xsl)");
+            addOption("-htmlPages", "directory", "with -html, write a page for each package to directory, and an index to the output, to be saved in directory");
+            addOption("-threads", "count", "number of threads writing HTML pages (default=1)");
             addOption("-pluginList", "jar1[" + File.pathSeparator + "jar2...]", "specify list of plugin Jar files to load");
         }
 
@@ -129,6 +135,12 @@ public class PrintingBugReporter extends TextUIBugReporter {
                 maxRank = Integer.parseInt(argument);
             } else if (option.equals("-summarizeMaxRank")) {
                 summarizeMaxRank = Integer.parseInt(argument);
+            } else if (option.equals("-htmlPages")) {
+                htmlPagesDirectory = new File(argument);
+            } else if (option.equals("-threads")) {
+                numThreads = Integer.parseInt(argument);
+                if (numThreads < 1)
+                    throw new IllegalArgumentException("number of threads must be at least 1 (saw " + argument + ")");
             } else {
                 throw new IllegalStateException();
             }
@@ -148,7 +160,8 @@ public class PrintingBugReporter extends TextUIBugReporter {
         if (commandLine.stylesheet != null) {
             // actually do xsl via HTMLBugReporter instead of
             // PrintingBugReporter
-            xslt(commandLine.stylesheet, reporter.isApplySuppressions(), args, argCount);
+            xslt(commandLine.stylesheet, reporter.isApplySuppressions(), args, argCount, commandLine.htmlPagesDirectory,
+                    commandLine.numThreads);
             return;
         }
 
@@ -221,8 +234,24 @@ public class PrintingBugReporter extends TextUIBugReporter {
     }
 
     public static void xslt(String stylesheet, boolean applySuppression, String[] args, int argCount) throws Exception {
+        xslt(stylesheet, applySuppression, args, argCount, null, 1);
+    }
+
+    /**
+     * Transform bug results to HTML.
+     *
+     * @param htmlPagesDirectory
+     *            directory to write a page for each package to, or null to
+     *            write one page
+     * @param numThreads
+     *            number of threads writing pages
+     */
+    public static void xslt(String stylesheet, boolean applySuppression, String[] args, int argCount,
+            @CheckForNull File htmlPagesDirectory, int numThreads) throws Exception {
         Project proj = new Project();
         HTMLBugReporter reporter = new HTMLBugReporter(proj, stylesheet);
+        reporter.setPackagePagesDirectory(htmlPagesDirectory);
+        reporter.setNumThreads(numThreads);
         BugCollection bugCollection = reporter.getBugCollection();
 
         bugCollection.setApplySuppressions(applySuppression);
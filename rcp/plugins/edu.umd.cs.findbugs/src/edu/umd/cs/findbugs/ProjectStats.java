@@ -74,6 +74,10 @@ public class ProjectStats implements XMLWriteable, Cloneable {
 
     private int referencedClasses;
 
+    private int skippedMethods;
+
+    private int degradedMethods;
+
     private int totalSize;
 
     private int totalSizeFromPackageStats;
@@ -352,6 +356,10 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         xmlOutput.addAttribute("timestamp", new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.ENGLISH).format(analysisTimestamp));
         xmlOutput.addAttribute("total_classes", String.valueOf(getNumClasses()));
         xmlOutput.addAttribute("referenced_classes", String.valueOf(referencedClasses));
+        if (skippedMethods > 0)
+            xmlOutput.addAttribute("skipped_methods", String.valueOf(skippedMethods));
+        if (degradedMethods > 0)
+            xmlOutput.addAttribute("degraded_methods", String.valueOf(degradedMethods));
 
         xmlOutput.addAttribute("total_bugs", String.valueOf(totalErrors[0]));
         xmlOutput.addAttribute("total_size", String.valueOf(getCodeSize()));
@@ -511,6 +519,8 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         totalClasses += stats2.getNumClasses();
         for (int i = 0; i < totalErrors.length; i++)
             totalErrors[i] += stats2.totalErrors[i];
+        skippedMethods += stats2.skippedMethods;
+        degradedMethods += stats2.degradedMethods;
 
         if (stats2.hasPackageStats)
             hasPackageStats = true;
@@ -542,6 +552,43 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         return this.referencedClasses;
     }
 
+    /**
+     * Report that the analysis of a method was skipped.
+     */
+    public void addSkippedMethod() {
+        skippedMethods++;
+    }
+
+    public void setSkippedMethods(int skippedMethods) {
+        this.skippedMethods = skippedMethods;
+    }
+
+    /**
+     * @return number of methods whose analysis was skipped
+     */
+    public int getSkippedMethods() {
+        return skippedMethods;
+    }
+
+    /**
+     * Report that a method was analyzed in a degraded way, because it is
+     * huge.
+     */
+    public void addDegradedMethod() {
+        degradedMethods++;
+    }
+
+    public void setDegradedMethods(int degradedMethods) {
+        this.degradedMethods = degradedMethods;
+    }
+
+    /**
+     * @return number of methods analyzed in a degraded way
+     */
+    public int getDegradedMethods() {
+        return degradedMethods;
+    }
+
     /**
      * @return Returns the project profiler instance, never null
      */
@@ -20,6 +20,7 @@
 package edu.umd.cs.findbugs;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -94,6 +95,13 @@ public class SAXBugCollectionHandler extends DefaultHandler {
 
     private final MapCache<String, String> cache = new MapCache<String, String>(2000);
 
+    /**
+     * SourceLineAnnotations read so far, so that equal ones are shared. Bugs
+     * in the same class, and the same bug in each version of a history, have
+     * many in common.
+     */
+    private final Map<SourceLineKey, SourceLineAnnotation> sourceLines = new HashMap<SourceLineKey, SourceLineAnnotation>();
+
     private final ArrayList<String> elementStack;
 
     private final StringBuilder textBuffer;
@@ -117,6 +125,9 @@ public class SAXBugCollectionHandler extends DefaultHandler {
 
     private String cloudPropertyKey;
 
+    private @CheckForNull
+    BugInstanceVisitor bugInstanceVisitor;
+
     private SAXBugCollectionHandler(String topLevelName, BugCollection bugCollection, Project project,
             @CheckForNull File base) {
         this.topLevelName = topLevelName;
@@ -134,6 +145,23 @@ public class SAXBugCollectionHandler extends DefaultHandler {
         this(BUG_COLLECTION, bugCollection, bugCollection.getProject(), base);
     }
 
+    /**
+     * Constructor for a handler which passes each BugInstance to a visitor,
+     * rather than adding it to the BugCollection. Everything else is read into
+     * the BugCollection as usual.
+     *
+     * @param bugCollection
+     *            the BugCollection
+     * @param base
+     *            the file being read, if any
+     * @param bugInstanceVisitor
+     *            visitor for the BugInstances
+     */
+    public SAXBugCollectionHandler(BugCollection bugCollection, @CheckForNull File base, BugInstanceVisitor bugInstanceVisitor) {
+        this(BUG_COLLECTION, bugCollection, bugCollection.getProject(), base);
+        this.bugInstanceVisitor = bugInstanceVisitor;
+    }
+
     public SAXBugCollectionHandler(BugCollection bugCollection) {
         this(BUG_COLLECTION, bugCollection, bugCollection.getProject(), null);
     }
@@ -307,6 +335,12 @@ public class SAXBugCollectionHandler extends DefaultHandler {
                         String referencedClasses = getOptionalAttribute(attributes, "referenced_classes");
                         if (referencedClasses != null && referencedClasses.length() > 0)
                             bugCollection.getProjectStats().setReferencedClasses(Integer.parseInt(referencedClasses));
+                        String skippedMethods = getOptionalAttribute(attributes, "skipped_methods");
+                        if (skippedMethods != null && skippedMethods.length() > 0)
+                            bugCollection.getProjectStats().setSkippedMethods(Integer.parseInt(skippedMethods));
+                        String degradedMethods = getOptionalAttribute(attributes, "degraded_methods");
+                        if (degradedMethods != null && degradedMethods.length() > 0)
+                            bugCollection.getProjectStats().setDegradedMethods(Integer.parseInt(degradedMethods));
                         bugCollection.getProjectStats().setVMVersion(vmVersion);
                         try {
                             bugCollection.getProjectStats().setTimestamp(timestamp);
@@ -321,7 +355,7 @@ public class SAXBugCollectionHandler extends DefaultHandler {
                     if (qName.equals("SourceLine")) {
                         // package member elements can contain nested SourceLine
                         // elements.
-                        bugAnnotationWithSourceLines.setSourceLines(createSourceLineAnnotation(qName, attributes));
+                        bugAnnotationWithSourceLines.setSourceLines(share(createSourceLineAnnotation(qName, attributes)));
                     }
                 } else if (outerElement.equals(BugCollection.ERRORS_ELEMENT_NAME)) {
                     if (qName.equals(BugCollection.ANALYSIS_ERROR_ELEMENT_NAME) || qName.equals(BugCollection.ERROR_ELEMENT_NAME)) {
@@ -545,8 +579,11 @@ public class SAXBugCollectionHandler extends DefaultHandler {
 
         } else if (qName.equals("SourceLine")) {
             SourceLineAnnotation sourceAnnotation = createSourceLineAnnotation(qName, attributes);
-            if (!sourceAnnotation.isSynthetic())
-                bugAnnotation = sourceAnnotation;
+            if (!sourceAnnotation.isSynthetic()) {
+                // The role must be set before the annotation is shared
+                setAnnotationRole(attributes, sourceAnnotation);
+                bugAnnotation = share(sourceAnnotation);
+            }
         } else if (qName.equals("Int")) {
             try {
                 String value = getRequiredAttribute(attributes, "value", qName);
@@ -594,10 +631,8 @@ public class SAXBugCollectionHandler extends DefaultHandler {
             throw new SAXException("Unknown bug annotation named " + qName);
 
         if (bugAnnotation != null) {
-            String role = getOptionalAttribute(attributes, "role");
-            if (role != null)
-                bugAnnotation.setDescription(role);
-            setAnnotationRole(attributes, bugAnnotation);
+            if (!(bugAnnotation instanceof SourceLineAnnotation))
+                setAnnotationRole(attributes, bugAnnotation);
             bugInstance.add(bugAnnotation);
         }
     }
@@ -670,6 +705,57 @@ public class SAXBugCollectionHandler extends DefaultHandler {
         }
     }
 
+    /**
+     * Get a SourceLineAnnotation equal to the given one, in every field, that
+     * was read before, or the given one if there is none. The annotations
+     * returned are shared by the BugInstances read, so they must not be
+     * modified.
+     */
+    private SourceLineAnnotation share(SourceLineAnnotation sourceLine) {
+        if (bugInstanceVisitor != null) {
+            // The BugInstances aren't kept, so don't keep their annotations
+            return sourceLine;
+        }
+        SourceLineKey key = new SourceLineKey(sourceLine);
+        SourceLineAnnotation result = sourceLines.get(key);
+        if (result != null)
+            return result;
+        sourceLines.put(key, sourceLine);
+        return sourceLine;
+    }
+
+    /**
+     * Key comparing every field of a SourceLineAnnotation, unlike its equals
+     * method.
+     */
+    private static class SourceLineKey {
+        final SourceLineAnnotation sourceLine;
+
+        SourceLineKey(SourceLineAnnotation sourceLine) {
+            this.sourceLine = sourceLine;
+        }
+
+        @Override
+        public int hashCode() {
+            return sourceLine.getClassName().hashCode() + 31 * sourceLine.getStartLine() + 17 * sourceLine.getEndLine()
+                    + 7 * sourceLine.getStartBytecode() + sourceLine.getEndBytecode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SourceLineKey))
+                return false;
+            SourceLineAnnotation other = ((SourceLineKey) o).sourceLine;
+            return sourceLine.getClassName().equals(other.getClassName())
+                    && sourceLine.getSourceFile().equals(other.getSourceFile())
+                    && sourceLine.getDescription().equals(other.getDescription())
+                    && sourceLine.getStartLine() == other.getStartLine() && sourceLine.getEndLine() == other.getEndLine()
+                    && sourceLine.getStartBytecode() == other.getStartBytecode()
+                    && sourceLine.getEndBytecode() == other.getEndBytecode()
+                    && sourceLine.isSynthetic() == other.isSynthetic();
+        }
+    }
+
     @Override
     public void endElement(String uri, String name, String qName) throws SAXException {
         // URI should always be empty.
@@ -691,7 +777,14 @@ public class SAXBugCollectionHandler extends DefaultHandler {
                 matcherStack.pop();
             } else if (outerElement.equals(BUG_COLLECTION)) {
                 if (qName.equals("BugInstance")) {
-                    bugCollection.add(bugInstance, false);
+                    if (bugInstanceVisitor != null) {
+                        try {
+                            bugInstanceVisitor.visitBugInstance(bugInstance);
+                        } catch (IOException e) {
+                            throw new SAXException(e);
+                        }
+                    } else
+                        bugCollection.add(bugInstance, false);
                     if (!bugInstance.isDead())
                         bugCollection.getProjectStats().addBug(bugInstance);
                 }
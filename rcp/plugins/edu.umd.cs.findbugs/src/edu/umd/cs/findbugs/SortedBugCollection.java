@@ -20,6 +20,7 @@
 package edu.umd.cs.findbugs;
 
 import java.awt.GraphicsEnvironment;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -70,6 +71,8 @@ import edu.umd.cs.findbugs.cloud.CloudPlugin;
 import edu.umd.cs.findbugs.log.Profiler;
 import edu.umd.cs.findbugs.model.ClassFeatureSet;
 import edu.umd.cs.findbugs.util.Util;
+import edu.umd.cs.findbugs.xml.BinaryXMLOutput;
+import edu.umd.cs.findbugs.xml.BinaryXMLReader;
 import edu.umd.cs.findbugs.xml.Dom4JXMLOutput;
 import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
 import edu.umd.cs.findbugs.xml.XMLAttributeList;
@@ -95,6 +98,13 @@ import org.xml.sax.helpers.XMLReaderFactory;
 public class SortedBugCollection implements BugCollection {
     private static final Logger LOGGER = Logger.getLogger(SortedBugCollection.class.getName());
 
+    /**
+     * Extension of files written in the compact binary format.
+     *
+     * @see #writeXML(File)
+     */
+    public static final String BINARY_FILE_EXTENSION = ".fbb";
+
     long analysisTimestamp = System.currentTimeMillis();
 
     String analysisVersion = Version.RELEASE;
@@ -264,11 +274,39 @@ public class SortedBugCollection implements BugCollection {
      *            the file
      */
     public void readXML(File file) throws IOException, DocumentException {
+        readXML(file, (BugInstanceVisitor) null);
+    }
+
+    /**
+     * Read XML data from given file, passing each BugInstance to given visitor
+     * rather than adding it to this object, so the BugInstances needn't all
+     * be kept in memory. Everything else (the Project, statistics, errors,
+     * class features and history) is read into this object as usual. As the
+     * history is at the end of the file, a caller that needs it before
+     * processing the BugInstances can read the file twice: first with a
+     * visitor that ignores the BugInstances, then again to process them.
+     *
+     * @param file
+     *            the file
+     * @param visitor
+     *            visitor for the BugInstances
+     */
+    public void readXML(File file, @CheckForNull BugInstanceVisitor visitor) throws IOException, DocumentException {
         project.setCurrentWorkingDirectory(file.getParentFile());
         dataSource = file.getAbsolutePath();
+        if (BinaryXMLReader.isBinaryXML(file)) {
+            try {
+                doReadBinaryXML(BinaryXMLReader.open(file), file, visitor);
+            } catch (IOException e) {
+                throw newIOException(file, e);
+            } catch (DocumentException e) {
+                throw new DocumentException("Failing reading " + file, e);
+            }
+            return;
+        }
         InputStream in = progessMonitoredInputStream(file, "Loading analysis");
         try {
-            readXML(in, file);
+            readXML(in, file, visitor);
         } catch (IOException e) {
             throw newIOException(file, e);
         } catch (DocumentException e) {
@@ -308,8 +346,13 @@ public class SortedBugCollection implements BugCollection {
      *            the InputStream
      */
     public void readXML(@WillClose InputStream in, File base) throws IOException, DocumentException {
+        readXML(in, base, null);
+    }
+
+    private void readXML(@WillClose InputStream in, File base, @CheckForNull BugInstanceVisitor visitor) throws IOException,
+            DocumentException {
         try {
-            doReadXML(in, base);
+            doReadXML(in, base, visitor);
         } finally {
             in.close();
         }
@@ -318,20 +361,52 @@ public class SortedBugCollection implements BugCollection {
     public void readXML(@WillClose InputStream in) throws IOException, DocumentException {
         assert project != null;
         assert in != null;
-        doReadXML(in, null);
+        doReadXML(in, null, null);
+    }
+
+    /**
+     * Read XML data from given input stream, passing each BugInstance to given
+     * visitor rather than adding it to this object. An attempt will be made to
+     * close the input stream (even if an exception is thrown).
+     *
+     * @param in
+     *            the InputStream
+     * @param visitor
+     *            visitor for the BugInstances
+     * @see #readXML(File, BugInstanceVisitor)
+     */
+    public void readXML(@WillClose InputStream in, BugInstanceVisitor visitor) throws IOException, DocumentException {
+        assert project != null;
+        assert in != null;
+        doReadXML(in, null, visitor);
     }
 
     public void readXML(@WillClose Reader reader) throws IOException, DocumentException {
         assert project != null;
         assert reader != null;
-        doReadXML(reader, null);
+        doReadXML(reader, null, null);
     }
 
-    private void doReadXML(@WillClose InputStream in, @CheckForNull File base) throws IOException, DocumentException {
+    private void doReadXML(@WillClose InputStream in, @CheckForNull File base, @CheckForNull BugInstanceVisitor visitor)
+            throws IOException, DocumentException {
         try {
-            checkInputStream(in);
+            boolean markSupported = in.markSupported();
+            if (!markSupported) {
+                in = new BufferedInputStream(in);
+            }
+            if (BinaryXMLReader.isBinaryXML(in)) {
+                try {
+                    doReadBinaryXML(new BinaryXMLReader(in), base, visitor);
+                } finally {
+                    in.close();
+                }
+                return;
+            }
+            if (markSupported) {
+                checkInputStream(in);
+            }
             Reader reader = Util.getReader(in);
-            doReadXML(reader, base);
+            doReadXML(reader, base, visitor);
         } catch (RuntimeException e) {
             in.close();
             throw e;
@@ -342,10 +417,12 @@ public class SortedBugCollection implements BugCollection {
 
     }
 
-    private void doReadXML(@WillClose Reader reader, @CheckForNull File base) throws IOException, DocumentException {
+    private void doReadXML(@WillClose Reader reader, @CheckForNull File base, @CheckForNull BugInstanceVisitor visitor)
+            throws IOException, DocumentException {
         timeStartedLoading = System.currentTimeMillis();
 
-        SAXBugCollectionHandler handler = new SAXBugCollectionHandler(this, base);
+        SAXBugCollectionHandler handler = visitor != null ? new SAXBugCollectionHandler(this, base, visitor)
+                : new SAXBugCollectionHandler(this, base);
         Profiler profiler = getProjectStats().getProfiler();
         profiler.start(handler.getClass());
         try {
@@ -367,6 +444,8 @@ public class SortedBugCollection implements BugCollection {
                         + base, e);
             throw new DocumentException("Parse error at line " + e.getLineNumber() + " : " + e.getColumnNumber(), e);
         } catch (SAXException e) {
+            if (e.getException() instanceof IOException)
+                throw (IOException) e.getException();
             // FIXME: throw SAXException from method?
             if (base != null)
                 throw new DocumentException("Sax error while parsing " + base, e);
@@ -375,12 +454,44 @@ public class SortedBugCollection implements BugCollection {
             Util.closeSilently(reader);
             profiler.end(handler.getClass());
         }
+        finishLoading(visitor);
+    }
+
+    /**
+     * Read a bug collection in the binary format written by
+     * {@link BinaryXMLOutput}.
+     */
+    private void doReadBinaryXML(BinaryXMLReader binaryReader, @CheckForNull File base,
+            @CheckForNull BugInstanceVisitor visitor) throws IOException, DocumentException {
+        timeStartedLoading = System.currentTimeMillis();
+
+        SAXBugCollectionHandler handler = visitor != null ? new SAXBugCollectionHandler(this, base, visitor)
+                : new SAXBugCollectionHandler(this, base);
+        Profiler profiler = getProjectStats().getProfiler();
+        profiler.start(handler.getClass());
+        try {
+            binaryReader.parse(handler);
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException)
+                throw (IOException) e.getException();
+            if (base != null)
+                throw new DocumentException("Error while reading " + base, e);
+            throw new DocumentException("Error while reading binary bug collection", e);
+        } finally {
+            profiler.end(handler.getClass());
+        }
+        finishLoading(visitor);
+    }
+
+    private void finishLoading(@CheckForNull BugInstanceVisitor visitor) {
         timeFinishedLoading = System.currentTimeMillis();
-        Cloud plugin = getCloud(); // initialize cloud to allow listener to be
-                                   // registered
+        if (visitor == null) {
+            Cloud plugin = getCloud(); // initialize cloud to allow listener to
+                                       // be registered
 
-        if (plugin != null)
-            plugin.bugsPopulated();
+            if (plugin != null)
+                plugin.bugsPopulated();
+        }
         // Presumably, project is now up-to-date
         project.setModified(false);
     }
@@ -396,19 +507,59 @@ public class SortedBugCollection implements BugCollection {
      *            the file to write to
      */
     public void writeXML(String fileName) throws IOException {
-        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(fileName));
-        writeXML(out);
+        writeXML(new File(fileName));
     }
 
     /**
-     * Write this BugCollection to a file as XML.
+     * Write this BugCollection to a file as XML. If the file name ends with
+     * {@link #BINARY_FILE_EXTENSION}, the compact binary format written by
+     * {@link BinaryXMLOutput} is used instead.
      *
      * @param file
      *            the file to write to
      */
     public void writeXML(File file) throws IOException {
         BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file));
-        writeXML(out);
+        if (isBinaryFileName(file.getName()))
+            writeBinaryXML(out);
+        else
+            writeXML(out);
+    }
+
+    /**
+     * Write this BugCollection in the compact binary format written by
+     * {@link BinaryXMLOutput}. It is read by {@link #readXML(File)} and the
+     * other readXML methods, which recognize it by its contents.
+     *
+     * @param out
+     *            the OutputStream to write to
+     */
+    public void writeBinaryXML(@WillClose OutputStream out) throws IOException {
+        assert project != null;
+        XMLOutput xmlOutput;
+        try {
+            if (withMessages)
+                waitForCloud();
+            xmlOutput = new BinaryXMLOutput(out);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        } catch (RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        writeXML(xmlOutput);
+    }
+
+    /**
+     * Should a file with given name be written in the binary format?
+     *
+     * @param fileName
+     *            the file name
+     * @return true if the name ends with {@link #BINARY_FILE_EXTENSION}
+     */
+    public static boolean isBinaryFileName(String fileName) {
+        return fileName.endsWith(BINARY_FILE_EXTENSION);
     }
 
     /**
@@ -448,15 +599,7 @@ public class SortedBugCollection implements BugCollection {
         
 
         if (withMessages) {
-            Cloud cloud = getCloud();
-            cloud.bugsPopulated();
-            cloud.initiateCommunication();
-            cloud.waitUntilIssueDataDownloaded();
-            String token = SystemProperties.getProperty("findbugs.cloud.token");
-            if (token != null && token.trim().length() > 0) {
-                LOGGER.info("Cloud token specified - uploading new issues, if necessary...");
-                cloud.waitUntilNewIssuesUploaded();
-            }
+            waitForCloud();
             xmlOutput = new OutputStreamXMLOutput(out, "http://findbugs.sourceforge.net/xsl/default.xsl");
         } else {
             xmlOutput = new OutputStreamXMLOutput(out);
@@ -465,6 +608,18 @@ public class SortedBugCollection implements BugCollection {
         writeXML(xmlOutput);
     }
 
+    private void waitForCloud() {
+        Cloud cloud = getCloud();
+        cloud.bugsPopulated();
+        cloud.initiateCommunication();
+        cloud.waitUntilIssueDataDownloaded();
+        String token = SystemProperties.getProperty("findbugs.cloud.token");
+        if (token != null && token.trim().length() > 0) {
+            LOGGER.info("Cloud token specified - uploading new issues, if necessary...");
+            cloud.waitUntilNewIssuesUploaded();
+        }
+    }
+
     public void writePrologue(XMLOutput xmlOutput) throws IOException {
         xmlOutput.beginDocument();
         xmlOutput.openTag(
@@ -1025,6 +1180,14 @@ public class SortedBugCollection implements BugCollection {
         return bugSet;
     }
 
+    /**
+     * Get the comparator that orders the BugInstances, and which decides
+     * whether two BugInstances are the same.
+     */
+    public Comparator<BugInstance> getComparator() {
+        return comparator;
+    }
+
     public void addError(String message, Throwable exception) {
         if (exception instanceof MissingClassException) {
             MissingClassException e = (MissingClassException) exception;
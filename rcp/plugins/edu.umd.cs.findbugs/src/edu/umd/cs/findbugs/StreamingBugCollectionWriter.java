@@ -0,0 +1,138 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.annotation.WillCloseWhenClosed;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.xml.BinaryXMLOutput;
+import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+
+/**
+ * Write a bug collection as XML one BugInstance at a time, so the
+ * BugInstances needn't all be kept in memory. Everything other than the
+ * BugInstances is taken from a BugCollection holding the metadata: the
+ * collection's attributes and Project are written when the writer is created,
+ * and its statistics, errors, class features and history when it is closed,
+ * so they can still be updated while the BugInstances are written.
+ * <p>
+ * The output is in the same format as {@link BugCollection#writeXML}, except
+ * that the BugInstances are written in the order they are visited, and no
+ * messages are written.
+ */
+public class StreamingBugCollectionWriter implements BugInstanceVisitor {
+    private final BugCollection metadata;
+
+    private final XMLOutput xmlOutput;
+
+    private boolean closed;
+
+    /**
+     * Constructor. Writes the start of the bug collection.
+     *
+     * @param metadata
+     *            BugCollection holding the metadata to write
+     * @param out
+     *            the OutputStream to write to; closed when this writer is
+     *            closed
+     */
+    public StreamingBugCollectionWriter(BugCollection metadata, @WillCloseWhenClosed OutputStream out) throws IOException {
+        this(metadata, new OutputStreamXMLOutput(UTF8.writer(out)));
+    }
+
+    /**
+     * Constructor. Writes the start of the bug collection to a file. If the
+     * file name ends with {@link SortedBugCollection#BINARY_FILE_EXTENSION},
+     * the compact binary format is written.
+     *
+     * @param metadata
+     *            BugCollection holding the metadata to write
+     * @param fileName
+     *            the file to write to
+     */
+    public StreamingBugCollectionWriter(BugCollection metadata, String fileName) throws IOException {
+        this(metadata, createXMLOutput(fileName));
+    }
+
+    private StreamingBugCollectionWriter(BugCollection metadata, @WillCloseWhenClosed XMLOutput xmlOutput) throws IOException {
+        if (metadata.getWithMessages()) {
+            xmlOutput.finish();
+            throw new IllegalArgumentException("Messages can't be written by a StreamingBugCollectionWriter");
+        }
+        this.metadata = metadata;
+        this.xmlOutput = xmlOutput;
+        boolean done = false;
+        try {
+            metadata.writePrologue(xmlOutput);
+            done = true;
+        } finally {
+            if (!done) {
+                xmlOutput.finish();
+            }
+        }
+    }
+
+    private static XMLOutput createXMLOutput(String fileName) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName));
+        if (SortedBugCollection.isBinaryFileName(fileName)) {
+            return new BinaryXMLOutput(out);
+        }
+        return new OutputStreamXMLOutput(UTF8.writer(out));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.BugInstanceVisitor#visitBugInstance(edu.umd.cs.findbugs
+     * .BugInstance)
+     */
+    public void visitBugInstance(BugInstance bugInstance) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        if (!metadata.isApplySuppressions() || !metadata.getProject().getSuppressionFilter().match(bugInstance)) {
+            bugInstance.writeXML(xmlOutput, metadata, false);
+        }
+    }
+
+    /**
+     * Write the end of the bug collection, and close the output.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            metadata.writeEpilogue(xmlOutput);
+        } finally {
+            xmlOutput.finish();
+        }
+    }
+}
+
+// vim:ts=4
@@ -114,6 +114,28 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
     private int rankThreshold = SystemProperties.getInt("findbugs.maxRank", 20);
 
+    private int numAnalysisThreads = SystemProperties.getInt("findbugs.threads", 1);
+
+    private int numPrefetchedClasses = SystemProperties.getInt("findbugs.prefetch", 0);
+
+    private boolean degradeHugeMethods = SystemProperties.getBoolean("findbugs.degradeHugeMethods");
+
+    private boolean shareOpcodeStack = SystemProperties.getBoolean("findbugs.shareOpcodeStack");
+
+    private long analysisCacheBudget = 0;
+
+    private long methodTimeBudget = SystemProperties.getInt("findbugs.methodTimeBudget", 0);
+
+    private long methodWorkBudget = SystemProperties.getInt("findbugs.methodWorkBudget", 0);
+
+    private String analysisCacheDirectory = null;
+
+    private String librarySnapshotFile = null;
+
+    private String incrementalBaseline = null;
+
+    private String changedClassesFile = null;
+
     private PrintStream outputStream = null;
 
     private Set<String> bugCategorySet = null;
@@ -171,6 +193,17 @@ public class TextUICommandLine extends FindBugsCommandLine {
         addOption("-output", "filename", "Save output in named file");
         makeOptionUnlisted("-outputFile");
         addSwitchWithOptionalExtraPart("-nested", "true|false", "analyze nested jar/zip archives (default=true)");
+        addOption("-threads", "count", "number of threads used to scan the classpath and analyze classes (default=1)");
+        addOption("-prefetch", "count", "number of classes to read and parse ahead of the class being analyzed (default=0)");
+        addOption("-methodTimeBudget", "ms", "abandon method analyses taking longer, and report expensive methods");
+        addOption("-methodWorkBudget", "units", "abandon method analyses doing more work, and report expensive methods");
+        addSwitch("-degradeHugeMethods", "analyze huge methods in a cheaper way rather than skipping them");
+        addSwitch("-shareOpcodeStack", "simulate the opcode stack of each method once for all detectors of a pass");
+        addOption("-cacheBudget", "size[k|m|g]", "memory the analysis cache may use for recomputable results");
+        addOption("-cacheDir", "directory", "store parsed class info in directory, for reuse by later runs");
+        addOption("-librarySnapshot", "filename", "read library class info from snapshot file, creating it if it does not exist");
+        addOption("-incremental", "previousResults.xml", "only analyze classes affected by the changes given by -changedClasses");
+        addOption("-changedClasses", "filename", "file listing classes added, changed or removed since previous results");
 
         startOptionGroup("Output filtering options:");
         addOption("-bugCategories", "cat1[,cat2...]", "only report bugs in given categories");
@@ -331,6 +364,10 @@ public class TextUICommandLine extends FindBugsCommandLine {
             }
         } else if (option.equals("-noClassOk")) {
             noClassOk = true;
+        } else if (option.equals("-degradeHugeMethods")) {
+            degradeHugeMethods = true;
+        } else if (option.equals("-shareOpcodeStack")) {
+            shareOpcodeStack = true;
         } else if (option.equals("-xargs")) {
             xargs = true;
         } else if (option.equals("-justListOptions")) {
@@ -395,6 +432,32 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         } else if (option.equals("-maxRank")) {
             this.rankThreshold = Integer.parseInt(argument);
+        } else if (option.equals("-threads")) {
+            numAnalysisThreads = Integer.parseInt(argument);
+            if (numAnalysisThreads < 1)
+                throw new IllegalArgumentException("number of threads must be at least 1 (saw " + argument + ")");
+        } else if (option.equals("-prefetch")) {
+            numPrefetchedClasses = Integer.parseInt(argument);
+            if (numPrefetchedClasses < 0)
+                throw new IllegalArgumentException("number of prefetched classes must not be negative (saw " + argument + ")");
+        } else if (option.equals("-methodTimeBudget")) {
+            methodTimeBudget = Long.parseLong(argument);
+            if (methodTimeBudget < 0)
+                throw new IllegalArgumentException("method time budget must not be negative (saw " + argument + ")");
+        } else if (option.equals("-methodWorkBudget")) {
+            methodWorkBudget = Long.parseLong(argument);
+            if (methodWorkBudget < 0)
+                throw new IllegalArgumentException("method work budget must not be negative (saw " + argument + ")");
+        } else if (option.equals("-cacheBudget")) {
+            analysisCacheBudget = parseByteCount(argument);
+        } else if (option.equals("-cacheDir")) {
+            analysisCacheDirectory = argument;
+        } else if (option.equals("-librarySnapshot")) {
+            librarySnapshotFile = argument;
+        } else if (option.equals("-incremental")) {
+            incrementalBaseline = argument;
+        } else if (option.equals("-changedClasses")) {
+            changedClassesFile = argument;
         } else if (option.equals("-projectName")) {
             this.projectName = argument;
         } else if (option.equals("-release")) {
@@ -633,6 +696,29 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         findBugs.setScanNestedArchives(scanNestedArchives);
         findBugs.setNoClassOk(noClassOk);
+        findBugs.setNumAnalysisThreads(numAnalysisThreads);
+        findBugs.setNumPrefetchedClasses(numPrefetchedClasses);
+        findBugs.setDegradeHugeMethods(degradeHugeMethods);
+        findBugs.setShareOpcodeStackStates(shareOpcodeStack);
+        findBugs.setAnalysisCacheBudget(analysisCacheBudget);
+        findBugs.setMethodAnalysisBudget(methodTimeBudget, methodWorkBudget);
+        findBugs.setAnalysisCacheDirectory(analysisCacheDirectory);
+        findBugs.setLibrarySnapshot(librarySnapshotFile);
+        if (incrementalBaseline != null) {
+            if (changedClassesFile == null)
+                throw new IllegalArgumentException("-incremental requires -changedClasses");
+            SortedBugCollection previousResults = new SortedBugCollection();
+            try {
+                previousResults.readXML(incrementalBaseline);
+            } catch (DocumentException e) {
+                IOException ioe = new IOException("Could not read previous results from " + incrementalBaseline);
+                ioe.initCause(e);
+                throw ioe;
+            }
+            IncrementalAnalysis incrementalAnalysis = new IncrementalAnalysis(previousResults);
+            incrementalAnalysis.readChangeList(changedClassesFile);
+            findBugs.setIncrementalAnalysis(incrementalAnalysis);
+        }
 
         findBugs.setBugReporterDecorators(enabledBugReporterDecorators, disabledBugReporterDecorators);
         if (applySuppression) {
@@ -667,4 +753,39 @@ public class TextUICommandLine extends FindBugsCommandLine {
     private UserPreferences getUserPreferences() {
         return project.getConfiguration();
     }
+
+    /**
+     * Parse a number of bytes, optionally followed by k, m or g (in either
+     * case) to denote kilo-, mega- or gigabytes.
+     *
+     * @param argument
+     *            the command line argument
+     * @return the number of bytes
+     */
+    static long parseByteCount(String argument) {
+        String value = argument.trim().toLowerCase();
+        long multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1024L;
+        } else if (value.endsWith("m")) {
+            multiplier = 1024L * 1024L;
+        } else if (value.endsWith("g")) {
+            multiplier = 1024L * 1024L * 1024L;
+        }
+        if (multiplier != 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            long count = Long.parseLong(value);
+            if (count < 0) {
+                throw new IllegalArgumentException("size must not be negative (saw " + argument + ")");
+            }
+            if (count > Long.MAX_VALUE / multiplier) {
+                throw new IllegalArgumentException("Bad size: " + argument);
+            }
+            return count * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad size: " + argument);
+        }
+    }
 }
@@ -101,4 +101,8 @@ public class TextUIProgressCallback implements FindBugsProgress {
         // noop
     }
 
+    public void reportCodeBaseTime(String name, long elapsedMillis) {
+        // noop
+    }
+
 }
@@ -45,6 +45,10 @@ public class VersionInsensitiveBugComparator implements WarningComparator {
         this.classNameRewriter = classNameRewriter;
     }
 
+    public ClassNameRewriter getClassNameRewriter() {
+        return classNameRewriter;
+    }
+
     public void setComparePriorities(boolean b) {
         comparePriorities = b;
     }
@@ -260,6 +264,52 @@ public class VersionInsensitiveBugComparator implements WarningComparator {
             return 0;
     }
 
+    /**
+     * Get a key for looking up matching bug instances in a hash table. Bug
+     * instances this comparator considers equal have equal keys, but bug
+     * instances with equal keys needn't be equal, so candidates must still be
+     * checked with {@link #compare(BugInstance, BugInstance)}.
+     * <p>
+     * The key is made from the first two annotations (other than local
+     * variables) that are compared, usually the class and method or field of
+     * the bug. It depends only on the class name rewriter, so keys can be
+     * shared by comparators with the same rewriter that differ in whether
+     * they compare bug patterns and priorities.
+     *
+     * @param bug
+     *            the bug instance
+     * @return the key
+     */
+    public String getMatchKey(BugInstance bug) {
+        StringBuilder key = new StringBuilder();
+        int count = 0;
+        Iterator<BugAnnotation> i = new FilteringAnnotationIterator(bug.annotationIterator());
+        while (count < 2 && i.hasNext()) {
+            BugAnnotation annotation = i.next();
+            Class<? extends BugAnnotation> annotationClass = annotation.getClass();
+            if (annotationClass == LocalVariableAnnotation.class)
+                continue;
+            if (count++ > 0)
+                key.append(' ');
+            if (annotationClass == ClassAnnotation.class) {
+                key.append(classNameRewriter.rewriteClassName(((ClassAnnotation) annotation).getClassName()));
+            } else if (annotationClass == MethodAnnotation.class) {
+                MethodAnnotation method = ClassNameRewriterUtil.convertMethodAnnotation(classNameRewriter,
+                        (MethodAnnotation) annotation);
+                key.append(method.getClassName()).append('.').append(method.getMethodName())
+                        .append(method.getMethodSignature());
+            } else if (annotationClass == FieldAnnotation.class) {
+                FieldAnnotation field = ClassNameRewriterUtil.convertFieldAnnotation(classNameRewriter,
+                        (FieldAnnotation) annotation);
+                key.append(field.getClassName()).append('.').append(field.getFieldName()).append(':')
+                        .append(field.getFieldSignature());
+            } else {
+                key.append(annotationClass.getName());
+            }
+        }
+        return key.toString();
+    }
+
     private boolean interestingNext(Iterator<BugAnnotation> i) {
         while (i.hasNext()) {
             BugAnnotation a = i.next();
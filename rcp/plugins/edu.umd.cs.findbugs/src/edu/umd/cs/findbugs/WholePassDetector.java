@@ -0,0 +1,37 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+/**
+ * A Detector which must see every class in an analysis pass.
+ * 
+ * When the analysis is run with several threads, a single instance of such a
+ * detector is applied to all classes on the main analysis thread, instead of
+ * splitting the classes between one instance per worker thread. Detectors
+ * which do anything in report() or finishPass() are treated this way without
+ * implementing this interface; it is only needed by detectors which depend on
+ * information from other classes in some other way.
+ * 
+ * @see DetectorFactory#isPartitionable()
+ * @see FindBugs2
+ */
+public interface WholePassDetector {
+
+}
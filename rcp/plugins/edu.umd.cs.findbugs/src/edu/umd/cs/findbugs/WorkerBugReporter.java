@@ -0,0 +1,140 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * BugReporter handed to detectors when a pass is executed by several analysis
+ * threads. While a class is being analyzed, warnings are appended to the
+ * buffer of that class, so that FindBugs2 can later hand them to the real
+ * BugReporter in the same order a single-threaded analysis would produce.
+ * Warnings reported outside of a class (e.g. from finishPass()) and all
+ * errors are passed on immediately; those calls are synchronized on the
+ * delegate, which is shared by all threads of the pass.
+ *
+ * @see FindBugs2
+ */
+class WorkerBugReporter extends DelegatingBugReporter {
+    private @CheckForNull
+    List<BugInstance> classBuffer;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate
+     *            the BugReporter shared by all analysis threads
+     */
+    WorkerBugReporter(BugReporter delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Start buffering the warnings reported for a class.
+     *
+     * @param buffer
+     *            list to which warnings for the class should be added
+     */
+    void startClass(List<BugInstance> buffer) {
+        this.classBuffer = buffer;
+    }
+
+    /**
+     * Stop buffering; warnings reported afterwards are passed on directly.
+     */
+    void finishClass() {
+        this.classBuffer = null;
+    }
+
+    @Override
+    public void reportBug(BugInstance bugInstance) {
+        if (classBuffer != null) {
+            classBuffer.add(bugInstance);
+            return;
+        }
+        synchronized (getDelegate()) {
+            super.reportBug(bugInstance);
+        }
+    }
+
+    @Override
+    public void observeClass(ClassDescriptor classDescriptor) {
+        // Class observers are notified when the buffered warnings are
+        // replayed
+    }
+
+    @Override
+    public void logError(String message) {
+        synchronized (getDelegate()) {
+            super.logError(message);
+        }
+    }
+
+    @Override
+    public void logError(String message, Throwable e) {
+        synchronized (getDelegate()) {
+            super.logError(message, e);
+        }
+    }
+
+    @Override
+    public void reportMissingClass(ClassNotFoundException ex) {
+        synchronized (getDelegate()) {
+            super.reportMissingClass(ex);
+        }
+    }
+
+    @Override
+    public void reportMissingClass(ClassDescriptor classDescriptor) {
+        synchronized (getDelegate()) {
+            super.reportMissingClass(classDescriptor);
+        }
+    }
+
+    @Override
+    public void reportSkippedAnalysis(MethodDescriptor method) {
+        synchronized (getDelegate()) {
+            super.reportSkippedAnalysis(method);
+        }
+    }
+
+    @Override
+    public void reportDegradedAnalysis(MethodDescriptor method) {
+        synchronized (getDelegate()) {
+            super.reportDegradedAnalysis(method);
+        }
+    }
+
+    @Override
+    public void finish() {
+        // The shared BugReporter is finished by FindBugs2 once all passes
+        // are complete
+    }
+
+    @Override
+    public void reportQueuedErrors() {
+        // See finish()
+    }
+}
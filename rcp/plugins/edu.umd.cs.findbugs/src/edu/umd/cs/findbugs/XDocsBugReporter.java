@@ -20,34 +20,26 @@
 package edu.umd.cs.findbugs;
 
 import java.io.IOException;
-import java.io.Writer;
 import java.util.Iterator;
 
 import javax.annotation.Nonnull;
 
-import org.dom4j.Document;
-import org.dom4j.DocumentHelper;
-import org.dom4j.Element;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.XMLWriter;
-
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.core.Priorities;
+import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
+import edu.umd.cs.findbugs.xml.XMLAttributeList;
+import edu.umd.cs.findbugs.xml.XMLOutput;
 
 /**
- * BugReporter to output warnings in xdocs format for Maven.
+ * BugReporter to output warnings in xdocs format for Maven. The warnings are
+ * written when the analysis finishes, straight from the bug collection, one
+ * file element for each class.
  *
  * @author Garvin LeClaire
  */
 public class XDocsBugReporter extends TextUIBugReporter {
     final private SortedBugCollection bugCollection;
 
-    final private Project project;
-
-    private Document document;
-
-    private Element root;
-
     private static final String ROOT_ELEMENT_NAME = "BugCollection";
 
     private static final String PROJECT_ELEMENT_NAME = "Project";
@@ -65,12 +57,7 @@ public class XDocsBugReporter extends TextUIBugReporter {
     private static final String FILE_ELEMENT_NAME = "file";
 
     public XDocsBugReporter(Project project) {
-        this.project = project;
         this.bugCollection = new SortedBugCollection(project);
-
-        this.document = DocumentHelper.createDocument();
-        this.root = document.addElement(ROOT_ELEMENT_NAME);
-
     }
 
     public void observeClass(ClassDescriptor classDescriptor) {
@@ -95,50 +82,62 @@ public class XDocsBugReporter extends TextUIBugReporter {
     @Override
     public void doReportBug(BugInstance bugInstance) {
         if (bugCollection.add(bugInstance)) {
-            printBug(bugInstance);
             notifyObservers(bugInstance);
         }
     }
 
     @Override
     protected void printBug(BugInstance bugInstance) {
-        try {
-            toElement(bugInstance);
-        } catch (Exception e) {
-            logError("Couldn't add Element", e);
-        }
+        // The bugs are written by finish()
     }
 
     public void finish() {
-
         try {
-            writeXML(outputStream, project);
+            writeXML(new OutputStreamXMLOutput(outputStream));
         } catch (Exception e) {
             logError("Couldn't write XML output", e);
         }
-        outputStream.flush();
     }
 
-    private void writeXML(Writer out, Project project) throws IOException {
-        Document document = endDocument(project);
-
-        XMLWriter writer = new XMLWriter(out, OutputFormat.createPrettyPrint());
-        writer.write(document);
-    }
-
-    private Document endDocument(Project project) {
+    private void writeXML(XMLOutput xmlOutput) throws IOException {
+        try {
+            xmlOutput.beginDocument();
+            xmlOutput.openTag(ROOT_ELEMENT_NAME);
+
+            // The bugs are sorted by class, so each class's bugs are together
+            String className = null;
+            for (BugInstance bugInstance : bugCollection.getCollection()) {
+                String bugClassName = bugInstance.getPrimaryClass().getClassName();
+                if (!bugClassName.equals(className)) {
+                    if (className != null)
+                        xmlOutput.closeTag(FILE_ELEMENT_NAME);
+                    className = bugClassName;
+                    xmlOutput.openTag(FILE_ELEMENT_NAME, new XMLAttributeList().addAttribute("classname", className));
+                }
+                writeBugInstance(xmlOutput, bugInstance);
+            }
+            if (className != null)
+                xmlOutput.closeTag(FILE_ELEMENT_NAME);
+
+            // Save the error information
+            xmlOutput.openTag(ERRORS_ELEMENT_NAME);
+            for (Iterator<AnalysisError> i = bugCollection.errorIterator(); i.hasNext();) {
+                AnalysisError analysisError = i.next();
+                xmlOutput.openTag(ANALYSIS_ERROR_ELEMENT_NAME);
+                xmlOutput.writeText(analysisError.getMessage());
+                xmlOutput.closeTag(ANALYSIS_ERROR_ELEMENT_NAME);
+            }
+            for (Iterator<String> i = bugCollection.missingClassIterator(); i.hasNext();) {
+                xmlOutput.openTag(MISSING_CLASS_ELEMENT_NAME);
+                xmlOutput.writeText(i.next());
+                xmlOutput.closeTag(MISSING_CLASS_ELEMENT_NAME);
+            }
+            xmlOutput.closeTag(ERRORS_ELEMENT_NAME);
 
-        // Save the error information
-        Element errorsElement = root.addElement(ERRORS_ELEMENT_NAME);
-        for (Iterator<AnalysisError> i = bugCollection.errorIterator(); i.hasNext();) {
-            AnalysisError analysisError = i.next();
-            errorsElement.addElement(ANALYSIS_ERROR_ELEMENT_NAME).setText(analysisError.getMessage());
-        }
-        for (Iterator<String> i = bugCollection.missingClassIterator(); i.hasNext();) {
-            errorsElement.addElement(MISSING_CLASS_ELEMENT_NAME).setText(i.next());
+            xmlOutput.closeTag(ROOT_ELEMENT_NAME);
+        } finally {
+            xmlOutput.finish();
         }
-
-        return document;
     }
 
     private static String xmlEscape(String theString) {
@@ -171,44 +170,36 @@ public class XDocsBugReporter extends TextUIBugReporter {
         return buf.toString();
     }
 
-    public void toElement(BugInstance bugInstance) {
-
-        String className = bugInstance.getPrimaryClass().getClassName();
-        Element element = (Element) root.selectSingleNode(FILE_ELEMENT_NAME + "[@classname='" + className + "']");
-
-        if (element == null) {
-            element = root.addElement(FILE_ELEMENT_NAME);
-            element.addAttribute("classname", className);
-        }
-
-        element = element.addElement(ELEMENT_NAME);
+    private static void writeBugInstance(XMLOutput xmlOutput, BugInstance bugInstance) throws IOException {
+        xmlOutput.startTag(ELEMENT_NAME);
 
-        element.addAttribute("type", bugInstance.getType());
+        xmlOutput.addAttribute("type", bugInstance.getType());
 
         switch (bugInstance.getPriority()) {
         case Priorities.EXP_PRIORITY:
-            element.addAttribute("priority", "Experimental");
+            xmlOutput.addAttribute("priority", "Experimental");
             break;
         case Priorities.LOW_PRIORITY:
-            element.addAttribute("priority", "Low");
+            xmlOutput.addAttribute("priority", "Low");
             break;
         case Priorities.NORMAL_PRIORITY:
-            element.addAttribute("priority", "Normal");
+            xmlOutput.addAttribute("priority", "Normal");
             break;
         case Priorities.HIGH_PRIORITY:
-            element.addAttribute("priority", "High");
+            xmlOutput.addAttribute("priority", "High");
             break;
         }
 
-        element.addAttribute("message", xmlEscape(bugInstance.getMessage()));
+        xmlOutput.addAttribute("message", xmlEscape(bugInstance.getMessage()));
 
         SourceLineAnnotation line = bugInstance.getPrimarySourceLineAnnotation();
         if (line == null) {
-            element.addAttribute("line", "0");
+            xmlOutput.addAttribute("line", "0");
         } else {
-            element.addAttribute("line", Integer.toString(line.getStartLine()));
+            xmlOutput.addAttribute("line", Integer.toString(line.getStartLine()));
         }
 
+        xmlOutput.stopTag(true);
     }
 
     /*
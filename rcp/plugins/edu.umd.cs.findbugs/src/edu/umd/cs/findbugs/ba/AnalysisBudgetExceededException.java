@@ -0,0 +1,56 @@
+/*
+ * Bytecode Analysis Framework
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Exception thrown when a dataflow analysis of a method is abandoned because
+ * the analyses of the method have used up their budget. Like a
+ * MethodUnprofitableException, it is not an error: the method has been
+ * reported as skipped when this is thrown.
+ *
+ * @see CFG#getAnalysisTimeBudget()
+ */
+public class AnalysisBudgetExceededException extends DataflowAnalysisException {
+    private static final long serialVersionUID = 1L;
+
+    private final MethodDescriptor method;
+
+    /**
+     * Constructor.
+     *
+     * @param method
+     *            the method whose analysis was abandoned
+     */
+    public AnalysisBudgetExceededException(MethodDescriptor method) {
+        super("Analysis budget exceeded for " + method);
+        this.method = method;
+    }
+
+    /**
+     * @return the method whose analysis was abandoned
+     */
+    public MethodDescriptor getMethod() {
+        return method;
+    }
+}
+
+// vim:ts=4
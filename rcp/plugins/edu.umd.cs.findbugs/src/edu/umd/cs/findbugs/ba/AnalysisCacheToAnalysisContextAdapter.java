@@ -22,6 +22,7 @@ package edu.umd.cs.findbugs.ba;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -114,6 +115,17 @@ public class AnalysisCacheToAnalysisContextAdapter extends AnalysisContext {
             Global.getAnalysisCache().getErrorLogger().reportSkippedAnalysis(method);
         }
 
+        /*
+         * (non-Javadoc)
+         * 
+         * @see
+         * edu.umd.cs.findbugs.classfile.IErrorLogger#reportDegradedAnalysis(
+         * edu.umd.cs.findbugs.classfile.MethodDescriptor)
+         */
+        public void reportDegradedAnalysis(MethodDescriptor method) {
+            Global.getAnalysisCache().getErrorLogger().reportDegradedAnalysis(method);
+        }
+
     }
 
     private RepositoryLookupFailureCallback lookupFailureCallback;
@@ -474,8 +486,10 @@ public class AnalysisCacheToAnalysisContextAdapter extends AnalysisContext {
         bridgeFrom.put(to, from);
     }
 
-    final Map<MethodInfo, MethodInfo> bridgeTo = new IdentityHashMap<MethodInfo, MethodInfo>();
+    // Bridge methods are recorded while class info is built, which may happen
+    // on any analysis thread
+    final Map<MethodInfo, MethodInfo> bridgeTo = Collections.synchronizedMap(new IdentityHashMap<MethodInfo, MethodInfo>());
 
-    final Map<MethodInfo, MethodInfo> bridgeFrom = new IdentityHashMap<MethodInfo, MethodInfo>();
+    final Map<MethodInfo, MethodInfo> bridgeFrom = Collections.synchronizedMap(new IdentityHashMap<MethodInfo, MethodInfo>());
 
 }
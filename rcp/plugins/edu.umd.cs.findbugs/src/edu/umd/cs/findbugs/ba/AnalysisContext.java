@@ -19,13 +19,19 @@
 
 package edu.umd.cs.findbugs.ba;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.WillClose;
 
 import net.jcip.annotations.NotThreadSafe;
 
@@ -52,11 +58,14 @@ import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.FieldOrMethodDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.LibrarySnapshot;
+import edu.umd.cs.findbugs.classfile.PersistentAnalysisStore;
 import edu.umd.cs.findbugs.classfile.analysis.ClassData;
 import edu.umd.cs.findbugs.classfile.analysis.MethodInfo;
 import edu.umd.cs.findbugs.detect.UnreadFields;
 import edu.umd.cs.findbugs.detect.UnreadFieldsData;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
+import edu.umd.cs.findbugs.io.IO;
 
 /**
  * A context for analysis of a complete project. This serves as the repository
@@ -702,7 +711,7 @@ public abstract class AnalysisContext {
             if (DEBUG)
                 System.out.println("Loading " + description + " from " + dbFile.getPath() + "...");
 
-            database.readFromFile(dbFile.getPath());
+            readPropertyDatabase(database, new FileInputStream(dbFile));
             return database;
         } catch (IOException e) {
             getLookupFailureCallback().logError("Error loading " + description, e);
@@ -737,8 +746,7 @@ public abstract class AnalysisContext {
                 System.out.println("Loading default " + description + " from " + resourceName + " @ "
                         + database.getClass().getResource(resourceName) + " ... ");
             InputStream in = database.getClass().getResourceAsStream(resourceName);
-            database.read(in);
-            in.close();
+            readPropertyDatabase(database, in);
             return database;
         } catch (IOException e) {
             getLookupFailureCallback().logError("Error loading " + description, e);
@@ -749,6 +757,56 @@ public abstract class AnalysisContext {
         return null;
     }
 
+    /**
+     * Read an interprocedural property database. If a library snapshot is
+     * loaded, or a persistent analysis store is enabled, the properties are
+     * loaded from there if they were saved by an earlier run. Otherwise the
+     * text is parsed, and the properties are recorded in the library snapshot
+     * or stored in the persistent analysis store.
+     *
+     * @param database
+     *            the database
+     * @param in
+     *            InputStream reading the text of the database; it is closed
+     *            even if an exception is thrown
+     */
+    private <DatabaseType extends PropertyDatabase<KeyType, Property>, KeyType extends FieldOrMethodDescriptor, Property> void readPropertyDatabase(
+            DatabaseType database, @WillClose InputStream in) throws IOException, PropertyDatabaseFormatException {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        PersistentAnalysisStore store = analysisCache != null ? analysisCache.getDatabase(PersistentAnalysisStore.class) : null;
+        LibrarySnapshot snapshot = analysisCache != null ? analysisCache.getDatabase(LibrarySnapshot.class) : null;
+        boolean useStore = store != null && store.isEnabled();
+        boolean useSnapshot = snapshot != null && (snapshot.isLoaded() || snapshot.isRecording());
+        if (!useStore && !useSnapshot) {
+            database.read(in);
+            return;
+        }
+
+        byte[] source;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IO.copy(in, out);
+            source = out.toByteArray();
+        } finally {
+            IO.close(in);
+        }
+        if (useSnapshot && snapshot.loadPropertyDatabase(database, source)) {
+            return;
+        }
+        // When recording a snapshot, the keys are needed, so always parse
+        if (useStore && !(useSnapshot && snapshot.isRecording()) && store.loadPropertyDatabase(database, source)) {
+            return;
+        }
+        List<KeyType> keysRead = new ArrayList<KeyType>();
+        database.read(new ByteArrayInputStream(source), keysRead);
+        if (useSnapshot) {
+            snapshot.recordPropertyDatabase(database, keysRead, source);
+        }
+        if (useStore) {
+            store.storePropertyDatabase(database, keysRead, source);
+        }
+    }
+
     /**
      * Write an interprocedural property database.
      *
@@ -99,6 +99,22 @@ public interface AnalysisFeatures {
     public static final @AnalysisFeature
     int MERGE_SIMILAR_WARNINGS = 7;
 
+    /**
+     * Analyze the huge methods which would otherwise be skipped, but in a
+     * cheaper way: their CFGs are not refined, and dataflow analyses of each
+     * are given a time budget.
+     */
+    public static final @AnalysisFeature
+    int DEGRADE_HUGE_METHODS = 8;
+
+    /**
+     * Simulate the opcode stack of each method once, and let the
+     * OpcodeStackDetectors which scan the method replay the recorded states
+     * rather than each simulating the stack again.
+     */
+    public static final @AnalysisFeature
+    int SHARE_OPCODE_STACK_STATES = 9;
+
     /**
      * Number of boolean analysis properties reserved for the bytecode analysis
      * framework. Clients of the framework may use property values &gt;= this
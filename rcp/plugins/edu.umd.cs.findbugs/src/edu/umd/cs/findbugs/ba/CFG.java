@@ -73,6 +73,13 @@ public class CFG extends AbstractGraph<Edge, BasicBlock> implements Debug {
 
     public static final int FOUND_INEXACT_UNCONDITIONAL_THROWERS = 32;
 
+    /**
+     * Flag set if the CFG is of a huge method, and was built and is analyzed
+     * in a cheaper way than usual: it is not refined, and dataflow analyses
+     * of it are given a time budget.
+     */
+    public static final int DEGRADED = 64;
+
     /*
      * ----------------------------------------------------------------------
      * Helper classes
@@ -151,6 +158,8 @@ public class CFG extends AbstractGraph<Edge, BasicBlock> implements Debug {
 
     private List<Edge> removedEdgeList;
 
+    private long analysisTimeBudget = Long.MAX_VALUE;
+
     /*
      * ----------------------------------------------------------------------
      * Public methods
@@ -180,6 +189,25 @@ public class CFG extends AbstractGraph<Edge, BasicBlock> implements Debug {
         return methodGen;
     }
 
+    /**
+     * Set the time which dataflow analyses of the CFG may take, in total.
+     * 
+     * @param analysisTimeBudget
+     *            the time in nanoseconds, or Long.MAX_VALUE for no limit
+     */
+    public void setAnalysisTimeBudget(long analysisTimeBudget) {
+        this.analysisTimeBudget = analysisTimeBudget;
+    }
+
+    /**
+     * Get the time which dataflow analyses of the CFG may still take.
+     * 
+     * @return the time in nanoseconds, or Long.MAX_VALUE if there is no limit
+     */
+    public long getAnalysisTimeBudget() {
+        return analysisTimeBudget;
+    }
+
     /**
      * @return Returns the methodName.
      */
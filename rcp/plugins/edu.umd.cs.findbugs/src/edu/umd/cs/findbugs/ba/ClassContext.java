@@ -135,6 +135,12 @@ public class ClassContext {
         }
     }
 
+    /**
+     * Get the map storing analysis objects of given class. The caller must hold
+     * the lock on this ClassContext's method analysis storage if the
+     * ClassContext may be shared by several analysis threads; the methods
+     * below take care of that.
+     */
     public Map<MethodDescriptor, Object> getObjectMap(Class<?> analysisClass) {
         Map<MethodDescriptor, Object> objectMap = methodAnalysisObjectMap.get(analysisClass);
         if (objectMap == null) {
@@ -164,8 +170,36 @@ public class ClassContext {
         if (object == null) {
             throw new IllegalArgumentException();
         }
-        Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
-        objectMap.put(methodDescriptor, object);
+        synchronized (methodAnalysisObjectMap) {
+            Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
+            objectMap.put(methodDescriptor, object);
+        }
+    }
+
+    /**
+     * Store a method analysis object, unless one is already stored for the
+     * method.
+     *
+     * @param analysisClass
+     *            class the method analysis object belongs to
+     * @param methodDescriptor
+     *            method descriptor identifying the analyzed method
+     * @param object
+     *            the analysis object to cache
+     * @return the analysis object already stored, or null if object was stored
+     */
+    public Object putMethodAnalysisIfAbsent(Class<?> analysisClass, MethodDescriptor methodDescriptor, Object object) {
+        if (object == null) {
+            throw new IllegalArgumentException();
+        }
+        synchronized (methodAnalysisObjectMap) {
+            Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
+            Object existing = objectMap.get(methodDescriptor);
+            if (existing == null) {
+                objectMap.put(methodDescriptor, object);
+            }
+            return existing;
+        }
     }
 
     /**
@@ -179,12 +213,33 @@ public class ClassContext {
      * @throws CheckedAnalysisException
      */
     public Object getMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor) throws CheckedAnalysisException {
-        Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
-        return objectMap.get(methodDescriptor);
+        synchronized (methodAnalysisObjectMap) {
+            Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
+            return objectMap.get(methodDescriptor);
+        }
+    }
+
+    /**
+     * Remove the analysis object of given class stored for a method.
+     *
+     * @param analysisClass
+     *            class the method analysis object belongs to
+     * @param methodDescriptor
+     *            method descriptor identifying the analyzed method
+     */
+    public void removeMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor) {
+        synchronized (methodAnalysisObjectMap) {
+            Map<MethodDescriptor, Object> objectMap = methodAnalysisObjectMap.get(analysisClass);
+            if (objectMap != null) {
+                objectMap.remove(methodDescriptor);
+            }
+        }
     }
 
     public void purgeAllMethodAnalyses() {
-        methodAnalysisObjectMap.clear();
+        synchronized (methodAnalysisObjectMap) {
+            methodAnalysisObjectMap.clear();
+        }
     }
 
     /**
@@ -194,22 +249,24 @@ public class ClassContext {
      *            method descriptor identifying method to purge
      */
     public void purgeMethodAnalyses(MethodDescriptor methodDescriptor) {
-        Set<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> entrySet = methodAnalysisObjectMap.entrySet();
-        for (Iterator<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> i = entrySet.iterator(); i.hasNext();) {
-            Map.Entry<Class<?>, Map<MethodDescriptor, Object>> entry = i.next();
-
-            Class<?> cls = entry.getKey();
-
-            // FIXME: hack
-            if (!DataflowAnalysis.class.isAssignableFrom(cls) && !Dataflow.class.isAssignableFrom(cls)) {
-                // There is really no need to purge analysis results
-                // that aren't CFG-based.
-                // Currently, only dataflow analyses need
-                // to be purged.
-                continue;
-            }
+        synchronized (methodAnalysisObjectMap) {
+            Set<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> entrySet = methodAnalysisObjectMap.entrySet();
+            for (Iterator<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> i = entrySet.iterator(); i.hasNext();) {
+                Map.Entry<Class<?>, Map<MethodDescriptor, Object>> entry = i.next();
+
+                Class<?> cls = entry.getKey();
+
+                // FIXME: hack
+                if (!DataflowAnalysis.class.isAssignableFrom(cls) && !Dataflow.class.isAssignableFrom(cls)) {
+                    // There is really no need to purge analysis results
+                    // that aren't CFG-based.
+                    // Currently, only dataflow analyses need
+                    // to be purged.
+                    continue;
+                }
 
-            entry.getValue().remove(methodDescriptor);
+                entry.getValue().remove(methodDescriptor);
+            }
         }
     }
 
@@ -20,6 +20,8 @@
 package edu.umd.cs.findbugs.ba;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.TreeSet;
@@ -31,9 +33,13 @@ import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefAnalysis;
 import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefDataflow;
 import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefSet;
+import edu.umd.cs.findbugs.ba.npe.IsNullValueAnalysis;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.MethodAnalysisBudget;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.util.ClassName;
 
 /**
  * Perform dataflow analysis on a method using a control flow graph. Both
@@ -63,6 +69,25 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
     private int numIterations;
 
+    private int numTransfers;
+
+    private int timestamp;
+
+    private boolean reuseScratchFacts;
+
+    private Fact scratchEdgeFact;
+
+    private Fact scratchOrigResult;
+
+    /**
+     * True if the analysis must stop once the CFG's analysis time budget is
+     * used up.
+     */
+    private boolean timeLimited;
+
+    /** When the CFG's analysis time budget runs out, if timeLimited. */
+    private long deadline;
+
     public static boolean DEBUG = SystemProperties.getBoolean("dataflow.debug");
 
     /**
@@ -103,6 +128,28 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
     // Maximum number of iterations before we assume there is a bug and give up.
     private static final int MAX_ITERS = SystemProperties.getInt("dataflow.maxiters", 97);
 
+    /**
+     * Solve the dataflow equations using a worklist, rather than by sweeping
+     * over all blocks until nothing changes.
+     */
+    private static final boolean USE_WORKLIST = SystemProperties.getBoolean("dataflow.worklist", true);
+
+    /**
+     * Report that the analysis of the method is abandoned because its time
+     * budget, or the budget of the method analysis run by the analysis cache,
+     * is used up.
+     *
+     * @return the exception to throw
+     */
+    private AnalysisBudgetExceededException budgetExceeded() {
+        MethodGen methodGen = cfg.getMethodGen();
+        MethodDescriptor method = DescriptorFactory.instance().getMethodDescriptor(
+                ClassName.toSlashedClassName(methodGen.getClassName()), methodGen.getName(), methodGen.getSignature(),
+                methodGen.isStatic());
+        AnalysisContext.currentAnalysisContext().getLookupFailureCallback().reportSkippedAnalysis(method);
+        return new AnalysisBudgetExceededException(method);
+    }
+
     private String getFullyQualifiedMethodName() {
         String methodName;
         MethodGen methodGen = cfg.getMethodGen();
@@ -138,13 +185,184 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
      * points of each block.
      */
     public void execute() throws DataflowAnalysisException {
-        boolean change;
         boolean debugWas = DEBUG;
         if (DEBUG) {
             reportAnalysis("Executing");
         }
 
-        int timestamp = 0;
+        timestamp = 0;
+        numTransfers = 0;
+
+        // Frames share their slots until modified, and merging copies a
+        // frame's slots rather than keeping the frame, so frame analyses
+        // can reuse the facts used to transform predecessor results and to
+        // check whether a block's result changed, rather than creating new
+        // ones for every block on every iteration.
+        reuseScratchFacts = analysis instanceof FrameDataflowAnalysis<?, ?>;
+        long budget = cfg.getAnalysisTimeBudget();
+        timeLimited = budget != Long.MAX_VALUE;
+        if (timeLimited) {
+            if (budget <= 0) {
+                throw budgetExceeded();
+            }
+            deadline = System.nanoTime() + budget;
+        }
+        try {
+            if (USE_WORKLIST) {
+                executeWorklist();
+            } else {
+                executeSweeps();
+            }
+        } finally {
+            scratchEdgeFact = null;
+            scratchOrigResult = null;
+            if (timeLimited) {
+                cfg.setAnalysisTimeBudget(Math.max(0, deadline - System.nanoTime()));
+            }
+        }
+
+        if (DEBUG) {
+            System.out.println("-- Quiescence achieved-------------------------------------------------");
+            System.out.println(this.getClass().getName() + " iteration: " + numIterations + ", transfers: " + numTransfers
+                    + ", timestamp: " + timestamp);
+            MethodGen mg = cfg.getMethodGen();
+            System.out.println(mg.getClassName() + "." + mg.getName() + mg.getSignature());
+            new RuntimeException("Quiescence achieved----------------------------------------------------------------")
+                    .printStackTrace(System.out);
+
+        }
+        DEBUG = debugWas;
+    }
+
+    /**
+     * Solve the dataflow equations using a worklist. Blocks are taken from
+     * the worklist in the analysis's block order (e.g., reverse postorder for
+     * forward analyses), and a block is only put on the worklist when the
+     * result fact of one of its logical predecessors changes.
+     * <p>
+     * IsNullValueAnalysis records the locations where values become null as
+     * a side effect of transferring blocks, and clears them when an iteration
+     * starts, expecting the last iteration to transfer the blocks with their
+     * final start facts. So for that analysis, if the worklist transferred any
+     * block more than once, all blocks are transferred once more in a new
+     * iteration. If that changes any result (it shouldn't), the worklist is
+     * run again.
+     */
+    private void executeWorklist() throws DataflowAnalysisException {
+        // Number the blocks in block order
+        int maxLabel = -1;
+        BasicBlock[] orderedBlocks = new BasicBlock[cfg.getNumBasicBlocks()];
+        int numBlocks = 0;
+        for (Iterator<BasicBlock> i = blockOrder.blockIterator(); i.hasNext();) {
+            BasicBlock block = i.next();
+            if (numBlocks == orderedBlocks.length) {
+                orderedBlocks = Arrays.copyOf(orderedBlocks, numBlocks * 2 + 1);
+            }
+            orderedBlocks[numBlocks++] = block;
+            maxLabel = Math.max(maxLabel, block.getLabel());
+        }
+        int[] rankByLabel = new int[maxLabel + 1];
+        Arrays.fill(rankByLabel, -1);
+        for (int rank = 0; rank < numBlocks; ++rank) {
+            rankByLabel[orderedBlocks[rank].getLabel()] = rank;
+        }
+
+        int maxTransfers = (MAX_ITERS + 9) * Math.max(numBlocks, 1);
+        BitSet worklist = new BitSet(numBlocks);
+        worklist.set(0, numBlocks);
+        BasicBlock logicalEntry = logicalEntryBlock();
+        ++numIterations;
+        analysis.startIteration();
+        while (true) {
+            // Transfer blocks until no result changes
+            int transfersBefore = numTransfers;
+            for (int rank = worklist.nextSetBit(0); rank >= 0; rank = worklist.nextSetBit(0)) {
+                worklist.clear(rank);
+                BasicBlock block = orderedBlocks[rank];
+                if (transferBlockWithPredecessorFacts(block, logicalEntry)) {
+                    addLogicalSuccessors(block, rankByLabel, worklist);
+                }
+                if (numTransfers > maxTransfers) {
+                    throw new AssertionError("Too many transfers (" + numTransfers + ") in dataflow when analyzing "
+                            + getFullyQualifiedMethodName());
+                }
+            }
+            analysis.finishIteration();
+            if (!(analysis instanceof IsNullValueAnalysis) || transfersBefore == 0 && numTransfers == numBlocks) {
+                // Every block was transferred exactly once, with its final
+                // start fact, or the analysis doesn't care
+                break;
+            }
+
+            // Transfer all blocks once more
+            ++numIterations;
+            analysis.startIteration();
+            for (int rank = 0; rank < numBlocks; ++rank) {
+                BasicBlock block = orderedBlocks[rank];
+                if (transferBlockWithPredecessorFacts(block, logicalEntry)) {
+                    addLogicalSuccessors(block, rankByLabel, worklist);
+                }
+            }
+            if (worklist.isEmpty()) {
+                analysis.finishIteration();
+                break;
+            }
+            if (DEBUG) {
+                reportAnalysis("Results changed after worklist was empty");
+            }
+        }
+    }
+
+    /**
+     * Compute the start fact of given block from the results of its logical
+     * predecessors, and transfer the block.
+     *
+     * @return true if the block's result fact changed
+     */
+    private boolean transferBlockWithPredecessorFacts(BasicBlock block, BasicBlock logicalEntry)
+            throws DataflowAnalysisException {
+        Fact start = analysis.getStartFact(block);
+        assert start != null;
+        if (block == logicalEntry) {
+            analysis.makeFactTop(start);
+            analysis.initEntryFact(start);
+            if (DEBUG)
+                debug(block, "Init entry fact ==> " + analysis.factToString(start) + "\n");
+        } else {
+            int rawPredCount = 0;
+            for (Iterator<Edge> i = logicalPredecessorEdgeIterator(block); i.hasNext();) {
+                i.next();
+                rawPredCount++;
+            }
+            meetPredecessorFacts(block, start, rawPredCount);
+        }
+        if (DEBUG)
+            debug(block, "start fact is " + analysis.factToString(start) + "\n");
+        return transferBlock(block, start, true);
+    }
+
+    /**
+     * Add the logical successors of a block (the successors for forward
+     * analyses, the predecessors for backward analyses) to the worklist.
+     */
+    private void addLogicalSuccessors(BasicBlock block, int[] rankByLabel, BitSet worklist) {
+        Iterator<Edge> i = isForwards ? cfg.outgoingEdgeIterator(block) : cfg.incomingEdgeIterator(block);
+        while (i.hasNext()) {
+            Edge edge = i.next();
+            BasicBlock logicalSucc = isForwards ? edge.getTarget() : edge.getSource();
+            int label = logicalSucc.getLabel();
+            if (label < rankByLabel.length && rankByLabel[label] >= 0) {
+                worklist.set(rankByLabel[label]);
+            }
+        }
+    }
+
+    /**
+     * Solve the dataflow equations by sweeping over all blocks in block order
+     * until no result changes.
+     */
+    private void executeSweeps() throws DataflowAnalysisException {
+        boolean change;
         boolean firstTime = true;
         do {
             change = false;
@@ -230,12 +448,6 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                 assert start != null;
 
                 boolean needToRecompute = false;
-                // Get result facts for block,
-                Fact result = analysis.getResultFact(block);
-                assert result != null;
-
-                int originalResultTimestamp = analysis.getLastUpdateTimestamp(result);
-
                 // Meet all of the logical predecessor results into this block's
                 // start.
                 // Special case: if the block is the logical entry, then it gets
@@ -298,127 +510,172 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
                     if (needToRecompute) {
 
-                        analysis.makeFactTop(start);
-                        predEdgeIter = logicalPredecessorEdgeIterator(block);
-                        while (predEdgeIter.hasNext()) {
-                            Edge edge = predEdgeIter.next();
-                            BasicBlock logicalPred = isForwards ? edge.getSource() : edge.getTarget();
-
-                            // Get the predecessor result fact
-                            Fact predFact = analysis.getResultFact(logicalPred);
-
-                            // Apply the edge transfer function.
-                            Fact edgeFact = analysis.createFact();
-                            analysis.copy(predFact, edgeFact);
-                            analysis.edgeTransfer(edge, edgeFact);
-
-                            if (DEBUG && !analysis.same(edgeFact, predFact)) {
-                                debug(block, logicalPred, edge, "Edge transfer " + analysis.factToString(predFact) + " ==> "
-                                        + analysis.factToString(edgeFact));
-                            }
-
-                            // Merge the predecessor fact (possibly transformed
-                            // by the edge transfer function)
-                            // into the block's start fact.
-                            if (DEBUG) {
-                                if (analysis.isTop(start))
-                                    debug(block, logicalPred, edge, "\n  First pred is " + analysis.factToString(edgeFact)
-                                            + "\n   last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
-                                else
-                                    debug(block, logicalPred, edge, "\n  Meet " + analysis.factToString(start) + "\n   with "
-                                            + analysis.factToString(edgeFact)
-
-                                            + "\n   pred last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
-                            }
-
-                            if (analysis instanceof UnconditionalValueDerefAnalysis) {
-                                ((UnconditionalValueDerefAnalysis) analysis).meetInto((UnconditionalValueDerefSet) edgeFact,
-                                        edge, (UnconditionalValueDerefSet) start, rawPredCount == 1);
-                            } else
-                                analysis.meetInto(edgeFact, edge, start);
-                            analysis.setLastUpdateTimestamp(start, timestamp);
-
-                            int pos = -1;
-                            if (block.getFirstInstruction() != null)
-                                pos = block.getFirstInstruction().getPosition();
-                            if (DEBUG)
-                                System.out.println(" [" + pos + "]==> " + analysis.factToString(start) + " @ " + timestamp
-                                        + " \n");
-                        }
+                        meetPredecessorFacts(block, start, rawPredCount);
                     }
                 }
                 if (DEBUG)
                     debug(block, "start fact is " + analysis.factToString(start) + "\n");
 
-                // making a copy of result facts (so we can detect if it
-                // changed).
-                boolean resultWasTop = analysis.isTop(result);
-                Fact origResult = null;
-                if (!resultWasTop) {
-                    origResult = analysis.createFact();
-                    analysis.copy(result, origResult);
-                }
+                if (transferBlock(block, start, needToRecompute))
+                    change = true;
+            }
 
-                if (true || analysis.isTop(start)) {
-                    // Apply the transfer function.
+            analysis.finishIteration();
+            if (!sawBackEdge) break;
+            
+        } while (change);
+    }
 
-                    analysis.transfer(block, null, start, result);
-                } else {
-                    analysis.copy(start, result);
-                }
+    /**
+     * Make the start fact of a block the meet of the result facts of its
+     * logical predecessors, transformed by the edge transfer function.
+     *
+     * @param block
+     *            the block
+     * @param start
+     *            the block's start fact
+     * @param rawPredCount
+     *            number of logical predecessor edges of the block
+     */
+    private void meetPredecessorFacts(BasicBlock block, Fact start, int rawPredCount) throws DataflowAnalysisException {
+        analysis.makeFactTop(start);
+        Iterator<Edge> predEdgeIter = logicalPredecessorEdgeIterator(block);
+        while (predEdgeIter.hasNext()) {
+            Edge edge = predEdgeIter.next();
+            BasicBlock logicalPred = isForwards ? edge.getSource() : edge.getTarget();
+
+            // Get the predecessor result fact
+            Fact predFact = analysis.getResultFact(logicalPred);
+
+            // Apply the edge transfer function.
+            Fact edgeFact;
+            if (!reuseScratchFacts) {
+                edgeFact = analysis.createFact();
+            } else {
+                if (scratchEdgeFact == null)
+                    scratchEdgeFact = analysis.createFact();
+                edgeFact = scratchEdgeFact;
+            }
+            analysis.copy(predFact, edgeFact);
+            analysis.edgeTransfer(edge, edgeFact);
 
-                if (DEBUG && SystemProperties.getBoolean("dataflow.blockdebug")) {
-                    debug(block, "Dumping flow values for block:\n");
-                    Iterator<org.apache.bcel.generic.InstructionHandle> ii = block.instructionIterator();
-                    while (ii.hasNext()) {
-                        org.apache.bcel.generic.InstructionHandle handle = ii.next();
-                        Fact tmpResult = analysis.createFact();
-                        analysis.transfer(block, handle, start, tmpResult);
-                        System.out.println("\t" + handle + " " + analysis.factToString(tmpResult));
-                    }
-                }
+            if (DEBUG && !analysis.same(edgeFact, predFact)) {
+                debug(block, logicalPred, edge, "Edge transfer " + analysis.factToString(predFact) + " ==> "
+                        + analysis.factToString(edgeFact));
+            }
 
-                // See if the result changed.
-                if (DEBUG)
-                    debug(block, "orig result is " + (origResult == null ? "TOP" : analysis.factToString(origResult)) + "\n");
-                boolean thisResultChanged = false;
-                if (resultWasTop)
-                    thisResultChanged = !analysis.isTop(result);
+            // Merge the predecessor fact (possibly transformed
+            // by the edge transfer function)
+            // into the block's start fact.
+            if (DEBUG) {
+                if (analysis.isTop(start))
+                    debug(block, logicalPred, edge, "\n  First pred is " + analysis.factToString(edgeFact)
+                            + "\n   last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
                 else
-                    thisResultChanged = !analysis.same(result, origResult);
-                if (thisResultChanged) {
-                    timestamp++;
-                    if (DEBUG)
-                        debug(block, "result changed at timestamp " + timestamp + "\n");
-                    if (DEBUG && !needToRecompute) {
-                        System.out.println("I thought I didn't need to recompute");
-                    }
-                    change = true;
-                    analysis.setLastUpdateTimestamp(result, timestamp);
-                } else
-                    analysis.setLastUpdateTimestamp(result, originalResultTimestamp);
+                    debug(block, logicalPred, edge, "\n  Meet " + analysis.factToString(start) + "\n   with "
+                            + analysis.factToString(edgeFact)
 
-                if (DEBUG)
-                    debug(block,
-                            "result is " + analysis.factToString(result) + " @ timestamp "
-                                    + analysis.getLastUpdateTimestamp(result) + "\n");
+                            + "\n   pred last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
             }
 
-            analysis.finishIteration();
-            if (!sawBackEdge) break;
-            
-        } while (change);
+            if (analysis instanceof UnconditionalValueDerefAnalysis) {
+                ((UnconditionalValueDerefAnalysis) analysis).meetInto((UnconditionalValueDerefSet) edgeFact,
+                        edge, (UnconditionalValueDerefSet) start, rawPredCount == 1);
+            } else
+                analysis.meetInto(edgeFact, edge, start);
+            analysis.setLastUpdateTimestamp(start, timestamp);
 
-        if (DEBUG) {
-            System.out.println("-- Quiescence achieved-------------------------------------------------");
-            System.out.println(this.getClass().getName() + " iteration: " + numIterations + ", timestamp: " + timestamp);
-            MethodGen mg = cfg.getMethodGen();
-            System.out.println(mg.getClassName() + "." + mg.getName() + mg.getSignature());
-            new RuntimeException("Quiescence achieved----------------------------------------------------------------")
-                    .printStackTrace(System.out);
+            int pos = -1;
+            if (block.getFirstInstruction() != null)
+                pos = block.getFirstInstruction().getPosition();
+            if (DEBUG)
+                System.out.println(" [" + pos + "]==> " + analysis.factToString(start) + " @ " + timestamp
+                        + " \n");
+        }
+    }
 
+    /**
+     * Apply the transfer function to a block, and update the timestamp of the
+     * block's result fact.
+     *
+     * @param block
+     *            the block
+     * @param start
+     *            the block's start fact
+     * @param needToRecompute
+     *            whether the start fact was recomputed (for debugging)
+     * @return true if the block's result fact changed
+     */
+    private boolean transferBlock(BasicBlock block, Fact start, boolean needToRecompute) throws DataflowAnalysisException {
+        // Get result facts for block,
+        Fact result = analysis.getResultFact(block);
+        assert result != null;
+
+        int originalResultTimestamp = analysis.getLastUpdateTimestamp(result);
+        ++numTransfers;
+        if ((numTransfers & 63) == 0
+                && ((timeLimited && System.nanoTime() - deadline > 0) || !MethodAnalysisBudget.charge(64))) {
+            throw budgetExceeded();
         }
-        DEBUG = debugWas;
+
+        // making a copy of result facts (so we can detect if it
+        // changed).
+        boolean resultWasTop = analysis.isTop(result);
+        Fact origResult = null;
+        if (!resultWasTop) {
+            if (!reuseScratchFacts) {
+                origResult = analysis.createFact();
+            } else {
+                if (scratchOrigResult == null)
+                    scratchOrigResult = analysis.createFact();
+                origResult = scratchOrigResult;
+            }
+            analysis.copy(result, origResult);
+        }
+
+        if (true || analysis.isTop(start)) {
+            // Apply the transfer function.
+
+            analysis.transfer(block, null, start, result);
+        } else {
+            analysis.copy(start, result);
+        }
+
+        if (DEBUG && SystemProperties.getBoolean("dataflow.blockdebug")) {
+            debug(block, "Dumping flow values for block:\n");
+            Iterator<org.apache.bcel.generic.InstructionHandle> ii = block.instructionIterator();
+            while (ii.hasNext()) {
+                org.apache.bcel.generic.InstructionHandle handle = ii.next();
+                Fact tmpResult = analysis.createFact();
+                analysis.transfer(block, handle, start, tmpResult);
+                System.out.println("\t" + handle + " " + analysis.factToString(tmpResult));
+            }
+        }
+
+        // See if the result changed.
+        if (DEBUG)
+            debug(block, "orig result is " + (origResult == null ? "TOP" : analysis.factToString(origResult)) + "\n");
+        boolean thisResultChanged = false;
+        if (resultWasTop)
+            thisResultChanged = !analysis.isTop(result);
+        else
+            thisResultChanged = !analysis.same(result, origResult);
+        if (thisResultChanged) {
+            timestamp++;
+            if (DEBUG)
+                debug(block, "result changed at timestamp " + timestamp + "\n");
+            if (DEBUG && !needToRecompute) {
+                System.out.println("I thought I didn't need to recompute");
+            }
+            analysis.setLastUpdateTimestamp(result, timestamp);
+        } else
+            analysis.setLastUpdateTimestamp(result, originalResultTimestamp);
+
+        if (DEBUG)
+            debug(block,
+                    "result is " + analysis.factToString(result) + " @ timestamp "
+                            + analysis.getLastUpdateTimestamp(result) + "\n");
+        return thisResultChanged;
     }
 
     /**
@@ -453,12 +710,22 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
     }
 
     /**
-     * Return the number of iterations of the main execution loop.
+     * Return the number of iterations of the main execution loop. When a
+     * worklist is used, this is 1, plus the number of times all blocks were
+     * transferred again after the worklist was empty.
      */
     public int getNumIterations() {
         return numIterations;
     }
 
+    /**
+     * Return the number of times the transfer function was applied to a
+     * block.
+     */
+    public int getNumTransfers() {
+        return numTransfers;
+    }
+
     /**
      * Get dataflow facts for start of given block.
      */
@@ -95,7 +95,7 @@ public class DebugRepositoryLookupFailureCallback implements RepositoryLookupFai
             return;
 
         }
-        if (e instanceof MethodUnprofitableException) {
+        if (e instanceof MethodUnprofitableException || e instanceof AnalysisBudgetExceededException) {
             // TODO: log this
             return;
         }
@@ -112,4 +112,13 @@ public class DebugRepositoryLookupFailureCallback implements RepositoryLookupFai
     public void reportSkippedAnalysis(MethodDescriptor method) {
         System.err.println("Skipping " + method);
     }
+
+    /**
+     * Report that a method is analyzed in a degraded way
+     * 
+     * @param method
+     */
+    public void reportDegradedAnalysis(MethodDescriptor method) {
+        System.err.println("Degrading analysis of " + method);
+    }
 }
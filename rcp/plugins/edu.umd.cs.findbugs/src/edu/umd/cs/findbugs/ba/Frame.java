@@ -21,10 +21,10 @@ package edu.umd.cs.findbugs.ba;
 
 import static edu.umd.cs.findbugs.ba.Debug.VERIFY_INTEGRITY;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 
 import org.apache.bcel.Constants;
 import org.apache.bcel.generic.ConstantPoolGen;
@@ -75,9 +75,17 @@ public abstract class Frame<ValueType> {
     private final int numLocals;
 
     /**
-     * Array storing the values of local variables and operand stack slots.
+     * Values of the local variables and operand stack slots. Only the first
+     * numSlots values are in use; slots beyond the end of the array hold
+     * null. The values may be shared with other frames (see copyFrom()), in
+     * which case they must be copied before they are modified.
      */
-    private final ArrayList<ValueType> slotList;
+    private Slots slots;
+
+    /**
+     * Number of slots in use: the local variables, then the operand stack.
+     */
+    private int numSlots;
 
     /**
      * Flag marking this frame as a special "TOP" value. Such Frames serve as
@@ -96,6 +104,29 @@ public abstract class Frame<ValueType> {
      */
     private static final int DEFAULT_STACK_CAPACITY = 4;
 
+    /**
+     * Slot values, which may be shared by several frames. Once shared, they
+     * are never modified again, so a frame can share the values of a frame
+     * which other threads may be reading at the same time.
+     */
+    private static final class Slots {
+        final Object[] values;
+
+        /** True if more than one frame may use the values. */
+        volatile boolean shared;
+
+        Slots(Object[] values, boolean shared) {
+            this.values = values;
+            this.shared = shared;
+        }
+    }
+
+    /**
+     * Slots of a new frame. Most new frames are overwritten by copyFrom()
+     * before they are modified, so the array is only allocated when needed.
+     */
+    private static final Slots NO_SLOTS = new Slots(new Object[0], true);
+
     // //////////////////////////////////////////////////////////////////////////////////
     // Methods
     // //////////////////////////////////////////////////////////////////////////////////
@@ -110,9 +141,8 @@ public abstract class Frame<ValueType> {
      */
     public Frame(int numLocals) {
         this.numLocals = numLocals;
-        this.slotList = new ArrayList<ValueType>(numLocals + DEFAULT_STACK_CAPACITY);
-        for (int i = 0; i < numLocals; ++i)
-            slotList.add(null);
+        this.slots = NO_SLOTS;
+        this.numSlots = numLocals;
     }
 
     /**
@@ -175,7 +205,10 @@ public abstract class Frame<ValueType> {
             throw new IllegalArgumentException();
         if (!isValid())
             throw new IllegalStateException("accessing top or bottom frame");
-        slotList.add(value);
+        if (slots.shared || numSlots == slots.values.length) {
+            reallocateSlots(numSlots + 1);
+        }
+        slots.values[numSlots++] = value;
     }
 
     /**
@@ -188,9 +221,14 @@ public abstract class Frame<ValueType> {
     public ValueType popValue() throws DataflowAnalysisException {
         if (!isValid())
             throw new DataflowAnalysisException("accessing top or bottom frame");
-        if (slotList.size() == numLocals)
+        if (numSlots == numLocals)
             throw new DataflowAnalysisException("operand stack empty");
-        return slotList.remove(slotList.size() - 1);
+        ValueType value = slot(--numSlots);
+        if (!slots.shared) {
+            // Don't keep the popped value reachable
+            slots.values[numSlots] = null;
+        }
+        return value;
     }
 
     /**
@@ -202,10 +240,10 @@ public abstract class Frame<ValueType> {
     public ValueType getTopValue() throws DataflowAnalysisException {
         if (!isValid())
             throw new DataflowAnalysisException("accessing top or bottom frame");
-        assert slotList.size() >= numLocals;
-        if (slotList.size() == numLocals)
+        assert numSlots >= numLocals;
+        if (numSlots == numLocals)
             throw new DataflowAnalysisException("operand stack is empty");
-        return slotList.get(slotList.size() - 1);
+        return slot(numSlots - 1);
     }
 
     /**
@@ -217,9 +255,8 @@ public abstract class Frame<ValueType> {
         int stackDepth = getStackDepth();
         if (valueList.length > stackDepth)
             throw new DataflowAnalysisException("not enough values on stack");
-        int numSlots = slotList.size();
         for (int i = numSlots - valueList.length, j = 0; i < numSlots; ++i, ++j) {
-            valueList[j] = slotList.get(i);
+            valueList[j] = slot(i);
         }
     }
 
@@ -236,7 +273,7 @@ public abstract class Frame<ValueType> {
         int stackDepth = getStackDepth();
         if (loc >= stackDepth)
             throw new DataflowAnalysisException("not enough values on stack: access=" + loc + ", avail=" + stackDepth);
-        return slotList.get(slotList.size() - (loc + 1));
+        return slot(numSlots - (loc + 1));
     }
 
     /**
@@ -250,7 +287,7 @@ public abstract class Frame<ValueType> {
         int stackDepth = getStackDepth();
         if (loc >= stackDepth)
             throw new DataflowAnalysisException("not enough values on stack: access=" + loc + ", avail=" + stackDepth);
-        return slotList.size() - (loc + 1);
+        return numSlots - (loc + 1);
     }
 
     /**
@@ -407,7 +444,7 @@ public abstract class Frame<ValueType> {
         if (i >= numArguments)
             throw new IllegalArgumentException();
 
-        return (slotList.size() - numArguments) + i;
+        return (numSlots - numArguments) + i;
     }
 
     /**
@@ -465,16 +502,21 @@ public abstract class Frame<ValueType> {
     public void clearStack() {
         if (!isValid())
             throw new IllegalStateException("accessing top or bottom frame");
-        assert slotList.size() >= numLocals;
-        if (slotList.size() > numLocals)
-            slotList.subList(numLocals, slotList.size()).clear();
+        assert numSlots >= numLocals;
+        if (numSlots > numLocals) {
+            if (!slots.shared) {
+                // Don't keep the popped values reachable
+                Arrays.fill(slots.values, numLocals, numSlots, null);
+            }
+            numSlots = numLocals;
+        }
     }
 
     /**
      * Get the depth of the Java operand stack.
      */
     public int getStackDepth() {
-        return slotList.size() - numLocals;
+        return numSlots - numLocals;
     }
 
     /**
@@ -488,14 +530,14 @@ public abstract class Frame<ValueType> {
      * Get the number of slots (locals plus stack values).
      */
     public int getNumSlots() {
-        return slotList.size();
+        return numSlots;
     }
 
     public boolean contains(ValueType value) {
         if (!isValid())
             throw new IllegalStateException("accessing top or bottom frame");
-        for (ValueType v : slotList)
-            if (v.equals(value))
+        for (int i = 0; i < numSlots; ++i)
+            if (slot(i).equals(value))
                 return true;
         return false;
     }
@@ -510,7 +552,9 @@ public abstract class Frame<ValueType> {
     public ValueType getValue(int n) {
         if (!isValid())
             throw new IllegalStateException("accessing top or bottom frame");
-        return slotList.get(n);
+        if (n >= numSlots)
+            throw new IndexOutOfBoundsException("slot " + n + " of " + numSlots);
+        return slot(n);
     }
 
     /**
@@ -526,7 +570,12 @@ public abstract class Frame<ValueType> {
             throw new IllegalArgumentException();
         if (!isValid())
             throw new IllegalStateException("accessing top or bottom frame");
-        slotList.set(n, value);
+        if (n >= numSlots)
+            throw new IndexOutOfBoundsException("slot " + n + " of " + numSlots);
+        if (slots.shared) {
+            reallocateSlots(numSlots);
+        }
+        slots.values[n] = value;
     }
 
     /**
@@ -568,28 +617,17 @@ public abstract class Frame<ValueType> {
      */
     public void copyFrom(Frame<ValueType> other) {
         lastUpdateTimestamp = other.lastUpdateTimestamp;
-        if (true) {
-            int size = slotList.size();
-            if (size == other.slotList.size()) {
-                for (int i = 0; i < size; i++)
-                    slotList.set(i, other.slotList.get(i));
-            } else {
-                slotList.clear();
-                for (ValueType v : other.slotList)
-                    slotList.add(v);
+        if (other != this) {
+            // Share the other frame's slots until one of the frames is
+            // modified. Most copies (e.g., of a block's start fact into its
+            // result fact, or of a result fact to check whether it changed)
+            // are only read, or are modified in a few slots.
+            if (!other.slots.shared) {
+                other.slots.shared = true;
             }
-        } else {
-            slotList.clear();
-            slotList.addAll(other.slotList);
-
+            slots = other.slots;
+            numSlots = other.numSlots;
         }
-        /*
-         * Andrei, 27.02.2008: "optimized" code below takes ~18% overall FB
-         * execution time, code above only 5% int size = slotList.size(); if
-         * (size == other.slotList.size()) { for (int i = 0; i < size; i++)
-         * slotList.set(i, other.slotList.get(i)); } else { slotList.clear();
-         * for (ValueType v : other.slotList) slotList.add(v); }
-         */
         isTop = other.isTop;
         isBottom = other.isBottom;
     }
@@ -646,9 +684,48 @@ public abstract class Frame<ValueType> {
      *         stack slots
      */
     public Collection<ValueType> allSlots() {
-        if (slotList == null)
-            return Collections.<ValueType> emptyList();
-        return Collections.<ValueType> unmodifiableCollection(slotList);
+        final Object[] allSlots = slots.values;
+        final int size = numSlots;
+        return new AbstractList<ValueType>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public ValueType get(int index) {
+                if (index >= size)
+                    throw new IndexOutOfBoundsException("slot " + index + " of " + size);
+                return index < allSlots.length ? (ValueType) allSlots[index] : null;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Get the value in given slot, without checking the frame is valid.
+     */
+    @SuppressWarnings("unchecked")
+    private ValueType slot(int n) {
+        Object[] values = slots.values;
+        return n < values.length ? (ValueType) values[n] : null;
+    }
+
+    /**
+     * Copy the slots into a new array owned by this frame.
+     *
+     * @param minCapacity
+     *            minimum number of slots the new array must hold
+     */
+    private void reallocateSlots(int minCapacity) {
+        Object[] values = slots.values;
+        int capacity = values.length;
+        if (capacity < minCapacity) {
+            capacity = Math.max(minCapacity + DEFAULT_STACK_CAPACITY, capacity + (capacity >> 1));
+        }
+        Object[] newValues = new Object[capacity];
+        System.arraycopy(values, 0, newValues, 0, Math.min(numSlots, values.length));
+        slots = new Slots(newValues, false);
     }
 
     /**
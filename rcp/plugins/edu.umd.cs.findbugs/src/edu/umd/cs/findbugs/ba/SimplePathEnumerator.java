@@ -24,6 +24,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.classfile.MethodAnalysisBudget;
 
 /**
  * Object to enumerate (some subset of) the simple paths in a CFG. A simple path
@@ -149,6 +150,13 @@ public class SimplePathEnumerator implements EdgeTypes, DFSEdgeTypes {
                 return;
             ++work;
 
+            // Has the method analysis used up its budget? If so, stop as if
+            // we had done the maximum amount of work.
+            if ((work & 255) == 0 && !MethodAnalysisBudget.charge(256)) {
+                maxWork = work;
+                return;
+            }
+
             // Did we reach the maximum number of simple paths?
             if (pathList.size() == maxPaths)
                 return;
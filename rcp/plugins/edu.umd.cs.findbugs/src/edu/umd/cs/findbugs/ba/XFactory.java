@@ -20,11 +20,11 @@
 package edu.umd.cs.findbugs.ba;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 
@@ -65,17 +65,20 @@ import edu.umd.cs.findbugs.visitclass.PreorderVisitor;
 public class XFactory {
     public static final boolean DEBUG_UNRESOLVED = SystemProperties.getBoolean("findbugs.xfactory.debugunresolved");
 
-    private Set<ClassDescriptor> reflectiveClasses = new HashSet<ClassDescriptor>();
+    // All of the tables below may be updated by several analysis threads at
+    // once, so they are backed by concurrent maps.
 
-    private Map<MethodDescriptor, XMethod> methods = new HashMap<MethodDescriptor, XMethod>();
+    private Set<ClassDescriptor> reflectiveClasses = Collections.newSetFromMap(new ConcurrentHashMap<ClassDescriptor, Boolean>());
 
-    private Map<FieldDescriptor, XField> fields = new HashMap<FieldDescriptor, XField>();
+    private Map<MethodDescriptor, XMethod> methods = new ConcurrentHashMap<MethodDescriptor, XMethod>();
 
-    private Set<XMethod> calledMethods = new HashSet<XMethod>();
+    private Map<FieldDescriptor, XField> fields = new ConcurrentHashMap<FieldDescriptor, XField>();
 
-    private Set<XField> emptyArrays = new HashSet<XField>();
+    private Set<XMethod> calledMethods = Collections.newSetFromMap(new ConcurrentHashMap<XMethod, Boolean>());
 
-    private Set<String> calledMethodSignatures = new HashSet<String>();
+    private Set<XField> emptyArrays = Collections.newSetFromMap(new ConcurrentHashMap<XField, Boolean>());
+
+    private Set<String> calledMethodSignatures = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public void canonicalizeAll() {
         DescriptorFactory descriptorFactory = DescriptorFactory.instance();
@@ -119,7 +122,7 @@ public class XFactory {
     }
 
     public boolean isEmptyArrayField(@CheckForNull XField f) {
-        return emptyArrays.contains(f);
+        return f != null && emptyArrays.contains(f);
     }
 
     public boolean isCalled(XMethod m) {
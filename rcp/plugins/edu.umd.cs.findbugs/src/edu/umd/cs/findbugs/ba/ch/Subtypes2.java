@@ -51,6 +51,9 @@ import edu.umd.cs.findbugs.util.MapCache;
 /**
  * Class for performing class hierarchy queries. Does <em>not</em> require
  * JavaClass objects to be in memory. Instead, uses XClass objects.
+ * <p>
+ * The inheritance graph and query caches are filled in lazily, so public
+ * queries are synchronized to allow use from several analysis threads.
  *
  * @author David Hovemeyer
  */
@@ -180,7 +183,7 @@ public class Subtypes2 {
      * @param appXClass
      *            application XClass to add to the inheritance graph
      */
-    public void addApplicationClass(XClass appXClass) {
+    public synchronized void addApplicationClass(XClass appXClass) {
         for (XMethod m : appXClass.getXMethods()) {
             if (m.isStub())
                 return;
@@ -190,7 +193,7 @@ public class Subtypes2 {
 
     }
 
-    public boolean isApplicationClass(ClassDescriptor descriptor) {
+    public synchronized boolean isApplicationClass(ClassDescriptor descriptor) {
         assert descriptor != null;
         try {
             return resolveClassVertex(descriptor).isApplicationClass();
@@ -207,7 +210,7 @@ public class Subtypes2 {
      * @param xclass
      *            XClass to add to the inheritance graph
      */
-    public void addClass(XClass xclass) {
+    public synchronized void addClass(XClass xclass) {
         addClassAndGetClassVertex(xclass);
     }
 
@@ -282,7 +285,7 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      *             if a missing class prevents a definitive answer
      */
-    public boolean isSubtype(ReferenceType type, ReferenceType possibleSupertype) throws ClassNotFoundException {
+    public synchronized boolean isSubtype(ReferenceType type, ReferenceType possibleSupertype) throws ClassNotFoundException {
 
         // Eliminate some easy cases
         if (type.equals(possibleSupertype)) {
@@ -355,7 +358,7 @@ public class Subtypes2 {
         return false;
     }
 
-    public boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor superDesc) throws ClassNotFoundException {
+    public synchronized boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor superDesc) throws ClassNotFoundException {
         assert subDesc != null;
         assert superDesc != null;
         if (subDesc.equals(superDesc))
@@ -386,7 +389,7 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      *             if a missing class prevents a definitive answer
      */
-    public boolean isSubtype(ObjectType type, ObjectType possibleSupertype) throws ClassNotFoundException {
+    public synchronized boolean isSubtype(ObjectType type, ObjectType possibleSupertype) throws ClassNotFoundException {
         if (DEBUG_QUERIES) {
             System.out.println("isSubtype: check " + type + " subtype of " + possibleSupertype);
         }
@@ -457,7 +460,7 @@ public class Subtypes2 {
      * @return the first common superclass of <code>a</code> and <code>b</code>
      * @throws ClassNotFoundException
      */
-    public ReferenceType getFirstCommonSuperclass(ReferenceType a, ReferenceType b) throws ClassNotFoundException {
+    public synchronized ReferenceType getFirstCommonSuperclass(ReferenceType a, ReferenceType b) throws ClassNotFoundException {
         // Easy case: same types
         if (a.equals(b)) {
             return a;
@@ -614,7 +617,7 @@ public class Subtypes2 {
      * @return the first common superclass of <code>a</code> and <code>b</code>
      * @throws ClassNotFoundException
      */
-    public ObjectType getFirstCommonSuperclass(ObjectType a, ObjectType b) throws ClassNotFoundException {
+    public synchronized ObjectType getFirstCommonSuperclass(ObjectType a, ObjectType b) throws ClassNotFoundException {
         // Easy case
         if (a.equals(b)) {
             return a;
@@ -731,7 +734,7 @@ public class Subtypes2 {
      * @return Set of ClassDescriptors which are the known subtypes of the class
      * @throws ClassNotFoundException
      */
-    public Set<ClassDescriptor> getSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+    public synchronized Set<ClassDescriptor> getSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
         Set<ClassDescriptor> result = subtypeSetMap.get(classDescriptor);
         if (result == null) {
             result = computeKnownSubtypes(classDescriptor);
@@ -748,7 +751,7 @@ public class Subtypes2 {
      * @return true if the class has subtypes, false if it has no subtypes
      * @throws ClassNotFoundException
      */
-    public boolean hasSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+    public synchronized boolean hasSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
         Set<ClassDescriptor> subtypes = getDirectSubtypes(classDescriptor);
         if (DEBUG) {
             System.out.println("Direct subtypes of " + classDescriptor + " are " + subtypes);
@@ -764,7 +767,7 @@ public class Subtypes2 {
      * @return Set of ClassDescriptors which are the known subtypes of the class
      * @throws ClassNotFoundException
      */
-    public Set<ClassDescriptor> getDirectSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+    public synchronized Set<ClassDescriptor> getDirectSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
 
         ClassVertex startVertex = resolveClassVertex(classDescriptor);
 
@@ -788,7 +791,7 @@ public class Subtypes2 {
      * @return Set containing all common transitive subtypes of the two classes
      * @throws ClassNotFoundException
      */
-    public Set<ClassDescriptor> getTransitiveCommonSubtypes(ClassDescriptor classDescriptor1, ClassDescriptor classDescriptor2)
+    public synchronized Set<ClassDescriptor> getTransitiveCommonSubtypes(ClassDescriptor classDescriptor1, ClassDescriptor classDescriptor2)
             throws ClassNotFoundException {
         Set<ClassDescriptor> subtypes1 = getSubtypes(classDescriptor1);
         Set<ClassDescriptor> result = new HashSet<ClassDescriptor>(subtypes1);
@@ -802,7 +805,7 @@ public class Subtypes2 {
      *
      * @return Collection of all XClass objects
      */
-    public Collection<XClass> getXClassCollection() {
+    public synchronized Collection<XClass> getXClassCollection() {
         return Collections.<XClass> unmodifiableCollection(xclassSet);
     }
 
@@ -864,7 +867,7 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      *             if the start vertex cannot be resolved
      */
-    public void traverseSupertypes(ClassDescriptor start, InheritanceGraphVisitor visitor) throws ClassNotFoundException {
+    public synchronized void traverseSupertypes(ClassDescriptor start, InheritanceGraphVisitor visitor) throws ClassNotFoundException {
         LinkedList<SupertypeTraversalPath> workList = new LinkedList<SupertypeTraversalPath>();
 
         ClassVertex startVertex = resolveClassVertex(start);
@@ -1015,7 +1018,7 @@ public class Subtypes2 {
      * @return SupertypeQueryResults for the class named by the ClassDescriptor
      * @throws ClassNotFoundException
      */
-    public SupertypeQueryResults getSupertypeQueryResults(ClassDescriptor classDescriptor) {
+    public synchronized SupertypeQueryResults getSupertypeQueryResults(ClassDescriptor classDescriptor) {
         SupertypeQueryResults supertypeQueryResults = supertypeSetMap.get(classDescriptor);
         if (supertypeQueryResults == null) {
             supertypeQueryResults = computeSupertypes(classDescriptor);
@@ -19,6 +19,8 @@
 
 package edu.umd.cs.findbugs.ba.interproc;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Writer;
 
@@ -86,4 +88,34 @@ public abstract class FieldPropertyDatabase<Property> extends PropertyDatabase<F
         writer.write(String.valueOf(flags));
     }
 
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * edu.umd.cs.findbugs.ba.interproc.PropertyDatabase#readBinaryKey(java.
+     * io.DataInputStream)
+     */
+    @Override
+    protected FieldDescriptor readBinaryKey(DataInputStream in) throws IOException {
+        String className = in.readUTF();
+        String fieldName = in.readUTF();
+        String signature = in.readUTF();
+        return DescriptorFactory.instance().getFieldDescriptor(className, fieldName, signature, in.readBoolean());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * edu.umd.cs.findbugs.ba.interproc.PropertyDatabase#writeBinaryKey(java
+     * .io.DataOutputStream, KeyType)
+     */
+    @Override
+    protected void writeBinaryKey(DataOutputStream out, FieldDescriptor field) throws IOException {
+        out.writeUTF(field.getSlashedClassName());
+        out.writeUTF(field.getName());
+        out.writeUTF(field.getSignature());
+        out.writeBoolean(field.isStatic());
+    }
 }
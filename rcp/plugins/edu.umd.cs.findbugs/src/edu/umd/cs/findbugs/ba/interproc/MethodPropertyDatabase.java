@@ -18,6 +18,8 @@
  */
 package edu.umd.cs.findbugs.ba.interproc;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Writer;
 
@@ -71,4 +73,35 @@ public abstract class MethodPropertyDatabase<Property> extends PropertyDatabase<
         XMethod xMethod =  XFactory.createXMethod(method);
         writer.write(Integer.toString(xMethod.getAccessFlags() & 0xf));
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * edu.umd.cs.findbugs.ba.interproc.PropertyDatabase#readBinaryKey(java.
+     * io.DataInputStream)
+     */
+    @Override
+    protected MethodDescriptor readBinaryKey(DataInputStream in) throws IOException {
+        String className = in.readUTF();
+        String methodName = in.readUTF();
+        String methodSig = in.readUTF();
+        return DescriptorFactory.instance().getMethodDescriptor(className, methodName, methodSig, in.readBoolean());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * edu.umd.cs.findbugs.ba.interproc.PropertyDatabase#writeBinaryKey(java
+     * .io.DataOutputStream, KeyType)
+     */
+    @Override
+    protected void writeBinaryKey(DataOutputStream out, MethodDescriptor method) throws IOException {
+        // Unlike writeKey(), this doesn't need to look up the XMethod
+        out.writeUTF(method.getSlashedClassName());
+        out.writeUTF(method.getName());
+        out.writeUTF(method.getSignature());
+        out.writeBoolean(method.isStatic());
+    }
 }
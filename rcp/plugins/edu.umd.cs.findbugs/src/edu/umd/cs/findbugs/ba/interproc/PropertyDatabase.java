@@ -19,14 +19,19 @@
 
 package edu.umd.cs.findbugs.ba.interproc;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.Collection;
@@ -138,6 +143,23 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      * @throws MethodPropertyDatabaseFormatException
      */
     public void read(@WillClose InputStream in) throws IOException, PropertyDatabaseFormatException {
+        read(in, null);
+    }
+
+    /**
+     * Read property database from an input stream. The InputStream is
+     * guaranteed to be closed, even if an exception is thrown.
+     * 
+     * @param in
+     *            the InputStream
+     * @param keysRead
+     *            if not null, the keys of the properties read are added to
+     *            this collection
+     * @throws IOException
+     * @throws MethodPropertyDatabaseFormatException
+     */
+    public void read(@WillClose InputStream in, @CheckForNull Collection<KeyType> keysRead) throws IOException,
+            PropertyDatabaseFormatException {
         BufferedReader reader = null;
 
         try {
@@ -155,6 +177,8 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
                 ValueType property = decodeProperty(line.substring(bar + 1));
 
                 setProperty(key, property);
+                if (keysRead != null)
+                    keysRead.add(key);
             }
         } finally {
             try {
@@ -231,6 +255,101 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
         }
     }
 
+    /**
+     * Read properties written by writeBinary(). The InputStream is guaranteed
+     * to be closed, even if an exception is thrown.
+     * 
+     * @param in
+     *            the InputStream
+     * @throws IOException
+     * @throws PropertyDatabaseFormatException
+     */
+    public void readBinary(@WillClose InputStream in) throws IOException, PropertyDatabaseFormatException {
+        DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+        try {
+            int count = dataIn.readInt();
+            for (int i = 0; i < count; i++) {
+                KeyType key = readBinaryKey(dataIn);
+                ValueType property = decodeProperty(dataIn.readUTF());
+                setProperty(key, property);
+            }
+        } finally {
+            try {
+                dataIn.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Write some of the properties in a compact binary form, which can be read
+     * back faster than the text form. Unlike write(), this writes the
+     * properties of all given keys, whether or not they belong to application
+     * classes. The OutputStream is guaranteed to be closed, even if an
+     * exception is thrown.
+     * 
+     * @param out
+     *            the OutputStream
+     * @param keys
+     *            the keys of the properties to write
+     * @throws IOException
+     */
+    public void writeBinary(@WillClose OutputStream out, Collection<KeyType> keys) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        try {
+            int count = 0;
+            for (KeyType key : keys) {
+                if (key != null && propertyMap.containsKey(key))
+                    count++;
+            }
+            dataOut.writeInt(count);
+            for (KeyType key : keys) {
+                if (key != null && propertyMap.containsKey(key)) {
+                    writeBinaryKey(dataOut, key);
+                    dataOut.writeUTF(encodeProperty(propertyMap.get(key)));
+                }
+            }
+            dataOut.flush();
+        } finally {
+            try {
+                dataOut.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Read a key written by writeBinaryKey(). By default, the key is read in
+     * its text form; subclasses may override this together with
+     * writeBinaryKey() to use a cheaper encoding.
+     * 
+     * @param in
+     *            the DataInputStream
+     * @return the key
+     * @throws IOException
+     * @throws PropertyDatabaseFormatException
+     */
+    protected KeyType readBinaryKey(DataInputStream in) throws IOException, PropertyDatabaseFormatException {
+        return parseKey(in.readUTF());
+    }
+
+    /**
+     * Write a key in binary form.
+     * 
+     * @param out
+     *            the DataOutputStream
+     * @param key
+     *            the key
+     * @throws IOException
+     */
+    protected void writeBinaryKey(DataOutputStream out, KeyType key) throws IOException {
+        StringWriter writer = new StringWriter();
+        writeKey(writer, key);
+        out.writeUTF(writer.toString());
+    }
+
     /**
      * Parse a key from a String.
      *
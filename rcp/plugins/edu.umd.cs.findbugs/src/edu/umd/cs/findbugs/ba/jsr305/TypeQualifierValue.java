@@ -161,7 +161,11 @@ public class TypeQualifierValue {
         Set<TypeQualifierValue> allKnownTypeQualifiers = new HashSet<TypeQualifierValue>();
     }
 
-    private static ThreadLocal<Data> instance = new ThreadLocal<Data>() {
+    /**
+     * Shared with analysis worker threads, so all access to the Data object
+     * must be synchronized on it.
+     */
+    private static InheritableThreadLocal<Data> instance = new InheritableThreadLocal<Data>() {
         @Override
         protected Data initialValue() {
             return new Data();
@@ -184,6 +188,13 @@ public class TypeQualifierValue {
             return new AtomicBoolean();
         }
 
+        // Every thread gets its own flag: analysis worker threads must be
+        // able to validate concurrently, and threads started by a validator
+        // stay restricted.
+        @Override protected AtomicBoolean childValue(AtomicBoolean parentValue) {
+            return new AtomicBoolean(parentValue.get());
+        }
+
     };
 
     static final class ValidationSecurityManager extends SecurityManager {
@@ -237,14 +248,17 @@ public class TypeQualifierValue {
      */
     public static @NonNull
     TypeQualifierValue getValue(ClassDescriptor desc, Object value) {
-        DualKeyHashMap<ClassDescriptor, Object, TypeQualifierValue> map = instance.get().typeQualifierMap;
-        TypeQualifierValue result = map.get(desc, value);
-        if (result != null)
+        Data data = instance.get();
+        synchronized (data) {
+            DualKeyHashMap<ClassDescriptor, Object, TypeQualifierValue> map = data.typeQualifierMap;
+            TypeQualifierValue result = map.get(desc, value);
+            if (result != null)
+                return result;
+            result = new TypeQualifierValue(desc, value);
+            map.put(desc, value, result);
+            data.allKnownTypeQualifiers.add(result);
             return result;
-        result = new TypeQualifierValue(desc, value);
-        map.put(desc, value, result);
-        instance.get().allKnownTypeQualifiers.add(result);
-        return result;
+        }
     }
 
     /**
@@ -253,7 +267,10 @@ public class TypeQualifierValue {
      * @return Collection of all known TypeQualifierValues
      */
     public static Collection<TypeQualifierValue> getAllKnownTypeQualifiers() {
-        return Collections.unmodifiableSet(instance.get().allKnownTypeQualifiers);
+        Data data = instance.get();
+        synchronized (data) {
+            return Collections.unmodifiableSet(new HashSet<TypeQualifierValue>(data.allKnownTypeQualifiers));
+        }
     }
 
     /**
@@ -269,7 +286,7 @@ public class TypeQualifierValue {
 
         LinkedList<TypeQualifierValue> result = new LinkedList<TypeQualifierValue>();
 
-        for (TypeQualifierValue t : instance.get().allKnownTypeQualifiers) {
+        for (TypeQualifierValue t : getAllKnownTypeQualifiers()) {
             //
             // Any TypeQualifierValue with the same
             // annotation class but a different value is a complementary
@@ -295,7 +312,7 @@ public class TypeQualifierValue {
      */
     public static boolean hasMultipleVariants(TypeQualifierValue tqv) {
         int count = 0;
-        for (TypeQualifierValue t : instance.get().allKnownTypeQualifiers) {
+        for (TypeQualifierValue t : getAllKnownTypeQualifiers()) {
             if (t.typeQualifier.equals(tqv.typeQualifier)) {
                 count++;
             }
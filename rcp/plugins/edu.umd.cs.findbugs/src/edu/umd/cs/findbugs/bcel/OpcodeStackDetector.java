@@ -24,6 +24,11 @@ import org.apache.bcel.classfile.Code;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.OpcodeStack.JumpInfo;
+import edu.umd.cs.findbugs.OpcodeStack.StateTrace;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.AnalysisFeatures;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.Global;
 
 /**
  * Base class for Detectors that want to scan the bytecode of a method and use
@@ -38,10 +43,21 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
      */
     public abstract static class WithCustomJumpInfo extends OpcodeStackDetector {
         public abstract JumpInfo customJumpInfo();
+
+        @Override
+        protected boolean canShareStackStates() {
+            return false;
+        }
     }
 
     protected OpcodeStack stack;
 
+    /**
+     * States of the stack recorded by a shared simulation of the method being
+     * scanned, or null if this detector simulates the stack itself.
+     */
+    private StateTrace stateTrace;
+
     public OpcodeStack getStack() {
         return stack;
     }
@@ -51,13 +67,46 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
         if (!shouldVisitCode(obj))
             return;
         stack = new OpcodeStack();
-        stack.resetForMethodEntry(this);
+        stateTrace = getStateTrace();
+        if (stateTrace != null)
+            stateTrace.startReplay(stack, this);
+        else
+            stack.resetForMethodEntry(this);
         super.visitCode(obj);
         stack = null;
+        stateTrace = null;
+    }
+
+    /**
+     * Determine whether this detector can be handed the states of the stack
+     * recorded by a simulation of the method shared with other detectors,
+     * rather than simulating the stack itself. Detectors which change the
+     * stack or the items on it must return false.
+     *
+     * @return true if the recorded states can be used
+     */
+    protected boolean canShareStackStates() {
+        return true;
+    }
+
+    private StateTrace getStateTrace() {
+        if (!canShareStackStates()
+                || !AnalysisContext.currentAnalysisContext().getBoolProperty(AnalysisFeatures.SHARE_OPCODE_STACK_STATES))
+            return null;
+        try {
+            return Global.getAnalysisCache().getMethodAnalysis(StateTrace.class, getMethodDescriptor());
+        } catch (CheckedAnalysisException e) {
+            // Simulate the stack ourselves
+            return null;
+        }
     }
 
     @Override
     public boolean beforeOpcode(int seen) {
+        if (stateTrace != null) {
+            stateTrace.restore(stack, getPC());
+            return !stack.isTop();
+        }
         stack.precomputation(this);
         stack.mergeJumps(this);
         return !stack.isTop();
@@ -65,7 +114,8 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
 
     @Override
     public void afterOpcode(int seen) {
-        stack.sawOpcode(this, seen);
+        if (stateTrace == null)
+            stack.sawOpcode(this, seen);
     }
 
     @Override
@@ -0,0 +1,124 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile;
+
+import java.io.PrintStream;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit, miss and eviction counts of an analysis cache, per analysis class.
+ * Counts may be updated by several threads at once.
+ *
+ * @see IBoundedAnalysisCache
+ */
+public class AnalysisCacheStatistics {
+    /**
+     * Counts for one analysis class.
+     */
+    public static class Counts {
+        final AtomicLong hits = new AtomicLong();
+
+        final AtomicLong misses = new AtomicLong();
+
+        final AtomicLong evictions = new AtomicLong();
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getEvictions() {
+            return evictions.get();
+        }
+    }
+
+    private final ConcurrentHashMap<Class<?>, Counts> countsMap = new ConcurrentHashMap<Class<?>, Counts>();
+
+    /**
+     * Get the counts for given analysis class.
+     *
+     * @param analysisClass
+     *            the analysis class
+     * @return the Counts, which are created if necessary
+     */
+    public Counts getCounts(Class<?> analysisClass) {
+        Counts counts = countsMap.get(analysisClass);
+        if (counts == null) {
+            counts = new Counts();
+            Counts existing = countsMap.putIfAbsent(analysisClass, counts);
+            if (existing != null) {
+                counts = existing;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Record that a result of given analysis class was found in the cache.
+     */
+    public void recordHit(Class<?> analysisClass) {
+        getCounts(analysisClass).hits.incrementAndGet();
+    }
+
+    /**
+     * Record that a result of given analysis class had to be computed.
+     */
+    public void recordMiss(Class<?> analysisClass) {
+        getCounts(analysisClass).misses.incrementAndGet();
+    }
+
+    /**
+     * Record that a result of given analysis class was evicted from the cache.
+     */
+    public void recordEviction(Class<?> analysisClass) {
+        getCounts(analysisClass).evictions.incrementAndGet();
+    }
+
+    /**
+     * Print the counts of all analysis classes, sorted by name.
+     *
+     * @param stream
+     *            the PrintStream to print to
+     */
+    public void report(PrintStream stream) {
+        Map<Class<?>, Counts> sorted = new TreeMap<Class<?>, Counts>(new Comparator<Class<?>>() {
+            public int compare(Class<?> c1, Class<?> c2) {
+                return c1.getName().compareTo(c2.getName());
+            }
+        });
+        sorted.putAll(countsMap);
+
+        stream.println("ANALYSIS CACHE REPORT");
+        stream.printf("%10s %10s %10s %s%n", "hits", "misses", "evictions", "Class");
+        for (Map.Entry<Class<?>, Counts> e : sorted.entrySet()) {
+            Counts counts = e.getValue();
+            stream.printf("%10d %10d %10d %s%n", Long.valueOf(counts.getHits()), Long.valueOf(counts.getMisses()),
+                    Long.valueOf(counts.getEvictions()), e.getKey().getSimpleName());
+        }
+        stream.flush();
+    }
+}
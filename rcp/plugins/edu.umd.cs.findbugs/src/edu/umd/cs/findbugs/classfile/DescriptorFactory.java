@@ -20,8 +20,8 @@
 package edu.umd.cs.findbugs.classfile;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 
@@ -42,30 +42,33 @@ import edu.umd.cs.findbugs.util.MapCache;
 /**
  * Factory for creating ClassDescriptors, MethodDescriptors, and
  * FieldDescriptors.
+ * <p>
+ * The instance is inherited by threads started from the analysis thread (e.g.,
+ * analysis worker threads), so it must be safe for concurrent use.
  *
  * @author David Hovemeyer
  */
 public class DescriptorFactory {
-    private static ThreadLocal<DescriptorFactory> instanceThreadLocal = new ThreadLocal<DescriptorFactory>() {
+    private static InheritableThreadLocal<DescriptorFactory> instanceThreadLocal = new InheritableThreadLocal<DescriptorFactory>() {
         @Override
         protected DescriptorFactory initialValue() {
             return new DescriptorFactory();
         }
     };
 
-    private final Map<String, ClassDescriptor> classDescriptorMap;
+    private final ConcurrentHashMap<String, ClassDescriptor> classDescriptorMap;
 
-    private final Map<String, ClassDescriptor> dottedClassDescriptorMap;
+    private final ConcurrentHashMap<String, ClassDescriptor> dottedClassDescriptorMap;
 
-    private final Map<MethodDescriptor, MethodDescriptor> methodDescriptorMap;
+    private final ConcurrentHashMap<MethodDescriptor, MethodDescriptor> methodDescriptorMap;
 
-    private final Map<FieldDescriptor, FieldDescriptor> fieldDescriptorMap;
+    private final ConcurrentHashMap<FieldDescriptor, FieldDescriptor> fieldDescriptorMap;
 
     private DescriptorFactory() {
-        this.classDescriptorMap = new HashMap<String, ClassDescriptor>();
-        this.dottedClassDescriptorMap = new HashMap<String, ClassDescriptor>();
-        this.methodDescriptorMap = new HashMap<MethodDescriptor, MethodDescriptor>();
-        this.fieldDescriptorMap = new HashMap<FieldDescriptor, FieldDescriptor>();
+        this.classDescriptorMap = new ConcurrentHashMap<String, ClassDescriptor>();
+        this.dottedClassDescriptorMap = new ConcurrentHashMap<String, ClassDescriptor>();
+        this.methodDescriptorMap = new ConcurrentHashMap<MethodDescriptor, MethodDescriptor>();
+        this.fieldDescriptorMap = new ConcurrentHashMap<FieldDescriptor, FieldDescriptor>();
     }
 
     private static MapCache<String, String> stringCache = new MapCache<String, String>(10000);
@@ -73,10 +76,12 @@ public class DescriptorFactory {
     public static String canonicalizeString(@CheckForNull String s) {
         if (s == null)
             return s;
-        String cached = stringCache.get(s);
-        if (cached != null)
-            return cached;
-        stringCache.put(s, s);
+        synchronized (stringCache) {
+            String cached = stringCache.get(s);
+            if (cached != null)
+                return cached;
+            stringCache.put(s, s);
+        }
         return s;
     }
 
@@ -126,7 +131,10 @@ public class DescriptorFactory {
         ClassDescriptor classDescriptor = classDescriptorMap.get(className);
         if (classDescriptor == null) {
             classDescriptor = new ClassDescriptor(className);
-            classDescriptorMap.put(className, classDescriptor);
+            ClassDescriptor existing = classDescriptorMap.putIfAbsent(className, classDescriptor);
+            if (existing != null) {
+                classDescriptor = existing;
+            }
         }
         return classDescriptor;
     }
@@ -174,8 +182,10 @@ public class DescriptorFactory {
         MethodDescriptor methodDescriptor = new MethodDescriptor(className, name, signature, isStatic);
         MethodDescriptor existing = methodDescriptorMap.get(methodDescriptor);
         if (existing == null) {
-            methodDescriptorMap.put(methodDescriptor, methodDescriptor);
-            existing = methodDescriptor;
+            existing = methodDescriptorMap.putIfAbsent(methodDescriptor, methodDescriptor);
+            if (existing == null) {
+                existing = methodDescriptor;
+            }
         }
         return existing;
     }
@@ -235,8 +245,10 @@ public class DescriptorFactory {
         FieldDescriptor fieldDescriptor = new FieldDescriptor(className, name, signature, isStatic);
         FieldDescriptor existing = fieldDescriptorMap.get(fieldDescriptor);
         if (existing == null) {
-            fieldDescriptorMap.put(fieldDescriptor, fieldDescriptor);
-            existing = fieldDescriptor;
+            existing = fieldDescriptorMap.putIfAbsent(fieldDescriptor, fieldDescriptor);
+            if (existing == null) {
+                existing = fieldDescriptor;
+            }
         }
         return existing;
     }
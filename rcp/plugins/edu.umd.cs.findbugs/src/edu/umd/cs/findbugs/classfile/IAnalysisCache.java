@@ -88,6 +88,25 @@ public interface IAnalysisCache {
      */
     public <E> E probeClassAnalysis(Class<E> analysisClass, @Nonnull ClassDescriptor classDescriptor);
 
+    /**
+     * Eagerly put a class analysis object in the cache, unless there already
+     * is a result for the class. This lets a class analysis be computed ahead
+     * of time, for example by another thread, and handed over to the cache
+     * just before it is needed. The object is cached and discarded as if it
+     * had been computed by the analysis engine.
+     *
+     * @param <E>
+     *            the type of the analysis (e.g., FoobarAnalysis)
+     * @param analysisClass
+     *            the analysis class object (e.g., FoobarAnalysis.class)
+     * @param classDescriptor
+     *            the descriptor of the class analyzed
+     * @param analysisObject
+     *            the analysis object
+     */
+    public <E> void eagerlyPutClassAnalysis(Class<E> analysisClass, @Nonnull ClassDescriptor classDescriptor,
+            Object analysisObject);
+
     /**
      * Get an analysis of the given method.
      * 
@@ -0,0 +1,64 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * An analysis cache whose recomputable class analysis results can be bounded
+ * by an estimate of the memory they use, rather than by their number.
+ */
+public interface IBoundedAnalysisCache extends IAnalysisCache {
+    /**
+     * Set the number of bytes that results of recomputable class analyses
+     * (ClassContext, JavaClass, ConstantPoolGen, ...) may use. When the
+     * estimated size of the cached results exceeds the budget, the results
+     * which are cheapest to recompute per byte and least often used are
+     * discarded. Results which cannot be recomputed are not counted. This
+     * must be called before any result is cached.
+     *
+     * @param budget
+     *            the budget in bytes; if 0 or less, the number of results
+     *            cached for each analysis class is bounded instead
+     */
+    public void setMemoryBudget(long budget);
+
+    /**
+     * Set the time and work budget of each method analysis. A method
+     * analysis which uses up its budget is abandoned, and its result is an
+     * AnalysisBudgetExceededException.
+     *
+     * @param budget
+     *            the budget, or null if method analyses are not limited
+     */
+    public void setMethodAnalysisBudget(@CheckForNull MethodAnalysisBudget budget);
+
+    /**
+     * @return the time and work budget of each method analysis, or null if
+     *         method analyses are not limited
+     */
+    public @CheckForNull
+    MethodAnalysisBudget getMethodAnalysisBudget();
+
+    /**
+     * @return the hit, miss and eviction counts of this cache
+     */
+    public AnalysisCacheStatistics getStatistics();
+}
@@ -36,6 +36,32 @@ public interface IClassFactory {
 
     public IAnalysisCache createAnalysisCache(IClassPath classPath, BugReporter errorLogger);
 
+    /**
+     * Create an analysis cache which may be used by several analysis threads
+     * at once.
+     *
+     * @param classPath
+     *            the IClassPath to load resources from
+     * @param errorLogger
+     *            the BugReporter errors are logged to
+     * @return the analysis cache
+     */
+    public IAnalysisCache createConcurrentAnalysisCache(IClassPath classPath, BugReporter errorLogger);
+
+    /**
+     * Create an analysis cache to be used by a single analysis worker thread.
+     * It keeps its own recomputable analysis results, and gets everything else
+     * from the given shared analysis cache. If the shared analysis cache is
+     * safe for use by several threads, it is returned as is.
+     *
+     * @param sharedCache
+     *            the analysis cache shared by all analysis threads
+     * @param errorLogger
+     *            the BugReporter used by the worker thread
+     * @return the worker analysis cache
+     */
+    public IAnalysisCache createWorkerAnalysisCache(IAnalysisCache sharedCache, BugReporter errorLogger);
+
     // public IScannableCodeBase createLocalCodeBase(String fileName)
     // throws IOException;
     //
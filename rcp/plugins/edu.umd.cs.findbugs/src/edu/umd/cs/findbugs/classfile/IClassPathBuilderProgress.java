@@ -38,4 +38,16 @@ public interface IClassPathBuilderProgress {
      */
     public void finishArchive();
 
+    /**
+     * Report how long it took to open and scan a codebase. With several
+     * classpath scanning threads, this is called in classpath order, which
+     * may not be the order in which codebases were scanned.
+     * 
+     * @param name
+     *            name of the codebase
+     * @param elapsedMillis
+     *            time spent opening and scanning the codebase, in milliseconds
+     */
+    public void reportCodeBaseTime(String name, long elapsedMillis);
+
 }
@@ -67,4 +67,13 @@ public interface IErrorLogger {
      *            the method we skipped
      */
     public void reportSkippedAnalysis(MethodDescriptor method);
+
+    /**
+     * Report that a method is analyzed in a cheaper, less precise way than
+     * other methods, because it is huge
+     * 
+     * @param method
+     *            the method
+     */
+    public void reportDegradedAnalysis(MethodDescriptor method);
 }
@@ -0,0 +1,696 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.interproc.PropertyDatabase;
+import edu.umd.cs.findbugs.ba.interproc.PropertyDatabaseFormatException;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfoCodec;
+import edu.umd.cs.findbugs.classfile.engine.ClassParserUsingASM;
+import edu.umd.cs.findbugs.io.ByteBufferInputStream;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * A snapshot of the class info of library classes (classes in archives on the
+ * auxiliary and system classpaths), and of the interprocedural property
+ * databases, stored in a single file. Runs which share the same libraries
+ * can load the snapshot instead of parsing the library classes and database
+ * files again.
+ * <p>
+ * The snapshot is registered as a database with the analysis cache. By
+ * default it is disabled. FindBugs2 installs an enabled snapshot when a
+ * snapshot file is given:
+ * <ul>
+ * <li>if the file exists, it is memory-mapped and used read-only. Class info
+ * is only used for archives whose size and modification time are the same
+ * as when the snapshot was written; archives which changed are read as
+ * usual.</li>
+ * <li>otherwise, the class info and databases computed by the run are
+ * recorded, and the snapshot is written once all classes referenced by the
+ * application are known (see write()). All other classes in the library
+ * archives are parsed and encoded at that point, without affecting the
+ * analysis, so the snapshot can be shared by runs analyzing different
+ * applications against the same libraries. Records are written to the file
+ * as they are made; only their index is kept in memory.</li>
+ * </ul>
+ * To rebuild the snapshot after libraries change, delete the file.
+ */
+public class LibrarySnapshot {
+    private static final boolean DEBUG = SystemProperties.getBoolean("findbugs.librarySnapshot.debug");
+
+    private static final int MAGIC = 0xfb5a4e01;
+
+    /**
+     * Changed whenever the format of the snapshot changes, so that snapshots
+     * written by an older version are rebuilt.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private final @CheckForNull
+    File file;
+
+    private final @CheckForNull
+    IErrorLogger errorLogger;
+
+    // Loaded snapshot
+
+    private ByteBuffer data;
+
+    /** Path of each archive in the snapshot which is unchanged, or null */
+    private String[] codeBasePaths;
+
+    private Map<String, Integer> codeBaseIndexMap;
+
+    /** Class resource names, sorted (with duplicates for different archives) */
+    private String[] classNames;
+
+    private int[] classCodeBases;
+
+    private int[] classOffsets;
+
+    private int[] classLengths;
+
+    private Map<String, int[]> databaseMap;
+
+    // Recorded snapshot
+
+    /** Temporary file the snapshot is recorded to */
+    private File recordingFile;
+
+    private DataOutputStream recordingOut;
+
+    private long recordingSize;
+
+    /** Offset and length of each recorded class, by archive and resource name */
+    private Map<String, Map<String, int[]>> recordedClasses;
+
+    /** Offset and length of each recorded database, by hash of its source */
+    private Map<String, int[]> recordedDatabases;
+
+    /**
+     * Constructor. Creates a disabled snapshot.
+     */
+    public LibrarySnapshot() {
+        this.file = null;
+        this.errorLogger = null;
+    }
+
+    /**
+     * Constructor. Loads the snapshot from given file, or, if the file does not
+     * exist (or was written by a different version of FindBugs), prepares to
+     * record a new snapshot.
+     *
+     * @param file
+     *            the snapshot file
+     * @param errorLogger
+     *            the error logger to report problems reading or writing the
+     *            snapshot to
+     */
+    public LibrarySnapshot(File file, IErrorLogger errorLogger) {
+        this.file = file;
+        this.errorLogger = errorLogger;
+        if (file.isFile()) {
+            try {
+                load();
+                return;
+            } catch (IOException e) {
+                logFailure("Could not load library snapshot " + file, e);
+                data = null;
+            }
+        }
+        try {
+            startRecording();
+        } catch (IOException e) {
+            logFailure("Could not record library snapshot " + file, e);
+            stopRecording();
+        }
+    }
+
+    /**
+     * @return true if class info and databases are loaded from the snapshot
+     */
+    public boolean isLoaded() {
+        return data != null;
+    }
+
+    /**
+     * @return true if class info and databases are recorded, to write a new
+     *         snapshot
+     */
+    public synchronized boolean isRecording() {
+        return recordedClasses != null;
+    }
+
+    /**
+     * Load the class info of a class from the snapshot, without reading the
+     * class data.
+     *
+     * @param classPath
+     *            the classpath to look up the class in
+     * @param descriptor
+     *            descriptor of the class
+     * @return the ClassInfo, or null if the class isn't in the snapshot
+     */
+    public @CheckForNull
+    ClassInfo loadClassInfo(IClassPath classPath, ClassDescriptor descriptor) {
+        if (data == null) {
+            return null;
+        }
+        ICodeBaseEntry codeBaseEntry;
+        try {
+            codeBaseEntry = classPath.lookupResource(descriptor.toResourceName());
+        } catch (ResourceNotFoundException e) {
+            return null;
+        }
+        ClassInfo classInfo = loadClassInfo(codeBaseEntry);
+        if (classInfo == null || !classInfo.getClassDescriptor().equals(descriptor)) {
+            return null;
+        }
+        return classInfo;
+    }
+
+    /**
+     * Load the class info of a class from the snapshot.
+     *
+     * @param codeBaseEntry
+     *            the codebase entry containing the class
+     * @return the ClassInfo, or null if the class isn't in the snapshot
+     */
+    public @CheckForNull
+    ClassInfo loadClassInfo(ICodeBaseEntry codeBaseEntry) {
+        if (data == null) {
+            return null;
+        }
+        Integer codeBase = codeBaseIndexMap.get(getSnapshotPath(codeBaseEntry.getCodeBase()));
+        if (codeBase == null) {
+            return null;
+        }
+        String resourceName = codeBaseEntry.getResourceName();
+        int index = Arrays.binarySearch(classNames, resourceName);
+        if (index < 0) {
+            return null;
+        }
+        while (index > 0 && classNames[index - 1].equals(resourceName)) {
+            index--;
+        }
+        for (; index < classNames.length && classNames[index].equals(resourceName); index++) {
+            if (classCodeBases[index] == codeBase.intValue()) {
+                try {
+                    return ClassInfoCodec.readClassInfo(openData(classOffsets[index], classLengths[index]), codeBaseEntry);
+                } catch (IOException e) {
+                    logFailure("Could not load class info for " + codeBaseEntry, e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record the class info of a class, if the snapshot is being recorded and
+     * the class is in a library archive.
+     *
+     * @param codeBaseEntry
+     *            the codebase entry containing the class
+     * @param classInfo
+     *            the ClassInfo, right after it was built
+     */
+    public void recordClassInfo(ICodeBaseEntry codeBaseEntry, ClassInfo classInfo) {
+        if (!isRecording()) {
+            return;
+        }
+        String path = getSnapshotPath(codeBaseEntry.getCodeBase());
+        if (path == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buf);
+            ClassInfoCodec.writeClassInfo(out, classInfo);
+            out.flush();
+            recordClass(path, codeBaseEntry.getResourceName(), buf.toByteArray());
+        } catch (IOException e) {
+            logFailure("Could not record class info for " + codeBaseEntry, e);
+        }
+    }
+
+    /**
+     * Load properties into a property database from the snapshot.
+     *
+     * @param database
+     *            the database
+     * @param source
+     *            the text the properties were parsed from
+     * @return true if the properties were loaded, false if they aren't in the
+     *         snapshot
+     */
+    public boolean loadPropertyDatabase(PropertyDatabase<?, ?> database, byte[] source) {
+        if (data == null) {
+            return false;
+        }
+        int[] location = databaseMap.get(PersistentAnalysisStore.computeHash(source));
+        if (location == null) {
+            return false;
+        }
+        try {
+            database.readBinary(openData(location[0], location[1]));
+            return true;
+        } catch (IOException e) {
+            logFailure("Could not load property database", e);
+        } catch (PropertyDatabaseFormatException e) {
+            logFailure("Could not load property database", e);
+        }
+        return false;
+    }
+
+    /**
+     * Record the properties of a property database, if the snapshot is being
+     * recorded.
+     *
+     * @param <KeyType>
+     *            type of key (e.g., method or field)
+     * @param database
+     *            the database
+     * @param keys
+     *            keys of the properties parsed from the source
+     * @param source
+     *            the text the properties were parsed from
+     */
+    public <KeyType extends FieldOrMethodDescriptor> void recordPropertyDatabase(PropertyDatabase<KeyType, ?> database,
+            Collection<KeyType> keys, byte[] source) {
+        if (!isRecording()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            database.writeBinary(out, keys);
+            recordDatabase(PersistentAnalysisStore.computeHash(source), out.toByteArray());
+        } catch (IOException e) {
+            logFailure("Could not record property database", e);
+        }
+    }
+
+    /**
+     * Write the recorded snapshot, adding the class info of all library
+     * classes which were not recorded. Does nothing unless the snapshot is
+     * being recorded; afterwards, nothing more is recorded.
+     *
+     * @param classPath
+     *            the classpath whose auxiliary archives are in the snapshot
+     * @throws InterruptedException
+     */
+    public void write(IClassPath classPath) throws InterruptedException {
+        if (!isRecording()) {
+            return;
+        }
+        List<String> archives = new ArrayList<String>();
+        for (Iterator<? extends ICodeBase> i = classPath.auxCodeBaseIterator(); i.hasNext();) {
+            ICodeBase codeBase = i.next();
+            String path = getSnapshotPath(codeBase);
+            if (path == null || !(codeBase instanceof IScannableCodeBase)) {
+                continue;
+            }
+            parseRemainingClasses((IScannableCodeBase) codeBase, path);
+            archives.add(path);
+        }
+
+        File tmpFile;
+        DataOutputStream out;
+        long indexOffset;
+        Map<String, Map<String, int[]>> classes;
+        Map<String, int[]> databases;
+        synchronized (this) {
+            if (recordedClasses == null) {
+                return;
+            }
+            tmpFile = recordingFile;
+            out = recordingOut;
+            indexOffset = recordingSize;
+            classes = recordedClasses;
+            databases = recordedDatabases;
+            recordingFile = null;
+            recordingOut = null;
+            recordedClasses = null;
+            recordedDatabases = null;
+        }
+        try {
+            writeIndex(out, archives, classes, databases);
+            out.writeInt((int) indexOffset);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file) && !file.isFile()) {
+                throw new IOException("Could not rename " + tmpFile + " to " + file);
+            }
+            if (DEBUG) {
+                System.out.println("Wrote library snapshot " + file);
+            }
+        } catch (IOException e) {
+            logFailure("Could not write library snapshot " + file, e);
+        } finally {
+            if (out != null) {
+                IO.close(out);
+            }
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Get the path under which classes of a codebase are stored in the
+     * snapshot.
+     *
+     * @return the path, or null if classes of the codebase don't belong in a
+     *         snapshot: only archive files which are not application
+     *         codebases do
+     */
+    private static @CheckForNull
+    String getSnapshotPath(ICodeBase codeBase) {
+        if (codeBase.isApplicationCodeBase()) {
+            return null;
+        }
+        String path = codeBase.getPathName();
+        if (path == null || !new File(path).isFile()) {
+            return null;
+        }
+        return path;
+    }
+
+    private void parseRemainingClasses(IScannableCodeBase codeBase, String path) throws InterruptedException {
+        for (ICodeBaseIterator i = codeBase.iterator(); i.hasNext();) {
+            ICodeBaseEntry entry = i.next();
+            String resourceName = entry.getResourceName();
+            if (!DescriptorFactory.isClassResource(resourceName) || isRecorded(path, resourceName)) {
+                continue;
+            }
+            try {
+                InputStream in = entry.openResource();
+                byte[] bytes;
+                try {
+                    ByteArrayOutputStream buf = new ByteArrayOutputStream(Math.max(entry.getNumBytes(), 0));
+                    IO.copy(in, buf);
+                    bytes = buf.toByteArray();
+                } finally {
+                    IO.close(in);
+                }
+                ClassInfo.Builder builder = new ClassInfo.Builder();
+                new ClassParserUsingASM(new FBClassReader(bytes), null, entry).parse(builder);
+                if (builder.getClassDescriptor().toResourceName().equals(resourceName)) {
+                    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                    DataOutputStream out = new DataOutputStream(buf);
+                    ClassInfoCodec.writeParsedClassInfo(out, builder);
+                    out.flush();
+                    recordClass(path, resourceName, buf.toByteArray());
+                }
+            } catch (IOException e) {
+                logFailure("Could not parse " + entry, e);
+            } catch (CheckedAnalysisException e) {
+                logFailure("Could not parse " + entry, e);
+            } catch (RuntimeException e) {
+                logFailure("Could not parse " + entry, e);
+            }
+        }
+    }
+
+    /*
+     * Layout of a snapshot file: a header holding the magic number and format
+     * version, then the data of the classes and databases in the order they
+     * were recorded, then the index, and finally the offset of the index. The
+     * index holds the archives, the classes (sorted by resource name, then
+     * archive) and the databases. Offsets are relative to the start of the
+     * file.
+     */
+
+    private void startRecording() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        recordedClasses = new HashMap<String, Map<String, int[]>>();
+        recordedDatabases = new HashMap<String, int[]>();
+        recordingFile = File.createTempFile(file.getName(), ".tmp", parent);
+        // In case the run ends before the snapshot is written
+        recordingFile.deleteOnExit();
+        recordingOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recordingFile)));
+        recordingOut.writeInt(MAGIC);
+        recordingOut.writeInt(FORMAT_VERSION);
+        recordingSize = recordingOut.size();
+    }
+
+    /**
+     * Stop recording, and discard what was recorded.
+     */
+    private synchronized void stopRecording() {
+        if (recordingOut != null) {
+            IO.close(recordingOut);
+            recordingOut = null;
+        }
+        if (recordingFile != null) {
+            recordingFile.delete();
+            recordingFile = null;
+        }
+        recordedClasses = null;
+        recordedDatabases = null;
+    }
+
+    private synchronized boolean isRecorded(String path, String resourceName) {
+        if (recordedClasses == null) {
+            return true;
+        }
+        Map<String, int[]> classes = recordedClasses.get(path);
+        return classes != null && classes.containsKey(resourceName);
+    }
+
+    private synchronized void recordClass(String path, String resourceName, byte[] record) {
+        if (recordedClasses == null) {
+            return;
+        }
+        Map<String, int[]> classes = recordedClasses.get(path);
+        if (classes == null) {
+            classes = new HashMap<String, int[]>();
+            recordedClasses.put(path, classes);
+        }
+        if (classes.containsKey(resourceName)) {
+            return;
+        }
+        int[] location = append(record);
+        if (location != null) {
+            classes.put(resourceName, location);
+        }
+    }
+
+    private synchronized void recordDatabase(String hash, byte[] record) {
+        if (recordedDatabases == null || recordedDatabases.containsKey(hash)) {
+            return;
+        }
+        int[] location = append(record);
+        if (location != null) {
+            recordedDatabases.put(hash, location);
+        }
+    }
+
+    /**
+     * Append a record to the snapshot file. If it cannot be written, recording
+     * is stopped.
+     *
+     * @return the offset and length of the record, or null if it wasn't
+     *         written
+     */
+    private @CheckForNull
+    int[] append(byte[] record) {
+        try {
+            if (recordingSize + record.length > Integer.MAX_VALUE) {
+                throw new IOException("Library snapshot too large");
+            }
+            recordingOut.write(record);
+        } catch (IOException e) {
+            logFailure("Could not record library snapshot " + file, e);
+            stopRecording();
+            return null;
+        }
+        int[] location = { (int) recordingSize, record.length };
+        recordingSize += record.length;
+        return location;
+    }
+
+    private static void writeIndex(DataOutputStream out, List<String> archives, Map<String, Map<String, int[]>> classes,
+            Map<String, int[]> databases) throws IOException {
+        out.writeInt(archives.size());
+        for (String archive : archives) {
+            File archiveFile = new File(archive);
+            out.writeUTF(archive);
+            out.writeLong(archiveFile.length());
+            out.writeLong(archiveFile.lastModified());
+        }
+
+        // Sort the classes by resource name, then archive
+        TreeMap<String, List<int[]>> sortedClasses = new TreeMap<String, List<int[]>>();
+        int numClasses = 0;
+        for (int i = 0; i < archives.size(); i++) {
+            Map<String, int[]> archiveClasses = classes.get(archives.get(i));
+            if (archiveClasses == null) {
+                continue;
+            }
+            for (Map.Entry<String, int[]> entry : archiveClasses.entrySet()) {
+                List<int[]> list = sortedClasses.get(entry.getKey());
+                if (list == null) {
+                    list = new ArrayList<int[]>(1);
+                    sortedClasses.put(entry.getKey(), list);
+                }
+                list.add(new int[] { i, entry.getValue()[0], entry.getValue()[1] });
+                numClasses++;
+            }
+        }
+
+        out.writeInt(numClasses);
+        for (Map.Entry<String, List<int[]>> entry : sortedClasses.entrySet()) {
+            for (int[] location : entry.getValue()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(location[0]);
+                out.writeInt(location[1]);
+                out.writeInt(location[2]);
+            }
+        }
+
+        TreeMap<String, int[]> sortedDatabases = new TreeMap<String, int[]>(databases);
+        out.writeInt(sortedDatabases.size());
+        for (Map.Entry<String, int[]> entry : sortedDatabases.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue()[0]);
+            out.writeInt(entry.getValue()[1]);
+        }
+    }
+
+    private void load() throws IOException {
+        ByteBuffer mapped;
+        FileInputStream fileIn = new FileInputStream(file);
+        try {
+            FileChannel channel = fileIn.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Library snapshot too large");
+            }
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            fileIn.close();
+        }
+
+        if (mapped.limit() < 12 || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a library snapshot, or written by a different version");
+        }
+        int indexOffset = mapped.getInt(mapped.limit() - 4);
+        if (indexOffset < 8 || indexOffset > mapped.limit() - 4) {
+            throw new IOException("Corrupt library snapshot " + file);
+        }
+        ByteBuffer index = mapped.duplicate();
+        index.position(indexOffset);
+        index.limit(mapped.limit() - 4);
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(index));
+
+        int numArchives = in.readInt();
+        codeBasePaths = new String[numArchives];
+        codeBaseIndexMap = new HashMap<String, Integer>();
+        for (int i = 0; i < numArchives; i++) {
+            String path = in.readUTF();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            File archive = new File(path);
+            if (archive.length() == length && archive.lastModified() == lastModified) {
+                codeBasePaths[i] = path;
+                codeBaseIndexMap.put(path, Integer.valueOf(i));
+            } else if (DEBUG) {
+                System.out.println("Library snapshot: " + path + " has changed");
+            }
+        }
+
+        int numClasses = in.readInt();
+        classNames = new String[numClasses];
+        classCodeBases = new int[numClasses];
+        classOffsets = new int[numClasses];
+        classLengths = new int[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            classNames[i] = in.readUTF();
+            classCodeBases[i] = in.readInt();
+            classOffsets[i] = in.readInt();
+            classLengths[i] = in.readInt();
+        }
+
+        int numDatabases = in.readInt();
+        databaseMap = new HashMap<String, int[]>();
+        for (int i = 0; i < numDatabases; i++) {
+            String hash = in.readUTF();
+            int offset = in.readInt();
+            int length = in.readInt();
+            databaseMap.put(hash, new int[] { offset, length });
+        }
+
+        mapped.limit(indexOffset);
+        data = mapped;
+
+        if (DEBUG) {
+            System.out.println("Loaded library snapshot " + file + ": " + numClasses + " classes in " + codeBaseIndexMap.size()
+                    + " of " + numArchives + " archives, " + numDatabases + " databases");
+        }
+    }
+
+    private DataInputStream openData(int offset, int length) throws IOException {
+        if (offset < 8 || length < 0 || offset + length > data.limit()) {
+            throw new IOException("Corrupt library snapshot " + file);
+        }
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return new DataInputStream(new ByteBufferInputStream(buffer));
+    }
+
+    private void logFailure(String message, @CheckForNull Exception e) {
+        if (errorLogger == null) {
+            return;
+        }
+        if (e != null) {
+            errorLogger.logError(message, e);
+        } else {
+            errorLogger.logError(message);
+        }
+    }
+}
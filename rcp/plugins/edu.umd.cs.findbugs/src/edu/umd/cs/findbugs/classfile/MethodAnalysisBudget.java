@@ -0,0 +1,246 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Wall-clock time and work budget of each method analysis run by an analysis
+ * cache. The analysis cache meters each run of a method analysis engine; the
+ * analyses doing the bulk of the work (dataflow analyses, path enumeration)
+ * cooperatively call {@link #charge(int)} and give up once it returns false.
+ * Each run has a budget of its own: the work of a nested method analysis is
+ * not charged to the analysis which requested it, so whether a cached
+ * analysis result was computed in full does not depend on which analysis
+ * requested it first.
+ * <p>
+ * Method analyses which used up their budget, or took longer than
+ * findbugs.expensiveMethodTime milliseconds (default 1000), are recorded for
+ * the expensive methods report.
+ *
+ * @see IBoundedAnalysisCache#setMethodAnalysisBudget(MethodAnalysisBudget)
+ */
+public class MethodAnalysisBudget {
+    private static final long EXPENSIVE_METHOD_TIME = SystemProperties.getInt("findbugs.expensiveMethodTime", 1000) * 1000000L;
+
+    /** Meter of the innermost method analysis run by each thread. */
+    private static final ThreadLocal<Meter> currentMeter = new ThreadLocal<Meter>();
+
+    private final long timeLimit;
+
+    private final long workLimit;
+
+    private final List<ExpensiveMethod> expensiveMethodList = new ArrayList<ExpensiveMethod>();
+
+    /**
+     * Time and work used by one run of a method analysis engine.
+     */
+    public static class Meter {
+        final MethodDescriptor method;
+
+        final Class<?> analysisClass;
+
+        final long start;
+
+        final long deadline;
+
+        final long workLimit;
+
+        final @CheckForNull
+        Meter outer;
+
+        long work;
+
+        boolean exhausted;
+
+        Meter(MethodDescriptor method, Class<?> analysisClass, long timeLimit, long workLimit, @CheckForNull Meter outer) {
+            this.method = method;
+            this.analysisClass = analysisClass;
+            this.start = System.nanoTime();
+            this.deadline = start + timeLimit;
+            this.workLimit = workLimit;
+            this.outer = outer;
+        }
+    }
+
+    /**
+     * A method analysis recorded for the expensive methods report.
+     */
+    public static class ExpensiveMethod {
+        private final MethodDescriptor method;
+
+        private final Class<?> analysisClass;
+
+        private final long elapsedTime;
+
+        private final long work;
+
+        private final boolean aborted;
+
+        ExpensiveMethod(Meter meter, long elapsedTime) {
+            this.method = meter.method;
+            this.analysisClass = meter.analysisClass;
+            this.elapsedTime = elapsedTime;
+            this.work = meter.work;
+            this.aborted = meter.exhausted;
+        }
+
+        public MethodDescriptor getMethod() {
+            return method;
+        }
+
+        public Class<?> getAnalysisClass() {
+            return analysisClass;
+        }
+
+        /**
+         * @return the time the analysis took, including the nested analyses
+         *         it requested, in nanoseconds
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        public long getWork() {
+            return work;
+        }
+
+        /**
+         * @return true if the analysis was abandoned because it used up its
+         *         budget
+         */
+        public boolean isAborted() {
+            return aborted;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param timeLimit
+     *            wall-clock time each method analysis may take, in
+     *            milliseconds, or 0 for no limit
+     * @param workLimit
+     *            units of work each method analysis may do, or 0 for no limit
+     */
+    public MethodAnalysisBudget(long timeLimit, long workLimit) {
+        this.timeLimit = timeLimit > 0 ? timeLimit * 1000000L : Long.MAX_VALUE / 2;
+        this.workLimit = workLimit > 0 ? workLimit : Long.MAX_VALUE;
+    }
+
+    /**
+     * Start metering a run of a method analysis engine by the current thread.
+     * Must be followed by a call to {@link #end(Meter)}.
+     *
+     * @param method
+     *            the method analyzed
+     * @param analysisClass
+     *            the analysis class
+     * @return the Meter of the run
+     */
+    public Meter start(MethodDescriptor method, Class<?> analysisClass) {
+        Meter meter = new Meter(method, analysisClass, timeLimit, workLimit, currentMeter.get());
+        currentMeter.set(meter);
+        return meter;
+    }
+
+    /**
+     * Stop metering a run of a method analysis engine, and record it if it
+     * was expensive.
+     *
+     * @param meter
+     *            the Meter returned by {@link #start(MethodDescriptor, Class)}
+     */
+    public void end(Meter meter) {
+        currentMeter.set(meter.outer);
+        long elapsedTime = System.nanoTime() - meter.start;
+        if (meter.exhausted || elapsedTime > EXPENSIVE_METHOD_TIME) {
+            synchronized (expensiveMethodList) {
+                expensiveMethodList.add(new ExpensiveMethod(meter, elapsedTime));
+            }
+        }
+    }
+
+    /**
+     * Charge work to the innermost method analysis being run by the current
+     * thread, and check whether it is still within its budget. Analyses
+     * should call this regularly, but not for every small step, since it
+     * reads the clock.
+     *
+     * @param work
+     *            units of work done since the previous call
+     * @return true if the analysis may go on, false if it should be abandoned
+     */
+    public static boolean charge(int work) {
+        Meter meter = currentMeter.get();
+        if (meter == null) {
+            return true;
+        }
+        meter.work += work;
+        if (meter.work > meter.workLimit || System.nanoTime() - meter.deadline > 0) {
+            meter.exhausted = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the method analyses recorded so far for the expensive methods
+     *         report, most expensive first
+     */
+    public List<ExpensiveMethod> getExpensiveMethods() {
+        List<ExpensiveMethod> result;
+        synchronized (expensiveMethodList) {
+            result = new ArrayList<ExpensiveMethod>(expensiveMethodList);
+        }
+        Collections.sort(result, new Comparator<ExpensiveMethod>() {
+            public int compare(ExpensiveMethod m1, ExpensiveMethod m2) {
+                if (m1.elapsedTime != m2.elapsedTime) {
+                    return m1.elapsedTime > m2.elapsedTime ? -1 : 1;
+                }
+                return m1.method.compareTo(m2.method);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Report the expensive method analyses, most expensive first, so that
+     * they are kept with the analysis results.
+     *
+     * @param errorLogger
+     *            the error logger to report them to
+     */
+    public void report(IErrorLogger errorLogger) {
+        for (ExpensiveMethod m : getExpensiveMethods()) {
+            errorLogger.logError((m.isAborted() ? "Abandoned " : "Expensive ") + m.getAnalysisClass().getSimpleName()
+                    + " analysis of " + m.getMethod() + ": " + m.getElapsedTime() / 1000000L + " ms, " + m.getWork()
+                    + " units of work");
+        }
+    }
+}
+
+// vim:ts=4
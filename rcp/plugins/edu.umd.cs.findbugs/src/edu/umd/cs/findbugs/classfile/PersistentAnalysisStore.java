@@ -0,0 +1,376 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Collection;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.ba.ClassHash;
+import edu.umd.cs.findbugs.ba.interproc.PropertyDatabase;
+import edu.umd.cs.findbugs.ba.interproc.PropertyDatabaseFormatException;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfoCodec;
+import edu.umd.cs.findbugs.classfile.analysis.ClassNameAndSuperclassInfo;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Stores analysis results in a directory, so that later runs can reload them
+ * instead of computing them again. Results are keyed by a hash of the data
+ * they were computed from (the class file, or the text of a property
+ * database), so a result is only ever reloaded for identical input, and
+ * results of changed classes are simply never looked up again.
+ * <p>
+ * The store is registered as a database with the analysis cache. By default
+ * it is disabled, and nothing is loaded or stored; FindBugs2 installs an
+ * enabled store when a cache directory is given. Problems reading or writing
+ * the directory are never fatal: they are reported to the error logger, and
+ * the result is computed as if it had not been stored.
+ */
+public class PersistentAnalysisStore {
+    /**
+     * Changed whenever the format of stored results changes, so that results
+     * stored by an older version are ignored.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String CLASS_NAME_AND_SUPERCLASS_INFO_SUFFIX = ".cn";
+
+    private static final String CLASS_INFO_SUFFIX = ".ci";
+
+    private static final String PROPERTY_DATABASE_SUFFIX = ".db";
+
+    private final @CheckForNull
+    File directory;
+
+    private final @CheckForNull
+    IErrorLogger errorLogger;
+
+    /**
+     * Constructor. Creates a disabled store.
+     */
+    public PersistentAnalysisStore() {
+        this.directory = null;
+        this.errorLogger = null;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            directory to store results in; created if it doesn't exist
+     * @param errorLogger
+     *            the error logger to report problems reading or writing the
+     *            directory to
+     */
+    public PersistentAnalysisStore(File directory, IErrorLogger errorLogger) {
+        this.directory = directory;
+        this.errorLogger = errorLogger;
+    }
+
+    /**
+     * @return true if results are loaded and stored, false if the store is
+     *         disabled
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Compute the hash used to key results computed from given data.
+     *
+     * @param data
+     *            the data
+     * @return the hash, as a string of hex digits
+     */
+    public static String computeHash(byte[] data) {
+        MessageDigest digest = Util.getMD5Digest();
+        return ClassHash.hashToString(digest.digest(data));
+    }
+
+    /**
+     * Load the ClassNameAndSuperclassInfo of a class.
+     *
+     * @param classData
+     *            the class data
+     * @return the ClassNameAndSuperclassInfo, or null if it isn't stored
+     */
+    public @CheckForNull
+    ClassNameAndSuperclassInfo loadClassNameAndSuperclassInfo(ClassData classData) {
+        DataInputStream in = openForReading(computeHash(classData.getData()), CLASS_NAME_AND_SUPERCLASS_INFO_SUFFIX);
+        if (in == null) {
+            return null;
+        }
+        try {
+            return ClassInfoCodec.readClassNameAndSuperclassInfo(in, classData.getCodeBaseEntry());
+        } catch (IOException e) {
+            logFailure("Could not load class info for " + classData.getClassDescriptor(), e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Store the ClassNameAndSuperclassInfo of a class.
+     *
+     * @param classData
+     *            the class data the ClassNameAndSuperclassInfo was parsed from
+     * @param classInfo
+     *            the ClassNameAndSuperclassInfo
+     */
+    public void storeClassNameAndSuperclassInfo(ClassData classData, ClassNameAndSuperclassInfo classInfo) {
+        File file = getFile(computeHash(classData.getData()), CLASS_NAME_AND_SUPERCLASS_INFO_SUFFIX);
+        File tmpFile = createTempFile(file);
+        if (tmpFile == null) {
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            out = openForWriting(tmpFile);
+            ClassInfoCodec.writeClassNameAndSuperclassInfo(out, classInfo);
+            out.close();
+            out = null;
+            commit(tmpFile, file);
+        } catch (IOException e) {
+            logFailure("Could not store class info for " + classData.getClassDescriptor(), e);
+        } finally {
+            abort(out, tmpFile);
+        }
+    }
+
+    /**
+     * Load the ClassInfo of a class.
+     *
+     * @param classData
+     *            the class data
+     * @return the ClassInfo, or null if it isn't stored
+     */
+    public @CheckForNull
+    ClassInfo loadClassInfo(ClassData classData) {
+        DataInputStream in = openForReading(computeHash(classData.getData()), CLASS_INFO_SUFFIX);
+        if (in == null) {
+            return null;
+        }
+        try {
+            return ClassInfoCodec.readClassInfo(in, classData.getCodeBaseEntry());
+        } catch (IOException e) {
+            logFailure("Could not load class info for " + classData.getClassDescriptor(), e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Store the ClassInfo of a class. This should be called right after the
+     * ClassInfo is built, before annotations are added to it.
+     *
+     * @param classData
+     *            the class data the ClassInfo was parsed from
+     * @param classInfo
+     *            the ClassInfo
+     */
+    public void storeClassInfo(ClassData classData, ClassInfo classInfo) {
+        File file = getFile(computeHash(classData.getData()), CLASS_INFO_SUFFIX);
+        File tmpFile = createTempFile(file);
+        if (tmpFile == null) {
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            out = openForWriting(tmpFile);
+            ClassInfoCodec.writeClassInfo(out, classInfo);
+            out.close();
+            out = null;
+            commit(tmpFile, file);
+        } catch (IOException e) {
+            logFailure("Could not store class info for " + classData.getClassDescriptor(), e);
+        } finally {
+            abort(out, tmpFile);
+        }
+    }
+
+    /**
+     * Load properties into a property database.
+     *
+     * @param database
+     *            the database
+     * @param source
+     *            the text the properties were parsed from
+     * @return true if the properties were loaded, false if they aren't stored
+     */
+    public boolean loadPropertyDatabase(PropertyDatabase<?, ?> database, byte[] source) {
+        DataInputStream in = openForReading(computeHash(source), PROPERTY_DATABASE_SUFFIX);
+        if (in == null) {
+            return false;
+        }
+        try {
+            database.readBinary(in);
+            return true;
+        } catch (IOException e) {
+            logFailure("Could not load property database", e);
+        } catch (PropertyDatabaseFormatException e) {
+            logFailure("Could not load property database", e);
+        }
+        return false;
+    }
+
+    /**
+     * Store properties of a property database.
+     *
+     * @param <KeyType>
+     *            type of key (e.g., method or field)
+     * @param database
+     *            the database
+     * @param keys
+     *            keys of the properties parsed from the source
+     * @param source
+     *            the text the properties were parsed from
+     */
+    public <KeyType extends FieldOrMethodDescriptor> void storePropertyDatabase(PropertyDatabase<KeyType, ?> database,
+            Collection<KeyType> keys, byte[] source) {
+        File file = getFile(computeHash(source), PROPERTY_DATABASE_SUFFIX);
+        File tmpFile = createTempFile(file);
+        if (tmpFile == null) {
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            out = openForWriting(tmpFile);
+            database.writeBinary(out, keys);
+            out = null;
+            commit(tmpFile, file);
+        } catch (IOException e) {
+            logFailure("Could not store property database", e);
+        } finally {
+            abort(out, tmpFile);
+        }
+    }
+
+    private File getFile(String hash, String suffix) {
+        // Spread the files over subdirectories, to keep directories small
+        return new File(new File(directory, hash.substring(0, 2)), hash + suffix);
+    }
+
+    private @CheckForNull
+    DataInputStream openForReading(String hash, String suffix) {
+        if (directory == null) {
+            return null;
+        }
+        File file = getFile(hash, suffix);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() == FORMAT_VERSION) {
+                return in;
+            }
+        } catch (IOException e) {
+            logFailure("Could not read " + file, e);
+        }
+        close(in);
+        return null;
+    }
+
+    private DataOutputStream openForWriting(File tmpFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        out.writeInt(FORMAT_VERSION);
+        return out;
+    }
+
+    /**
+     * Create a temporary file next to the file a result is stored in. Results
+     * are written to a temporary file first, so that other threads and
+     * processes never see partially written results.
+     */
+    private @CheckForNull
+    File createTempFile(File file) {
+        if (directory == null) {
+            return null;
+        }
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            logFailure("Could not create " + parent, null);
+            return null;
+        }
+        try {
+            return File.createTempFile(file.getName(), ".tmp", parent);
+        } catch (IOException e) {
+            logFailure("Could not create temporary file in " + parent, e);
+            return null;
+        }
+    }
+
+    private void commit(File tmpFile, File file) throws IOException {
+        if (!tmpFile.renameTo(file)) {
+            // Another thread or process may have stored the same result
+            if (!file.isFile()) {
+                throw new IOException("Could not rename " + tmpFile + " to " + file);
+            }
+        }
+    }
+
+    private static void abort(@CheckForNull DataOutputStream out, File tmpFile) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+        if (tmpFile.exists()) {
+            tmpFile.delete();
+        }
+    }
+
+    private static void close(@CheckForNull DataInputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private void logFailure(String message, @CheckForNull Exception e) {
+        if (errorLogger == null) {
+            return;
+        }
+        if (e != null) {
+            errorLogger.logError(message, e);
+        } else {
+            errorLogger.logError(message);
+        }
+    }
+}
@@ -94,6 +94,13 @@ public class AnnotationValue {
         return typeMap.get(name);
     }
 
+    /**
+     * @return map from annotation element names to their values
+     */
+    Map<String, Object> getValueMap() {
+        return valueMap;
+    }
+
     @Override
     public String toString() {
         return annotationClass + ":" + valueMap.toString();
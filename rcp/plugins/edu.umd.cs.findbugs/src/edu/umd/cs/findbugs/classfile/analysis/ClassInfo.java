@@ -57,7 +57,8 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass, Ann
 
     private final MethodInfo[] xMethods;
 
-    private final MethodInfo[] methodsInCallOrder;
+    // Computed on demand, since it requires reading the class file again
+    private volatile MethodInfo[] methodsInCallOrder;
 
     private final ClassDescriptor immediateEnclosingClass;
 
@@ -96,13 +97,6 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass, Ann
         @Override
         public ClassInfo build() {
             AnalysisContext context = AnalysisContext.currentAnalysisContext();
-            FieldInfo fields[];
-            MethodInfo methods[];
-            if (fieldInfoList.size() == 0)
-                fields = FieldInfo.EMPTY_ARRAY;
-            else
-                fields = fieldInfoList.toArray(new FieldInfo[fieldInfoList.size()]);
-
             for (Map.Entry<MethodInfo, String> e : bridgedSignatures.entrySet()) {
                 MethodInfo method = e.getKey();
                 String signature = e.getValue();
@@ -114,6 +108,21 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass, Ann
 
             }
 
+            return buildWithoutBridgeMethods();
+        }
+
+        /**
+         * Build the ClassInfo without registering its bridge methods in the
+         * AnalysisContext.
+         */
+        ClassInfo buildWithoutBridgeMethods() {
+            FieldInfo fields[];
+            MethodInfo methods[];
+            if (fieldInfoList.size() == 0)
+                fields = FieldInfo.EMPTY_ARRAY;
+            else
+                fields = fieldInfoList.toArray(new FieldInfo[fieldInfoList.size()]);
+
             if (methodInfoList.size() == 0)
                 methods = MethodInfo.EMPTY_ARRAY;
             else
@@ -169,6 +178,25 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass, Ann
             methodInfoList.add(method);
         }
 
+        /**
+         * Get the signature of the method a bridge method bridges to, as build()
+         * registers it in the AnalysisContext.
+         *
+         * @param method
+         *            a method of the class
+         * @return the signature, or null if the method is not a bridge method
+         *         to another method of the class
+         */
+        @CheckForNull
+        String getBridgedSignature(MethodInfo method) {
+            String signature = bridgedSignatures.get(method);
+            if (signature != null)
+                for (MethodInfo m : methodInfoList)
+                    if (m.getSignature().equals(signature))
+                        return signature;
+            return null;
+        }
+
         public void addBridgeMethodDescriptor(MethodInfo method, String bridgedSignature) {
             if (bridgedSignature != null) {
                 bridgedSignatures.put(method, bridgedSignature);
@@ -260,14 +288,6 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass, Ann
         this.classAnnotations = Util.immutableMap(classAnnotations);
         this.usesConcurrency = usesConcurrency;
         this.hasStubs = hasStubs;
-        this.methodsInCallOrder = computeMethodsInCallOrder();
-        if (false) {
-            System.out.println("Methods in call order for " + classDescriptor);
-            for (MethodInfo m : methodsInCallOrder) {
-                System.out.println("  " + m);
-            }
-            System.out.println();
-        }
     }
 
     /**
@@ -288,7 +308,12 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass, Ann
      * @return Returns the methodDescriptorList.
      */
     public List<? extends XMethod> getXMethodsInCallOrder() {
-        return Arrays.asList(methodsInCallOrder);
+        MethodInfo[] result = methodsInCallOrder;
+        if (result == null) {
+            result = computeMethodsInCallOrder();
+            methodsInCallOrder = result;
+        }
+        return Arrays.asList(result);
     }
 
     /*
@@ -0,0 +1,604 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.analysis;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Type;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+
+/**
+ * Write ClassNameAndSuperclassInfo and ClassInfo objects to a binary stream
+ * and read them back, so that they can be stored between runs instead of
+ * being parsed from the class file again. Only information parsed from the
+ * class file is written; annotations added later on (e.g., by
+ * addAnnotation()) are not, so objects should be written right after they are
+ * built.
+ */
+public class ClassInfoCodec {
+    private static final int BYTE = 'B', BOOLEAN = 'Z', CHAR = 'C', SHORT = 'S', INT = 'I', LONG = 'J', FLOAT = 'F',
+            DOUBLE = 'D', STRING = 's', TYPE = 'T', ENUM = 'e', ANNOTATION = '@', ARRAY = '[', BYTE_ARRAY = 'b',
+            BOOLEAN_ARRAY = 'z', CHAR_ARRAY = 'c', SHORT_ARRAY = 'h', INT_ARRAY = 'i', LONG_ARRAY = 'j', FLOAT_ARRAY = 'f',
+            DOUBLE_ARRAY = 'd';
+
+    private static final int UNCONDITIONAL_THROWER = 1, UNSUPPORTED = 2, USES_CONCURRENCY = 4, HAS_BACK_BRANCH = 8, STUB = 16;
+
+    private ClassInfoCodec() {
+    }
+
+    /**
+     * Write a ClassNameAndSuperclassInfo.
+     *
+     * @param out
+     *            the stream to write to
+     * @param classInfo
+     *            the ClassNameAndSuperclassInfo
+     * @throws IOException
+     *             if the object cannot be written
+     */
+    public static void writeClassNameAndSuperclassInfo(DataOutputStream out, ClassNameAndSuperclassInfo classInfo)
+            throws IOException {
+        out.writeUTF(classInfo.getClassName());
+        writeClassDescriptor(out, classInfo.getSuperclassDescriptor());
+        ClassDescriptor[] interfaces = classInfo.getInterfaceDescriptorList();
+        out.writeInt(interfaces.length);
+        for (ClassDescriptor d : interfaces) {
+            out.writeUTF(d.getClassName());
+        }
+        out.writeInt(classInfo.getAccessFlags());
+        out.writeInt(classInfo.getMajorVersion());
+        out.writeInt(classInfo.getMinorVersion());
+        writeClassDescriptors(out, classInfo.getCalledClassDescriptorList());
+        writeClassDescriptors(out, classInfo.getReferencedClassDescriptorList());
+    }
+
+    /**
+     * Read a ClassNameAndSuperclassInfo written by
+     * writeClassNameAndSuperclassInfo().
+     *
+     * @param in
+     *            the stream to read from
+     * @param codeBaseEntry
+     *            codebase entry the class was loaded from
+     * @return the ClassNameAndSuperclassInfo
+     * @throws IOException
+     */
+    public static ClassNameAndSuperclassInfo readClassNameAndSuperclassInfo(DataInputStream in, ICodeBaseEntry codeBaseEntry)
+            throws IOException {
+        ClassNameAndSuperclassInfo.Builder builder = new ClassNameAndSuperclassInfo.Builder();
+        readClassNameAndSuperclassInfo(in, codeBaseEntry, builder);
+        return builder.build();
+    }
+
+    /**
+     * Write a ClassInfo.
+     *
+     * @param out
+     *            the stream to write to
+     * @param classInfo
+     *            the ClassInfo
+     * @throws IOException
+     *             if the object cannot be written, e.g. because it has an
+     *             annotation value of an unexpected type
+     */
+    public static void writeClassInfo(DataOutputStream out, ClassInfo classInfo) throws IOException {
+        writeClassInfo(out, classInfo, null);
+    }
+
+    /**
+     * Write the ClassInfo of a class parsed into a builder, as
+     * writeClassInfo() writes the ClassInfo built from it, but without the side
+     * effects of building it: the bridge methods of the class are not
+     * registered in the AnalysisContext, and its methods are removed from
+     * MethodInfo's tables of unconditional throwers and unsupported methods,
+     * which parsing added them to. This is for classes the analysis does not
+     * use.
+     *
+     * @param out
+     *            the stream to write to
+     * @param builder
+     *            the builder the class was parsed into
+     * @throws IOException
+     *             if the object cannot be written
+     */
+    public static void writeParsedClassInfo(DataOutputStream out, ClassInfo.Builder builder) throws IOException {
+        ClassInfo classInfo = builder.buildWithoutBridgeMethods();
+        try {
+            writeClassInfo(out, classInfo, builder);
+        } finally {
+            for (XMethod m : classInfo.getXMethods()) {
+                MethodInfo.removeFromCaches((MethodInfo) m);
+            }
+        }
+    }
+
+    private static void writeClassInfo(DataOutputStream out, ClassInfo classInfo, @CheckForNull ClassInfo.Builder builder)
+            throws IOException {
+        writeClassNameAndSuperclassInfo(out, classInfo);
+        writeString(out, classInfo.getSourceSignature());
+        writeString(out, classInfo.getSource());
+        writeClassDescriptor(out, classInfo.getImmediateEnclosingClass());
+        out.writeBoolean(classInfo.usesConcurrency());
+        out.writeBoolean(classInfo.hasStubs());
+        writeAnnotations(out, classInfo.getAnnotations());
+
+        List<? extends XField> fields = classInfo.getXFields();
+        out.writeInt(fields.size());
+        for (XField f : fields) {
+            FieldInfo field = (FieldInfo) f;
+            out.writeUTF(field.getName());
+            out.writeUTF(field.getSignature());
+            out.writeInt(field.getAccessFlags());
+            writeString(out, field.getSourceSignature());
+            writeAnnotations(out, field.getAnnotations());
+        }
+
+        List<? extends XMethod> methods = classInfo.getXMethods();
+        out.writeInt(methods.size());
+        for (XMethod m : methods) {
+            MethodInfo method = (MethodInfo) m;
+            out.writeUTF(method.getName());
+            out.writeUTF(method.getSignature());
+            out.writeInt(method.getAccessFlags());
+            writeString(out, method.getSourceSignature());
+            int flags = 0;
+            if (method.isUnconditionalThrower())
+                flags |= UNCONDITIONAL_THROWER;
+            if (method.isUnsupported())
+                flags |= UNSUPPORTED;
+            if (method.usesConcurrency())
+                flags |= USES_CONCURRENCY;
+            if (method.hasBackBranch())
+                flags |= HAS_BACK_BRANCH;
+            if (method.isStub())
+                flags |= STUB;
+            out.writeInt(flags);
+            out.writeInt(method.getMethodCallCount());
+            String[] exceptions = method.getThrownExceptions();
+            out.writeInt(exceptions == null ? -1 : exceptions.length);
+            if (exceptions != null) {
+                for (String e : exceptions) {
+                    out.writeUTF(e);
+                }
+            }
+            writeAnnotations(out, method.getAnnotations());
+            Map<Integer, Map<ClassDescriptor, AnnotationValue>> parameterAnnotations = method.methodParameterAnnotations;
+            out.writeInt(parameterAnnotations.size());
+            for (Map.Entry<Integer, Map<ClassDescriptor, AnnotationValue>> e : parameterAnnotations.entrySet()) {
+                out.writeInt(e.getKey().intValue());
+                writeAnnotations(out, e.getValue().values());
+            }
+
+            // Bridge methods are recorded in the AnalysisContext while the
+            // ClassInfo is built
+            if (builder != null) {
+                writeString(out, builder.getBridgedSignature(method));
+            } else {
+                XMethod bridgeTo = AnalysisContext.currentAnalysisContext().getBridgeTo(method);
+                writeString(out, bridgeTo != null ? bridgeTo.getSignature() : null);
+            }
+        }
+    }
+
+    /**
+     * Read a ClassInfo written by writeClassInfo().
+     *
+     * @param in
+     *            the stream to read from
+     * @param codeBaseEntry
+     *            codebase entry the class was loaded from
+     * @return the ClassInfo
+     * @throws IOException
+     */
+    public static ClassInfo readClassInfo(DataInputStream in, ICodeBaseEntry codeBaseEntry) throws IOException {
+        ClassInfo.Builder builder = new ClassInfo.Builder();
+        readClassNameAndSuperclassInfo(in, codeBaseEntry, builder);
+        @SlashedClassName
+        String className = builder.getClassDescriptor().getClassName();
+        builder.setSourceSignature(readString(in));
+        builder.setSource(readString(in));
+        builder.setImmediateEnclosingClass(readClassDescriptor(in));
+        if (in.readBoolean())
+            builder.setUsesConcurrency();
+        if (in.readBoolean())
+            builder.setHasStubs();
+        int numAnnotations = in.readInt();
+        for (int i = 0; i < numAnnotations; i++) {
+            AnnotationValue value = readAnnotation(in);
+            builder.addAnnotation(value.getAnnotationClass().getSignature(), value);
+        }
+
+        int numFields = in.readInt();
+        for (int i = 0; i < numFields; i++) {
+            String name = in.readUTF();
+            String signature = in.readUTF();
+            FieldInfo.Builder fieldBuilder = new FieldInfo.Builder(className, name, signature, in.readInt());
+            fieldBuilder.setSourceSignature(readString(in));
+            numAnnotations = in.readInt();
+            for (int j = 0; j < numAnnotations; j++) {
+                AnnotationValue value = readAnnotation(in);
+                fieldBuilder.addAnnotation(value.getAnnotationClass().getSignature(), value);
+            }
+            builder.addFieldDescriptor(fieldBuilder.build());
+        }
+
+        int numMethods = in.readInt();
+        for (int i = 0; i < numMethods; i++) {
+            String name = in.readUTF();
+            String signature = in.readUTF();
+            MethodInfo.Builder methodBuilder = new MethodInfo.Builder(className, name, signature, in.readInt());
+            methodBuilder.setSourceSignature(readString(in));
+            int flags = in.readInt();
+            if ((flags & UNCONDITIONAL_THROWER) != 0)
+                methodBuilder.setIsUnconditionalThrower();
+            if ((flags & UNSUPPORTED) != 0)
+                methodBuilder.setUnsupported();
+            if ((flags & USES_CONCURRENCY) != 0)
+                methodBuilder.setUsesConcurrency();
+            if ((flags & HAS_BACK_BRANCH) != 0)
+                methodBuilder.setHasBackBranch();
+            if ((flags & STUB) != 0)
+                methodBuilder.setIsStub();
+            methodBuilder.setNumberMethodCalls(in.readInt());
+            int numExceptions = in.readInt();
+            if (numExceptions >= 0) {
+                String[] exceptions = new String[numExceptions];
+                for (int j = 0; j < numExceptions; j++) {
+                    exceptions[j] = in.readUTF();
+                }
+                methodBuilder.setThrownExceptions(exceptions);
+            }
+            numAnnotations = in.readInt();
+            for (int j = 0; j < numAnnotations; j++) {
+                AnnotationValue value = readAnnotation(in);
+                methodBuilder.addAnnotation(value.getAnnotationClass().getSignature(), value);
+            }
+            int numParameters = in.readInt();
+            for (int j = 0; j < numParameters; j++) {
+                int parameter = in.readInt();
+                numAnnotations = in.readInt();
+                for (int k = 0; k < numAnnotations; k++) {
+                    AnnotationValue value = readAnnotation(in);
+                    methodBuilder.addParameterAnnotation(parameter, value.getAnnotationClass().getSignature(), value);
+                }
+            }
+            builder.addBridgeMethodDescriptor(methodBuilder.build(), readString(in));
+        }
+        return builder.build();
+    }
+
+    private static void readClassNameAndSuperclassInfo(DataInputStream in, ICodeBaseEntry codeBaseEntry,
+            ClassNameAndSuperclassInfo.Builder builder) throws IOException {
+        builder.setClassDescriptor(DescriptorFactory.createClassDescriptor(in.readUTF()));
+        builder.setSuperclassDescriptor(readClassDescriptor(in));
+        ClassDescriptor[] interfaces = new ClassDescriptor[in.readInt()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = DescriptorFactory.createClassDescriptor(in.readUTF());
+        }
+        builder.setInterfaceDescriptorList(interfaces);
+        builder.setCodeBaseEntry(codeBaseEntry);
+        builder.setAccessFlags(in.readInt());
+        int majorVersion = in.readInt();
+        int minorVersion = in.readInt();
+        builder.setClassfileVersion(majorVersion, minorVersion);
+        builder.setCalledClassDescriptors(readClassDescriptors(in));
+        builder.setReferencedClassDescriptors(readClassDescriptors(in));
+    }
+
+    private static void writeClassDescriptors(DataOutputStream out, Collection<ClassDescriptor> descriptors) throws IOException {
+        out.writeInt(descriptors.size());
+        for (ClassDescriptor d : descriptors) {
+            out.writeUTF(d.getClassName());
+        }
+    }
+
+    private static List<ClassDescriptor> readClassDescriptors(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<ClassDescriptor> descriptors = new ArrayList<ClassDescriptor>(count);
+        for (int i = 0; i < count; i++) {
+            descriptors.add(DescriptorFactory.createClassDescriptor(in.readUTF()));
+        }
+        return descriptors;
+    }
+
+    private static void writeString(DataOutputStream out, @CheckForNull String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null)
+            out.writeUTF(s);
+    }
+
+    private static @CheckForNull
+    String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeClassDescriptor(DataOutputStream out, @CheckForNull ClassDescriptor d) throws IOException {
+        writeString(out, d != null ? d.getClassName() : null);
+    }
+
+    private static @CheckForNull
+    ClassDescriptor readClassDescriptor(DataInputStream in) throws IOException {
+        String className = readString(in);
+        return className != null ? DescriptorFactory.createClassDescriptor(className) : null;
+    }
+
+    private static void writeAnnotations(DataOutputStream out, Collection<AnnotationValue> annotations) throws IOException {
+        out.writeInt(annotations.size());
+        for (AnnotationValue value : annotations) {
+            out.writeUTF(value.getAnnotationClass().getSignature());
+            writeAnnotationElements(out, value);
+        }
+    }
+
+    private static void writeAnnotationElements(DataOutputStream out, AnnotationValue value) throws IOException {
+        Map<String, Object> valueMap = value.getValueMap();
+        out.writeInt(valueMap.size());
+        for (Map.Entry<String, Object> e : valueMap.entrySet()) {
+            out.writeUTF(e.getKey());
+            writeAnnotationElement(out, e.getValue());
+        }
+    }
+
+    private static void writeAnnotationElement(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte(((Byte) value).byteValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(((Boolean) value).booleanValue());
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar(((Character) value).charValue());
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort(((Short) value).shortValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat(((Float) value).floatValue());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Type) {
+            out.writeByte(TYPE);
+            out.writeUTF(((Type) value).getDescriptor());
+        } else if (value instanceof EnumValue) {
+            out.writeByte(ENUM);
+            out.writeUTF(((EnumValue) value).desc.getSignature());
+            out.writeUTF(((EnumValue) value).value);
+        } else if (value instanceof AnnotationValue) {
+            out.writeByte(ANNOTATION);
+            out.writeUTF(((AnnotationValue) value).getAnnotationClass().getSignature());
+            writeAnnotationElements(out, (AnnotationValue) value);
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            out.writeByte(ARRAY);
+            out.writeInt(array.length);
+            for (Object element : array) {
+                writeAnnotationElement(out, element);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            out.writeByte(BYTE_ARRAY);
+            out.writeInt(array.length);
+            out.write(array);
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            out.writeByte(BOOLEAN_ARRAY);
+            out.writeInt(array.length);
+            for (boolean b : array)
+                out.writeBoolean(b);
+        } else if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            out.writeByte(CHAR_ARRAY);
+            out.writeInt(array.length);
+            for (char c : array)
+                out.writeChar(c);
+        } else if (value instanceof short[]) {
+            short[] array = (short[]) value;
+            out.writeByte(SHORT_ARRAY);
+            out.writeInt(array.length);
+            for (short s : array)
+                out.writeShort(s);
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            out.writeByte(INT_ARRAY);
+            out.writeInt(array.length);
+            for (int i : array)
+                out.writeInt(i);
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            out.writeByte(LONG_ARRAY);
+            out.writeInt(array.length);
+            for (long l : array)
+                out.writeLong(l);
+        } else if (value instanceof float[]) {
+            float[] array = (float[]) value;
+            out.writeByte(FLOAT_ARRAY);
+            out.writeInt(array.length);
+            for (float f : array)
+                out.writeFloat(f);
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            out.writeByte(DOUBLE_ARRAY);
+            out.writeInt(array.length);
+            for (double d : array)
+                out.writeDouble(d);
+        } else {
+            throw new IOException("Can't write annotation value of type " + (value == null ? "null" : value.getClass().getName()));
+        }
+    }
+
+    private static AnnotationValue readAnnotation(DataInputStream in) throws IOException {
+        AnnotationValue value = new AnnotationValue(in.readUTF());
+        AnnotationVisitor visitor = value.getAnnotationVisitor();
+        readAnnotationElements(in, visitor);
+        visitor.visitEnd();
+        return value;
+    }
+
+    /**
+     * Read annotation elements, and replay them into an AnnotationVisitor the
+     * same way the class file parser would.
+     */
+    private static void readAnnotationElements(DataInputStream in, AnnotationVisitor visitor) throws IOException {
+        int numElements = in.readInt();
+        for (int i = 0; i < numElements; i++) {
+            String name = in.readUTF();
+            readAnnotationElement(in, name, visitor);
+        }
+    }
+
+    private static void readAnnotationElement(DataInputStream in, String name, AnnotationVisitor visitor) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+        case BYTE:
+            visitor.visit(name, Byte.valueOf(in.readByte()));
+            break;
+        case BOOLEAN:
+            visitor.visit(name, Boolean.valueOf(in.readBoolean()));
+            break;
+        case CHAR:
+            visitor.visit(name, Character.valueOf(in.readChar()));
+            break;
+        case SHORT:
+            visitor.visit(name, Short.valueOf(in.readShort()));
+            break;
+        case INT:
+            visitor.visit(name, Integer.valueOf(in.readInt()));
+            break;
+        case LONG:
+            visitor.visit(name, Long.valueOf(in.readLong()));
+            break;
+        case FLOAT:
+            visitor.visit(name, Float.valueOf(in.readFloat()));
+            break;
+        case DOUBLE:
+            visitor.visit(name, Double.valueOf(in.readDouble()));
+            break;
+        case STRING:
+            visitor.visit(name, in.readUTF());
+            break;
+        case TYPE:
+            visitor.visit(name, Type.getType(in.readUTF()));
+            break;
+        case ENUM: {
+            String desc = in.readUTF();
+            visitor.visitEnum(name, desc, in.readUTF());
+            break;
+        }
+        case ANNOTATION: {
+            AnnotationVisitor nested = visitor.visitAnnotation(name, in.readUTF());
+            readAnnotationElements(in, nested);
+            nested.visitEnd();
+            break;
+        }
+        case ARRAY: {
+            AnnotationVisitor arrayVisitor = visitor.visitArray(name);
+            int length = in.readInt();
+            for (int i = 0; i < length; i++) {
+                readAnnotationElement(in, null, arrayVisitor);
+            }
+            arrayVisitor.visitEnd();
+            break;
+        }
+        case BYTE_ARRAY: {
+            byte[] array = new byte[in.readInt()];
+            in.readFully(array);
+            visitor.visit(name, array);
+            break;
+        }
+        case BOOLEAN_ARRAY: {
+            boolean[] array = new boolean[in.readInt()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = in.readBoolean();
+            visitor.visit(name, array);
+            break;
+        }
+        case CHAR_ARRAY: {
+            char[] array = new char[in.readInt()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = in.readChar();
+            visitor.visit(name, array);
+            break;
+        }
+        case SHORT_ARRAY: {
+            short[] array = new short[in.readInt()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = in.readShort();
+            visitor.visit(name, array);
+            break;
+        }
+        case INT_ARRAY: {
+            int[] array = new int[in.readInt()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = in.readInt();
+            visitor.visit(name, array);
+            break;
+        }
+        case LONG_ARRAY: {
+            long[] array = new long[in.readInt()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = in.readLong();
+            visitor.visit(name, array);
+            break;
+        }
+        case FLOAT_ARRAY: {
+            float[] array = new float[in.readInt()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = in.readFloat();
+            visitor.visit(name, array);
+            break;
+        }
+        case DOUBLE_ARRAY: {
+            double[] array = new double[in.readInt()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = in.readDouble();
+            visitor.visit(name, array);
+            break;
+        }
+        default:
+            throw new IOException("Invalid annotation value tag " + tag);
+        }
+    }
+}
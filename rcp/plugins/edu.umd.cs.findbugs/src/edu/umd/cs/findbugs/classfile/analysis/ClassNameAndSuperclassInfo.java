@@ -45,6 +45,8 @@ public class ClassNameAndSuperclassInfo extends ClassDescriptor {
 
     private final int accessFlags;
 
+    private final Collection<ClassDescriptor> referencedClassDescriptorList;
+
     private final Collection<ClassDescriptor> calledClassDescriptorList;
 
     private final int majorVersion, minorVersion;
@@ -153,7 +155,6 @@ public class ClassNameAndSuperclassInfo extends ClassDescriptor {
      */
     ClassNameAndSuperclassInfo(ClassDescriptor classDescriptor, ClassDescriptor superclassDescriptor,
             ClassDescriptor[] interfaceDescriptorList, ICodeBaseEntry codeBaseEntry, int accessFlags,
-            /* TODO: We aren't doing anything with this */
             Collection<ClassDescriptor> referencedClassDescriptorList,
             @Nonnull Collection<ClassDescriptor> calledClassDescriptorList, int majorVersion, int minorVersion) {
         super(classDescriptor.getClassName());
@@ -164,6 +165,8 @@ public class ClassNameAndSuperclassInfo extends ClassDescriptor {
         if (calledClassDescriptorList == null)
             throw new NullPointerException("calledClassDescriptorList must not be null");
         this.calledClassDescriptorList = calledClassDescriptorList;
+        this.referencedClassDescriptorList = referencedClassDescriptorList != null ? referencedClassDescriptorList
+                : Collections.<ClassDescriptor> emptyList();
         this.majorVersion = majorVersion;
         this.minorVersion = minorVersion;
 
@@ -211,6 +214,14 @@ public class ClassNameAndSuperclassInfo extends ClassDescriptor {
         return interfaceDescriptorList;
     }
 
+    /**
+     * @return Returns the descriptors of all classes referenced from the
+     *         class's constant pool.
+     */
+    public Collection<ClassDescriptor> getReferencedClassDescriptorList() {
+        return referencedClassDescriptorList;
+    }
+
     /**
      * @return Returns the called class descriptor list.
      */
@@ -199,6 +199,17 @@ public class MethodInfo extends MethodDescriptor implements XMethod, AnnotatedOb
         accessMethodFor.clear();
     }
 
+    /**
+     * Remove a method from the tables its constructor added it to.
+     *
+     * @param method
+     *            a method which is not used by the analysis
+     */
+    static void removeFromCaches(MethodInfo method) {
+        unsupportedMethods.remove(method);
+        unconditionalThrowers.remove(method);
+    }
+
     /**
      * @param className
      * @param methodName
@@ -61,6 +61,22 @@ public class ClassDataAnalysisEngine extends RecomputableClassAnalysisEngine<Cla
             throw new MissingClassException(descriptor, e);
         }
 
+        return readClassData(descriptor, codeBaseEntry);
+    }
+
+    /**
+     * Read the data of a class from the codebase entry it was found in. Unlike
+     * looking up the entry, this may be done by any thread.
+     * 
+     * @param descriptor
+     *            the class
+     * @param codeBaseEntry
+     *            the codebase entry holding the class
+     * @return the data of the class
+     * @throws MissingClassException
+     *             if the class can't be read
+     */
+    public static ClassData readClassData(ClassDescriptor descriptor, ICodeBaseEntry codeBaseEntry) throws MissingClassException {
         byte[] data;
         if (codeBaseEntry instanceof ZipInputStreamCodeBaseEntry) {
             data = ((ZipInputStreamCodeBaseEntry) codeBaseEntry).getBytes();
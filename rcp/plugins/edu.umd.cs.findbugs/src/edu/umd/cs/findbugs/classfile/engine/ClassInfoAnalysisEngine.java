@@ -26,6 +26,8 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.ClassNameMismatchException;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.LibrarySnapshot;
+import edu.umd.cs.findbugs.classfile.PersistentAnalysisStore;
 import edu.umd.cs.findbugs.classfile.analysis.ClassData;
 import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
 
@@ -54,6 +56,16 @@ public class ClassInfoAnalysisEngine implements IClassAnalysisEngine<XClass> {
 
         if (descriptor instanceof ClassInfo)
             return (ClassInfo) descriptor;
+
+        // Library classes may be in the library snapshot
+        LibrarySnapshot snapshot = analysisCache.getDatabase(LibrarySnapshot.class);
+        if (snapshot.isLoaded()) {
+            ClassInfo classInfo = snapshot.loadClassInfo(analysisCache.getClassPath(), descriptor);
+            if (classInfo != null) {
+                return classInfo;
+            }
+        }
+
         ClassData classData;
         try {
             classData = analysisCache.getClassAnalysis(ClassData.class, descriptor);
@@ -67,18 +79,32 @@ public class ClassInfoAnalysisEngine implements IClassAnalysisEngine<XClass> {
             return builder.build();
         }
 
-        // Read the class info
+        // Reuse the class info from an earlier run, if it was stored
+        PersistentAnalysisStore store = analysisCache.getDatabase(PersistentAnalysisStore.class);
+        ClassInfo classInfo = store.isEnabled() ? store.loadClassInfo(classData) : null;
+        boolean parsed = false;
 
-        FBClassReader reader = analysisCache.getClassAnalysis(FBClassReader.class, descriptor);
-        ClassParserInterface parser = new ClassParserUsingASM(reader, descriptor, classData.getCodeBaseEntry());
+        if (classInfo == null) {
+            // Read the class info
 
-        ClassInfo.Builder classInfoBuilder = new ClassInfo.Builder();
-        parser.parse(classInfoBuilder);
-        ClassInfo classInfo = classInfoBuilder.build();
+            FBClassReader reader = analysisCache.getClassAnalysis(FBClassReader.class, descriptor);
+            ClassParserInterface parser = new ClassParserUsingASM(reader, descriptor, classData.getCodeBaseEntry());
+
+            ClassInfo.Builder classInfoBuilder = new ClassInfo.Builder();
+            parser.parse(classInfoBuilder);
+            classInfo = classInfoBuilder.build();
+            parsed = true;
+        }
 
         if (!classInfo.getClassDescriptor().equals(descriptor)) {
             throw new ClassNameMismatchException(descriptor, classInfo.getClassDescriptor(), classData.getCodeBaseEntry());
         }
+        if (parsed && store.isEnabled()) {
+            store.storeClassInfo(classData, classInfo);
+        }
+        if (snapshot.isRecording()) {
+            snapshot.recordClassInfo(classData.getCodeBaseEntry(), classInfo);
+        }
         return classInfo;
     }
 
@@ -27,6 +27,8 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.ClassNameMismatchException;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.LibrarySnapshot;
+import edu.umd.cs.findbugs.classfile.PersistentAnalysisStore;
 import edu.umd.cs.findbugs.classfile.analysis.ClassData;
 import edu.umd.cs.findbugs.classfile.analysis.ClassNameAndSuperclassInfo;
 
@@ -47,19 +49,40 @@ public class ClassNameAndSuperclassInfoAnalysisEngine implements IClassAnalysisE
      */
     public ClassNameAndSuperclassInfo analyze(IAnalysisCache analysisCache, ClassDescriptor descriptor)
             throws CheckedAnalysisException {
-        // Get InputStream reading from class data
+        // Library classes may be in the library snapshot
+        LibrarySnapshot snapshot = analysisCache.getDatabase(LibrarySnapshot.class);
+        if (snapshot.isLoaded()) {
+            ClassNameAndSuperclassInfo classInfo = snapshot.loadClassInfo(analysisCache.getClassPath(), descriptor);
+            if (classInfo != null) {
+                return classInfo;
+            }
+        }
+
         ClassData classData = analysisCache.getClassAnalysis(ClassData.class, descriptor);
-        DataInputStream classDataIn = new DataInputStream(new ByteArrayInputStream(classData.getData()));
 
-        // Read the class info
-        ClassParserInterface parser = new ClassParser(classDataIn, descriptor, classData.getCodeBaseEntry());
-        ClassNameAndSuperclassInfo.Builder classInfoBuilder = new ClassNameAndSuperclassInfo.Builder();
-        parser.parse(classInfoBuilder);
-        ClassNameAndSuperclassInfo classInfo = classInfoBuilder.build();
+        // Reuse the class info from an earlier run, if it was stored
+        PersistentAnalysisStore store = analysisCache.getDatabase(PersistentAnalysisStore.class);
+        ClassNameAndSuperclassInfo classInfo = store.isEnabled() ? store.loadClassNameAndSuperclassInfo(classData) : null;
+        boolean parsed = false;
+
+        if (classInfo == null) {
+            // Get InputStream reading from class data
+            DataInputStream classDataIn = new DataInputStream(new ByteArrayInputStream(classData.getData()));
+
+            // Read the class info
+            ClassParserInterface parser = new ClassParser(classDataIn, descriptor, classData.getCodeBaseEntry());
+            ClassNameAndSuperclassInfo.Builder classInfoBuilder = new ClassNameAndSuperclassInfo.Builder();
+            parser.parse(classInfoBuilder);
+            classInfo = classInfoBuilder.build();
+            parsed = true;
+        }
 
         if (!classInfo.getClassDescriptor().equals(descriptor)) {
             throw new ClassNameMismatchException(descriptor, classInfo.getClassDescriptor(), classData.getCodeBaseEntry());
         }
+        if (parsed && store.isEnabled()) {
+            store.storeClassNameAndSuperclassInfo(classData, classInfo);
+        }
         return classInfo;
     }
 
@@ -22,7 +22,11 @@ package edu.umd.cs.findbugs.classfile.engine;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IAnalysisEngineRegistrar;
 import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.LibrarySnapshot;
+import edu.umd.cs.findbugs.classfile.PersistentAnalysisStore;
+import edu.umd.cs.findbugs.classfile.ReflectionDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.engine.asm.ClassReaderAnalysisEngine;
 
 /**
@@ -36,6 +40,10 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
 
     private static IMethodAnalysisEngine<?>[] methodAnalysisEngineList = {};
 
+    private static IDatabaseFactory<?>[] databaseFactoryList = {
+            new ReflectionDatabaseFactory<PersistentAnalysisStore>(PersistentAnalysisStore.class),
+            new ReflectionDatabaseFactory<LibrarySnapshot>(LibrarySnapshot.class) };
+
     /**
      * Constructor.
      */
@@ -56,5 +64,8 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
         for (IMethodAnalysisEngine<?> engine : methodAnalysisEngineList) {
             engine.registerWith(analysisCache);
         }
+        for (IDatabaseFactory<?> databaseFactory : databaseFactoryList) {
+            databaseFactory.registerWith(analysisCache);
+        }
     }
 }
@@ -65,6 +65,12 @@ import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 public class CFGFactory extends AnalysisFactory<CFG> {
     private static final boolean DEBUG_CFG = SystemProperties.getBoolean("classContext.debugCFG");
 
+    /**
+     * Time, in milliseconds, which dataflow analyses of a huge method may
+     * take in total, when huge methods are analyzed in a degraded way.
+     */
+    private static final int HUGE_METHOD_TIME_BUDGET = SystemProperties.getInt("findbugs.hugeMethodTimeBudget", 5000);
+
     /**
      * Constructor.
      */
@@ -105,6 +111,16 @@ public class CFGFactory extends AnalysisFactory<CFG> {
         cfg.setMethodName(SignatureConverter.convertMethodSignature(methodGen));
         cfg.setMethodGen(methodGen);
 
+        // Huge methods are only analyzed if they are to be analyzed in a
+        // cheaper way: don't refine their CFGs, which takes a type analysis,
+        // and bound the time taken by dataflow analyses
+        if (AnalysisContext.currentAnalysisContext().getBoolProperty(AnalysisFeatures.DEGRADE_HUGE_METHODS)
+                && MethodGenFactory.isHugeMethod(analysisCache.getClassAnalysis(JavaClass.class, descriptor.getClassDescriptor()),
+                        analysisCache.getMethodAnalysis(Method.class, descriptor))) {
+            cfg.setFlag(CFG.DEGRADED);
+            cfg.setAnalysisTimeBudget(HUGE_METHOD_TIME_BUDGET * 1000000L);
+        }
+
         // System.out.println("CC: getting refined CFG for " + methodId);
         if (CFGFactory.DEBUG_CFG) {
             String methodId = methodGen.getClassName() + "." + methodGen.getName() + ":" + methodGen.getSignature();
@@ -154,7 +170,7 @@ public class CFGFactory extends AnalysisFactory<CFG> {
         final boolean PRUNE_INFEASIBLE_EXCEPTION_EDGES = AnalysisContext.currentAnalysisContext().getBoolProperty(
                 AnalysisFeatures.ACCURATE_EXCEPTIONS);
 
-        if (PRUNE_INFEASIBLE_EXCEPTION_EDGES && !cfg.isFlagSet(CFG.PRUNED_INFEASIBLE_EXCEPTIONS)) {
+        if (PRUNE_INFEASIBLE_EXCEPTION_EDGES && !cfg.isFlagSet(CFG.PRUNED_INFEASIBLE_EXCEPTIONS) && !cfg.isFlagSet(CFG.DEGRADED)) {
             try {
                 TypeDataflow typeDataflow = analysisCache.getMethodAnalysis(TypeDataflow.class, descriptor);
                 // Exception edge pruning based on ExceptionSets.
@@ -177,7 +193,8 @@ public class CFGFactory extends AnalysisFactory<CFG> {
         final boolean PRUNE_UNCONDITIONAL_EXCEPTION_THROWER_EDGES = !AnalysisContext.currentAnalysisContext().getBoolProperty(
                 AnalysisFeatures.CONSERVE_SPACE);
 
-        if (PRUNE_UNCONDITIONAL_EXCEPTION_THROWER_EDGES && !cfg.isFlagSet(CFG.PRUNED_UNCONDITIONAL_THROWERS)) {
+        if (PRUNE_UNCONDITIONAL_EXCEPTION_THROWER_EDGES && !cfg.isFlagSet(CFG.PRUNED_UNCONDITIONAL_THROWERS)
+                && !cfg.isFlagSet(CFG.DEGRADED)) {
             try {
                 JavaClass jclass = analysisCache.getClassAnalysis(JavaClass.class, descriptor.getClassDescriptor());
                 Method method = analysisCache.getMethodAnalysis(Method.class, descriptor);
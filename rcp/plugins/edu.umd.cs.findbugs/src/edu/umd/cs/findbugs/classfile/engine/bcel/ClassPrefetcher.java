@@ -0,0 +1,210 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.engine.bcel;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ResourceNotFoundException;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.engine.ClassDataAnalysisEngine;
+
+/**
+ * Iterate over classes to be analyzed, reading and parsing the classes that
+ * come next on a background thread while the caller analyzes the current
+ * one. Before each class is returned, its ClassData and JavaClass are put in
+ * the analysis cache, unless the cache already has them. To bound memory use,
+ * at most a given number of classes are read ahead.
+ * <p>
+ * Classes are looked up in the classpath by the caller, which must be the
+ * thread using the analysis cache; only reading the class data and parsing
+ * it are done in the background. Classes which can't be read or parsed are
+ * left to the analysis engines, which report the problem as usual.
+ */
+public class ClassPrefetcher implements Iterator<ClassDescriptor> {
+    private final IAnalysisCache analysisCache;
+
+    private final List<ClassDescriptor> classList;
+
+    private final int window;
+
+    private final ExecutorService executor;
+
+    /**
+     * Reads of the classes after the current one, in order; null for classes
+     * which are not read ahead.
+     */
+    private final LinkedList<Future<Prefetched>> pending = new LinkedList<Future<Prefetched>>();
+
+    private int nextToRead;
+
+    private int nextToReturn;
+
+    /**
+     * Constructor.
+     *
+     * @param analysisCache
+     *            the analysis cache to put the classes in
+     * @param classList
+     *            the classes, in the order they are analyzed
+     * @param window
+     *            maximum number of classes read ahead
+     */
+    public ClassPrefetcher(IAnalysisCache analysisCache, List<ClassDescriptor> classList, int window) {
+        if (window < 1)
+            throw new IllegalArgumentException("window must be at least 1 (saw " + window + ")");
+        this.analysisCache = analysisCache;
+        this.classList = classList;
+        this.window = window;
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Iterator#hasNext()
+     */
+    public boolean hasNext() {
+        return nextToReturn < classList.size();
+    }
+
+    /**
+     * Get the next class, after putting what was read ahead for it in the
+     * analysis cache.
+     */
+    public ClassDescriptor next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        startReading();
+        ClassDescriptor classDescriptor = classList.get(nextToReturn++);
+        Future<Prefetched> read = pending.removeFirst();
+        if (read != null) {
+            try {
+                Prefetched prefetched = read.get();
+                analysisCache.eagerlyPutClassAnalysis(ClassData.class, classDescriptor, prefetched.classData);
+                // As JavaClassAnalysisEngine does
+                prefetched.javaClass.setRepository(Repository.getRepository());
+                analysisCache.eagerlyPutClassAnalysis(JavaClass.class, classDescriptor, prefetched.javaClass);
+            } catch (InterruptedException e) {
+                // The analysis notices the interrupt
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // The analysis engines will fail again, and report it
+            }
+        }
+        startReading();
+        return classDescriptor;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Iterator#remove()
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop reading classes, abandoning the classes being read. Must be called
+     * when the prefetcher is no longer needed, to stop its thread.
+     */
+    public void close() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+
+    private void startReading() {
+        while (nextToRead < classList.size() && pending.size() < window) {
+            pending.addLast(startReading(classList.get(nextToRead++)));
+        }
+    }
+
+    private @CheckForNull
+    Future<Prefetched> startReading(final ClassDescriptor classDescriptor) {
+        if (isCached(JavaClass.class, classDescriptor)) {
+            return null;
+        }
+        final ClassData cachedClassData;
+        final ICodeBaseEntry codeBaseEntry;
+        try {
+            cachedClassData = analysisCache.probeClassAnalysis(ClassData.class, classDescriptor);
+            codeBaseEntry = cachedClassData != null ? null : analysisCache.getClassPath().lookupResource(
+                    classDescriptor.toResourceName());
+        } catch (ClassCastException e) {
+            // Reading the class failed
+            return null;
+        } catch (ResourceNotFoundException e) {
+            return null;
+        }
+        return executor.submit(new Callable<Prefetched>() {
+            public Prefetched call() throws Exception {
+                ClassData classData = cachedClassData != null ? cachedClassData : ClassDataAnalysisEngine.readClassData(
+                        classDescriptor, codeBaseEntry);
+                JavaClass javaClass = new ClassParser(classData.getInputStream(), classDescriptor.toResourceName()).parse();
+                return new Prefetched(classData, javaClass);
+            }
+        });
+    }
+
+    /**
+     * Determine whether the cache has a result, normal or not, of given
+     * analysis of a class.
+     */
+    private boolean isCached(Class<?> analysisClass, ClassDescriptor classDescriptor) {
+        try {
+            return analysisCache.probeClassAnalysis(analysisClass, classDescriptor) != null;
+        } catch (ClassCastException e) {
+            // The analysis failed
+            return true;
+        }
+    }
+
+    /**
+     * What was read ahead for a class.
+     */
+    private static class Prefetched {
+        final ClassData classData;
+
+        final JavaClass javaClass;
+
+        Prefetched(ClassData classData, JavaClass javaClass) {
+            this.classData = classData;
+            this.javaClass = javaClass;
+        }
+    }
+}
+
+// vim:ts=4
@@ -38,6 +38,7 @@ import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.ReflectionDatabaseFactory;
+import edu.umd.cs.findbugs.visitclass.DecodedInstructions;
 
 /**
  * Register BCEL-framework analysis engines.
@@ -68,7 +69,8 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
             new BlockTypeAnalysisFactory(), new CallListDataflowFactory(), new UnconditionalValueDerefDataflowFactory(),
             new CompactLocationNumberingFactory(), new DefinitelyNullSetDataflowFactory(), new ReturnPathTypeDataflowFactory(),
             new ForwardTypeQualifierDataflowFactoryFactory(), new BackwardTypeQualifierDataflowFactoryFactory(),
-            new OpcodeStack.JumpInfoFactory(), new ObligationDataflowFactory(), };
+            new OpcodeStack.JumpInfoFactory(), new OpcodeStack.StateTraceFactory(), new OpcodeStack.SnapshotsFactory(),
+            new DecodedInstructions.Factory(), new ObligationDataflowFactory(), };
 
     private static final IDatabaseFactory<?>[] databaseFactoryList = {
             // new ReflectionDatabaseFactory<Subtypes>(Subtypes.class),
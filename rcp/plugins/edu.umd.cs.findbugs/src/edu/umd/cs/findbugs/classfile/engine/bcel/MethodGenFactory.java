@@ -61,20 +61,14 @@ public class MethodGenFactory extends AnalysisFactory<MethodGen> {
             JavaClass jclass = getJavaClass(analysisCache, descriptor.getClassDescriptor());
             ConstantPoolGen cpg = getConstantPoolGen(analysisCache, descriptor.getClassDescriptor());
 
-            String methodName = method.getName();
-            int codeLength = method.getCode().getLength();
-            String superclassName = jclass.getSuperclassName();
-            if (codeLength > 6000 && methodName.equals("<clinit>") && superclassName.equals("java.lang.Enum")) {
-                analysisContext.getLookupFailureCallback().reportSkippedAnalysis(
-                        new JavaClassAndMethod(jclass, method).toMethodDescriptor());
-                return null;
-            }
-            if (analysisContext.getBoolProperty(AnalysisFeatures.SKIP_HUGE_METHODS)) {
-                if (codeLength > 3000 || (methodName.equals("<clinit>") || methodName.equals("getContents")) && codeLength > 1000) {
+            if (isHugeMethod(jclass, method)) {
+                if (!analysisContext.getBoolProperty(AnalysisFeatures.DEGRADE_HUGE_METHODS)) {
                     analysisContext.getLookupFailureCallback().reportSkippedAnalysis(
                             new JavaClassAndMethod(jclass, method).toMethodDescriptor());
                     return null;
                 }
+                analysisContext.getLookupFailureCallback().reportDegradedAnalysis(
+                        new JavaClassAndMethod(jclass, method).toMethodDescriptor());
             }
 
             return new MethodGen(method, jclass.getClassName(), cpg);
@@ -83,4 +77,30 @@ public class MethodGenFactory extends AnalysisFactory<MethodGen> {
             return null;
         }
     }
+
+    /**
+     * Determine whether a method is too big to be analyzed as other methods
+     * are. Such methods are skipped, unless the DEGRADE_HUGE_METHODS analysis
+     * feature is set.
+     * 
+     * @param jclass
+     *            the class containing the method
+     * @param method
+     *            the method, which must have code
+     * @return true if the method is huge
+     */
+    static boolean isHugeMethod(JavaClass jclass, Method method) {
+        String methodName = method.getName();
+        int codeLength = method.getCode().getLength();
+        String superclassName = jclass.getSuperclassName();
+        if (codeLength > 6000 && methodName.equals("<clinit>") && superclassName.equals("java.lang.Enum")) {
+            return true;
+        }
+        if (AnalysisContext.currentAnalysisContext().getBoolProperty(AnalysisFeatures.SKIP_HUGE_METHODS)) {
+            if (codeLength > 3000 || (methodName.equals("<clinit>") || methodName.equals("getContents")) && codeLength > 1000) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
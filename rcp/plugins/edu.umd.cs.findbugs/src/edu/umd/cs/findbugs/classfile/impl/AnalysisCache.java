@@ -22,6 +22,7 @@ package edu.umd.cs.findbugs.classfile.impl;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.CheckForNull;
@@ -34,15 +35,18 @@ import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.ba.Debug;
+import edu.umd.cs.findbugs.classfile.AnalysisCacheStatistics;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.IClassPath;
 import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.IErrorLogger;
 import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.MethodAnalysisBudget;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.classfile.UncheckedAnalysisException;
 import edu.umd.cs.findbugs.log.Profiler;
@@ -51,21 +55,29 @@ import edu.umd.cs.findbugs.util.MapCache;
 /**
  * Implementation of IAnalysisCache. This object is responsible for registering
  * class and method analysis engines and caching analysis results.
+ * <p>
+ * An AnalysisCache may also be created as a <em>worker view</em> of another
+ * (shared) analysis cache, for use by one analysis thread. A worker view keeps
+ * its own copies of recomputable class analysis results (ClassContext,
+ * ConstantPoolGen, etc.) and of all method analysis results, and forwards
+ * requests for non-recomputable class analyses (XClass, JavaClass, ...),
+ * databases and analysis locals to the shared cache, holding the shared
+ * cache's lock while doing so.
  *
  * @author David Hovemeyer
  */
-public class AnalysisCache implements IAnalysisCache {
+public class AnalysisCache implements IBoundedAnalysisCache {
     /**
      *
      */
-    private static final int MAX_JAVACLASS_RESULTS_TO_CACHE = 5000;
+    static final int MAX_JAVACLASS_RESULTS_TO_CACHE = 5000;
 
-    private static final int MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE = 500;
+    static final int MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE = 500;
 
     /**
      * Maximum number of class analysis results to cache.
      */
-    private static final int MAX_CLASS_RESULTS_TO_CACHE = 5000;
+    static final int MAX_CLASS_RESULTS_TO_CACHE = 5000;
 
     private static final boolean ASSERTIONS_ENABLED = SystemProperties.ASSERTIONS_ENABLED;
 
@@ -84,7 +96,27 @@ public class AnalysisCache implements IAnalysisCache {
 
     private final Map<Class<?>, Object> databaseMap;
 
-    private final Map<?, ?> analysisLocals = Collections.synchronizedMap(new HashMap<Object, Object>());
+    private final Map<?, ?> analysisLocals;
+
+    /**
+     * The cache this cache is a worker view of, or null if this is not a worker
+     * view.
+     */
+    private final @CheckForNull IAnalysisCache sharedCache;
+
+    private final AnalysisCacheStatistics statistics;
+
+    /**
+     * Policy bounding the memory used by cached results, or null if the
+     * number of results is bounded instead.
+     */
+    private @CheckForNull CostAwareEvictionPolicy evictionPolicy;
+
+    /**
+     * Budget of each method analysis, or null if method analyses are not
+     * limited.
+     */
+    private @CheckForNull MethodAnalysisBudget methodAnalysisBudget;
 
     public final Map<?, ?> getAnalysisLocals() {
         return analysisLocals;
@@ -152,6 +184,102 @@ public class AnalysisCache implements IAnalysisCache {
         this.databaseFactoryMap = new HashMap<Class<?>, IDatabaseFactory<?>>();
         this.classAnalysisMap = new HashMap<Class<?>, Map<ClassDescriptor, Object>>();
         this.databaseMap = new HashMap<Class<?>, Object>();
+        this.analysisLocals = Collections.synchronizedMap(new HashMap<Object, Object>());
+        this.sharedCache = null;
+        this.statistics = new AnalysisCacheStatistics();
+    }
+
+    /**
+     * Constructor for a worker view of another analysis cache. Analysis
+     * engines must be registered with the view just as with an ordinary
+     * AnalysisCache.
+     *
+     * @param sharedCache
+     *            the analysis cache shared by all analysis threads
+     * @param errorLogger
+     *            the IErrorLogger for the analysis thread using this view
+     */
+    AnalysisCache(IAnalysisCache sharedCache, BugReporter errorLogger) {
+        this.classPath = sharedCache.getClassPath();
+        this.bugReporter = errorLogger;
+        this.classAnalysisEngineMap = new HashMap<Class<?>, IClassAnalysisEngine<?>>();
+        this.methodAnalysisEngineMap = new HashMap<Class<?>, IMethodAnalysisEngine<?>>();
+        this.databaseFactoryMap = new HashMap<Class<?>, IDatabaseFactory<?>>();
+        this.classAnalysisMap = new HashMap<Class<?>, Map<ClassDescriptor, Object>>();
+        this.databaseMap = new HashMap<Class<?>, Object>();
+        this.analysisLocals = sharedCache.getAnalysisLocals();
+        this.sharedCache = sharedCache;
+        if (sharedCache instanceof IBoundedAnalysisCache) {
+            this.statistics = ((IBoundedAnalysisCache) sharedCache).getStatistics();
+        } else {
+            this.statistics = new AnalysisCacheStatistics();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#setMemoryBudget(long)
+     */
+    public void setMemoryBudget(long budget) {
+        evictionPolicy = budget > 0 ? new CostAwareEvictionPolicy(budget, statistics) : null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#getStatistics()
+     */
+    public AnalysisCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#setMethodAnalysisBudget
+     * (edu.umd.cs.findbugs.classfile.MethodAnalysisBudget)
+     */
+    public void setMethodAnalysisBudget(MethodAnalysisBudget budget) {
+        methodAnalysisBudget = budget;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#getMethodAnalysisBudget
+     * ()
+     */
+    public MethodAnalysisBudget getMethodAnalysisBudget() {
+        if (methodAnalysisBudget == null && sharedCache instanceof IBoundedAnalysisCache) {
+            // Worker views use the budget of the shared cache
+            return ((IBoundedAnalysisCache) sharedCache).getMethodAnalysisBudget();
+        }
+        return methodAnalysisBudget;
+    }
+
+    /**
+     * @return true if this cache is a worker view of another analysis cache
+     */
+    public boolean isWorkerView() {
+        return sharedCache != null;
+    }
+
+    /**
+     * Determine whether results of given class analysis are kept by this cache
+     * itself, or must be obtained from the shared cache. Only recomputable
+     * results can be private to a worker view, since all other results (e.g.,
+     * XClass and JavaClass objects) are compared by identity.
+     */
+    private boolean isSharedClassAnalysis(Class<?> analysisClass) {
+        if (sharedCache == null) {
+            return false;
+        }
+        IClassAnalysisEngine<?> engine = classAnalysisEngineMap.get(analysisClass);
+        return engine == null || !engine.canRecompute();
     }
 
     /*
@@ -190,6 +318,9 @@ public class AnalysisCache implements IAnalysisCache {
 
     public void purgeClassAnalysis(Class<?> analysisClass) {
         classAnalysisMap.remove(analysisClass);
+        if (evictionPolicy != null) {
+            evictionPolicy.forgetAll(analysisClass);
+        }
     }
 
     /**
@@ -198,10 +329,15 @@ public class AnalysisCache implements IAnalysisCache {
     public void dispose(){
         classAnalysisMap.clear();
         classAnalysisEngineMap.clear();
-        analysisLocals.clear();
+        if (sharedCache == null) {
+            analysisLocals.clear();
+        }
         databaseFactoryMap.clear();
         databaseMap.clear();
         methodAnalysisEngineMap.clear();
+        if (evictionPolicy != null) {
+            evictionPolicy.clear();
+        }
     }
 
     /**
@@ -240,6 +376,11 @@ public class AnalysisCache implements IAnalysisCache {
         if (classDescriptor == null) {
             throw new NullPointerException("classDescriptor is null");
         }
+        if (isSharedClassAnalysis(analysisClass)) {
+            synchronized (sharedCache) {
+                return sharedCache.getClassAnalysis(analysisClass, classDescriptor);
+            }
+        }
         // Get the descriptor->result map for this analysis class,
         // creating if necessary
         Map<ClassDescriptor, Object> descriptorMap = findOrCreateDescriptorMap(classAnalysisMap, (Map) classAnalysisEngineMap,
@@ -249,6 +390,7 @@ public class AnalysisCache implements IAnalysisCache {
         Object analysisResult = descriptorMap.get(classDescriptor);
         if (analysisResult == null) {
             // No cached result - compute (or recompute)
+            statistics.recordMiss(analysisClass);
 
             IAnalysisEngine<ClassDescriptor, E> engine = (IAnalysisEngine<ClassDescriptor, E>) classAnalysisEngineMap
                     .get(analysisClass);
@@ -256,6 +398,7 @@ public class AnalysisCache implements IAnalysisCache {
                 throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
             }
             Profiler profiler = getProfiler();
+            long startTime = System.nanoTime();
             // Perform the analysis
             try {
                 profiler.start(engine.getClass());
@@ -288,6 +431,14 @@ public class AnalysisCache implements IAnalysisCache {
 
             // Save the result
             descriptorMap.put(classDescriptor, analysisResult);
+            if (evictionPolicy != null && isMemoryBounded(analysisClass) && !(analysisResult instanceof AbnormalAnalysisResult)) {
+                evict(evictionPolicy.admit(analysisClass, classDescriptor, analysisResult, System.nanoTime() - startTime));
+            }
+        } else {
+            statistics.recordHit(analysisClass);
+            if (evictionPolicy != null) {
+                evictionPolicy.touch(analysisResult);
+            }
         }
 
         // Abnormal analysis result?
@@ -306,6 +457,11 @@ public class AnalysisCache implements IAnalysisCache {
      * lang.Class, edu.umd.cs.findbugs.classfile.ClassDescriptor)
      */
     public <E> E probeClassAnalysis(Class<E> analysisClass, ClassDescriptor classDescriptor) {
+        if (isSharedClassAnalysis(analysisClass)) {
+            synchronized (sharedCache) {
+                return sharedCache.probeClassAnalysis(analysisClass, classDescriptor);
+            }
+        }
         Map<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(analysisClass);
         if (descriptorMap == null) {
             return null;
@@ -313,6 +469,35 @@ public class AnalysisCache implements IAnalysisCache {
         return checkedCast(analysisClass, descriptorMap.get(classDescriptor));
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#eagerlyPutClassAnalysis
+     * (java.lang.Class, edu.umd.cs.findbugs.classfile.ClassDescriptor,
+     * java.lang.Object)
+     */
+    @SuppressWarnings("unchecked")
+    public <E> void eagerlyPutClassAnalysis(Class<E> analysisClass, ClassDescriptor classDescriptor, Object analysisObject) {
+        if (isSharedClassAnalysis(analysisClass)) {
+            synchronized (sharedCache) {
+                sharedCache.eagerlyPutClassAnalysis(analysisClass, classDescriptor, analysisObject);
+            }
+            return;
+        }
+        Map<ClassDescriptor, Object> descriptorMap = findOrCreateDescriptorMap(classAnalysisMap, (Map) classAnalysisEngineMap,
+                analysisClass);
+        if (descriptorMap.get(classDescriptor) != null) {
+            return;
+        }
+        descriptorMap.put(classDescriptor, analysisObject);
+        if (evictionPolicy != null && isMemoryBounded(analysisClass)) {
+            // The time taken to compute the object was not spent by this
+            // thread
+            evict(evictionPolicy.admit(analysisClass, classDescriptor, analysisObject, 0L));
+        }
+    }
+
     String hex(Object o) {
         return Integer.toHexString(System.identityHashCode(o));
     }
@@ -332,6 +517,7 @@ public class AnalysisCache implements IAnalysisCache {
         Object object = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
 
         if (object == null) {
+            statistics.recordMiss(analysisClass);
             try {
                 object = analyzeMethod(classContext, analysisClass, methodDescriptor);
                 if (object == null) {
@@ -345,6 +531,8 @@ public class AnalysisCache implements IAnalysisCache {
 
             classContext.putMethodAnalysis(analysisClass, methodDescriptor, object);
 
+        } else {
+            statistics.recordHit(analysisClass);
         }
         if (Debug.VERIFY_INTEGRITY && object == null) {
             throw new IllegalStateException("AnalysisFactory failed to produce a result object");
@@ -379,9 +567,14 @@ public class AnalysisCache implements IAnalysisCache {
         }
         Profiler profiler = getProfiler();
         profiler.start(engine.getClass());
+        MethodAnalysisBudget budget = getMethodAnalysisBudget();
+        MethodAnalysisBudget.Meter meter = budget != null ? budget.start(methodDescriptor, analysisClass) : null;
         try {
             return engine.analyze(this, methodDescriptor);
         } finally {
+            if (meter != null) {
+                budget.end(meter);
+            }
             profiler.end(engine.getClass());
         }
     }
@@ -441,7 +634,7 @@ public class AnalysisCache implements IAnalysisCache {
      *            the analysis map
      * @return the descriptor to analysis object map
      */
-    private static <DescriptorType, E> Map<DescriptorType, Object> findOrCreateDescriptorMap(
+    private <DescriptorType, E> Map<DescriptorType, Object> findOrCreateDescriptorMap(
             final Map<Class<?>, Map<DescriptorType, Object>> analysisClassToDescriptorMapMap,
             final Map<Class<?>, ? extends IAnalysisEngine<DescriptorType, E>> engineMap, final Class<E> analysisClass) {
         Map<DescriptorType, Object> descriptorMap = analysisClassToDescriptorMapMap.get(analysisClass);
@@ -452,27 +645,82 @@ public class AnalysisCache implements IAnalysisCache {
         return descriptorMap;
     }
 
-    private static <DescriptorType, E> Map<DescriptorType, Object> createMap(
+    private <DescriptorType, E> Map<DescriptorType, Object> createMap(
             final Map<Class<?>, ? extends IAnalysisEngine<DescriptorType, E>> engineMap,
                     final Class<E> analysisClass) {
         Map<DescriptorType, Object> descriptorMap;
         // Create a MapCache that allows the analysis engine to
         // decide that analysis results should be retained indefinitely.
         IAnalysisEngine<DescriptorType, E> engine = engineMap.get(analysisClass);
-        if (analysisClass.equals(JavaClass.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_JAVACLASS_RESULTS_TO_CACHE);
+        if (evictionPolicy != null && isMemoryBounded(analysisClass)) {
+            // The eviction policy decides which results to discard
+            descriptorMap = new HashMap<DescriptorType, Object>();
+        } else if (analysisClass.equals(JavaClass.class)) {
+            descriptorMap = new CountingMapCache<DescriptorType>(MAX_JAVACLASS_RESULTS_TO_CACHE, analysisClass, statistics);
         } else if (analysisClass.equals(ConstantPoolGen.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE);
+            descriptorMap = new CountingMapCache<DescriptorType>(MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE, analysisClass, statistics);
         } else if (analysisClass.equals(ClassContext.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(10);
+            descriptorMap = new CountingMapCache<DescriptorType>(10, analysisClass, statistics);
         } else if (engine instanceof IClassAnalysisEngine && ((IClassAnalysisEngine) engine).canRecompute()) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_CLASS_RESULTS_TO_CACHE);
+            descriptorMap = new CountingMapCache<DescriptorType>(MAX_CLASS_RESULTS_TO_CACHE, analysisClass, statistics);
         } else {
             descriptorMap = new HashMap<DescriptorType, Object>();
         }
         return descriptorMap;
     }
 
+    /**
+     * Determine whether results of given class analysis may be discarded when
+     * a memory budget is set. These are the results that are otherwise bounded
+     * in number.
+     */
+    private boolean isMemoryBounded(Class<?> analysisClass) {
+        if (analysisClass.equals(JavaClass.class) || analysisClass.equals(ConstantPoolGen.class)
+                || analysisClass.equals(ClassContext.class)) {
+            return true;
+        }
+        IClassAnalysisEngine<?> engine = classAnalysisEngineMap.get(analysisClass);
+        return engine != null && engine.canRecompute();
+    }
+
+    /**
+     * Remove results picked for eviction by the eviction policy.
+     */
+    private void evict(List<CostAwareEvictionPolicy.Entry> victims) {
+        for (CostAwareEvictionPolicy.Entry victim : victims) {
+            Map<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(victim.analysisClass);
+            if (descriptorMap != null && descriptorMap.get(victim.classDescriptor) == victim.result) {
+                descriptorMap.remove(victim.classDescriptor);
+            }
+        }
+    }
+
+    /**
+     * MapCache which counts the entries it discards.
+     */
+    static class CountingMapCache<K> extends MapCache<K, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final Class<?> analysisClass;
+
+        private final AnalysisCacheStatistics statistics;
+
+        CountingMapCache(int maxCapacity, Class<?> analysisClass, AnalysisCacheStatistics statistics) {
+            super(maxCapacity);
+            this.analysisClass = analysisClass;
+            this.statistics = statistics;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Object> eldest) {
+            boolean result = super.removeEldestEntry(eldest);
+            if (result) {
+                statistics.recordEviction(analysisClass);
+            }
+            return result;
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -513,6 +761,11 @@ public class AnalysisCache implements IAnalysisCache {
      * edu.umd.cs.findbugs.classfile.IAnalysisCache#getDatabase(java.lang.Class)
      */
     public <E> E getDatabase(Class<E> databaseClass) {
+        if (sharedCache != null) {
+            synchronized (sharedCache) {
+                return sharedCache.getDatabase(databaseClass);
+            }
+        }
         Object database = databaseMap.get(databaseClass);
 
         if (database == null) {
@@ -550,6 +803,12 @@ public class AnalysisCache implements IAnalysisCache {
      * lang.Class, java.lang.Object)
      */
     public <E> void eagerlyPutDatabase(Class<E> databaseClass, E database) {
+        if (sharedCache != null) {
+            synchronized (sharedCache) {
+                sharedCache.eagerlyPutDatabase(databaseClass, database);
+            }
+            return;
+        }
         databaseMap.put(databaseClass, database);
     }
 
@@ -113,7 +113,7 @@ public class ClassFactory implements IClassFactory {
 
     static IScannableCodeBase createNestedZipFileCodeBase(NestedZipFileCodeBaseLocator codeBaseLocator)
             throws ResourceNotFoundException, IOException {
-        return new NestedZipFileCodeBase(codeBaseLocator);
+        return ZipCodeBaseFactory.makeNestedZipCodeBase(codeBaseLocator);
     }
 
     /*
@@ -127,4 +127,31 @@ public class ClassFactory implements IClassFactory {
         IAnalysisCache analysisCache = new AnalysisCache(classPath, errorLogger);
         return analysisCache;
     }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IClassFactory#createConcurrentAnalysisCache
+     * (edu.umd.cs.findbugs.classfile.IClassPath,
+     * edu.umd.cs.findbugs.BugReporter)
+     */
+    public IAnalysisCache createConcurrentAnalysisCache(IClassPath classPath, BugReporter errorLogger) {
+        return new ConcurrentAnalysisCache(classPath, errorLogger);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IClassFactory#createWorkerAnalysisCache
+     * (edu.umd.cs.findbugs.classfile.IAnalysisCache,
+     * edu.umd.cs.findbugs.BugReporter)
+     */
+    public IAnalysisCache createWorkerAnalysisCache(IAnalysisCache sharedCache, BugReporter errorLogger) {
+        if (sharedCache instanceof ConcurrentAnalysisCache) {
+            return sharedCache;
+        }
+        return new AnalysisCache(sharedCache, errorLogger);
+    }
 }
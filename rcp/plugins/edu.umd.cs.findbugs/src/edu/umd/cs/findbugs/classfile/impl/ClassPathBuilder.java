@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -33,6 +34,11 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -152,6 +158,41 @@ public class ClassPathBuilder implements IClassPathBuilder {
         }
     }
 
+    /**
+     * An error found while scanning a codebase, to be logged when the
+     * codebase is added to the classpath.
+     */
+    static class ScanError {
+        final String message;
+
+        final Throwable cause;
+
+        public ScanError(String message, Throwable cause) {
+            this.message = message;
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * The result of opening and scanning a codebase. When the classpath is
+     * built by several threads, codebases are opened and scanned ahead of
+     * time, and the results are added to the classpath in worklist order.
+     */
+    static class ScannedCodeBase {
+        DiscoveredCodeBase discoveredCodeBase;
+
+        /** Nested archives and Class-Path entries found, in order */
+        List<WorkListItem> discoveredItemList = new ArrayList<WorkListItem>();
+
+        List<ScanError> errorList = new ArrayList<ScanError>();
+
+        IOException ioException;
+
+        ResourceNotFoundException resourceNotFoundException;
+
+        long elapsedMillis;
+    }
+
     // Fields
     private IClassFactory classFactory;
 
@@ -167,6 +208,8 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
     private boolean scanNestedArchives;
 
+    private int numThreads = 1;
+
     /**
      * Constructor.
      * 
@@ -206,6 +249,15 @@ public class ClassPathBuilder implements IClassPathBuilder {
         this.scanNestedArchives = scanNestedArchives;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see edu.umd.cs.findbugs.classfile.IClassPathBuilder#setNumThreads(int)
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -540,6 +592,12 @@ public class ClassPathBuilder implements IClassPathBuilder {
      * archives and Class-Path entries specified in Jar manifests. This should
      * give us as good an idea as possible of all of the classes available (and
      * which are part of the application).
+     * <p>
+     * If more than one thread is used, every codebase on the worklist is
+     * opened and scanned by a pool of threads as soon as it is added to the
+     * worklist. The results are still added to the classpath in worklist
+     * order, so the resulting classpath (and the precedence of its codebases)
+     * is the same as when a single thread is used.
      * 
      * @param workList
      *            the worklist to process
@@ -551,103 +609,243 @@ public class ClassPathBuilder implements IClassPathBuilder {
      */
     private void processWorkList(IClassPath classPath, LinkedList<WorkListItem> workList, IClassPathBuilderProgress progress)
             throws InterruptedException, IOException, ResourceNotFoundException {
-        // Build the classpath, scanning codebases for nested archives
-        // and referenced codebases.
-        while (!workList.isEmpty()) {
-            WorkListItem item = workList.removeFirst();
-            if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
-                progress.startArchive(item.toString());
-            }
-            if (DEBUG) {
-                System.out.println("Working: " + item.getCodeBaseLocator());
-            }
-
-            DiscoveredCodeBase discoveredCodeBase;
+        ExecutorService executor = null;
+        Map<WorkListItem, Future<ScannedCodeBase>> scanMap = new HashMap<WorkListItem, Future<ScannedCodeBase>>();
+        if (numThreads > 1 && workList.size() > 1) {
+            executor = Executors.newFixedThreadPool(numThreads);
+        }
+        try {
+            // Build the classpath, scanning codebases for nested archives
+            // and referenced codebases.
+            while (!workList.isEmpty()) {
+                if (executor != null) {
+                    startScanning(executor, workList, scanMap);
+                }
 
-            // See if we have encountered this codebase before
-            discoveredCodeBase = discoveredCodeBaseMap.get(item.getCodeBaseLocator().toString());
-            if (discoveredCodeBase != null) {
-                // If the codebase is not an app codebase and
-                // the worklist item says that it is an app codebase,
-                // change it. Otherwise, we have nothing to do.
-                if (!discoveredCodeBase.getCodeBase().isApplicationCodeBase() && item.isAppCodeBase()) {
-                    discoveredCodeBase.getCodeBase().setApplicationCodeBase(true);
+                WorkListItem item = workList.removeFirst();
+                Future<ScannedCodeBase> scan = scanMap.remove(item);
+                if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
+                    progress.startArchive(item.toString());
+                }
+                if (DEBUG) {
+                    System.out.println("Working: " + item.getCodeBaseLocator());
                 }
 
-                continue;
-            }
+                DiscoveredCodeBase discoveredCodeBase;
+
+                // See if we have encountered this codebase before
+                discoveredCodeBase = discoveredCodeBaseMap.get(item.getCodeBaseLocator().toString());
+                if (discoveredCodeBase != null) {
+                    // If the codebase is not an app codebase and
+                    // the worklist item says that it is an app codebase,
+                    // change it. Otherwise, we have nothing to do.
+                    if (!discoveredCodeBase.getCodeBase().isApplicationCodeBase() && item.isAppCodeBase()) {
+                        discoveredCodeBase.getCodeBase().setApplicationCodeBase(true);
+                    }
+                    if (scan != null) {
+                        discardScan(scan);
+                    }
 
-            // Detect .java files, which are probably human error
-            if (item.getCodeBaseLocator() instanceof FilesystemCodeBaseLocator) {
-                FilesystemCodeBaseLocator l = (FilesystemCodeBaseLocator) item.getCodeBaseLocator();
-                if (l.getPathName().endsWith(".java")) {
+                    continue;
+                }
+
+                // Detect .java files, which are probably human error
+                if (isJavaSourceFile(item)) {
+                    FilesystemCodeBaseLocator l = (FilesystemCodeBaseLocator) item.getCodeBaseLocator();
                     System.err.println("Ignoring .java file \"" + l.getPathName() + "\" specified in classpath or auxclasspath");
                     continue;
                 }
-            }
 
-            // If we are working on an application codebase,
-            // then failing to open/scan it is a fatal error.
-            // We issue warnings about problems with aux codebases,
-            // but continue anyway.
-
-            try {
-                // Open the codebase and add it to the classpath
-                discoveredCodeBase = new DiscoveredCodeBase(item.getCodeBaseLocator().openCodeBase());
-                discoveredCodeBase.getCodeBase().setApplicationCodeBase(item.isAppCodeBase());
-                discoveredCodeBase.getCodeBase().setHowDiscovered(item.getHowDiscovered());
-
-                // Note that this codebase has been visited
-                discoveredCodeBaseMap.put(item.getCodeBaseLocator().toString(), discoveredCodeBase);
-                discoveredCodeBaseList.addLast(discoveredCodeBase);
-
-                // If it is a scannable codebase, check it for nested archives.
-                // In addition, if it is an application codebase then
-                // make a list of application classes.
-                if (discoveredCodeBase.getCodeBase() instanceof IScannableCodeBase
-                        && discoveredCodeBase.codeBase.isApplicationCodeBase()) {
-                    scanCodebase(classPath, workList, discoveredCodeBase);
+                ScannedCodeBase scannedCodeBase = (scan != null) ? getScanResult(scan) : openAndScanCodeBase(item);
+
+                if (scannedCodeBase.discoveredCodeBase != null) {
+                    discoveredCodeBase = scannedCodeBase.discoveredCodeBase;
+
+                    // Note that this codebase has been visited
+                    discoveredCodeBaseMap.put(item.getCodeBaseLocator().toString(), discoveredCodeBase);
+                    discoveredCodeBaseList.addLast(discoveredCodeBase);
+
+                    for (ScanError error : scannedCodeBase.errorList) {
+                        errorLogger.logError(error.message, error.cause);
+                    }
+                    for (WorkListItem discoveredItem : scannedCodeBase.discoveredItemList) {
+                        addToWorkList(workList, discoveredItem);
+                    }
+                    progress.reportCodeBaseTime(item.getCodeBaseLocator().toString(), scannedCodeBase.elapsedMillis);
                 }
 
-                // Check for a Jar manifest for additional aux classpath
-                // entries.
-                scanJarManifestForClassPathEntries(workList, discoveredCodeBase.getCodeBase());
-            } catch (IOException e) {
-                if (item.isAppCodeBase()) {
-                    throw e;
-                } else if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
-                    errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
+                // If we are working on an application codebase,
+                // then failing to open/scan it is a fatal error.
+                // We issue warnings about problems with aux codebases,
+                // but continue anyway.
+
+                if (scannedCodeBase.ioException != null) {
+                    if (item.isAppCodeBase()) {
+                        throw scannedCodeBase.ioException;
+                    } else if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
+                        errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), scannedCodeBase.ioException);
+                    }
                 }
-            } catch (ResourceNotFoundException e) {
-                if (item.isAppCodeBase()) {
-                    throw e;
-                } else if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
-                    errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
+                if (scannedCodeBase.resourceNotFoundException != null) {
+                    if (item.isAppCodeBase()) {
+                        throw scannedCodeBase.resourceNotFoundException;
+                    } else if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
+                        errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(),
+                                scannedCodeBase.resourceNotFoundException);
+                    }
+                }
+
+                if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
+                    progress.finishArchive();
                 }
             }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                // Close codebases which were opened, but turned out not to
+                // be needed
+                for (Future<ScannedCodeBase> scan : scanMap.values()) {
+                    discardScan(scan);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start opening and scanning the codebases on the worklist which are not
+     * being scanned yet.
+     * 
+     * @param executor
+     *            the ExecutorService to scan the codebases
+     * @param workList
+     *            the worklist
+     * @param scanMap
+     *            map of worklist items to the scans started for them
+     */
+    private void startScanning(ExecutorService executor, LinkedList<WorkListItem> workList,
+            Map<WorkListItem, Future<ScannedCodeBase>> scanMap) {
+        for (final WorkListItem item : workList) {
+            if (scanMap.containsKey(item) || discoveredCodeBaseMap.containsKey(item.getCodeBaseLocator().toString())
+                    || isJavaSourceFile(item)) {
+                continue;
+            }
+            scanMap.put(item, executor.submit(new Callable<ScannedCodeBase>() {
+                public ScannedCodeBase call() throws InterruptedException {
+                    return openAndScanCodeBase(item);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Wait for a codebase scan started by another thread to finish.
+     * 
+     * @param scan
+     *            the scan
+     * @return the ScannedCodeBase
+     * @throws InterruptedException
+     */
+    private static ScannedCodeBase getScanResult(Future<ScannedCodeBase> scan) throws InterruptedException {
+        try {
+            return scan.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Error scanning codebase", cause);
+        }
+    }
 
-            if (item.getHowDiscovered() == ICodeBase.SPECIFIED) {
-                progress.finishArchive();
+    /**
+     * Throw away the result of a codebase scan which is not needed, closing
+     * the codebase.
+     * 
+     * @param scan
+     *            the scan
+     */
+    private static void discardScan(Future<ScannedCodeBase> scan) {
+        if (scan.cancel(false)) {
+            return;
+        }
+        try {
+            ScannedCodeBase scannedCodeBase = scan.get();
+            if (scannedCodeBase.discoveredCodeBase != null) {
+                scannedCodeBase.discoveredCodeBase.getCodeBase().close();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Ignore
         }
     }
 
+    private static boolean isJavaSourceFile(WorkListItem item) {
+        return item.getCodeBaseLocator() instanceof FilesystemCodeBaseLocator
+                && ((FilesystemCodeBaseLocator) item.getCodeBaseLocator()).getPathName().endsWith(".java");
+    }
+
+    /**
+     * Open the codebase of a worklist item, and scan it for nested archives,
+     * application classes, and Class-Path entries in its Jar manifest. This
+     * doesn't modify the classpath being built, so it may be called from any
+     * thread.
+     * 
+     * @param item
+     *            the worklist item
+     * @return the ScannedCodeBase
+     * @throws InterruptedException
+     */
+    private ScannedCodeBase openAndScanCodeBase(WorkListItem item) throws InterruptedException {
+        ScannedCodeBase scannedCodeBase = new ScannedCodeBase();
+        long startTime = System.currentTimeMillis();
+        try {
+            // Open the codebase
+            DiscoveredCodeBase discoveredCodeBase = new DiscoveredCodeBase(item.getCodeBaseLocator().openCodeBase());
+            discoveredCodeBase.getCodeBase().setApplicationCodeBase(item.isAppCodeBase());
+            discoveredCodeBase.getCodeBase().setHowDiscovered(item.getHowDiscovered());
+            scannedCodeBase.discoveredCodeBase = discoveredCodeBase;
+
+            // If it is a scannable codebase, check it for nested archives.
+            // In addition, if it is an application codebase then
+            // make a list of application classes.
+            if (discoveredCodeBase.getCodeBase() instanceof IScannableCodeBase
+                    && discoveredCodeBase.codeBase.isApplicationCodeBase()) {
+                scanCodebase(scannedCodeBase);
+            }
+
+            // Check for a Jar manifest for additional aux classpath
+            // entries.
+            scanJarManifestForClassPathEntries(scannedCodeBase.discoveredItemList, discoveredCodeBase.getCodeBase());
+        } catch (IOException e) {
+            scannedCodeBase.ioException = e;
+        } catch (ResourceNotFoundException e) {
+            scannedCodeBase.resourceNotFoundException = e;
+        }
+        scannedCodeBase.elapsedMillis = System.currentTimeMillis() - startTime;
+        return scannedCodeBase;
+    }
+
     /**
      * Scan given codebase in order to
      * <ul>
      * <li>check the codebase for nested archives (adding any found to the
-     * worklist)
+     * list of discovered worklist items)
      * <li>build a list of class resources found in the codebase
      * </ul>
      * 
-     * @param workList
-     *            the worklist
-     * @param discoveredCodeBase
+     * @param scannedCodeBase
      *            the codebase to scan
      * @throws InterruptedException
      */
-    private void scanCodebase(IClassPath classPath, LinkedList<WorkListItem> workList, DiscoveredCodeBase discoveredCodeBase)
-            throws InterruptedException {
+    private void scanCodebase(ScannedCodeBase scannedCodeBase) throws InterruptedException {
+        DiscoveredCodeBase discoveredCodeBase = scannedCodeBase.discoveredCodeBase;
         if (DEBUG) {
             System.out.println("Scanning " + discoveredCodeBase.getCodeBase().getCodeBaseLocator());
         }
@@ -663,7 +861,7 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
             if (!NO_PARSE_CLASS_NAMES && codeBase.isApplicationCodeBase()
                     && DescriptorFactory.isClassResource(entry.getResourceName()) && !(entry instanceof SingleFileCodeBaseEntry)) {
-                parseClassName(entry);
+                parseClassName(entry, scannedCodeBase.errorList);
             }
 
             // Note the resource exists in this codebase
@@ -676,8 +874,8 @@ public class ClassPathBuilder implements IClassPathBuilder {
                 }
                 ICodeBaseLocator nestedArchiveLocator = classFactory.createNestedArchiveCodeBaseLocator(codeBase,
                         entry.getResourceName());
-                addToWorkList(workList,
-                        new WorkListItem(nestedArchiveLocator, codeBase.isApplicationCodeBase(), ICodeBase.NESTED));
+                scannedCodeBase.discoveredItemList.add(new WorkListItem(nestedArchiveLocator, codeBase.isApplicationCodeBase(),
+                        ICodeBase.NESTED));
             }
         }
     }
@@ -688,8 +886,10 @@ public class ClassPathBuilder implements IClassPathBuilder {
      * 
      * @param entry
      *            the resource
+     * @param errorList
+     *            list to add errors found parsing the resource to
      */
-    private void parseClassName(ICodeBaseEntry entry) {
+    private void parseClassName(ICodeBaseEntry entry, List<ScanError> errorList) {
         DataInputStream in = null;
         try {
             InputStream resourceIn = entry.openResource();
@@ -706,9 +906,9 @@ public class ClassPathBuilder implements IClassPathBuilder {
                 entry.overrideResourceName(trueResourceName);
             }
         } catch (IOException e) {
-            errorLogger.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
+            errorList.add(new ScanError("Invalid class resource " + entry.getResourceName() + " in " + entry, e));
         } catch (InvalidClassFileFormatException e) {
-            errorLogger.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
+            errorList.add(new ScanError("Invalid class resource " + entry.getResourceName() + " in " + entry, e));
         } finally {
             IO.close(in);
         }
@@ -717,13 +917,14 @@ public class ClassPathBuilder implements IClassPathBuilder {
     /**
      * Check a codebase for a Jar manifest to examine for Class-Path entries.
      * 
-     * @param workList
-     *            the worklist
+     * @param discoveredItemList
+     *            list to add worklist items for the Class-Path entries to
      * @param codeBase
      *            the codebase for examine for a Jar manifest
      * @throws IOException
      */
-    private void scanJarManifestForClassPathEntries(LinkedList<WorkListItem> workList, ICodeBase codeBase) throws IOException {
+    private void scanJarManifestForClassPathEntries(List<WorkListItem> discoveredItemList, ICodeBase codeBase)
+            throws IOException {
         // See if this codebase has a jar manifest
         ICodeBaseEntry manifestEntry = codeBase.lookupResource("META-INF/MANIFEST.MF");
         if (manifestEntry == null) {
@@ -750,7 +951,7 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
                     // Codebases found in Class-Path entries are always
                     // added to the aux classpath, not the application.
-                    addToWorkList(workList, new WorkListItem(relativeCodeBaseLocator, false, ICodeBase.IN_JAR_MANIFEST));
+                    discoveredItemList.add(new WorkListItem(relativeCodeBaseLocator, false, ICodeBase.IN_JAR_MANIFEST));
                 }
             }
         } finally {
@@ -0,0 +1,748 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ConstantPoolGen;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.classfile.AnalysisCacheStatistics;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
+import edu.umd.cs.findbugs.classfile.IErrorLogger;
+import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.MethodAnalysisBudget;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.UncheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.impl.AnalysisCache.AbnormalAnalysisResult;
+import edu.umd.cs.findbugs.log.Profiler;
+
+/**
+ * Implementation of IAnalysisCache which may be used by several analysis
+ * threads at once.
+ * <p>
+ * Class analysis results are kept in lock-striped maps, and method analysis
+ * results in the (synchronized) storage of the ClassContext of the method's
+ * class. Each result is computed only once: the first thread asking for a
+ * result stores a placeholder for it before running the analysis engine, and
+ * other threads asking for the same result wait for the placeholder to be
+ * filled in rather than computing it again. If the thread computing a result
+ * asks for it again, as some analysis engines do, it is computed again, as in
+ * AnalysisCache, without replacing the placeholder.
+ *
+ * @see AnalysisCache
+ */
+public class ConcurrentAnalysisCache implements IBoundedAnalysisCache {
+    /**
+     * Maximum number of ClassContexts to cache. This is larger than the limit
+     * used by AnalysisCache, since each analysis thread holds on to the
+     * ClassContext of the class it is working on.
+     */
+    private static final int MAX_CLASS_CONTEXT_RESULTS_TO_CACHE = 64;
+
+    private final IClassPath classPath;
+
+    private final BugReporter bugReporter;
+
+    private final IErrorLogger errorLogger;
+
+    private final Map<Class<?>, IClassAnalysisEngine<?>> classAnalysisEngineMap;
+
+    private final Map<Class<?>, IMethodAnalysisEngine<?>> methodAnalysisEngineMap;
+
+    private final Map<Class<?>, IDatabaseFactory<?>> databaseFactoryMap;
+
+    private final ConcurrentHashMap<Class<?>, StripedResultMap<ClassDescriptor>> classAnalysisMap;
+
+    private final Map<Class<?>, Object> databaseMap;
+
+    private final Map<?, ?> analysisLocals;
+
+    private final AnalysisCacheStatistics statistics;
+
+    /**
+     * Policy bounding the memory used by cached results, or null if the
+     * number of results is bounded instead.
+     */
+    private volatile @CheckForNull CostAwareEvictionPolicy evictionPolicy;
+
+    /**
+     * Budget of each method analysis, or null if method analyses are not
+     * limited.
+     */
+    private volatile @CheckForNull MethodAnalysisBudget methodAnalysisBudget;
+
+    /**
+     * Placeholder for an analysis result which is being computed by some
+     * thread.
+     */
+    static final class PendingResult {
+        /**
+         * Value handed to waiting threads if the computing thread failed with
+         * an Error; they should then try to compute the result themselves.
+         */
+        static final Object ABANDONED = new Object();
+
+        private final Thread owner = Thread.currentThread();
+
+        private Object result;
+
+        /**
+         * Is the result being computed by the current thread? A thread may
+         * ask for a result again while computing it.
+         */
+        boolean isComputedByCurrentThread() {
+            return owner == Thread.currentThread();
+        }
+
+        synchronized void set(Object result) {
+            this.result = result;
+            notifyAll();
+        }
+
+        /**
+         * Wait for the result to be computed.
+         *
+         * @return the result, or ABANDONED if the computation failed
+         */
+        synchronized Object await() {
+            if (result == null && isComputedByCurrentThread()) {
+                throw new IllegalStateException("Analysis result requested while it is being computed");
+            }
+            boolean interrupted = false;
+            while (result == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param classPath
+     *            the IClassPath to load resources from
+     * @param errorLogger
+     *            the IErrorLogger
+     */
+    ConcurrentAnalysisCache(IClassPath classPath, BugReporter errorLogger) {
+        this.classPath = classPath;
+        this.bugReporter = errorLogger;
+        this.errorLogger = new SynchronizedErrorLogger(errorLogger);
+        this.classAnalysisEngineMap = new ConcurrentHashMap<Class<?>, IClassAnalysisEngine<?>>();
+        this.methodAnalysisEngineMap = new ConcurrentHashMap<Class<?>, IMethodAnalysisEngine<?>>();
+        this.databaseFactoryMap = new ConcurrentHashMap<Class<?>, IDatabaseFactory<?>>();
+        this.classAnalysisMap = new ConcurrentHashMap<Class<?>, StripedResultMap<ClassDescriptor>>();
+        this.databaseMap = new ConcurrentHashMap<Class<?>, Object>();
+        this.analysisLocals = Collections.synchronizedMap(new HashMap<Object, Object>());
+        this.statistics = new AnalysisCacheStatistics();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#setMemoryBudget(long)
+     */
+    public void setMemoryBudget(long budget) {
+        evictionPolicy = budget > 0 ? new CostAwareEvictionPolicy(budget, statistics) : null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#getStatistics()
+     */
+    public AnalysisCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#setMethodAnalysisBudget
+     * (edu.umd.cs.findbugs.classfile.MethodAnalysisBudget)
+     */
+    public void setMethodAnalysisBudget(MethodAnalysisBudget budget) {
+        methodAnalysisBudget = budget;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IBoundedAnalysisCache#getMethodAnalysisBudget
+     * ()
+     */
+    public MethodAnalysisBudget getMethodAnalysisBudget() {
+        return methodAnalysisBudget;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IAnalysisCache#getClassPath()
+     */
+    public IClassPath getClassPath() {
+        return classPath;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IAnalysisCache#getAnalysisLocals()
+     */
+    public Map<?, ?> getAnalysisLocals() {
+        return analysisLocals;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IAnalysisCache#purgeAllMethodAnalysis()
+     */
+    public void purgeAllMethodAnalysis() {
+        StripedResultMap<ClassDescriptor> map = classAnalysisMap.get(ClassContext.class);
+        if (map == null) {
+            return;
+        }
+        for (Object c : map.snapshot().values()) {
+            if (c instanceof ClassContext) {
+                ((ClassContext) c).purgeAllMethodAnalyses();
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#purgeClassAnalysis(java.
+     * lang.Class)
+     */
+    public void purgeClassAnalysis(Class<?> analysisClass) {
+        classAnalysisMap.remove(analysisClass);
+        CostAwareEvictionPolicy policy = evictionPolicy;
+        if (policy != null) {
+            policy.forgetAll(analysisClass);
+        }
+    }
+
+    /**
+     * Cleans up all cached data
+     */
+    public void dispose() {
+        classAnalysisMap.clear();
+        classAnalysisEngineMap.clear();
+        analysisLocals.clear();
+        databaseFactoryMap.clear();
+        databaseMap.clear();
+        methodAnalysisEngineMap.clear();
+        CostAwareEvictionPolicy policy = evictionPolicy;
+        if (policy != null) {
+            policy.clear();
+        }
+    }
+
+    private StripedResultMap<ClassDescriptor> findOrCreateResultMap(Class<?> analysisClass) {
+        StripedResultMap<ClassDescriptor> map = classAnalysisMap.get(analysisClass);
+        if (map == null) {
+            int maxResults = evictionPolicy != null && isMemoryBounded(analysisClass) ? 0 : getMaxResultsToCache(analysisClass);
+            map = new StripedResultMap<ClassDescriptor>(maxResults, analysisClass, statistics);
+            StripedResultMap<ClassDescriptor> existing = classAnalysisMap.putIfAbsent(analysisClass, map);
+            if (existing != null) {
+                map = existing;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Determine whether results of given class analysis may be discarded when
+     * a memory budget is set. These are the results that are otherwise bounded
+     * in number.
+     */
+    private boolean isMemoryBounded(Class<?> analysisClass) {
+        return getMaxResultsToCache(analysisClass) > 0;
+    }
+
+    /**
+     * Get the number of results of given class analysis to cache; the limits
+     * are the same as those of AnalysisCache.
+     *
+     * @return maximum number of results, or 0 if results are never discarded
+     */
+    private int getMaxResultsToCache(Class<?> analysisClass) {
+        if (analysisClass.equals(JavaClass.class)) {
+            return AnalysisCache.MAX_JAVACLASS_RESULTS_TO_CACHE;
+        } else if (analysisClass.equals(ConstantPoolGen.class)) {
+            return AnalysisCache.MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE;
+        } else if (analysisClass.equals(ClassContext.class)) {
+            return MAX_CLASS_CONTEXT_RESULTS_TO_CACHE;
+        }
+        IClassAnalysisEngine<?> engine = classAnalysisEngineMap.get(analysisClass);
+        if (engine != null && engine.canRecompute()) {
+            return AnalysisCache.MAX_CLASS_RESULTS_TO_CACHE;
+        }
+        return 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#getClassAnalysis(java.lang
+     * .Class, edu.umd.cs.findbugs.classfile.ClassDescriptor)
+     */
+    @SuppressWarnings("unchecked")
+    public <E> E getClassAnalysis(Class<E> analysisClass, ClassDescriptor classDescriptor) throws CheckedAnalysisException {
+        if (classDescriptor == null) {
+            throw new NullPointerException("classDescriptor is null");
+        }
+        StripedResultMap<ClassDescriptor> descriptorMap = findOrCreateResultMap(analysisClass);
+
+        Object analysisResult;
+        do {
+            analysisResult = descriptorMap.get(classDescriptor);
+            if (analysisResult != null && !(analysisResult instanceof PendingResult)) {
+                statistics.recordHit(analysisClass);
+                CostAwareEvictionPolicy policy = evictionPolicy;
+                if (policy != null) {
+                    policy.touch(analysisResult);
+                }
+            }
+            if (analysisResult == null) {
+                IClassAnalysisEngine<E> engine = (IClassAnalysisEngine<E>) classAnalysisEngineMap.get(analysisClass);
+                if (engine == null) {
+                    throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
+                }
+                PendingResult pending = new PendingResult();
+                analysisResult = descriptorMap.putIfAbsent(classDescriptor, pending);
+                if (analysisResult == null) {
+                    statistics.recordMiss(analysisClass);
+                    long startTime = System.nanoTime();
+                    analysisResult = PendingResult.ABANDONED;
+                    try {
+                        analysisResult = analyzeClass(engine, classDescriptor);
+                    } finally {
+                        if (analysisResult == PendingResult.ABANDONED) {
+                            descriptorMap.remove(classDescriptor, pending);
+                        } else {
+                            descriptorMap.replace(classDescriptor, pending, analysisResult);
+                        }
+                        pending.set(analysisResult);
+                    }
+                    CostAwareEvictionPolicy policy = evictionPolicy;
+                    if (policy != null && isMemoryBounded(analysisClass) && !(analysisResult instanceof AbnormalAnalysisResult)) {
+                        evict(policy.admit(analysisClass, classDescriptor, analysisResult, System.nanoTime() - startTime));
+                    }
+                }
+            }
+            if (analysisResult instanceof PendingResult) {
+                if (((PendingResult) analysisResult).isComputedByCurrentThread()) {
+                    IClassAnalysisEngine<E> engine = (IClassAnalysisEngine<E>) classAnalysisEngineMap.get(analysisClass);
+                    analysisResult = analyzeClass(engine, classDescriptor);
+                } else {
+                    analysisResult = ((PendingResult) analysisResult).await();
+                }
+            }
+        } while (analysisResult == PendingResult.ABANDONED);
+
+        // Abnormal analysis result?
+        if (analysisResult instanceof AbnormalAnalysisResult) {
+            return AnalysisCache.checkedCast(analysisClass, ((AbnormalAnalysisResult) analysisResult).returnOrThrow());
+        }
+
+        return AnalysisCache.checkedCast(analysisClass, analysisResult);
+    }
+
+    /**
+     * Remove results picked for eviction by the eviction policy.
+     */
+    private void evict(List<CostAwareEvictionPolicy.Entry> victims) {
+        for (CostAwareEvictionPolicy.Entry victim : victims) {
+            StripedResultMap<ClassDescriptor> descriptorMap = classAnalysisMap.get(victim.analysisClass);
+            if (descriptorMap != null) {
+                descriptorMap.remove(victim.classDescriptor, victim.result);
+            }
+        }
+    }
+
+    /**
+     * Run a class analysis engine.
+     *
+     * @return the analysis result, or an AbnormalAnalysisResult recording a
+     *         null result or an exception
+     */
+    private <E> Object analyzeClass(IClassAnalysisEngine<E> engine, ClassDescriptor classDescriptor) {
+        Profiler profiler = getProfiler();
+        profiler.start(engine.getClass());
+        try {
+            Object analysisResult = engine.analyze(this, classDescriptor);
+            if (analysisResult == null) {
+                analysisResult = AnalysisCache.NULL_ANALYSIS_RESULT;
+            }
+            return analysisResult;
+        } catch (CheckedAnalysisException e) {
+            return new AbnormalAnalysisResult(e);
+        } catch (RuntimeException e) {
+            return new AbnormalAnalysisResult(e);
+        } finally {
+            profiler.end(engine.getClass());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#probeClassAnalysis(java.
+     * lang.Class, edu.umd.cs.findbugs.classfile.ClassDescriptor)
+     */
+    public <E> E probeClassAnalysis(Class<E> analysisClass, ClassDescriptor classDescriptor) {
+        StripedResultMap<ClassDescriptor> descriptorMap = classAnalysisMap.get(analysisClass);
+        if (descriptorMap == null) {
+            return null;
+        }
+        Object analysisResult = descriptorMap.get(classDescriptor);
+        if (analysisResult instanceof PendingResult) {
+            return null;
+        }
+        return AnalysisCache.checkedCast(analysisClass, analysisResult);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#eagerlyPutClassAnalysis
+     * (java.lang.Class, edu.umd.cs.findbugs.classfile.ClassDescriptor,
+     * java.lang.Object)
+     */
+    public <E> void eagerlyPutClassAnalysis(Class<E> analysisClass, ClassDescriptor classDescriptor, Object analysisObject) {
+        StripedResultMap<ClassDescriptor> descriptorMap = findOrCreateResultMap(analysisClass);
+        if (descriptorMap.putIfAbsent(classDescriptor, analysisObject) != null) {
+            return;
+        }
+        CostAwareEvictionPolicy policy = evictionPolicy;
+        if (policy != null && isMemoryBounded(analysisClass)) {
+            // The time taken to compute the object was not spent by this
+            // cache
+            evict(policy.admit(analysisClass, classDescriptor, analysisObject, 0L));
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#getMethodAnalysis(java.lang
+     * .Class, edu.umd.cs.findbugs.classfile.MethodDescriptor)
+     */
+    public <E> E getMethodAnalysis(Class<E> analysisClass, MethodDescriptor methodDescriptor) throws CheckedAnalysisException {
+        if (methodDescriptor == null) {
+            throw new NullPointerException("methodDescriptor is null");
+        }
+        ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+
+        Object object;
+        do {
+            object = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+            if (object != null && !(object instanceof PendingResult)) {
+                statistics.recordHit(analysisClass);
+            }
+            if (object == null) {
+                PendingResult pending = new PendingResult();
+                object = classContext.putMethodAnalysisIfAbsent(analysisClass, methodDescriptor, pending);
+                if (object == null) {
+                    statistics.recordMiss(analysisClass);
+                    object = PendingResult.ABANDONED;
+                    try {
+                        object = analyzeMethod(analysisClass, methodDescriptor);
+                    } finally {
+                        if (object == PendingResult.ABANDONED) {
+                            classContext.removeMethodAnalysis(analysisClass, methodDescriptor);
+                        } else {
+                            classContext.putMethodAnalysis(analysisClass, methodDescriptor, object);
+                        }
+                        pending.set(object);
+                    }
+                }
+            }
+            if (object instanceof PendingResult) {
+                if (((PendingResult) object).isComputedByCurrentThread()) {
+                    object = analyzeMethod(analysisClass, methodDescriptor);
+                } else {
+                    object = ((PendingResult) object).await();
+                }
+            }
+        } while (object == PendingResult.ABANDONED);
+
+        if (object instanceof AbnormalAnalysisResult) {
+            return AnalysisCache.checkedCast(analysisClass, ((AbnormalAnalysisResult) object).returnOrThrow());
+        }
+
+        return AnalysisCache.checkedCast(analysisClass, object);
+    }
+
+    /**
+     * Run a method analysis engine.
+     *
+     * @return the analysis result, or an AbnormalAnalysisResult recording a
+     *         null result or an exception
+     */
+    @SuppressWarnings("unchecked")
+    private <E> Object analyzeMethod(Class<E> analysisClass, MethodDescriptor methodDescriptor) {
+        IMethodAnalysisEngine<E> engine = (IMethodAnalysisEngine<E>) methodAnalysisEngineMap.get(analysisClass);
+        if (engine == null) {
+            throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
+        }
+        Profiler profiler = getProfiler();
+        profiler.start(engine.getClass());
+        MethodAnalysisBudget budget = methodAnalysisBudget;
+        MethodAnalysisBudget.Meter meter = budget != null ? budget.start(methodDescriptor, analysisClass) : null;
+        try {
+            Object object = engine.analyze(this, methodDescriptor);
+            if (object == null) {
+                object = AnalysisCache.NULL_ANALYSIS_RESULT;
+            }
+            return object;
+        } catch (CheckedAnalysisException e) {
+            return new AbnormalAnalysisResult(e);
+        } catch (RuntimeException e) {
+            return new AbnormalAnalysisResult(e);
+        } finally {
+            if (meter != null) {
+                budget.end(meter);
+            }
+            profiler.end(engine.getClass());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#eagerlyPutMethodAnalysis
+     * (java.lang.Class, edu.umd.cs.findbugs.classfile.MethodDescriptor,
+     * java.lang.Object)
+     */
+    public <E> void eagerlyPutMethodAnalysis(Class<E> analysisClass, MethodDescriptor methodDescriptor, Object analysisObject) {
+        try {
+            ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+            classContext.putMethodAnalysis(analysisClass, methodDescriptor, analysisObject);
+        } catch (CheckedAnalysisException e) {
+            IllegalStateException ise = new IllegalStateException("Unexpected exception adding method analysis to cache");
+            ise.initCause(e);
+            throw ise;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#purgeMethodAnalyses(edu.
+     * umd.cs.findbugs.classfile.MethodDescriptor)
+     */
+    public void purgeMethodAnalyses(MethodDescriptor methodDescriptor) {
+        try {
+            ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+            classContext.purgeMethodAnalyses(methodDescriptor);
+        } catch (CheckedAnalysisException e) {
+            IllegalStateException ise = new IllegalStateException("Unexpected exception purging method analyses from cache");
+            ise.initCause(e);
+            throw ise;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#registerClassAnalysisEngine
+     * (java.lang.Class, edu.umd.cs.findbugs.classfile.IClassAnalysisEngine)
+     */
+    public <E> void registerClassAnalysisEngine(Class<E> analysisResultType, IClassAnalysisEngine<E> classAnalysisEngine) {
+        classAnalysisEngineMap.put(analysisResultType, classAnalysisEngine);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#registerMethodAnalysisEngine
+     * (java.lang.Class, edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine)
+     */
+    public <E> void registerMethodAnalysisEngine(Class<E> analysisResultType, IMethodAnalysisEngine<E> methodAnalysisEngine) {
+        methodAnalysisEngineMap.put(analysisResultType, methodAnalysisEngine);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#registerDatabaseFactory(
+     * java.lang.Class, edu.umd.cs.findbugs.classfile.IDatabaseFactory)
+     */
+    public <E> void registerDatabaseFactory(Class<E> databaseClass, IDatabaseFactory<E> databaseFactory) {
+        databaseFactoryMap.put(databaseClass, databaseFactory);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#getDatabase(java.lang.Class)
+     */
+    public <E> E getDatabase(Class<E> databaseClass) {
+        Object database = databaseMap.get(databaseClass);
+
+        if (database == null) {
+            // Databases are few and usually created before the analysis
+            // threads start, so a single lock is good enough here
+            synchronized (databaseMap) {
+                database = databaseMap.get(databaseClass);
+                if (database == null) {
+                    try {
+                        // Find the database factory
+                        IDatabaseFactory<?> databaseFactory = databaseFactoryMap.get(databaseClass);
+                        if (databaseFactory == null) {
+                            throw new IllegalArgumentException("No database factory registered for " + databaseClass.getName());
+                        }
+
+                        // Create the database
+                        database = databaseFactory.createDatabase();
+                    } catch (CheckedAnalysisException e) {
+                        // Error - record the analysis error
+                        database = new AbnormalAnalysisResult(e);
+                    }
+
+                    databaseMap.put(databaseClass, database);
+                }
+            }
+        }
+
+        if (database instanceof AbnormalAnalysisResult) {
+            throw new UncheckedAnalysisException("Error instantiating " + databaseClass.getName() + " database",
+                    ((AbnormalAnalysisResult) database).checkedAnalysisException);
+        }
+
+        return databaseClass.cast(database);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.IAnalysisCache#eagerlyPutDatabase(java.
+     * lang.Class, java.lang.Object)
+     */
+    public <E> void eagerlyPutDatabase(Class<E> databaseClass, E database) {
+        databaseMap.put(databaseClass, database);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IAnalysisCache#getErrorLogger()
+     */
+    public IErrorLogger getErrorLogger() {
+        return errorLogger;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IAnalysisCache#getProfiler()
+     */
+    public Profiler getProfiler() {
+        return bugReporter.getProjectStats().getProfiler();
+    }
+
+    /**
+     * IErrorLogger passing errors to the BugReporter while holding its lock,
+     * since errors may be logged by any analysis thread.
+     */
+    private static class SynchronizedErrorLogger implements IErrorLogger {
+        private final IErrorLogger delegate;
+
+        SynchronizedErrorLogger(IErrorLogger delegate) {
+            this.delegate = delegate;
+        }
+
+        public void reportMissingClass(ClassNotFoundException ex) {
+            synchronized (delegate) {
+                delegate.reportMissingClass(ex);
+            }
+        }
+
+        public void reportMissingClass(ClassDescriptor classDescriptor) {
+            synchronized (delegate) {
+                delegate.reportMissingClass(classDescriptor);
+            }
+        }
+
+        public void logError(String message) {
+            synchronized (delegate) {
+                delegate.logError(message);
+            }
+        }
+
+        public void logError(String message, Throwable e) {
+            synchronized (delegate) {
+                delegate.logError(message, e);
+            }
+        }
+
+        public void reportSkippedAnalysis(MethodDescriptor method) {
+            synchronized (delegate) {
+                delegate.reportSkippedAnalysis(method);
+            }
+        }
+
+        public void reportDegradedAnalysis(MethodDescriptor method) {
+            synchronized (delegate) {
+                delegate.reportDegradedAnalysis(method);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import edu.umd.cs.findbugs.classfile.AnalysisCacheStatistics;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+
+/**
+ * Decides which class analysis results to discard so that their estimated
+ * total size stays within a memory budget. This is the Greedy-Dual-Size-
+ * Frequency policy: each result has the priority
+ * <code>L + frequency * cost / size</code>, where cost is the time it took to
+ * compute the result and L is the priority of the last result evicted. The
+ * result with the lowest priority is evicted first, so large results which
+ * are cheap to recompute and rarely used go before small expensive ones, and
+ * results which have not been used for a while eventually go too.
+ * <p>
+ * The policy only keeps track of the results; the analysis cache using it
+ * removes the evicted results from its own maps. All methods are
+ * synchronized, but never call back into the analysis cache, so the cache
+ * may call them while holding its own locks.
+ */
+class CostAwareEvictionPolicy {
+    /**
+     * A cached result tracked by the policy.
+     */
+    static final class Entry implements Comparable<Entry> {
+        final Class<?> analysisClass;
+
+        final ClassDescriptor classDescriptor;
+
+        final Object result;
+
+        final long size;
+
+        final double cost;
+
+        final long serial;
+
+        int frequency = 1;
+
+        double priority;
+
+        Entry(Class<?> analysisClass, ClassDescriptor classDescriptor, Object result, long size, double cost, long serial) {
+            this.analysisClass = analysisClass;
+            this.classDescriptor = classDescriptor;
+            this.result = result;
+            this.size = size;
+            this.cost = cost;
+            this.serial = serial;
+        }
+
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return serial < other.serial ? -1 : (serial == other.serial ? 0 : 1);
+        }
+    }
+
+    private final long budget;
+
+    private final AnalysisCacheStatistics statistics;
+
+    private final TreeSet<Entry> queue = new TreeSet<Entry>();
+
+    private final IdentityHashMap<Object, Entry> entryMap = new IdentityHashMap<Object, Entry>();
+
+    private long usedBytes;
+
+    private double inflation;
+
+    private long nextSerial;
+
+    /**
+     * Constructor.
+     *
+     * @param budget
+     *            number of bytes the tracked results may use
+     * @param statistics
+     *            statistics to record evictions in
+     */
+    CostAwareEvictionPolicy(long budget, AnalysisCacheStatistics statistics) {
+        this.budget = budget;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Start tracking a newly cached result, and pick the results to evict to
+     * get back within the budget. The new result itself is never picked.
+     *
+     * @param analysisClass
+     *            the analysis class
+     * @param classDescriptor
+     *            the class the result was computed for
+     * @param result
+     *            the result
+     * @param costNanos
+     *            time it took to compute the result
+     * @return the entries of the results which should be removed from the
+     *         cache
+     */
+    synchronized List<Entry> admit(Class<?> analysisClass, ClassDescriptor classDescriptor, Object result, long costNanos) {
+        if (entryMap.containsKey(result)) {
+            return Collections.emptyList();
+        }
+        Entry entry = new Entry(analysisClass, classDescriptor, result, ResultSizeEstimator.estimateSize(result), Math.max(1,
+                costNanos), nextSerial++);
+        entry.priority = inflation + entry.cost / entry.size;
+        queue.add(entry);
+        entryMap.put(result, entry);
+        usedBytes += entry.size;
+
+        if (usedBytes <= budget) {
+            return Collections.emptyList();
+        }
+        List<Entry> victims = new ArrayList<Entry>();
+        for (Iterator<Entry> i = queue.iterator(); usedBytes > budget && i.hasNext();) {
+            Entry victim = i.next();
+            if (victim == entry) {
+                continue;
+            }
+            i.remove();
+            entryMap.remove(victim.result);
+            usedBytes -= victim.size;
+            inflation = Math.max(inflation, victim.priority);
+            statistics.recordEviction(victim.analysisClass);
+            victims.add(victim);
+        }
+        return victims;
+    }
+
+    /**
+     * Note that a cached result was used again.
+     *
+     * @param result
+     *            the result
+     */
+    synchronized void touch(Object result) {
+        Entry entry = entryMap.get(result);
+        if (entry == null) {
+            return;
+        }
+        queue.remove(entry);
+        entry.frequency++;
+        entry.priority = inflation + entry.frequency * entry.cost / entry.size;
+        queue.add(entry);
+    }
+
+    /**
+     * Stop tracking the results of an analysis class, because they have been
+     * removed from the cache.
+     *
+     * @param analysisClass
+     *            the analysis class
+     */
+    synchronized void forgetAll(Class<?> analysisClass) {
+        for (Iterator<Entry> i = queue.iterator(); i.hasNext();) {
+            Entry entry = i.next();
+            if (entry.analysisClass == analysisClass) {
+                i.remove();
+                entryMap.remove(entry.result);
+                usedBytes -= entry.size;
+            }
+        }
+    }
+
+    /**
+     * Stop tracking all results.
+     */
+    synchronized void clear() {
+        queue.clear();
+        entryMap.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * @return the estimated number of bytes used by the tracked results
+     */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.io.ByteBufferInputStream;
+
+/**
+ * A zip archive held in a ByteBuffer (usually a memory-mapped file, or a slice
+ * of another archive). The central directory is parsed once, into arrays
+ * sorted by entry name, so that looking up an entry is a binary search.
+ * Stored entries are read directly from the buffer; only compressed entries
+ * are inflated.
+ * <p>
+ * The buffer is only read using absolute gets and duplicates, so an archive may
+ * be read by several threads at once. ZIP64 archives, and archives spanning
+ * several disks, are not supported: the constructor throws a ZipException for
+ * them, and callers should fall back to java.util.zip.ZipFile.
+ */
+public class MappedZipArchive {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_HEADER_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    private static final int STORED = 0;
+
+    private static final int DEFLATED = 8;
+
+    private static final int ENCRYPTED_FLAG = 0x1;
+
+    /** Read-only little-endian view of the archive */
+    private final ByteBuffer buffer;
+
+    /** Entry names, sorted */
+    private final String[] names;
+
+    private final short[] methods;
+
+    private final short[] flags;
+
+    private final int[] dosTimes;
+
+    private final int[] compressedSizes;
+
+    private final int[] sizes;
+
+    private final int[] localHeaderOffsets;
+
+    /** Index (into the sorted arrays) of each entry, in archive order */
+    private final int[] archiveOrder;
+
+    /**
+     * Constructor. Parses the central directory of the archive.
+     *
+     * @param buffer
+     *            buffer holding the archive, from its position to its limit
+     * @throws ZipException
+     *             if the archive is not a zip archive, or is in a format not
+     *             supported
+     */
+    public MappedZipArchive(ByteBuffer buffer) throws ZipException {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        int endOffset = findEndHeader();
+        if (getShort(endOffset + 4) != 0 || getShort(endOffset + 6) != 0) {
+            throw new ZipException("Multi-disk zip archives are not supported");
+        }
+        int numEntries = getShort(endOffset + 10);
+        long centralDirectorySize = getInt(endOffset + 12) & 0xffffffffL;
+        long centralDirectoryOffset = getInt(endOffset + 16) & 0xffffffffL;
+        if (numEntries == 0xffff || centralDirectoryOffset == 0xffffffffL) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+
+        // The archive may be preceded by other data (e.g., a self-extracting
+        // archive), which shifts every offset in it
+        long centralDirectoryStart = endOffset - centralDirectorySize;
+        long base = centralDirectoryStart - centralDirectoryOffset;
+        if (centralDirectoryStart < 0 || base < 0) {
+            throw new ZipException("Invalid central directory offset");
+        }
+
+        final String[] entryNames = new String[numEntries];
+        short[] entryMethods = new short[numEntries];
+        short[] entryFlags = new short[numEntries];
+        int[] entryDosTimes = new int[numEntries];
+        int[] entryCompressedSizes = new int[numEntries];
+        int[] entrySizes = new int[numEntries];
+        int[] entryLocalHeaderOffsets = new int[numEntries];
+        int offset = (int) centralDirectoryStart;
+        for (int i = 0; i < numEntries; i++) {
+            if (offset + CENTRAL_HEADER_SIZE > endOffset || getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            entryFlags[i] = (short) getShort(offset + 8);
+            entryMethods[i] = (short) getShort(offset + 10);
+            entryDosTimes[i] = getInt(offset + 12);
+            long compressedSize = getInt(offset + 20) & 0xffffffffL;
+            long size = getInt(offset + 24) & 0xffffffffL;
+            int nameLength = getShort(offset + 28);
+            int extraLength = getShort(offset + 30);
+            int commentLength = getShort(offset + 32);
+            long localHeaderOffset = base + (getInt(offset + 42) & 0xffffffffL);
+            if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE
+                    || localHeaderOffset + LOCAL_HEADER_SIZE > centralDirectoryStart) {
+                throw new ZipException("ZIP64 archives are not supported");
+            }
+            entryCompressedSizes[i] = (int) compressedSize;
+            entrySizes[i] = (int) size;
+            entryLocalHeaderOffsets[i] = (int) localHeaderOffset;
+            entryNames[i] = getString(offset + CENTRAL_HEADER_SIZE, nameLength);
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        // Sort the entries by name. The sort is stable, so the first of
+        // several entries with the same name is found first, as with ZipFile.
+        Integer[] sortOrder = new Integer[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            sortOrder[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(sortOrder, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return entryNames[o1.intValue()].compareTo(entryNames[o2.intValue()]);
+            }
+        });
+
+        this.names = new String[numEntries];
+        this.methods = new short[numEntries];
+        this.flags = new short[numEntries];
+        this.dosTimes = new int[numEntries];
+        this.compressedSizes = new int[numEntries];
+        this.sizes = new int[numEntries];
+        this.localHeaderOffsets = new int[numEntries];
+        this.archiveOrder = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            int j = sortOrder[i].intValue();
+            names[i] = entryNames[j];
+            methods[i] = entryMethods[j];
+            flags[i] = entryFlags[j];
+            dosTimes[i] = entryDosTimes[j];
+            compressedSizes[i] = entryCompressedSizes[j];
+            sizes[i] = entrySizes[j];
+            localHeaderOffsets[i] = entryLocalHeaderOffsets[j];
+            archiveOrder[j] = i;
+        }
+    }
+
+    /**
+     * @return number of entries in the archive
+     */
+    public int getNumEntries() {
+        return names.length;
+    }
+
+    /**
+     * Get the index of the entry which is the n'th entry in the archive.
+     * Iterating over entries this way visits them in the same order as
+     * ZipFile.entries().
+     *
+     * @param n
+     *            position of the entry in the archive's central directory
+     * @return index of the entry
+     */
+    public int getEntryInArchiveOrder(int n) {
+        return archiveOrder[n];
+    }
+
+    /**
+     * Look up an entry.
+     *
+     * @param name
+     *            name of the entry
+     * @return index of the entry, or -1 if there is no entry with that name
+     */
+    public int lookup(String name) {
+        int index = Arrays.binarySearch(names, name);
+        if (index < 0) {
+            return -1;
+        }
+        while (index > 0 && names[index - 1].equals(name)) {
+            index--;
+        }
+        return index;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public boolean isDirectory(int index) {
+        return names[index].endsWith("/");
+    }
+
+    /**
+     * @return uncompressed size of the entry
+     */
+    public int getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * @return modification time of the entry, in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        int dosTime = dosTimes[index];
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f,
+                (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Get the data of a stored (uncompressed) entry, without copying it.
+     *
+     * @param index
+     *            index of the entry
+     * @return buffer holding the data of the entry, or null if the entry is
+     *         compressed
+     * @throws IOException
+     */
+    public @CheckForNull
+    ByteBuffer getStoredData(int index) throws IOException {
+        if (methods[index] != STORED) {
+            return null;
+        }
+        return getRawData(index);
+    }
+
+    /**
+     * Open an entry for reading.
+     *
+     * @param index
+     *            index of the entry
+     * @return InputStream reading the uncompressed data of the entry
+     * @throws IOException
+     */
+    public InputStream openEntry(int index) throws IOException {
+        ByteBuffer data = getRawData(index);
+        switch (methods[index]) {
+        case STORED:
+            return new ByteBufferInputStream(data);
+        case DEFLATED:
+            return new EntryInflaterInputStream(new ByteBufferInputStream(data), Math.max(512, Math.min(sizes[index],
+                    8192)));
+        default:
+            throw new ZipException("Unsupported compression method " + methods[index] + " for " + names[index]);
+        }
+    }
+
+    /**
+     * Read the whole uncompressed data of an entry.
+     *
+     * @param index
+     *            index of the entry
+     * @return buffer holding the data; a slice of the archive if the entry is
+     *         stored
+     * @throws IOException
+     */
+    public ByteBuffer readEntry(int index) throws IOException {
+        ByteBuffer data = getRawData(index);
+        if (methods[index] == STORED) {
+            return data;
+        }
+        if (methods[index] != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + methods[index] + " for " + names[index]);
+        }
+        byte[] compressed = new byte[data.remaining() + 1];
+        data.get(compressed, 0, compressed.length - 1);
+        byte[] result = new byte[sizes[index]];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int count = 0;
+            while (count < result.length) {
+                int n = inflater.inflate(result, count, result.length - count);
+                if (n == 0) {
+                    throw new EOFException("Unexpected end of compressed data for " + names[index]);
+                }
+                count += n;
+            }
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException("Invalid compressed data for " + names[index]);
+            zipException.initCause(e);
+            throw zipException;
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(result);
+    }
+
+    private ByteBuffer getRawData(int index) throws IOException {
+        if ((flags[index] & ENCRYPTED_FLAG) != 0) {
+            throw new ZipException("Encrypted zip entry " + names[index] + " is not supported");
+        }
+        int offset = localHeaderOffsets[index];
+        if (getInt(offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + names[index]);
+        }
+        int start = offset + LOCAL_HEADER_SIZE + getShort(offset + 26) + getShort(offset + 28);
+        if (start + (long) compressedSizes[index] > buffer.limit()) {
+            throw new ZipException("Truncated zip entry " + names[index]);
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position(start);
+        data.limit(start + compressedSizes[index]);
+        return data.slice();
+    }
+
+    private int findEndHeader() throws ZipException {
+        int limit = buffer.limit();
+        int stop = Math.max(0, limit - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = limit - END_HEADER_SIZE; offset >= stop; offset--) {
+            if (getInt(offset) == END_HEADER_SIGNATURE && offset + END_HEADER_SIZE + getShort(offset + 20) <= limit) {
+                return offset;
+            }
+        }
+        throw new ZipException("Not a zip archive (no end of central directory record)");
+    }
+
+    private int getShort(int offset) {
+        return buffer.getShort(offset) & 0xffff;
+    }
+
+    private int getInt(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    private String getString(int offset, int length) throws ZipException {
+        if (offset + length > buffer.limit()) {
+            throw new ZipException("Invalid central directory header");
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer data = buffer.duplicate();
+        data.position(offset);
+        data.get(bytes);
+        try {
+            // Like ZipFile, entry names are always read as UTF-8
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * InflaterInputStream for a raw deflated zip entry. Like the one used by
+     * ZipFile, it feeds the inflater a dummy byte at the end of the input,
+     * which the inflater needs when it does not expect a zlib header.
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+
+        EntryInflaterInputStream(InputStream in, int size) {
+            super(in, new Inflater(true), size);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            inf.end();
+        }
+    }
+}
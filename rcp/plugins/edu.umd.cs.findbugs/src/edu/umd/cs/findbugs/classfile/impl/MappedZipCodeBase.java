@@ -0,0 +1,208 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipException;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ICodeBaseIterator;
+import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
+import edu.umd.cs.findbugs.classfile.ResourceNotFoundException;
+
+/**
+ * Implementation of ICodeBase to read from a memory-mapped zip file or jar
+ * file. Resources are read directly from the mapping, and zip files nested in
+ * the codebase are read from the mapping of the outer zip file, without
+ * copying them to temporary files.
+ * <p>
+ * A mapping can't be released explicitly: it is released when the codebase is
+ * garbage collected. On some platforms, the file can't be deleted or replaced
+ * while it is mapped.
+ *
+ * @see ZipCodeBaseFactory
+ */
+public class MappedZipCodeBase extends AbstractScannableCodeBase {
+    final MappedZipArchive archive;
+
+    private final @CheckForNull
+    String pathName;
+
+    /**
+     * Constructor. Maps a zip file into memory.
+     *
+     * @param codeBaseLocator
+     *            the codebase locator for this codebase
+     * @param file
+     *            the zip file
+     * @throws IOException
+     *             if the file can't be mapped
+     * @throws ZipException
+     *             if the file isn't a zip file supported by MappedZipArchive
+     */
+    public MappedZipCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
+        super(codeBaseLocator);
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("Zip file too large to map: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            this.archive = new MappedZipArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } finally {
+            in.close();
+        }
+        this.pathName = file.getPath();
+        setLastModifiedTime(file.lastModified());
+    }
+
+    /**
+     * Constructor. Reads a zip file held in a buffer.
+     *
+     * @param codeBaseLocator
+     *            the codebase locator for this codebase
+     * @param data
+     *            buffer holding the zip file
+     * @throws ZipException
+     *             if the buffer doesn't hold a zip file supported by
+     *             MappedZipArchive
+     */
+    public MappedZipCodeBase(ICodeBaseLocator codeBaseLocator, ByteBuffer data) throws ZipException {
+        super(codeBaseLocator);
+        this.archive = new MappedZipArchive(data);
+        this.pathName = null;
+    }
+
+    /**
+     * Open a zip file nested in this codebase, reading it from this codebase's
+     * buffer. A nested zip file which is stored without compression is read
+     * in place; a compressed one is inflated into memory.
+     *
+     * @param codeBaseLocator
+     *            locator of the nested zip file
+     * @return codebase for the nested zip file
+     * @throws ResourceNotFoundException
+     *             if there is no such resource in this codebase
+     * @throws IOException
+     *             if the resource can't be read or isn't a supported zip file
+     */
+    public MappedZipCodeBase openNestedCodeBase(NestedZipFileCodeBaseLocator codeBaseLocator)
+            throws ResourceNotFoundException, IOException {
+        int index = archive.lookup(translateResourceName(codeBaseLocator.getResourceName()));
+        if (index < 0) {
+            throw new ResourceNotFoundException(codeBaseLocator.getResourceName());
+        }
+        MappedZipCodeBase nested = new MappedZipCodeBase(codeBaseLocator, archive.readEntry(index));
+        nested.setLastModifiedTime(archive.getTime(index));
+        return nested;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * edu.umd.cs.findbugs.classfile.ICodeBase#lookupResource(java.lang.String)
+     */
+    public ICodeBaseEntry lookupResource(String resourceName) {
+        // Translate resource name, in case a resource name
+        // has been overridden and the resource is being accessed
+        // using the overridden name.
+        resourceName = translateResourceName(resourceName);
+
+        int index = archive.lookup(resourceName);
+        if (index < 0) {
+            return null;
+        }
+        return new MappedZipCodeBaseEntry(this, index);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.IScannableCodeBase#iterator()
+     */
+    public ICodeBaseIterator iterator() {
+        return new ICodeBaseIterator() {
+            int next = 0;
+
+            public boolean hasNext() {
+                scanForNextEntry();
+                return next < archive.getNumEntries();
+            }
+
+            /*
+             * (non-Javadoc)
+             *
+             * @see edu.umd.cs.findbugs.classfile.ICodeBaseIterator#next()
+             */
+            public ICodeBaseEntry next() throws InterruptedException {
+                scanForNextEntry();
+                if (next >= archive.getNumEntries()) {
+                    throw new NoSuchElementException();
+                }
+                int index = archive.getEntryInArchiveOrder(next++);
+                setLastModifiedTime(archive.getTime(index));
+                return new MappedZipCodeBaseEntry(MappedZipCodeBase.this, index);
+            }
+
+            private void scanForNextEntry() {
+                while (next < archive.getNumEntries() && archive.isDirectory(archive.getEntryInArchiveOrder(next))) {
+                    next++;
+                }
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.ICodeBase#getPathName()
+     */
+    public String getPathName() {
+        return pathName;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.umd.cs.findbugs.classfile.ICodeBase#close()
+     */
+    public void close() {
+        // Nothing to do: the mapping is released when it is garbage collected
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return pathName != null ? pathName : getCodeBaseLocator().toString();
+    }
+}
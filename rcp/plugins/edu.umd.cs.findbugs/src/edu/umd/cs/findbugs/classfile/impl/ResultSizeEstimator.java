@@ -0,0 +1,95 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ConstantPoolGen;
+
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+
+/**
+ * Rough estimates of the memory retained by cached class analysis results.
+ * The estimates only need to be good enough to tell a huge generated class
+ * from an ordinary one; they are derived from the size of the class file
+ * rather than by walking the object graph.
+ */
+class ResultSizeEstimator {
+    /**
+     * Estimate used for results of unknown type.
+     */
+    static final long DEFAULT_SIZE = 1024;
+
+    /**
+     * Bytes per constant pool entry, including the Constant object and the
+     * strings it refers to.
+     */
+    private static final long BYTES_PER_CONSTANT = 48;
+
+    /**
+     * Bytes of method analysis results (CFG, dataflow facts, ...) a
+     * ClassContext ends up holding per byte of bytecode.
+     */
+    private static final long CLASS_CONTEXT_BYTES_PER_CODE_BYTE = 128;
+
+    private ResultSizeEstimator() {
+    }
+
+    /**
+     * Estimate the number of bytes retained by an analysis result.
+     *
+     * @param result
+     *            the analysis result
+     * @return the estimated size, always positive
+     */
+    static long estimateSize(Object result) {
+        if (result instanceof ClassData) {
+            return 64 + ((ClassData) result).getData().length;
+        } else if (result instanceof JavaClass) {
+            return estimateJavaClassSize((JavaClass) result);
+        } else if (result instanceof ConstantPoolGen) {
+            return 64 + BYTES_PER_CONSTANT * ((ConstantPoolGen) result).getSize();
+        } else if (result instanceof ClassContext) {
+            // The JavaClass is cached (and counted) separately
+            return 256 + CLASS_CONTEXT_BYTES_PER_CODE_BYTE * getCodeLength(((ClassContext) result).getJavaClass());
+        }
+        return DEFAULT_SIZE;
+    }
+
+    private static long estimateJavaClassSize(JavaClass jclass) {
+        long size = 256 + BYTES_PER_CONSTANT * jclass.getConstantPool().getLength();
+        size += 96L * jclass.getFields().length;
+        size += 128L * jclass.getMethods().length;
+        return size + getCodeLength(jclass);
+    }
+
+    private static long getCodeLength(JavaClass jclass) {
+        long length = 0;
+        for (Method method : jclass.getMethods()) {
+            Code code = method.getCode();
+            if (code != null) {
+                length += code.getLength();
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.AnalysisCacheStatistics;
+
+/**
+ * Map from descriptors to analysis results, split into a fixed number of
+ * independently locked stripes.
+ * <p>
+ * If the map is bounded, the bound applies to the whole map, as in the
+ * MapCache used by AnalysisCache: once it holds more finished results than
+ * the bound, the least recently used finished results are discarded.
+ * Placeholders of results being computed are not counted and are never
+ * discarded, so threads waiting for a result always get the one computed.
+ *
+ * @see ConcurrentAnalysisCache
+ */
+class StripedResultMap<K> {
+    /**
+     * Number of stripes; must be a power of two.
+     */
+    static final int NUM_STRIPES = 16;
+
+    private final List<Map<K, Object>> stripes;
+
+    private final int maxCapacity;
+
+    /**
+     * Finished results in the map, least recently used first, or null if the
+     * map is unbounded. A stripe's lock may be held when locking this map, but
+     * not the other way around.
+     */
+    private final @CheckForNull LinkedHashMap<K, Object> recentlyUsed;
+
+    private final Class<?> analysisClass;
+
+    private final AnalysisCacheStatistics statistics;
+
+    /**
+     * Constructor.
+     *
+     * @param maxCapacity
+     *            maximum number of finished results to keep, or a
+     *            non-positive value if the map is unbounded
+     * @param analysisClass
+     *            the analysis class whose results are stored
+     * @param statistics
+     *            statistics to record discarded entries in
+     */
+    StripedResultMap(int maxCapacity, Class<?> analysisClass, AnalysisCacheStatistics statistics) {
+        this.maxCapacity = maxCapacity;
+        this.analysisClass = analysisClass;
+        this.statistics = statistics;
+        stripes = new ArrayList<Map<K, Object>>(NUM_STRIPES);
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes.add(new HashMap<K, Object>());
+        }
+        recentlyUsed = maxCapacity > 0 ? new LinkedHashMap<K, Object>(16, 0.75f, true) : null;
+    }
+
+    private Map<K, Object> stripeFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes.get(h & (NUM_STRIPES - 1));
+    }
+
+    Object get(K key) {
+        Map<K, Object> stripe = stripeFor(key);
+        synchronized (stripe) {
+            Object value = stripe.get(key);
+            if (value != null && recentlyUsed != null && !(value instanceof ConcurrentAnalysisCache.PendingResult)) {
+                synchronized (recentlyUsed) {
+                    recentlyUsed.get(key);
+                }
+            }
+            return value;
+        }
+    }
+
+    void put(K key, Object value) {
+        Map<K, Object> stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.put(key, value);
+            stored(key, value);
+        }
+        evictIfFull();
+    }
+
+    /**
+     * Store a value unless the key already has one.
+     *
+     * @return the value already stored for the key, or null if the given value
+     *         was stored
+     */
+    Object putIfAbsent(K key, Object value) {
+        Map<K, Object> stripe = stripeFor(key);
+        Object existing;
+        synchronized (stripe) {
+            existing = stripe.get(key);
+            if (existing == null) {
+                stripe.put(key, value);
+                stored(key, value);
+            }
+        }
+        if (existing == null) {
+            evictIfFull();
+        }
+        return existing;
+    }
+
+    /**
+     * Replace the value of a key, but only if it is currently mapped to
+     * expected value.
+     */
+    void replace(K key, Object expected, Object value) {
+        Map<K, Object> stripe = stripeFor(key);
+        synchronized (stripe) {
+            if (stripe.get(key) != expected) {
+                return;
+            }
+            stripe.put(key, value);
+            stored(key, value);
+        }
+        evictIfFull();
+    }
+
+    /**
+     * Remove the value of a key, but only if it is currently mapped to expected
+     * value.
+     *
+     * @return true if the value was removed
+     */
+    boolean remove(K key, Object expected) {
+        Map<K, Object> stripe = stripeFor(key);
+        synchronized (stripe) {
+            if (stripe.get(key) == expected) {
+                stripe.remove(key);
+                if (recentlyUsed != null) {
+                    synchronized (recentlyUsed) {
+                        recentlyUsed.remove(key);
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    void putAll(Map<? extends K, ?> map) {
+        for (Map.Entry<? extends K, ?> e : map.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Record a value stored for a key; the key's stripe must be locked.
+     */
+    private void stored(K key, Object value) {
+        if (recentlyUsed == null) {
+            return;
+        }
+        synchronized (recentlyUsed) {
+            if (value instanceof ConcurrentAnalysisCache.PendingResult) {
+                recentlyUsed.remove(key);
+            } else {
+                recentlyUsed.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Discard the least recently used finished results while there are more
+     * than the capacity of the map.
+     */
+    private void evictIfFull() {
+        if (recentlyUsed == null) {
+            return;
+        }
+        List<Map.Entry<K, Object>> victims = null;
+        synchronized (recentlyUsed) {
+            Iterator<Map.Entry<K, Object>> i = recentlyUsed.entrySet().iterator();
+            for (int excess = recentlyUsed.size() - maxCapacity; excess > 0; excess--) {
+                Map.Entry<K, Object> eldest = i.next();
+                if (victims == null) {
+                    victims = new ArrayList<Map.Entry<K, Object>>();
+                }
+                victims.add(new AbstractMap.SimpleEntry<K, Object>(eldest));
+                i.remove();
+            }
+        }
+        if (victims == null) {
+            return;
+        }
+        for (Map.Entry<K, Object> victim : victims) {
+            Map<K, Object> stripe = stripeFor(victim.getKey());
+            synchronized (stripe) {
+                // The result may have been replaced or removed since
+                if (stripe.get(victim.getKey()) == victim.getValue()) {
+                    stripe.remove(victim.getKey());
+                    statistics.recordEviction(analysisClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the current contents of the map
+     */
+    Map<K, Object> snapshot() {
+        Map<K, Object> result = new HashMap<K, Object>();
+        for (Map<K, Object> stripe : stripes) {
+            synchronized (stripe) {
+                result.putAll(stripe);
+            }
+        }
+        return result;
+    }
+
+    void clear() {
+        for (Map<K, Object> stripe : stripes) {
+            synchronized (stripe) {
+                if (recentlyUsed != null) {
+                    synchronized (recentlyUsed) {
+                        recentlyUsed.keySet().removeAll(stripe.keySet());
+                    }
+                }
+                stripe.clear();
+            }
+        }
+    }
+}
@@ -30,25 +30,72 @@ import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.ICodeBase;
 import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
+import edu.umd.cs.findbugs.classfile.ResourceNotFoundException;
 import edu.umd.cs.findbugs.log.Profiler;
 
 /**
  * @author pugh
  */
 public class ZipCodeBaseFactory {
+    /**
+     * Memory-map zip files (see MappedZipCodeBase) instead of reading them
+     * with ZipFile. Off by default, since a mapped file can't be deleted or
+     * replaced on some platforms until the mapping is garbage collected.
+     */
+    private static final boolean USE_MAPPED_ZIP_FILES = SystemProperties.getBoolean("findbugs.zip.mapped");
+
+    private static final boolean DEBUG = SystemProperties.getBoolean("findbugs.zip.debug");
 
     public static AbstractScannableCodeBase makeZipCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
         Profiler profiler = Global.getAnalysisCache().getProfiler();
         profiler.start(ZipCodeBaseFactory.class);
         try {
+            if (USE_MAPPED_ZIP_FILES) {
+                try {
+                    return new MappedZipCodeBase(codeBaseLocator, file);
+                } catch (ZipException e) {
+                    // Not a zip file we can map: let ZipFile deal with it
+                    if (DEBUG) {
+                        System.out.println("Not mapping " + file + ": " + e.getMessage());
+                    }
+                }
+            }
             return countUsingZipFile(codeBaseLocator, file);
         } finally {
             profiler.end(ZipCodeBaseFactory.class);
         }
     }
 
+    /**
+     * Create a codebase for a zip file nested in another codebase. If the
+     * outer codebase is memory-mapped, the nested zip file is read from its
+     * mapping; otherwise, it is copied to a temporary file.
+     *
+     * @param codeBaseLocator
+     *            locator of the nested zip file
+     * @return the codebase
+     * @throws ResourceNotFoundException
+     * @throws IOException
+     */
+    public static AbstractScannableCodeBase makeNestedZipCodeBase(NestedZipFileCodeBaseLocator codeBaseLocator)
+            throws ResourceNotFoundException, IOException {
+        ICodeBase parentCodeBase = codeBaseLocator.getParentCodeBase();
+        if (parentCodeBase instanceof MappedZipCodeBase) {
+            try {
+                return ((MappedZipCodeBase) parentCodeBase).openNestedCodeBase(codeBaseLocator);
+            } catch (ZipException e) {
+                if (DEBUG) {
+                    System.out.println("Not mapping " + codeBaseLocator + ": " + e.getMessage());
+                }
+            }
+        }
+        return new NestedZipFileCodeBase(codeBaseLocator);
+    }
+
     /**
      * @param codeBaseLocator
      * @param file
@@ -53,6 +53,12 @@ public class CrossSiteScripting extends OpcodeStackDetector {
 
     Pattern xmlSafe = Pattern.compile("\\p{Alnum}+");
 
+    @Override
+    protected boolean canShareStackStates() {
+        // We replace items on the stack
+        return false;
+    }
+
     @Override
     public void visit(Code code) {
         isPlainText = false;
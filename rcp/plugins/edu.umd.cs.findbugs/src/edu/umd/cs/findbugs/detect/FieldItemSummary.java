@@ -50,6 +50,12 @@ public class FieldItemSummary extends OpcodeStackDetector implements NonReportin
 
     Set<XField> touched = new HashSet<XField>();
 
+    @Override
+    protected boolean canShareStackStates() {
+        // The field summary may change the items it is given
+        return false;
+    }
+
     @Override
     public boolean shouldVisit(JavaClass obj) {
         return !getXClass().hasStubs();
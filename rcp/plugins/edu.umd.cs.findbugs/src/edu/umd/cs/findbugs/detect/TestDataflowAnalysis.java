@@ -115,7 +115,8 @@ public class TestDataflowAnalysis implements Detector2, NonReportingDetector {
             // Create and execute the dataflow analysis
             Dataflow dataflow = analysisCache.getMethodAnalysis(dataflowClass, methodDescriptor);
 
-            System.out.println("Dataflow finished after " + dataflow.getNumIterations());
+            System.out.println("Dataflow finished after " + dataflow.getNumIterations() + " iterations, "
+                    + dataflow.getNumTransfers() + " transfers");
 
             if (SystemProperties.getBoolean("dataflow.printcfg")) {
                 DataflowCFGPrinter cfgPrinter = new DataflowCFGPrinter(dataflow);
@@ -41,6 +41,10 @@ public class ClassMatcher implements Matcher {
         this.className = new NameMatch(className);
     }
 
+    NameMatch getClassName() {
+        return className;
+    }
+
     public boolean match(BugInstance bugInstance) {
         ClassAnnotation primaryClassAnnotation = bugInstance.getPrimaryClass();
         String bugClassName = primaryClassAnnotation.getClassName();
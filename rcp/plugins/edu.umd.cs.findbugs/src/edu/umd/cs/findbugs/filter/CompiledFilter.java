@@ -0,0 +1,361 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+
+/**
+ * Matcher that matches the same BugInstances as a Filter, but indexes the
+ * filter's clauses so that each BugInstance is only tested against the
+ * clauses that could match it. Filters with thousands of clauses, each naming
+ * a class or a bug pattern, are common, and testing each BugInstance against
+ * every clause of those is slow.
+ * <p>
+ * A clause is indexed by conditions one of which every BugInstance it matches
+ * meets: that the primary class has a given name, or a name starting with the
+ * literal prefix of a regular expression, or that the bug has a given
+ * pattern, code or category. Class names are looked up in a hash table, and
+ * prefixes in a trie. Clauses that can't be indexed are tested against every
+ * BugInstance. The clauses that could match are tested in the filter's order,
+ * by their own match methods, so the result is the filter's.
+ * <p>
+ * The filter is indexed again if clauses are added, removed, enabled or
+ * disabled. Changes within a clause aren't noticed.
+ */
+public class CompiledFilter implements Matcher {
+    private static final int CLASS = 0;
+
+    private static final int CLASS_PREFIX = 1;
+
+    private static final int PATTERN = 2;
+
+    private static final int CODE = 3;
+
+    private static final int CATEGORY = 4;
+
+    /** How many BugInstances a condition of each kind is likely to hold for. */
+    private static final int[] COST = { 1, 2, 3, 4, 6 };
+
+    private static final int[] NO_CLAUSES = new int[0];
+
+    private final Filter filter;
+
+    private volatile Index index;
+
+    /**
+     * Constructor.
+     *
+     * @param filter
+     *            the filter to match BugInstances with
+     */
+    public CompiledFilter(Filter filter) {
+        this.filter = filter;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public boolean match(BugInstance bugInstance) {
+        Index i = index;
+        if (i == null || i.modificationCount != filter.getModificationCount())
+            index = i = new Index(filter);
+        return i.match(bugInstance);
+    }
+
+    public void writeXML(XMLOutput xmlOutput, boolean disabled) throws IOException {
+        filter.writeXML(xmlOutput, disabled);
+    }
+
+    @Override
+    public String toString() {
+        return filter.toString();
+    }
+
+    /**
+     * A condition met by the BugInstances a clause matches.
+     */
+    private static class Key {
+        final int kind;
+
+        final String value;
+
+        Key(int kind, String value) {
+            this.kind = kind;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Node of a trie of class name prefixes.
+     */
+    private static class PrefixNode {
+        final Map<Character, PrefixNode> children = new HashMap<Character, PrefixNode>(4);
+
+        int[] clauses = NO_CLAUSES;
+    }
+
+    /**
+     * Index of the enabled clauses of a filter.
+     */
+    private static class Index {
+        final int modificationCount;
+
+        final Matcher[] clauses;
+
+        final Map<String, int[]> byClass = new HashMap<String, int[]>();
+
+        final PrefixNode byClassPrefix = new PrefixNode();
+
+        final Map<String, int[]> byPattern = new HashMap<String, int[]>();
+
+        final Map<String, int[]> byCode = new HashMap<String, int[]>();
+
+        final Map<String, int[]> byCategory = new HashMap<String, int[]>();
+
+        int[] unindexed = NO_CLAUSES;
+
+        Index(Filter filter) {
+            modificationCount = filter.getModificationCount();
+            List<Matcher> enabled = new ArrayList<Matcher>();
+            for (Iterator<Matcher> i = filter.childIterator(); i.hasNext();) {
+                Matcher child = i.next();
+                if (filter.isEnabled(child))
+                    enabled.add(child);
+            }
+            clauses = enabled.toArray(new Matcher[enabled.size()]);
+
+            for (int clause = 0; clause < clauses.length; clause++) {
+                List<Key> keys = getKeys(clauses[clause]);
+                if (keys == null) {
+                    unindexed = append(unindexed, clause);
+                    continue;
+                }
+                // A clause without keys matches nothing
+                for (Key key : keys) {
+                    switch (key.kind) {
+                    case CLASS:
+                        add(byClass, key.value, clause);
+                        break;
+                    case CLASS_PREFIX:
+                        PrefixNode node = byClassPrefix;
+                        for (int i = 0; i < key.value.length(); i++) {
+                            Character c = key.value.charAt(i);
+                            PrefixNode next = node.children.get(c);
+                            if (next == null)
+                                node.children.put(c, next = new PrefixNode());
+                            node = next;
+                        }
+                        // A clause with two keys for the same prefix is added
+                        // once
+                        if (node.clauses.length == 0 || node.clauses[node.clauses.length - 1] != clause)
+                            node.clauses = append(node.clauses, clause);
+                        break;
+                    case PATTERN:
+                        add(byPattern, key.value, clause);
+                        break;
+                    case CODE:
+                        add(byCode, key.value, clause);
+                        break;
+                    case CATEGORY:
+                        add(byCategory, key.value, clause);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown kind of key " + key.kind);
+                    }
+                }
+            }
+        }
+
+        boolean match(BugInstance bugInstance) {
+            List<int[]> candidates = new ArrayList<int[]>();
+            addCandidates(candidates, unindexed);
+
+            ClassAnnotation primaryClass = bugInstance.getPrimaryClass();
+            if (primaryClass != null) {
+                String className = primaryClass.getClassName();
+                addCandidates(candidates, byClass.get(className));
+                PrefixNode node = byClassPrefix;
+                for (int i = 0; i < className.length() && node != null; i++) {
+                    node = node.children.get(className.charAt(i));
+                    if (node != null)
+                        addCandidates(candidates, node.clauses);
+                }
+            }
+            if (!byPattern.isEmpty())
+                addCandidates(candidates, byPattern.get(bugInstance.getType().trim()));
+            if (!byCode.isEmpty())
+                addCandidates(candidates, byCode.get(bugInstance.getAbbrev().trim()));
+            if (!byCategory.isEmpty())
+                addCandidates(candidates, byCategory.get(bugInstance.getBugPattern().getCategory().trim()));
+
+            if (candidates.size() == 1) {
+                for (int clause : candidates.get(0))
+                    if (clauses[clause].match(bugInstance))
+                        return true;
+                return false;
+            }
+
+            // Merge the sorted lists of candidates, testing each clause once
+            int[] positions = new int[candidates.size()];
+            while (true) {
+                int next = Integer.MAX_VALUE;
+                for (int i = 0; i < positions.length; i++) {
+                    int[] list = candidates.get(i);
+                    if (positions[i] < list.length && list[positions[i]] < next)
+                        next = list[positions[i]];
+                }
+                if (next == Integer.MAX_VALUE)
+                    return false;
+                if (clauses[next].match(bugInstance))
+                    return true;
+                for (int i = 0; i < positions.length; i++) {
+                    int[] list = candidates.get(i);
+                    if (positions[i] < list.length && list[positions[i]] == next)
+                        positions[i]++;
+                }
+            }
+        }
+
+        private static void addCandidates(List<int[]> candidates, @CheckForNull int[] clauses) {
+            if (clauses != null && clauses.length > 0)
+                candidates.add(clauses);
+        }
+
+        private static void add(Map<String, int[]> map, String key, int clause) {
+            int[] clauses = map.get(key);
+            if (clauses == null)
+                map.put(key, new int[] { clause });
+            else if (clauses[clauses.length - 1] != clause)
+                map.put(key, append(clauses, clause));
+        }
+
+        private static int[] append(int[] clauses, int clause) {
+            int[] result = Arrays.copyOf(clauses, clauses.length + 1);
+            result[clauses.length] = clause;
+            return result;
+        }
+    }
+
+    /**
+     * Get conditions one of which every BugInstance the matcher matches
+     * meets.
+     *
+     * @return the conditions, which are empty if the matcher matches nothing,
+     *         or null if there are no such conditions that can be indexed
+     */
+    private static @CheckForNull
+    List<Key> getKeys(Matcher matcher) {
+        if (matcher instanceof ClassMatcher) {
+            String spec = ((ClassMatcher) matcher).getClassName().getSpec();
+            if (spec == null)
+                return null;
+            if (!spec.startsWith("~"))
+                return Collections.singletonList(new Key(CLASS, spec));
+            String prefix = getLiteralPrefix(spec.substring(1));
+            if (prefix.length() == 0)
+                return null;
+            return Collections.singletonList(new Key(CLASS_PREFIX, prefix));
+        } else if (matcher instanceof BugMatcher) {
+            BugMatcher bugMatcher = (BugMatcher) matcher;
+            List<Key> result = new ArrayList<Key>();
+            for (String pattern : bugMatcher.getPatterns().getStrings())
+                result.add(new Key(PATTERN, pattern));
+            for (String code : bugMatcher.getCodes().getStrings())
+                result.add(new Key(CODE, code));
+            for (String category : bugMatcher.getCategories().getStrings())
+                result.add(new Key(CATEGORY, category));
+            return result;
+        } else if (matcher instanceof AndMatcher) {
+            // Any child's conditions will do: use the most selective
+            List<Key> best = null;
+            for (Iterator<Matcher> i = ((AndMatcher) matcher).childIterator(); i.hasNext();) {
+                List<Key> keys = getKeys(i.next());
+                if (keys != null && (best == null || getCost(keys) < getCost(best)))
+                    best = keys;
+            }
+            return best;
+        } else if (matcher instanceof OrMatcher && !(matcher instanceof Filter)) {
+            // Every child's conditions are needed
+            List<Key> result = new ArrayList<Key>();
+            for (Iterator<Matcher> i = ((OrMatcher) matcher).childIterator(); i.hasNext();) {
+                List<Key> keys = getKeys(i.next());
+                if (keys == null)
+                    return null;
+                result.addAll(keys);
+            }
+            return result;
+        }
+        return null;
+    }
+
+    private static int getCost(List<Key> keys) {
+        int result = 0;
+        for (Key key : keys)
+            result += COST[key.kind];
+        return result;
+    }
+
+    /**
+     * Get the text every string matched by a regular expression starts with.
+     *
+     * @param regex
+     *            the regular expression, compiled without flags
+     * @return the prefix, which is empty if it can't be worked out
+     */
+    static String getLiteralPrefix(String regex) {
+        if (regex.indexOf('|') >= 0)
+            return "";
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '*' || c == '?' || c == '{') {
+                // The last character is optional
+                if (prefix.length() > 0)
+                    prefix.setLength(prefix.length() - 1);
+                break;
+            }
+            if ("[]().+^$".indexOf(c) >= 0)
+                break;
+            if (c == '\\') {
+                // Only escaped punctuation is literal
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1)))
+                    break;
+                c = regex.charAt(++i);
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+}
+
+// vim:ts=4
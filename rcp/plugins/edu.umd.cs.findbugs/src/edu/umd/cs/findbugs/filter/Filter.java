@@ -59,6 +59,9 @@ public class Filter extends OrMatcher {
 
     private IdentityHashMap<Matcher, Boolean> disabled = new IdentityHashMap<Matcher, Boolean>();
 
+    /** Incremented when children are added, removed, enabled or disabled. */
+    private int modificationCount;
+
     /**
      * Constructor for empty filter
      * 
@@ -105,6 +108,7 @@ public class Filter extends OrMatcher {
 
     public void disable(Matcher m) {
         disabled.put(m, true);
+        modificationCount++;
     }
 
     public boolean isEnabled(Matcher m) {
@@ -113,6 +117,11 @@ public class Filter extends OrMatcher {
 
     public void enable(Matcher m) {
         disabled.remove(m);
+        modificationCount++;
+    }
+
+    int getModificationCount() {
+        return modificationCount;
     }
 
     public static Filter parseFilter(String fileName) throws IOException {
@@ -149,6 +158,7 @@ public class Filter extends OrMatcher {
      */
     public void softAdd(Matcher child) {
         super.addChild(child);
+        modificationCount++;
     }
 
     @Override
@@ -161,12 +171,14 @@ public class Filter extends OrMatcher {
     public void removeChild(Matcher child) {
         enable(child);// Remove from disabled before removing it
         super.removeChild(child);
+        modificationCount++;
     }
 
     @Override
     public void clear() {
         disabled.clear();
         super.clear();
+        modificationCount++;
     }
 
     @Override
@@ -19,6 +19,7 @@
 
 package edu.umd.cs.findbugs.filter;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -65,6 +66,13 @@ public class StringSetMatch {
         return strings.isEmpty();
     }
 
+    /**
+     * Get the value set, whose values have been trimmed.
+     */
+    Set<String> getStrings() {
+        return Collections.unmodifiableSet(strings);
+    }
+
     /**
      * Returns true if the given string is contained in the value set.
      * 
@@ -44,7 +44,12 @@ public class Profiler implements XMLWriteable {
     final static boolean REPORT = SystemProperties.getBoolean("profiler.report");
 
     public Profiler() {
-        startTimes = new Stack<Clock>();
+        startTimes = new ThreadLocal<Stack<Clock>>() {
+            @Override
+            protected Stack<Clock> initialValue() {
+                return new Stack<Clock>();
+            }
+        };
         profile = new ConcurrentHashMap<Class<?>, Profile>();
         if (REPORT)
             System.err.println("Profiling activated");
@@ -190,14 +195,18 @@ public class Profiler implements XMLWriteable {
 
     }
 
-    final Stack<Clock> startTimes;
+    /**
+     * Each analysis thread keeps its own stack of running clocks, so that
+     * nested start/end calls made by different threads do not interleave.
+     */
+    final ThreadLocal<Stack<Clock>> startTimes;
 
     final ConcurrentHashMap<Class<?>, Profile> profile;
 
     public void start(Class<?> c) {
         long currentNanoTime = System.nanoTime();
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         if (!stack.isEmpty()) {
             stack.peek().accumulateTime(currentNanoTime);
         }
@@ -210,7 +219,7 @@ public class Profiler implements XMLWriteable {
         // System.err.println("pop " + c.getSimpleName());
         long currentNanoTime = System.nanoTime();
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         Clock ending = stack.pop();
         if (ending.clazz != c) {
             throw new AssertionError("Asked to end timing for " + c + " but top of stack is " + ending.clazz
@@ -364,7 +373,7 @@ public class Profiler implements XMLWriteable {
      */
     public void clear() {
         profile.clear();
-        startTimes.clear();
+        startTimes.get().clear();
     }
 
     public Profile getProfile(Class<?> c) {
@@ -158,28 +158,50 @@ public class Strings {
      *      javadoc</a>
      */
     public static String escapeXml(String s) {
+        if (s == null || s.length() == 0)
+            return s;
+
+        return StringEscapeUtils.escapeXml(escapeInvalidXMLCharacters(s));
+    }
+
+    /**
+     * Escape the characters in the given string which are not permitted by the
+     * W3C XML 1.0 specification, but not XML entities. This is what remains of
+     * a string escaped by {@link #escapeXml(String)} after an XML parser has
+     * unescaped it.
+     *
+     * @param s
+     *            a string
+     * @return the same string with characters not permitted by the XML
+     *         specification escaped
+     */
+    public static String escapeInvalidXMLCharacters(String s) {
         initializeEscapeMap();
 
         if (s == null || s.length() == 0)
             return s;
 
-        char[] sChars = s.toCharArray();
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = null;
         int lastReplacement = 0;
-        for (int i = 0; i < sChars.length; i++) {
-            if (isInvalidXMLCharacter(sChars[i])) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isInvalidXMLCharacter(c)) {
+                if (sb == null)
+                    sb = new StringBuilder();
                 // append intermediate string to string builder
-                sb.append(sChars, lastReplacement, i - lastReplacement);
+                sb.append(s, lastReplacement, i);
                 // substitute control character with escape sequence
-                sb.append(xmlLowValueEscapeStrings[sChars[i]]);
+                sb.append(xmlLowValueEscapeStrings[c]);
                 // advance last pointer past this character
                 lastReplacement = i + 1;
             }
         }
-        if (lastReplacement < sChars.length)
-            sb.append(sChars, lastReplacement, sChars.length - lastReplacement);
+        if (sb == null)
+            return s;
+        if (lastReplacement < s.length())
+            sb.append(s, lastReplacement, s.length());
 
-        return StringEscapeUtils.escapeXml(sb.toString());
+        return sb.toString();
     }
 
     private static final String unicodeUnescapeMatchExpression = "(\\\\*)(\\\\u)(\\p{XDigit}{4})";
@@ -0,0 +1,662 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.visitclass;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantFieldref;
+import org.apache.bcel.classfile.ConstantFloat;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantInterfaceMethodref;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantMethodref;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.Method;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory;
+
+/**
+ * The instructions of a method, decoded once into parallel arrays indexed by
+ * instruction number. DismantleBytecode iterates over these arrays rather than
+ * parsing the bytecode and resolving constant pool operands again each time a
+ * detector visits the method.
+ * <p>
+ * Constant pool operands are kept as indices into the constant pool of the
+ * class, so the strings they refer to are those of the visitor's constant
+ * pool.
+ *
+ * @see DismantleBytecode#visit(Code)
+ */
+public class DecodedInstructions implements Constants2 {
+
+    static final int INVALID_OFFSET = Integer.MIN_VALUE;
+
+    /** Flags stored with the opcode of each instruction */
+    static final int OPCODE_MASK = 0xff;
+
+    static final int IS_WIDE = 0x100;
+
+    static final int IS_REGISTER_LOAD = 0x200;
+
+    static final int IS_REGISTER_STORE = 0x400;
+
+    static final int HAS_INT_OPERAND = 0x800;
+
+    /** Kinds of constant pool operand */
+    static final byte CP_OTHER = 0;
+
+    static final byte CP_CLASS = 1;
+
+    static final byte CP_INTEGER = 2;
+
+    static final byte CP_LONG = 3;
+
+    static final byte CP_FLOAT = 4;
+
+    static final byte CP_DOUBLE = 5;
+
+    static final byte CP_STRING = 6;
+
+    static final byte CP_FIELDREF = 7;
+
+    static final byte CP_METHODREF = 8;
+
+    static final byte CP_INTERFACE_METHODREF = 9;
+
+    static final byte CP_OTHER_REF = 10;
+
+    private final byte[] codeBytes;
+
+    /** Number of instructions decoded */
+    final int count;
+
+    /** PC of each instruction, followed by the PC after the last one */
+    final int[] pc;
+
+    /** Opcode of each instruction, or'ed with the flags above */
+    final int[] opcode;
+
+    /** Register operand, explicit or implied by the opcode, or -1 */
+    final int[] register;
+
+    /**
+     * Int operand, if HAS_INT_OPERAND is set, or the low index of a
+     * tableswitch
+     */
+    final int[] intOperand;
+
+    /** Branch offset, or default offset of a switch, or INVALID_OFFSET */
+    final int[] branchOffset;
+
+    /** Constant pool operand, or -1 */
+    final int[] cpIndex;
+
+    /** Kind of the constant pool operand */
+    final byte[] cpKind;
+
+    /** Constant pool index of the class name of a class or member reference */
+    final int[] classNameIndex;
+
+    /**
+     * Constant pool index of the name of a member reference, or of the value
+     * of a string constant
+     */
+    final int[] nameIndex;
+
+    /** Constant pool index of the signature of a member reference */
+    final int[] sigIndex;
+
+    /**
+     * Switch offsets of each switch, sorted, or null; null if the method has
+     * no switch
+     */
+    final @CheckForNull
+    int[][] switchOffsets;
+
+    /**
+     * Switch labels of each switch, in the order of the offsets, or null;
+     * null if the method has no switch
+     */
+    final @CheckForNull
+    int[][] switchLabels;
+
+    /** Error reading the instruction after the last one decoded */
+    final @CheckForNull
+    IOException readError;
+
+    /** Exception decoding the instruction after the last one decoded */
+    final @CheckForNull
+    RuntimeException decodingError;
+
+    /**
+     * Decode the instructions of a method.
+     *
+     * @param codeBytes
+     *            the bytecode of the method
+     * @param constantPool
+     *            the constant pool of its class
+     */
+    public DecodedInstructions(byte[] codeBytes, ConstantPool constantPool) {
+        this.codeBytes = codeBytes;
+        int capacity = countInstructions(codeBytes);
+        int[] pc = this.pc = new int[capacity + 1];
+        int[] opcode = this.opcode = new int[capacity];
+        int[] register = this.register = new int[capacity];
+        int[] intOperand = this.intOperand = new int[capacity];
+        int[] branchOffset = this.branchOffset = new int[capacity];
+        int[] cpIndex = this.cpIndex = new int[capacity];
+        byte[] cpKind = this.cpKind = new byte[capacity];
+        int[] classNameIndex = this.classNameIndex = new int[capacity];
+        int[] nameIndex = this.nameIndex = new int[capacity];
+        int[] sigIndex = this.sigIndex = new int[capacity];
+        int[][] switchOffsets = null;
+        int[][] switchLabels = null;
+        IOException readError = null;
+        RuntimeException decodingError = null;
+
+        int n = 0;
+        int i = 0;
+        try {
+            while (i < codeBytes.length) {
+                int start = i;
+                int op = readUnsignedByte(i++);
+                int flags = 0;
+                int reg = -1;
+                int branch = INVALID_OFFSET;
+                int cp = -1;
+                int[] offsets = null;
+                int[] labels = null;
+                int byteStreamArgCount = NO_OF_OPERANDS[op];
+                if (byteStreamArgCount == UNPREDICTABLE) {
+                    if (op == LOOKUPSWITCH || op == TABLESWITCH) {
+                        i += (4 - (i & 3)) & 3;
+                        branch = readInt(i);
+                        i += 4;
+                        int npairs;
+                        if (op == LOOKUPSWITCH) {
+                            npairs = readInt(i);
+                            i += 4;
+                        } else {
+                            int low = readInt(i);
+                            int high = readInt(i + 4);
+                            i += 8;
+                            intOperand[n] = low;
+                            npairs = high - low + 1;
+                        }
+                        offsets = new int[npairs];
+                        labels = new int[npairs];
+                        for (int o = 0; o < npairs; o++) {
+                            if (op == LOOKUPSWITCH) {
+                                labels[o] = readInt(i);
+                                i += 4;
+                            } else
+                                labels[o] = o + intOperand[n];
+                            offsets[o] = readInt(i);
+                            i += 4;
+                        }
+                        sortByOffset(offsets, labels);
+                    } else if (op == WIDE) {
+                        flags |= IS_WIDE;
+                        op = readUnsignedByte(i++);
+                        switch (op) {
+                        case ILOAD:
+                        case FLOAD:
+                        case ALOAD:
+                        case LLOAD:
+                        case DLOAD:
+                        case ISTORE:
+                        case FSTORE:
+                        case ASTORE:
+                        case LSTORE:
+                        case DSTORE:
+                        case RET:
+                            reg = readUnsignedShort(i);
+                            i += 2;
+                            break;
+                        case IINC:
+                            reg = readUnsignedShort(i);
+                            intOperand[n] = (short) readUnsignedShort(i + 2);
+                            flags |= HAS_INT_OPERAND;
+                            i += 4;
+                            break;
+                        default:
+                            throw new IllegalStateException("bad wide bytecode: " + OPCODE_NAMES[op]);
+                        }
+                    } else
+                        throw new IllegalStateException("bad unpredicatable bytecode: " + OPCODE_NAMES[op]);
+                } else {
+                    if (byteStreamArgCount < 0)
+                        throw new IllegalStateException("bad length for bytecode: " + OPCODE_NAMES[op]);
+                    for (int k = 0; k < TYPE_OF_OPERANDS[op].length; k++) {
+                        int v;
+                        int t = TYPE_OF_OPERANDS[op][k];
+                        int m = DismantleBytecode.MEANING_OF_OPERANDS[op][k];
+                        boolean unsigned = (m == DismantleBytecode.M_CP || m == DismantleBytecode.M_R || m == DismantleBytecode.M_UINT);
+                        switch (t) {
+                        case T_BYTE:
+                            v = readUnsignedByte(i);
+                            if (!unsigned)
+                                v = (byte) v;
+                            i++;
+                            break;
+                        case T_SHORT:
+                            v = readUnsignedShort(i);
+                            if (!unsigned)
+                                v = (short) v;
+                            i += 2;
+                            break;
+                        case T_INT:
+                            v = readInt(i);
+                            i += 4;
+                            break;
+                        default:
+                            throw new IllegalStateException();
+                        }
+                        switch (m) {
+                        case DismantleBytecode.M_BR:
+                            branch = v;
+                            break;
+                        case DismantleBytecode.M_CP:
+                            cp = v;
+                            resolveConstant(constantPool, n, v, cpKind, classNameIndex, nameIndex, sigIndex);
+                            if (cpKind[n] == CP_INTEGER) {
+                                intOperand[n] = ((ConstantInteger) constantPool.getConstant(v)).getBytes();
+                                flags |= HAS_INT_OPERAND;
+                            }
+                            break;
+                        case DismantleBytecode.M_R:
+                            reg = v;
+                            break;
+                        case DismantleBytecode.M_UINT:
+                        case DismantleBytecode.M_INT:
+                            intOperand[n] = v;
+                            flags |= HAS_INT_OPERAND;
+                        }
+                    }
+                }
+
+                int implicitRegister = getImplicitRegister(op);
+                if (implicitRegister >= 0)
+                    reg = implicitRegister;
+                if (isRegisterLoad(op))
+                    flags |= IS_REGISTER_LOAD;
+                if (isRegisterStore(op))
+                    flags |= IS_REGISTER_STORE;
+
+                pc[n] = start;
+                opcode[n] = op | flags;
+                register[n] = reg;
+                branchOffset[n] = branch;
+                cpIndex[n] = cp;
+                if (offsets != null) {
+                    if (switchOffsets == null) {
+                        switchOffsets = new int[capacity][];
+                        switchLabels = new int[capacity][];
+                    }
+                    switchOffsets[n] = offsets;
+                    switchLabels[n] = labels;
+                }
+                n++;
+                pc[n] = i;
+            }
+        } catch (IOException e) {
+            readError = e;
+        } catch (RuntimeException e) {
+            decodingError = e;
+        }
+
+        this.count = n;
+        this.switchOffsets = switchOffsets;
+        this.switchLabels = switchLabels;
+        this.readError = readError;
+        this.decodingError = decodingError;
+    }
+
+    /**
+     * @return the bytecode the instructions were decoded from
+     */
+    public byte[] getCodeBytes() {
+        return codeBytes;
+    }
+
+    /**
+     * @return the number of instructions decoded
+     */
+    public int getInstructionCount() {
+        return count;
+    }
+
+    /**
+     * Get the number of the instruction at given PC, or of the first
+     * instruction after it.
+     *
+     * @param pc
+     *            the PC
+     * @return the instruction number, or the number of instructions if there
+     *         is none at or after the PC
+     */
+    public int getInstructionIndex(int pc) {
+        if (pc <= 0)
+            return 0;
+        int index = Arrays.binarySearch(this.pc, 0, count, pc);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Length of each instruction of fixed length, or 0
+     */
+    private static final byte[] INSTRUCTION_LENGTH = new byte[256];
+    static {
+        for (int op = 0; op < NO_OF_OPERANDS.length; op++) {
+            if (NO_OF_OPERANDS[op] < 0 || op >= TYPE_OF_OPERANDS.length)
+                continue;
+            int length = 1;
+            for (short type : TYPE_OF_OPERANDS[op])
+                length += type == T_BYTE ? 1 : type == T_SHORT ? 2 : 4;
+            INSTRUCTION_LENGTH[op] = (byte) length;
+        }
+    }
+
+    /**
+     * Count the instructions of a method, or rather get an upper bound on
+     * their number if the bytecode is malformed.
+     */
+    private static int countInstructions(byte[] codeBytes) {
+        int count = 0;
+        int i = 0;
+        while (i < codeBytes.length) {
+            int op = 0xff & codeBytes[i];
+            int length = INSTRUCTION_LENGTH[op];
+            count++;
+            if (length > 0) {
+                i += length;
+                continue;
+            }
+            if (op == WIDE && i + 1 < codeBytes.length)
+                i += (0xff & codeBytes[i + 1]) == IINC ? 6 : 4;
+            else if (op == LOOKUPSWITCH || op == TABLESWITCH) {
+                // Skip the padding and the default offset
+                int pos = ((i + 4) & ~3) + 4;
+                long entries;
+                if (op == LOOKUPSWITCH) {
+                    if (pos + 4 > codeBytes.length)
+                        break;
+                    entries = 2L * getInt(codeBytes, pos);
+                    pos += 4;
+                } else {
+                    if (pos + 8 > codeBytes.length)
+                        break;
+                    entries = (long) getInt(codeBytes, pos + 4) - getInt(codeBytes, pos) + 1;
+                    pos += 8;
+                }
+                if (entries < 0 || pos + 4 * entries > codeBytes.length)
+                    break;
+                i = pos + 4 * (int) entries;
+            } else
+                break;
+        }
+        return count;
+    }
+
+    private static int getInt(byte[] codeBytes, int offset) {
+        return ((0xff & codeBytes[offset]) << 24) | ((0xff & codeBytes[offset + 1]) << 16)
+                | ((0xff & codeBytes[offset + 2]) << 8) | (0xff & codeBytes[offset + 3]);
+    }
+
+    private int readUnsignedByte(int offset) throws EOFException {
+        if (offset >= codeBytes.length)
+            throw new EOFException();
+        return 0xff & codeBytes[offset];
+    }
+
+    private int readUnsignedShort(int offset) throws EOFException {
+        if (offset + 2 > codeBytes.length)
+            throw new EOFException();
+        return ((0xff & codeBytes[offset]) << 8) | (0xff & codeBytes[offset + 1]);
+    }
+
+    private int readInt(int offset) throws EOFException {
+        if (offset + 4 > codeBytes.length)
+            throw new EOFException();
+        return getInt(codeBytes, offset);
+    }
+
+    private static void resolveConstant(ConstantPool constantPool, int n, int index, byte[] cpKind, int[] classNameIndex,
+            int[] nameIndex, int[] sigIndex) {
+        Constant constant = constantPool.getConstant(index);
+        if (constant instanceof ConstantClass) {
+            cpKind[n] = CP_CLASS;
+            classNameIndex[n] = ((ConstantClass) constant).getNameIndex();
+        } else if (constant instanceof ConstantInteger)
+            cpKind[n] = CP_INTEGER;
+        else if (constant instanceof ConstantLong)
+            cpKind[n] = CP_LONG;
+        else if (constant instanceof ConstantFloat)
+            cpKind[n] = CP_FLOAT;
+        else if (constant instanceof ConstantDouble)
+            cpKind[n] = CP_DOUBLE;
+        else if (constant instanceof ConstantString) {
+            cpKind[n] = CP_STRING;
+            nameIndex[n] = ((ConstantString) constant).getStringIndex();
+        } else if (constant instanceof ConstantCP) {
+            if (constant instanceof ConstantFieldref)
+                cpKind[n] = CP_FIELDREF;
+            else if (constant instanceof ConstantMethodref)
+                cpKind[n] = CP_METHODREF;
+            else if (constant instanceof ConstantInterfaceMethodref)
+                cpKind[n] = CP_INTERFACE_METHODREF;
+            else
+                cpKind[n] = CP_OTHER_REF;
+            ConstantCP cp = (ConstantCP) constant;
+            ConstantClass clazz = (ConstantClass) constantPool.getConstant(cp.getClassIndex());
+            classNameIndex[n] = clazz.getNameIndex();
+            ConstantNameAndType sig = (ConstantNameAndType) constantPool.getConstant(cp.getNameAndTypeIndex());
+            nameIndex[n] = sig.getNameIndex();
+            sigIndex[n] = sig.getSignatureIndex();
+        } else
+            cpKind[n] = CP_OTHER;
+    }
+
+    static void sortByOffset(int[] switchOffsets, int[] switchLabels) {
+        int npairs = switchOffsets.length;
+        // Sort by offset
+        for (int j = 0; j < npairs; j++) {
+            int min = j;
+            for (int k = j + 1; k < npairs; k++)
+                if (switchOffsets[min] > switchOffsets[k])
+                    min = k;
+            if (min > j) {
+                int tmp = switchOffsets[min];
+                switchOffsets[min] = switchOffsets[j];
+                switchOffsets[j] = tmp;
+                tmp = switchLabels[min];
+                switchLabels[min] = switchLabels[j];
+                switchLabels[j] = tmp;
+            }
+        }
+    }
+
+    private static int getImplicitRegister(int opcode) {
+        switch (opcode) {
+        case ILOAD_0:
+        case ILOAD_1:
+        case ILOAD_2:
+        case ILOAD_3:
+            return opcode - ILOAD_0;
+        case ALOAD_0:
+        case ALOAD_1:
+        case ALOAD_2:
+        case ALOAD_3:
+            return opcode - ALOAD_0;
+        case FLOAD_0:
+        case FLOAD_1:
+        case FLOAD_2:
+        case FLOAD_3:
+            return opcode - FLOAD_0;
+        case DLOAD_0:
+        case DLOAD_1:
+        case DLOAD_2:
+        case DLOAD_3:
+            return opcode - DLOAD_0;
+        case LLOAD_0:
+        case LLOAD_1:
+        case LLOAD_2:
+        case LLOAD_3:
+            return opcode - LLOAD_0;
+        case ISTORE_0:
+        case ISTORE_1:
+        case ISTORE_2:
+        case ISTORE_3:
+            return opcode - ISTORE_0;
+        case ASTORE_0:
+        case ASTORE_1:
+        case ASTORE_2:
+        case ASTORE_3:
+            return opcode - ASTORE_0;
+        case FSTORE_0:
+        case FSTORE_1:
+        case FSTORE_2:
+        case FSTORE_3:
+            return opcode - FSTORE_0;
+        case DSTORE_0:
+        case DSTORE_1:
+        case DSTORE_2:
+        case DSTORE_3:
+            return opcode - DSTORE_0;
+        case LSTORE_0:
+        case LSTORE_1:
+        case LSTORE_2:
+        case LSTORE_3:
+            return opcode - LSTORE_0;
+        default:
+            return -1;
+        }
+    }
+
+    private static boolean isRegisterLoad(int opcode) {
+        switch (opcode) {
+        case IINC:
+        case ILOAD_0:
+        case ILOAD_1:
+        case ILOAD_2:
+        case ILOAD_3:
+        case ALOAD_0:
+        case ALOAD_1:
+        case ALOAD_2:
+        case ALOAD_3:
+        case FLOAD_0:
+        case FLOAD_1:
+        case FLOAD_2:
+        case FLOAD_3:
+        case DLOAD_0:
+        case DLOAD_1:
+        case DLOAD_2:
+        case DLOAD_3:
+        case LLOAD_0:
+        case LLOAD_1:
+        case LLOAD_2:
+        case LLOAD_3:
+        case ILOAD:
+        case FLOAD:
+        case ALOAD:
+        case LLOAD:
+        case DLOAD:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isRegisterStore(int opcode) {
+        switch (opcode) {
+        case IINC:
+        case ISTORE_0:
+        case ISTORE_1:
+        case ISTORE_2:
+        case ISTORE_3:
+        case ASTORE_0:
+        case ASTORE_1:
+        case ASTORE_2:
+        case ASTORE_3:
+        case FSTORE_0:
+        case FSTORE_1:
+        case FSTORE_2:
+        case FSTORE_3:
+        case DSTORE_0:
+        case DSTORE_1:
+        case DSTORE_2:
+        case DSTORE_3:
+        case LSTORE_0:
+        case LSTORE_1:
+        case LSTORE_2:
+        case LSTORE_3:
+        case ISTORE:
+        case FSTORE:
+        case ASTORE:
+        case LSTORE:
+        case DSTORE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Method analysis engine to decode the instructions of a method.
+     */
+    public static class Factory extends AnalysisFactory<DecodedInstructions> {
+
+        public Factory() {
+            super("Decoded instructions", DecodedInstructions.class);
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * edu.umd.cs.findbugs.classfile.IAnalysisEngine#analyze(edu.umd.cs.findbugs
+         * .classfile.IAnalysisCache, java.lang.Object)
+         */
+        public DecodedInstructions analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor)
+                throws CheckedAnalysisException {
+            Method method = analysisCache.getMethodAnalysis(Method.class, descriptor);
+            Code code = method.getCode();
+            if (code == null) {
+                return null;
+            }
+            return new DecodedInstructions(code.getCode(), code.getConstantPool());
+        }
+    }
+}
+
+// vim:ts=4
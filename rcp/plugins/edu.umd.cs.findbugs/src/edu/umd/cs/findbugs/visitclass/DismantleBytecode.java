@@ -19,24 +19,17 @@
 
 package edu.umd.cs.findbugs.visitclass;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
 import java.text.NumberFormat;
 
 import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.CodeException;
 import org.apache.bcel.classfile.Constant;
-import org.apache.bcel.classfile.ConstantCP;
 import org.apache.bcel.classfile.ConstantClass;
 import org.apache.bcel.classfile.ConstantDouble;
-import org.apache.bcel.classfile.ConstantFieldref;
 import org.apache.bcel.classfile.ConstantFloat;
 import org.apache.bcel.classfile.ConstantInteger;
-import org.apache.bcel.classfile.ConstantInterfaceMethodref;
 import org.apache.bcel.classfile.ConstantLong;
-import org.apache.bcel.classfile.ConstantMethodref;
-import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.ConstantString;
 import org.apache.bcel.classfile.LineNumberTable;
 
@@ -52,6 +45,7 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.FieldDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
 import edu.umd.cs.findbugs.util.ClassName;
@@ -125,7 +119,7 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
 
     private boolean isRegisterStore;
 
-    private static final int INVALID_OFFSET = Integer.MIN_VALUE;
+    private static final int INVALID_OFFSET = DecodedInstructions.INVALID_OFFSET;
 
     private static final String NOT_AVAILABLE = "./.";
 
@@ -441,25 +435,6 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         referencedXField = null;
     }
 
-    private static void sortByOffset(int[] switchOffsets, int[] switchLabels) {
-        int npairs = switchOffsets.length;
-        // Sort by offset
-        for (int j = 0; j < npairs; j++) {
-            int min = j;
-            for (int k = j + 1; k < npairs; k++)
-                if (switchOffsets[min] > switchOffsets[k])
-                    min = k;
-            if (min > j) {
-                int tmp = switchOffsets[min];
-                switchOffsets[min] = switchOffsets[j];
-                switchOffsets[j] = tmp;
-                tmp = switchLabels[min];
-                switchLabels[min] = switchLabels[j];
-                switchLabels[j] = tmp;
-            }
-        }
-    }
-
     public int getMaxPC() {
         return codeBytes.length - 1;
     }
@@ -481,393 +456,207 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
 
     @Override
     public void visit(Code obj) {
-        sizePrevOpcodeBuffer = 0;
-        currentPosInPrevOpcodeBuffer = prevOpcode.length - 1;
+        visitInstructions(obj, 0, Integer.MAX_VALUE);
+    }
 
-        int switchLow = 1000000;
-        int switchHigh = -1000000;
+    /**
+     * Visit the instructions of the code whose PC is in the given range, as
+     * visit(Code) visits all the instructions. getPrevOpcode() returns the
+     * opcodes of the instructions before the range as well.
+     *
+     * @param obj
+     *            the code
+     * @param startPC
+     *            the PC of the first instruction to visit
+     * @param endPC
+     *            the PC after the last instruction to visit
+     */
+    protected void visitInstructions(Code obj, int startPC, int endPC) {
         codeBytes = obj.getCode();
-        DataInputStream byteStream = new DataInputStream(new ByteArrayInputStream(codeBytes));
-
         lineNumberTable = obj.getLineNumberTable();
 
-        try {
-            for (int i = 0; i < codeBytes.length;) {
-                resetState();
-                PC = i;
-                opcodeIsWide = false;
-                opcode = byteStream.readUnsignedByte();
-
-                sizePrevOpcodeBuffer++;
-                currentPosInPrevOpcodeBuffer++;
-                if (currentPosInPrevOpcodeBuffer >= prevOpcode.length)
-                    currentPosInPrevOpcodeBuffer = 0;
-                prevOpcode[currentPosInPrevOpcodeBuffer] = opcode;
-                i++;
-                // System.out.println(OPCODE_NAMES[opCode]);
-                int byteStreamArgCount = NO_OF_OPERANDS[opcode];
-                if (byteStreamArgCount == UNPREDICTABLE) {
-
-                    if (opcode == LOOKUPSWITCH) {
-                        int pad = 4 - (i & 3);
-                        if (pad == 4)
-                            pad = 0;
-                        int count = pad;
-                        while (count > 0)
-                            count -= byteStream.skipBytes(count);
-                        i += pad;
-                        defaultSwitchOffset = byteStream.readInt();
-                        branchOffset = defaultSwitchOffset;
-                        branchTarget = branchOffset + PC;
-                        i += 4;
-                        int npairs = byteStream.readInt();
-                        i += 4;
-                        switchOffsets = new int[npairs];
-                        switchLabels = new int[npairs];
-                        for (int o = 0; o < npairs; o++) {
-                            switchLabels[o] = byteStream.readInt();
-                            switchOffsets[o] = byteStream.readInt();
-                            i += 8;
-                        }
-                        sortByOffset(switchOffsets, switchLabels);
-                    } else if (opcode == TABLESWITCH) {
-                        int pad = 4 - (i & 3);
-                        if (pad == 4)
-                            pad = 0;
-                        int count = pad;
-                        while (count > 0)
-                            count -= byteStream.skipBytes(count);
-                        i += pad;
-                        defaultSwitchOffset = byteStream.readInt();
-                        branchOffset = defaultSwitchOffset;
-                        branchTarget = branchOffset + PC;
-                        i += 4;
-                        switchLow = byteStream.readInt();
-                        i += 4;
-                        switchHigh = byteStream.readInt();
-                        i += 4;
-                        int npairs = switchHigh - switchLow + 1;
-                        switchOffsets = new int[npairs];
-                        switchLabels = new int[npairs];
-                        for (int o = 0; o < npairs; o++) {
-                            switchLabels[o] = o + switchLow;
-                            switchOffsets[o] = byteStream.readInt();
-                            i += 4;
-                        }
-                        sortByOffset(switchOffsets, switchLabels);
-                    } else if (opcode == WIDE) {
-                        opcodeIsWide = true;
-                        opcode = byteStream.readUnsignedByte();
-                        i++;
-                        switch (opcode) {
-                        case ILOAD:
-                        case FLOAD:
-                        case ALOAD:
-                        case LLOAD:
-                        case DLOAD:
-                        case ISTORE:
-                        case FSTORE:
-                        case ASTORE:
-                        case LSTORE:
-                        case DSTORE:
-                        case RET:
-                            registerOperand = byteStream.readUnsignedShort();
-                            i += 2;
-                            break;
-                        case IINC:
-                            registerOperand = byteStream.readUnsignedShort();
-                            i += 2;
-                            intConstant = byteStream.readShort();
-                            i += 2;
-                            break;
-                        default:
-                            throw new IllegalStateException("bad wide bytecode: " + OPCODE_NAMES[opcode]);
-                        }
-                    } else
-                        throw new IllegalStateException("bad unpredicatable bytecode: " + OPCODE_NAMES[opcode]);
-                } else {
-                    if (byteStreamArgCount < 0)
-                        throw new IllegalStateException("bad length for bytecode: " + OPCODE_NAMES[opcode]);
-                    for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
-
-                        int v;
-                        int t = TYPE_OF_OPERANDS[opcode][k];
-                        int m = MEANING_OF_OPERANDS[opcode][k];
-                        boolean unsigned = (m == M_CP || m == M_R || m == M_UINT);
-                        switch (t) {
-                        case T_BYTE:
-                            if (unsigned)
-                                v = byteStream.readUnsignedByte();
-                            else
-                                v = byteStream.readByte();
-                            /*
-                             * System.out.print("Read byte " + v);
-                             * System.out.println(" with meaning" + m);
-                             */
-                            i++;
-                            break;
-                        case T_SHORT:
-                            if (unsigned)
-                                v = byteStream.readUnsignedShort();
-                            else
-                                v = byteStream.readShort();
-                            i += 2;
-                            break;
-                        case T_INT:
-                            v = byteStream.readInt();
-                            i += 4;
-                            break;
-                        default:
-                            throw new IllegalStateException();
-                        }
-                        switch (m) {
-                        case M_BR:
-                            branchOffset = v;
-                            branchTarget = v + PC;
-                            branchFallThrough = i;
-                            break;
-                        case M_CP:
-                            constantRefOperand = getConstantPool().getConstant(v);
-                            if (constantRefOperand instanceof ConstantClass) {
-                                ConstantClass clazz = (ConstantClass) constantRefOperand;
-                                classConstantOperand = getStringFromIndex(clazz.getNameIndex());
-                                referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
-
-                            } else if (constantRefOperand instanceof ConstantInteger)
-                                intConstant = ((ConstantInteger) constantRefOperand).getBytes();
-                            else if (constantRefOperand instanceof ConstantLong)
-                                longConstant = ((ConstantLong) constantRefOperand).getBytes();
-                            else if (constantRefOperand instanceof ConstantFloat)
-                                floatConstant = ((ConstantFloat) constantRefOperand).getBytes();
-                            else if (constantRefOperand instanceof ConstantDouble)
-                                doubleConstant = ((ConstantDouble) constantRefOperand).getBytes();
-                            else if (constantRefOperand instanceof ConstantString) {
-                                int s = ((ConstantString) constantRefOperand).getStringIndex();
-
-                                stringConstantOperand = getStringFromIndex(s);
-                            } else if (constantRefOperand instanceof ConstantCP) {
-                                ConstantCP cp = (ConstantCP) constantRefOperand;
-                                ConstantClass clazz = (ConstantClass) getConstantPool().getConstant(cp.getClassIndex());
-                                classConstantOperand = getStringFromIndex(clazz.getNameIndex());
-                                referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
-                                referencedXClass = null;
-                                ConstantNameAndType sig = (ConstantNameAndType) getConstantPool().getConstant(
-                                        cp.getNameAndTypeIndex());
-                                nameConstantOperand = getStringFromIndex(sig.getNameIndex());
-                                sigConstantOperand = getStringFromIndex(sig.getSignatureIndex());
-                                refConstantOperand = null;
-                            }
-                            break;
-                        case M_R:
-                            registerOperand = v;
-                            break;
-                        case M_UINT:
-                        case M_INT:
-                            intConstant = v;
-                        }
-                    }
-
-                }
-                switch (opcode) {
-                case IINC:
-                    isRegisterLoad = true;
-                    isRegisterStore = true;
-                    break;
-                case ILOAD_0:
-                case ILOAD_1:
-                case ILOAD_2:
-                case ILOAD_3:
-                    registerOperand = opcode - ILOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case ALOAD_0:
-                case ALOAD_1:
-                case ALOAD_2:
-                case ALOAD_3:
-                    registerOperand = opcode - ALOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case FLOAD_0:
-                case FLOAD_1:
-                case FLOAD_2:
-                case FLOAD_3:
-                    registerOperand = opcode - FLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case DLOAD_0:
-                case DLOAD_1:
-                case DLOAD_2:
-                case DLOAD_3:
-                    registerOperand = opcode - DLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case LLOAD_0:
-                case LLOAD_1:
-                case LLOAD_2:
-                case LLOAD_3:
-                    registerOperand = opcode - LLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-                case ILOAD:
-                case FLOAD:
-                case ALOAD:
-                case LLOAD:
-                case DLOAD:
-                    isRegisterLoad = true;
-                    break;
-
-                case ISTORE_0:
-                case ISTORE_1:
-                case ISTORE_2:
-                case ISTORE_3:
-                    registerOperand = opcode - ISTORE_0;
-                    isRegisterStore = true;
+        DecodedInstructions decoded = getDecodedInstructions();
+        int first = decoded.getInstructionIndex(startPC);
+        int previous = Math.max(0, first - prevOpcode.length);
+        sizePrevOpcodeBuffer = previous;
+        currentPosInPrevOpcodeBuffer = prevOpcode.length - 1;
+        for (int n = previous; n < first; n++)
+            addPrevOpcode(decoded.opcode[n]);
+
+        ConstantPool constantPool = getConstantPool();
+        int n;
+        for (n = first; n < decoded.count && decoded.pc[n] < endPC; n++) {
+            resetState();
+            int flags = decoded.opcode[n];
+            PC = decoded.pc[n];
+            nextPC = decoded.pc[n + 1];
+            opcodeIsWide = (flags & DecodedInstructions.IS_WIDE) != 0;
+            opcode = flags & DecodedInstructions.OPCODE_MASK;
+            addPrevOpcode(flags);
+
+            registerOperand = decoded.register[n];
+            isRegisterLoad = (flags & DecodedInstructions.IS_REGISTER_LOAD) != 0;
+            isRegisterStore = (flags & DecodedInstructions.IS_REGISTER_STORE) != 0;
+            if ((flags & DecodedInstructions.HAS_INT_OPERAND) != 0)
+                intConstant = decoded.intOperand[n];
+            if (decoded.switchOffsets != null && decoded.switchOffsets[n] != null) {
+                switchOffsets = decoded.switchOffsets[n];
+                switchLabels = decoded.switchLabels[n];
+                defaultSwitchOffset = branchOffset = decoded.branchOffset[n];
+                branchTarget = branchOffset + PC;
+            } else if (decoded.branchOffset[n] != INVALID_OFFSET) {
+                branchOffset = decoded.branchOffset[n];
+                branchTarget = branchOffset + PC;
+                branchFallThrough = nextPC;
+            }
+            int cpIndex = decoded.cpIndex[n];
+            if (cpIndex >= 0) {
+                constantRefOperand = constantPool.getConstant(cpIndex);
+                switch (decoded.cpKind[n]) {
+                case DecodedInstructions.CP_CLASS:
+                    classConstantOperand = getStringFromIndex(decoded.classNameIndex[n]);
+                    referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
                     break;
-
-                case ASTORE_0:
-                case ASTORE_1:
-                case ASTORE_2:
-                case ASTORE_3:
-                    registerOperand = opcode - ASTORE_0;
-                    isRegisterStore = true;
+                case DecodedInstructions.CP_LONG:
+                    longConstant = ((ConstantLong) constantRefOperand).getBytes();
                     break;
-
-                case FSTORE_0:
-                case FSTORE_1:
-                case FSTORE_2:
-                case FSTORE_3:
-                    registerOperand = opcode - FSTORE_0;
-                    isRegisterStore = true;
+                case DecodedInstructions.CP_FLOAT:
+                    floatConstant = ((ConstantFloat) constantRefOperand).getBytes();
                     break;
-
-                case DSTORE_0:
-                case DSTORE_1:
-                case DSTORE_2:
-                case DSTORE_3:
-                    registerOperand = opcode - DSTORE_0;
-                    isRegisterStore = true;
+                case DecodedInstructions.CP_DOUBLE:
+                    doubleConstant = ((ConstantDouble) constantRefOperand).getBytes();
                     break;
-
-                case LSTORE_0:
-                case LSTORE_1:
-                case LSTORE_2:
-                case LSTORE_3:
-                    registerOperand = opcode - LSTORE_0;
-                    isRegisterStore = true;
+                case DecodedInstructions.CP_STRING:
+                    stringConstantOperand = getStringFromIndex(decoded.nameIndex[n]);
                     break;
-                case ISTORE:
-                case FSTORE:
-                case ASTORE:
-                case LSTORE:
-                case DSTORE:
-                    isRegisterStore = true;
+                case DecodedInstructions.CP_FIELDREF:
+                case DecodedInstructions.CP_METHODREF:
+                case DecodedInstructions.CP_INTERFACE_METHODREF:
+                case DecodedInstructions.CP_OTHER_REF:
+                    classConstantOperand = getStringFromIndex(decoded.classNameIndex[n]);
+                    referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
+                    nameConstantOperand = getStringFromIndex(decoded.nameIndex[n]);
+                    sigConstantOperand = getStringFromIndex(decoded.sigIndex[n]);
+                    refConstantOperand = null;
                     break;
-
                 }
+            }
+            switch (opcode) {
+            case GETSTATIC:
+            case PUTSTATIC:
+                refFieldIsStatic = true;
+                break;
+            case GETFIELD:
+            case PUTFIELD:
+                refFieldIsStatic = false;
+                break;
+            }
 
-                switch (opcode) {
-                case ILOAD:
-                case FLOAD:
-                case ALOAD:
-                case LLOAD:
-                case DLOAD:
-                    // registerKind = opcode - ILOAD;
-                    break;
-                case ISTORE:
-                case FSTORE:
-                case ASTORE:
-                case LSTORE:
-                case DSTORE:
-                    // registerKind = opcode - ISTORE;
-                    break;
-                case RET:
-                    // registerKind = R_REF;
-                    break;
-                case GETSTATIC:
-                case PUTSTATIC:
-                    refFieldIsStatic = true;
-                    break;
-                case GETFIELD:
-                case PUTFIELD:
-                    refFieldIsStatic = false;
-                    break;
+            if (beforeOpcode(opcode))
+                sawOpcode(opcode);
+            afterOpcode(opcode);
+
+            if (opcode == TABLESWITCH) {
+                int switchLow = decoded.intOperand[n];
+                sawInt(switchLow);
+                sawInt(switchLow + switchOffsets.length - 1);
+                for (int o = 0; o < switchOffsets.length; o++)
+                    sawBranchTo(switchOffsets[o] + PC);
+                sawBranchTo(defaultSwitchOffset + PC);
+            } else if (opcode == LOOKUPSWITCH) {
+                sawInt(switchOffsets.length);
+                for (int o = 0; o < switchOffsets.length; o++) {
+                    sawBranchTo(switchOffsets[o] + PC);
+                    sawInt(switchLabels[o]);
                 }
-
-                nextPC = i;
-                if (beforeOpcode(opcode))
-                    sawOpcode(opcode);
-                afterOpcode(opcode);
-
-                if (opcode == TABLESWITCH) {
-                    sawInt(switchLow);
-                    sawInt(switchHigh);
-                    int prevOffset = i - PC;
-                    for (int o = 0; o <= switchHigh - switchLow; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        prevOffset = switchOffsets[o];
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else if (opcode == LOOKUPSWITCH) {
-                    sawInt(switchOffsets.length);
-                    int prevOffset = i - PC;
-                    for (int o = 0; o < switchOffsets.length; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        prevOffset = switchOffsets[o];
-                        sawInt(switchLabels[o]);
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else
-                    for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
-                        int m = MEANING_OF_OPERANDS[opcode][k];
-                        switch (m) {
-                        case M_BR:
-                            sawBranchTo(branchOffset + PC);
+                sawBranchTo(defaultSwitchOffset + PC);
+            } else
+                for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
+                    int m = MEANING_OF_OPERANDS[opcode][k];
+                    switch (m) {
+                    case M_BR:
+                        sawBranchTo(branchOffset + PC);
+                        break;
+                    case M_CP:
+                        switch (decoded.cpKind[n]) {
+                        case DecodedInstructions.CP_INTEGER:
+                            sawInt(intConstant);
                             break;
-                        case M_CP:
-                            if (constantRefOperand instanceof ConstantInteger)
-                                sawInt(intConstant);
-                            else if (constantRefOperand instanceof ConstantLong)
-                                sawLong(longConstant);
-                            else if (constantRefOperand instanceof ConstantFloat)
-                                sawFloat(floatConstant);
-                            else if (constantRefOperand instanceof ConstantDouble)
-                                sawDouble(doubleConstant);
-                            else if (constantRefOperand instanceof ConstantString)
-                                sawString(stringConstantOperand);
-                            else if (constantRefOperand instanceof ConstantFieldref)
-                                sawField();
-                            else if (constantRefOperand instanceof ConstantMethodref)
-                                sawMethod();
-                            else if (constantRefOperand instanceof ConstantInterfaceMethodref)
-                                sawIMethod();
-                            else if (constantRefOperand instanceof ConstantClass)
-                                sawClass();
+                        case DecodedInstructions.CP_LONG:
+                            sawLong(longConstant);
                             break;
-                        case M_R:
-                            sawRegister(registerOperand);
+                        case DecodedInstructions.CP_FLOAT:
+                            sawFloat(floatConstant);
                             break;
-                        case M_INT:
-                            sawInt(intConstant);
+                        case DecodedInstructions.CP_DOUBLE:
+                            sawDouble(doubleConstant);
+                            break;
+                        case DecodedInstructions.CP_STRING:
+                            sawString(stringConstantOperand);
+                            break;
+                        case DecodedInstructions.CP_FIELDREF:
+                            sawField();
+                            break;
+                        case DecodedInstructions.CP_METHODREF:
+                            sawMethod();
+                            break;
+                        case DecodedInstructions.CP_INTERFACE_METHODREF:
+                            sawIMethod();
+                            break;
+                        case DecodedInstructions.CP_CLASS:
+                            sawClass();
                             break;
                         }
+                        break;
+                    case M_R:
+                        sawRegister(registerOperand);
+                        break;
+                    case M_INT:
+                        sawInt(intConstant);
+                        break;
                     }
-            }
-        } catch (IOException e) {
-            AnalysisContext.logError("Error while dismantling bytecode", e);
-            assert false;
+                }
         }
 
-        try {
-            byteStream.close();
-        } catch (IOException e) {
+        if (n < decoded.count)
+            return;
+        if (decoded.decodingError != null)
+            throw decoded.decodingError;
+        if (decoded.readError != null) {
+            AnalysisContext.logError("Error while dismantling bytecode", decoded.readError);
             assert false;
         }
     }
 
+    private void addPrevOpcode(int flags) {
+        sizePrevOpcodeBuffer++;
+        currentPosInPrevOpcodeBuffer++;
+        if (currentPosInPrevOpcodeBuffer >= prevOpcode.length)
+            currentPosInPrevOpcodeBuffer = 0;
+        prevOpcode[currentPosInPrevOpcodeBuffer] = (flags & DecodedInstructions.IS_WIDE) != 0 ? WIDE
+                : flags & DecodedInstructions.OPCODE_MASK;
+    }
+
+    /**
+     * Get the decoded instructions of the code being visited: those cached by
+     * the analysis cache, if they were decoded from the same bytecode,
+     * otherwise decode them now.
+     */
+    private DecodedInstructions getDecodedInstructions() {
+        MethodDescriptor methodDescriptor = getMethodDescriptor();
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        if (methodDescriptor != null && analysisCache != null) {
+            try {
+                DecodedInstructions decoded = analysisCache.getMethodAnalysis(DecodedInstructions.class, methodDescriptor);
+                if (decoded != null && decoded.getCodeBytes() == codeBytes)
+                    return decoded;
+            } catch (CheckedAnalysisException e) {
+                // Decode them ourselves
+            }
+        }
+        return new DecodedInstructions(codeBytes, getConstantPool());
+    }
+
     public void sawDouble(double seen) {
     }
 
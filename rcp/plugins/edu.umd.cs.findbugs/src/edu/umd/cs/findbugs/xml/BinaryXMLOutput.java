@@ -0,0 +1,455 @@
+/*
+ * XML input/output support for FindBugs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.util.Strings;
+
+/**
+ * XMLOutput class to write a compact binary encoding of an XML document,
+ * which can be read by {@link BinaryXMLReader}. It's intended for bug
+ * collections, which repeat the same class names, method signatures and
+ * source paths many times.
+ * <p>
+ * The document is written as a sequence of segments, each with its own
+ * string table. A string (an element or attribute name, an attribute value
+ * or text) is written in full the first time a segment uses it, and is
+ * referred to by its index in the segment's table after that, so the
+ * document can be read as a stream. Attribute values that are non-negative
+ * decimal numbers, such as line numbers and sequence numbers, are stored as
+ * numbers. All numbers are written as variable-length integers, using 7 bits
+ * per byte.
+ * <p>
+ * The BugInstance children of the root element are put in segments of
+ * consecutive BugInstances whose primary class is in the same package, and an
+ * index of the segments is written after them, so a reader of a file can skip
+ * to the BugInstances of given packages. A segment is ended once its string
+ * table holds {@link #MAX_SEGMENT_STRINGS} strings, which bounds the memory
+ * needed to write and read the document.
+ * <p>
+ * The format is:
+ *
+ * <pre>
+ * file      := MAGIC version segment* END footer footerOffset(8 bytes) MAGIC
+ * segment   := SEGMENT 0 token*
+ *            | SEGMENT 1 string token*
+ * token     := START_ELEMENT string numAttributes (string value)*
+ *            | END_ELEMENT
+ *            | TEXT string
+ * string    := 0 numBytes utf8Bytes | index + 1
+ * value     := string &lt;&lt; 1 | number &lt;&lt; 1 | 1
+ * footer    := numSegments (0 offset length 0 | 1 offset length numBugs numBytes utf8Bytes)*
+ * </pre>
+ *
+ * The first form of a segment doesn't contain BugInstances; the second names
+ * the package of the BugInstances it contains. A string written in full gets
+ * the next index in the string table. Text is stored as an XML parser would
+ * report it.
+ */
+public class BinaryXMLOutput implements XMLOutput {
+    /**
+     * Magic number at the start and end of the file.
+     */
+    public static final byte[] MAGIC = { 'F', 'B', 'B', 'X' };
+
+    /**
+     * Version of the format.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Number of strings after which a segment is ended.
+     */
+    public static final int MAX_SEGMENT_STRINGS = 8192;
+
+    static final int START_ELEMENT = 1;
+
+    static final int END_ELEMENT = 2;
+
+    static final int TEXT = 3;
+
+    static final int SEGMENT = 4;
+
+    static final int END = 5;
+
+    private static final String BUG_INSTANCE = "BugInstance";
+
+    private static final String[] NO_ATTRIBUTES = new String[0];
+
+    private final OutputStream out;
+
+    private long position;
+
+    /** String table of the current segment. */
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+    /**
+     * Segments written so far: offset, length and number of bugs of each.
+     */
+    private final List<long[]> segments = new ArrayList<long[]>();
+
+    /** Packages of the segments written so far, null if they don't hold bugs. */
+    private final List<String> segmentPackages = new ArrayList<String>();
+
+    private boolean inSegment;
+
+    private String segmentPackage;
+
+    private long segmentStart;
+
+    private int segmentBugs;
+
+    private int depth;
+
+    /**
+     * Elements and text of the BugInstance being written, or null if none is.
+     * They are written once the BugInstance's package, and so its segment, is
+     * known.
+     */
+    private List<Object[]> bugTokens;
+
+    private String bugPackage;
+
+    private String pendingTag;
+
+    private final List<String> pendingAttributes = new ArrayList<String>();
+
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            the OutputStream to write to; closed by {@link #finish()}
+     */
+    public BinaryXMLOutput(@WillCloseWhenClosed OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out);
+        writeRaw(MAGIC);
+        writeVarint(FORMAT_VERSION);
+    }
+
+    public void beginDocument() {
+    }
+
+    public void openTag(String tagName) throws IOException {
+        startElement(tagName, NO_ATTRIBUTES);
+    }
+
+    public void openTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        List<String> attributes = new ArrayList<String>();
+        for (Iterator<XMLAttributeList.NameValuePair> i = attributeList.iterator(); i.hasNext();) {
+            XMLAttributeList.NameValuePair pair = i.next();
+            attributes.add(pair.getName());
+            attributes.add(pair.getValue());
+        }
+        startElement(tagName, attributes.toArray(new String[attributes.size()]));
+    }
+
+    public void startTag(String tagName) {
+        if (pendingTag != null) {
+            throw new IllegalStateException("Tag " + pendingTag + " wasn't stopped");
+        }
+        pendingTag = tagName;
+        pendingAttributes.clear();
+    }
+
+    public void addAttribute(String name, String value) {
+        if (pendingTag == null) {
+            throw new IllegalStateException("No tag started");
+        }
+        pendingAttributes.add(name);
+        pendingAttributes.add(value);
+    }
+
+    public void stopTag(boolean close) throws IOException {
+        if (pendingTag == null) {
+            throw new IllegalStateException("No tag started");
+        }
+        String tagName = pendingTag;
+        pendingTag = null;
+        startElement(tagName, pendingAttributes.toArray(new String[pendingAttributes.size()]));
+        if (close) {
+            closeTag(tagName);
+        }
+    }
+
+    public void openCloseTag(String tagName) throws IOException {
+        openTag(tagName);
+        closeTag(tagName);
+    }
+
+    public void openCloseTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        openTag(tagName, attributeList);
+        closeTag(tagName);
+    }
+
+    public void closeTag(String tagName) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("No open element to close with " + tagName);
+        }
+        --depth;
+        if (bugTokens != null) {
+            bugTokens.add(new Object[] { END_ELEMENT });
+            if (depth == 1) {
+                endBugInstance();
+            }
+        } else {
+            write(END_ELEMENT);
+        }
+    }
+
+    public void writeText(String text) throws IOException {
+        writeTextToken(Strings.escapeInvalidXMLCharacters(text));
+    }
+
+    public void writeCDATA(String cdata) throws IOException {
+        writeTextToken(cdata);
+    }
+
+    /**
+     * Write the index of the segments, and close the output.
+     */
+    @DischargesObligation
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (bugTokens != null) {
+                // Incomplete BugInstance
+                List<Object[]> tokens = bugTokens;
+                bugTokens = null;
+                startSegment(null);
+                writeTokens(tokens);
+            }
+            endSegment();
+            write(END);
+
+            long footerOffset = position;
+            writeVarint(segments.size());
+            for (int i = 0; i < segments.size(); i++) {
+                String pkg = segmentPackages.get(i);
+                writeVarint(pkg != null ? 1 : 0);
+                for (long value : segments.get(i)) {
+                    writeVarint(value);
+                }
+                if (pkg != null) {
+                    byte[] bytes = pkg.getBytes(UTF8.charset);
+                    writeVarint(bytes.length);
+                    writeRaw(bytes);
+                }
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (footerOffset >>> shift));
+            }
+            out.write(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void startElement(String tagName, String[] attributes) throws IOException {
+        if (depth == 1 && tagName.equals(BUG_INSTANCE)) {
+            bugTokens = new ArrayList<Object[]>();
+            bugPackage = null;
+        }
+        if (bugTokens != null) {
+            bugTokens.add(new Object[] { START_ELEMENT, tagName, attributes });
+            if (depth == 2 && bugPackage == null && tagName.equals("Class")) {
+                // The first class annotation is the primary class
+                for (int i = 0; i + 1 < attributes.length; i += 2) {
+                    if (attributes[i].equals("classname")) {
+                        String className = Strings.escapeInvalidXMLCharacters(attributes[i + 1]);
+                        int lastDot = className.lastIndexOf('.');
+                        bugPackage = lastDot > 0 ? className.substring(0, lastDot) : "";
+                    }
+                }
+            }
+        } else {
+            startSegment(null);
+            writeStartElement(tagName, attributes);
+        }
+        ++depth;
+    }
+
+    private void endBugInstance() throws IOException {
+        List<Object[]> tokens = bugTokens;
+        bugTokens = null;
+        startSegment(bugPackage != null ? bugPackage : "");
+        writeTokens(tokens);
+        segmentBugs++;
+    }
+
+    private void writeTokens(List<Object[]> tokens) throws IOException {
+        for (Object[] token : tokens) {
+            int kind = (Integer) token[0];
+            if (kind == START_ELEMENT) {
+                writeStartElement((String) token[1], (String[]) token[2]);
+            } else if (kind == TEXT) {
+                write(TEXT);
+                writeString((String) token[1], 0);
+            } else {
+                write(kind);
+            }
+        }
+    }
+
+    private void writeStartElement(String tagName, String[] attributes) throws IOException {
+        int numAttributes = attributes.length / 2;
+        write(START_ELEMENT);
+        writeString(tagName, 0);
+        writeVarint(numAttributes);
+        for (int i = 0; i < numAttributes; i++) {
+            writeString(attributes[2 * i], 0);
+            String value = Strings.escapeInvalidXMLCharacters(attributes[2 * i + 1]);
+            long number = parseNumber(value);
+            if (number >= 0) {
+                writeVarint(number << 1 | 1);
+            } else {
+                writeString(value, 1);
+            }
+        }
+    }
+
+    /**
+     * Continue the current segment, if it's for given package and its string
+     * table isn't full, or else end it and start a new one.
+     *
+     * @param pkg
+     *            package of the new segment, or null if it doesn't hold
+     *            BugInstances
+     */
+    private void startSegment(@CheckForNull String pkg) throws IOException {
+        if (inSegment && (pkg == null ? segmentPackage == null : pkg.equals(segmentPackage))
+                && stringIndex.size() < MAX_SEGMENT_STRINGS) {
+            return;
+        }
+        endSegment();
+        inSegment = true;
+        segmentPackage = pkg;
+        segmentStart = position;
+        segmentBugs = 0;
+        stringIndex.clear();
+        write(SEGMENT);
+        if (pkg == null) {
+            writeVarint(0);
+        } else {
+            writeVarint(1);
+            writeString(pkg, 0);
+        }
+    }
+
+    private void endSegment() {
+        if (inSegment) {
+            segments.add(new long[] { segmentStart, position - segmentStart, segmentBugs });
+            segmentPackages.add(segmentPackage);
+            inSegment = false;
+        }
+    }
+
+    private void writeTextToken(String text) throws IOException {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        if (bugTokens != null) {
+            bugTokens.add(new Object[] { TEXT, text });
+        } else {
+            startSegment(null);
+            write(TEXT);
+            writeString(text, 0);
+        }
+    }
+
+    /**
+     * Write a reference to a string in the current segment's string table,
+     * and the string itself if it isn't in the table yet.
+     *
+     * @param shift
+     *            number of bits to shift the reference by
+     */
+    private void writeString(String s, int shift) throws IOException {
+        Integer index = stringIndex.get(s);
+        if (index != null) {
+            writeVarint((index + 1L) << shift);
+            return;
+        }
+        stringIndex.put(s, stringIndex.size());
+        byte[] bytes = s.getBytes(UTF8.charset);
+        writeVarint(0);
+        writeVarint(bytes.length);
+        writeRaw(bytes);
+    }
+
+    /**
+     * Get the value of a string holding a non-negative decimal number, without
+     * leading zeros.
+     *
+     * @return the number, or -1 if the string doesn't hold such a number
+     */
+    private static long parseNumber(String s) {
+        int length = s.length();
+        if (length == 0 || length > 18 || (s.charAt(0) == '0' && length > 1)) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private void write(int b) throws IOException {
+        out.write(b);
+        position++;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    private void writeRaw(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+}
+
+// vim:ts=4
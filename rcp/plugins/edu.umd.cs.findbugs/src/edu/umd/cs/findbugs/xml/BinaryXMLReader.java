@@ -0,0 +1,413 @@
+/*
+ * XML input/output support for FindBugs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.xml;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillNotClose;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.io.ByteBufferInputStream;
+
+/**
+ * Read an XML document written by {@link BinaryXMLOutput}, reporting it to a
+ * SAX ContentHandler as an XML parser would. For example, a bug collection
+ * can be read with a {@link edu.umd.cs.findbugs.SAXBugCollectionHandler}.
+ * <p>
+ * A document can be read from a stream, or from a buffer. When it's read
+ * from a buffer, the BugInstances of selected packages can be read without
+ * decoding the others: everything else in the document is always read.
+ */
+public class BinaryXMLReader {
+    private static final String CORRUPT = "Corrupt binary bug collection";
+
+    private final ByteBuffer data;
+
+    private final InputStream in;
+
+    private final long[][] segments;
+
+    private final String[] segmentPackages;
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     *            buffer holding the document
+     * @throws IOException
+     *             if the buffer doesn't hold a document of a supported
+     *             version
+     */
+    public BinaryXMLReader(ByteBuffer data) throws IOException {
+        this.data = data.duplicate();
+        this.in = null;
+        try {
+            int size = data.limit();
+            byte[] magic = new byte[BinaryXMLOutput.MAGIC.length];
+            ByteBuffer buf = data.duplicate();
+            readHeader(new ByteBufferInputStream(buf));
+            buf.position(size - magic.length);
+            buf.get(magic);
+            if (!Arrays.equals(magic, BinaryXMLOutput.MAGIC)) {
+                throw new IOException("Truncated binary bug collection");
+            }
+            buf.position(size - magic.length - 8);
+            buf.position(checkOffset(buf.getLong(), size));
+
+            InputStream footer = new ByteBufferInputStream(buf);
+            int numSegments = checkOffset(readVarint(footer), size);
+            segments = new long[numSegments][3];
+            segmentPackages = new String[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                boolean hasBugs = readVarint(footer) != 0;
+                long[] segment = segments[i];
+                for (int j = 0; j < segment.length; j++) {
+                    segment[j] = readVarint(footer);
+                }
+                checkOffset(segment[0] + segment[1], size);
+                if (hasBugs) {
+                    segmentPackages[i] = readUTF8(footer, checkOffset(readVarint(footer), size));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException(CORRUPT);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(CORRUPT);
+        }
+    }
+
+    /**
+     * Constructor for reading a document from a stream. The document can only
+     * be parsed once, and the index of its BugInstances isn't available.
+     *
+     * @param in
+     *            the input stream, positioned at the start of the document
+     * @throws IOException
+     *             if the stream doesn't hold a document of a supported
+     *             version
+     */
+    public BinaryXMLReader(@WillNotClose InputStream in) throws IOException {
+        this.data = null;
+        this.in = in;
+        this.segments = null;
+        this.segmentPackages = null;
+        readHeader(in);
+    }
+
+    /**
+     * Open a binary XML file, mapping it into memory.
+     *
+     * @param file
+     *            the file
+     * @return reader for the file
+     */
+    public static BinaryXMLReader open(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " is too big at " + size + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            return new BinaryXMLReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Does the given input stream hold a binary XML document? The stream must
+     * support mark and reset; it is reset to where it was.
+     *
+     * @param in
+     *            the input stream
+     */
+    public static boolean isBinaryXML(@WillNotClose InputStream in) throws IOException {
+        byte[] magic = new byte[BinaryXMLOutput.MAGIC.length];
+        in.mark(magic.length);
+        try {
+            int numRead = 0;
+            while (numRead < magic.length) {
+                int n = in.read(magic, numRead, magic.length - numRead);
+                if (n < 0) {
+                    return false;
+                }
+                numRead += n;
+            }
+        } finally {
+            in.reset();
+        }
+        return Arrays.equals(magic, BinaryXMLOutput.MAGIC);
+    }
+
+    /**
+     * Does the given file hold a binary XML document?
+     *
+     * @param file
+     *            the file
+     */
+    public static boolean isBinaryXML(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return isBinaryXML(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the packages of the BugInstances in the document.
+     *
+     * @throws IllegalStateException
+     *             if the document is read from a stream
+     */
+    public Set<String> getPackageNames() {
+        if (segmentPackages == null) {
+            throw new IllegalStateException("Package names aren't available when reading a stream");
+        }
+        Set<String> result = new LinkedHashSet<String>();
+        for (String pkg : segmentPackages) {
+            if (pkg != null) {
+                result.add(pkg);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Report the whole document to a ContentHandler.
+     *
+     * @param handler
+     *            the ContentHandler
+     */
+    public void parse(ContentHandler handler) throws SAXException {
+        parse(handler, null);
+    }
+
+    /**
+     * Report the document to a ContentHandler, leaving out BugInstances whose
+     * primary class isn't in one of the given packages.
+     *
+     * @param handler
+     *            the ContentHandler
+     * @param packageNames
+     *            packages of the BugInstances to report, or null to report
+     *            all of them
+     */
+    public void parse(ContentHandler handler, @CheckForNull Collection<String> packageNames) throws SAXException {
+        Decoder decoder = new Decoder(handler, packageNames);
+        handler.startDocument();
+        try {
+            if (in != null) {
+                // The segments' packages are checked as they are read
+                if (!decoder.decode(in)) {
+                    throw new SAXException("Truncated binary bug collection");
+                }
+            } else {
+                for (int i = 0; i < segments.length; i++) {
+                    String pkg = segmentPackages[i];
+                    if (pkg != null && packageNames != null && !packageNames.contains(pkg)) {
+                        continue;
+                    }
+                    ByteBuffer buf = data.duplicate();
+                    buf.limit((int) (segments[i][0] + segments[i][1]));
+                    buf.position((int) segments[i][0]);
+                    decoder.decode(new ByteBufferInputStream(buf));
+                }
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new SAXException(CORRUPT);
+        } catch (IllegalArgumentException e) {
+            throw new SAXException(CORRUPT);
+        }
+        handler.endDocument();
+    }
+
+    /**
+     * Decodes segments, keeping the string table of the current segment and
+     * the elements open across them.
+     */
+    private static class Decoder {
+        private final ContentHandler handler;
+
+        private final Collection<String> packageNames;
+
+        private final List<String> strings = new ArrayList<String>();
+
+        private final List<String> elementStack = new ArrayList<String>();
+
+        private final AttributesImpl attributes = new AttributesImpl();
+
+        /** Is the current segment for a package that isn't reported? */
+        private boolean skipping;
+
+        Decoder(ContentHandler handler, @CheckForNull Collection<String> packageNames) {
+            this.handler = handler;
+            this.packageNames = packageNames;
+        }
+
+        /**
+         * Decode tokens until the end of the input or of the segments.
+         *
+         * @return true if the end of the segments was read
+         */
+        boolean decode(InputStream in) throws IOException, SAXException {
+            while (true) {
+                int token = in.read();
+                switch (token) {
+                case -1:
+                    return false;
+                case BinaryXMLOutput.END:
+                    return true;
+                case BinaryXMLOutput.SEGMENT: {
+                    strings.clear();
+                    boolean hasBugs = readVarint(in) != 0;
+                    skipping = hasBugs && !isReported(readString(in, readVarint(in)));
+                    break;
+                }
+                case BinaryXMLOutput.START_ELEMENT: {
+                    String name = readString(in, readVarint(in));
+                    int numAttributes = (int) readVarint(in);
+                    attributes.clear();
+                    for (int i = 0; i < numAttributes; i++) {
+                        String attributeName = readString(in, readVarint(in));
+                        long value = readVarint(in);
+                        String attributeValue = (value & 1) != 0 ? Long.toString(value >>> 1) : readString(in, value >>> 1);
+                        attributes.addAttribute("", attributeName, attributeName, "CDATA", attributeValue);
+                    }
+                    if (!skipping) {
+                        elementStack.add(name);
+                        handler.startElement("", name, name, attributes);
+                    }
+                    break;
+                }
+                case BinaryXMLOutput.END_ELEMENT: {
+                    if (!skipping) {
+                        String name = elementStack.remove(elementStack.size() - 1);
+                        handler.endElement("", name, name);
+                    }
+                    break;
+                }
+                case BinaryXMLOutput.TEXT: {
+                    char[] text = readString(in, readVarint(in)).toCharArray();
+                    if (!skipping) {
+                        handler.characters(text, 0, text.length);
+                    }
+                    break;
+                }
+                default:
+                    throw new SAXException(CORRUPT + ": unknown token " + token);
+                }
+            }
+        }
+
+        private boolean isReported(String pkg) {
+            return packageNames == null || packageNames.contains(pkg);
+        }
+
+        private String readString(InputStream in, long ref) throws IOException {
+            if (ref != 0) {
+                return strings.get((int) (ref - 1));
+            }
+            long length = readVarint(in);
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(CORRUPT);
+            }
+            String s = readUTF8(in, (int) length);
+            strings.add(s);
+            return s;
+        }
+    }
+
+    private static void readHeader(InputStream in) throws IOException {
+        byte[] magic = new byte[BinaryXMLOutput.MAGIC.length];
+        readFully(in, magic);
+        if (!Arrays.equals(magic, BinaryXMLOutput.MAGIC)) {
+            throw new IOException("Not a binary bug collection");
+        }
+        long version = readVarint(in);
+        if (version != BinaryXMLOutput.FORMAT_VERSION) {
+            throw new IOException("Unsupported binary bug collection version " + version);
+        }
+    }
+
+    private static int checkOffset(long offset, int size) throws IOException {
+        if (offset < 0 || offset > size) {
+            throw new IOException(CORRUPT);
+        }
+        return (int) offset;
+    }
+
+    private static String readUTF8(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        readFully(in, bytes);
+        return new String(bytes, UTF8.charset);
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        int numRead = 0;
+        while (numRead < bytes.length) {
+            int n = in.read(bytes, numRead, bytes.length - numRead);
+            if (n < 0) {
+                throw new EOFException("Truncated binary bug collection");
+            }
+            numRead += n;
+        }
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated binary bug collection");
+            }
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+}
+
+// vim:ts=4
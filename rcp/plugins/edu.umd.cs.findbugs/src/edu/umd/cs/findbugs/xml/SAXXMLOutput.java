@@ -0,0 +1,164 @@
+/*
+ * XML input/output support for FindBugs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.xml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * XMLOutput class to report a document to a SAX ContentHandler, as an XML
+ * parser reading it would. For example, a bug collection can be transformed
+ * by an XSLT TransformerHandler as it is written, without building a tree of
+ * it or writing it out first.
+ *
+ * @see XMLOutput
+ */
+public class SAXXMLOutput implements XMLOutput {
+    private final ContentHandler handler;
+
+    private final List<String> elementStack = new ArrayList<String>();
+
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    private String pendingTag;
+
+    /**
+     * Constructor.
+     *
+     * @param handler
+     *            the ContentHandler to report the document to; if it is also
+     *            a LexicalHandler, it's told about CDATA sections
+     */
+    public SAXXMLOutput(ContentHandler handler) {
+        this.handler = handler;
+    }
+
+    public void beginDocument() throws IOException {
+        try {
+            handler.startDocument();
+        } catch (SAXException e) {
+            throw newIOException(e);
+        }
+    }
+
+    public void openTag(String tagName) throws IOException {
+        attributes.clear();
+        startElement(tagName);
+    }
+
+    public void openTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        attributes.clear();
+        for (Iterator<XMLAttributeList.NameValuePair> i = attributeList.iterator(); i.hasNext();) {
+            XMLAttributeList.NameValuePair pair = i.next();
+            attributes.addAttribute("", pair.getName(), pair.getName(), "CDATA", pair.getValue());
+        }
+        startElement(tagName);
+    }
+
+    public void startTag(String tagName) throws IOException {
+        pendingTag = tagName;
+        attributes.clear();
+    }
+
+    public void addAttribute(String name, String value) throws IOException {
+        attributes.addAttribute("", name, name, "CDATA", value);
+    }
+
+    public void stopTag(boolean close) throws IOException {
+        String tagName = pendingTag;
+        pendingTag = null;
+        startElement(tagName);
+        if (close)
+            closeTag(tagName);
+    }
+
+    public void openCloseTag(String tagName) throws IOException {
+        openTag(tagName);
+        closeTag(tagName);
+    }
+
+    public void openCloseTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        openTag(tagName, attributeList);
+        closeTag(tagName);
+    }
+
+    public void closeTag(String tagName) throws IOException {
+        String name = elementStack.remove(elementStack.size() - 1);
+        try {
+            handler.endElement("", name, name);
+        } catch (SAXException e) {
+            throw newIOException(e);
+        }
+    }
+
+    public void writeText(String text) throws IOException {
+        try {
+            char[] chars = text.toCharArray();
+            handler.characters(chars, 0, chars.length);
+        } catch (SAXException e) {
+            throw newIOException(e);
+        }
+    }
+
+    public void writeCDATA(String cdata) throws IOException {
+        try {
+            char[] chars = cdata.toCharArray();
+            if (handler instanceof LexicalHandler)
+                ((LexicalHandler) handler).startCDATA();
+            handler.characters(chars, 0, chars.length);
+            if (handler instanceof LexicalHandler)
+                ((LexicalHandler) handler).endCDATA();
+        } catch (SAXException e) {
+            throw newIOException(e);
+        }
+    }
+
+    public void finish() throws IOException {
+        try {
+            handler.endDocument();
+        } catch (SAXException e) {
+            throw newIOException(e);
+        }
+    }
+
+    private void startElement(String tagName) throws IOException {
+        elementStack.add(tagName);
+        try {
+            handler.startElement("", tagName, tagName, attributes);
+        } catch (SAXException e) {
+            throw newIOException(e);
+        }
+    }
+
+    private static IOException newIOException(SAXException e) {
+        IOException ioe = new IOException("Error reporting XML: " + e.getMessage());
+        ioe.initCause(e);
+        return ioe;
+    }
+}
+
+// vim:ts=4